@@ -0,0 +1,68 @@
+package com.aiassistant.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.TestProperties;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.List;
+
+/**
+ * Shared configuration and Telegram objects for the benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    static final String MODEL = "llama-3.1-8b-instant";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Keep INFO lines (e.g. "Created new user") out of the measurement
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger("com.aiassistant")).setLevel(Level.WARN);
+    }
+
+    /**
+     * Default configuration with the given per-user rate limit
+     */
+    static ApplicationProperties properties(int rateLimitPerMinute) {
+        return TestProperties.builder()
+                .telegramBotToken("benchmark-token")
+                .telegramBotUsername("BenchmarkBot")
+                .aiProvider(new ApplicationProperties.AiProviderProperties(
+                        "groq", "benchmark-key", "http://localhost/v1/chat/completions", MODEL,
+                        null, null, null, null))
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(
+                        null, rateLimitPerMinute, null, null, null, List.of(), null))
+                .build();
+    }
+
+    static User user(long userId) {
+        User user = new User(userId, "John", false);
+        user.setLastName("Doe");
+        user.setUserName("user" + userId);
+        user.setLanguageCode("ru");
+        return user;
+    }
+
+    static Update textUpdate(int updateId, long userId, String text) {
+        Chat chat = new Chat(userId, "private");
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setFrom(user(userId));
+        message.setChat(chat);
+        message.setText(text);
+
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+}
@@ -0,0 +1,88 @@
+package com.aiassistant.benchmark;
+
+import com.aiassistant.config.JsonConfig;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson with the application's SNAKE_CASE mapper (JsonConfig): serializing the chat
+ * completion request (with conversation history) and parsing a typical provider response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    @Param({"1", "20"})
+    public int messages;
+
+    private ObjectMapper objectMapper;
+    private AiRequest request;
+    private String responseBody;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new JsonConfig().objectMapper();
+
+        List<AiRequest.Message> history = new ArrayList<>();
+        for (int i = 1; i < messages; i++) {
+            history.add(i % 2 == 1
+                    ? AiRequest.Message.user("Объясни, что такое Java, и приведи пример. ".repeat(3))
+                    : AiRequest.Message.assistant("Java - это объектно-ориентированный язык программирования. ".repeat(8)));
+        }
+        history.add(AiRequest.Message.user("Напиши простую функцию сортировки."));
+        request = AiRequest.builder()
+                .model(BenchmarkFixtures.MODEL)
+                .messages(history)
+                .maxTokens(1000)
+                .temperature(0.7)
+                .build();
+
+        responseBody = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1717000000,"
+                + "\"model\":\"" + BenchmarkFixtures.MODEL + "\",\"choices\":[{\"index\":0,"
+                + "\"message\":{\"role\":\"assistant\",\"content\":\""
+                + "Вот пример сортировки вставками на Java. ".repeat(40)
+                + "\"},\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":410,\"completion_tokens\":520,\"total_tokens\":930},"
+                + "\"system_fingerprint\":\"fp_1\",\"x_groq\":{\"id\":\"req_1\"}}";
+        // Fail fast if the fixture drifts from the model
+        objectMapper.readValue(responseBody, AiResponse.class).getContent().length();
+    }
+
+    @Benchmark
+    public String serializeRequest() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public AiResponse parseResponse() throws JsonProcessingException {
+        return objectMapper.readValue(responseBody, AiResponse.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AiResponse parseResponseContended() throws JsonProcessingException {
+        return objectMapper.readValue(responseBody, AiResponse.class);
+    }
+}
@@ -0,0 +1,130 @@
+package com.aiassistant.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.JsonEncoder;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caller-thread cost of logging one AI call: the old synchronous appender with full
+ * request/response bodies versus the async appender with sampled bodies (logback-spring.xml).
+ * Output goes to a null stream, so the numbers exclude the terminal itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String REQUEST_BODY = "{\"model\":\"llama-3.1-8b-instant\",\"messages\":["
+            + "{\"role\":\"user\",\"content\":\"" + "Объясни, что такое Java. ".repeat(40) + "\"}],"
+            + "\"max_tokens\":1000,\"temperature\":0.7,\"stream\":false}";
+    private static final String RESPONSE_BODY = "{\"id\":\"chatcmpl-1\",\"choices\":[{\"index\":0,"
+            + "\"message\":{\"role\":\"assistant\",\"content\":\"" + "Java - это язык программирования. ".repeat(60)
+            + "\"},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":410,\"completion_tokens\":520}}";
+
+    @Param({"sync", "async"})
+    public String appender;
+
+    @Param({"pattern", "json"})
+    public String format;
+
+    @Param({"1.0", "0.01", "0.0"})
+    public double bodySampleRate;
+
+    private LoggerContext context;
+    private Logger logger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new LoggerContext();
+
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(context);
+        sink.setEncoder(encoder());
+        sink.setOutputStream(OutputStream.nullOutputStream());
+        sink.start();
+
+        Appender<ILoggingEvent> root = sink;
+        if ("async".equals(appender)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(sink);
+            async.start();
+            root = async;
+        }
+
+        logger = context.getLogger("com.aiassistant.service.impl.GroqAiService");
+        logger.setLevel(ch.qos.logback.classic.Level.DEBUG);
+        logger.setAdditive(false);
+        logger.addAppender(root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void logAiCall() {
+        logCall();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logAiCallContended() {
+        logCall();
+    }
+
+    // Mirrors GroqAiService: bodies only for sampled calls, plus one summary line per call
+    private void logCall() {
+        boolean logBodies = logger.isDebugEnabled() && ThreadLocalRandom.current().nextDouble() < bodySampleRate;
+        if (logBodies) {
+            logger.debug("Sending request to Groq API: {}", REQUEST_BODY);
+            logger.debug("Received response from Groq API: {}", RESPONSE_BODY);
+        }
+        logger.info("Sent AI response to user {}", 42L);
+    }
+
+    private Encoder<ILoggingEvent> encoder() {
+        if ("json".equals(format)) {
+            JsonEncoder encoder = new JsonEncoder();
+            encoder.setContext(context);
+            encoder.start();
+            return encoder;
+        }
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{HH:mm:ss.SSS} [%thread] [%X{requestId:-}] %-5level %logger{36} - %msg%n");
+        encoder.start();
+        return encoder;
+    }
+}
@@ -0,0 +1,85 @@
+package com.aiassistant.benchmark;
+
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.exception.RateLimitExceededException;
+import com.aiassistant.service.impl.InMemoryRateLimitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InMemoryRateLimitService.recordRequest: allowed requests from one hot user shared by all
+ * threads (worst-case contention), from one user per thread, and the rejected path,
+ * which builds an exception with a formatted message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitBenchmark {
+
+    private static final long HOT_USER = 1L;
+    private static final long LIMITED_USER = 2L;
+
+    private final AtomicLong nextUserId = new AtomicLong(1000);
+
+    private InMemoryRateLimitService unlimited;
+    private InMemoryRateLimitService limited;
+
+    @State(Scope.Thread)
+    public static class ThreadUser {
+        long userId;
+
+        @Setup
+        public void setUp(RateLimitBenchmark benchmark) {
+            userId = benchmark.nextUserId.getAndIncrement();
+        }
+    }
+
+    @Setup
+    public void setUp() throws RateLimitExceededException {
+        unlimited = new InMemoryRateLimitService(new LiveProperties(BenchmarkFixtures.properties(Integer.MAX_VALUE)));
+        limited = new InMemoryRateLimitService(new LiveProperties(BenchmarkFixtures.properties(1)));
+        limited.recordRequest(LIMITED_USER);
+    }
+
+    @Benchmark
+    public void recordAllowed(ThreadUser user) throws RateLimitExceededException {
+        unlimited.recordRequest(user.userId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordAllowedPerThreadUser(ThreadUser user) throws RateLimitExceededException {
+        unlimited.recordRequest(user.userId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordAllowedHotUser() throws RateLimitExceededException {
+        unlimited.recordRequest(HOT_USER);
+    }
+
+    @Benchmark
+    public RateLimitExceededException recordRejected() {
+        try {
+            limited.recordRequest(LIMITED_USER);
+            return null;
+        } catch (RateLimitExceededException e) {
+            return e;
+        }
+    }
+}
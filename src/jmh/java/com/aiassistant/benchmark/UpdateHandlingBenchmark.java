@@ -0,0 +1,163 @@
+package com.aiassistant.benchmark;
+
+import com.aiassistant.bot.AiAssistantBot;
+import com.aiassistant.bot.InFlightRequests;
+import com.aiassistant.bot.MessageDebouncer;
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.impl.DeficitRoundRobinScheduler;
+import com.aiassistant.service.impl.HeuristicTokenEstimator;
+import com.aiassistant.service.impl.InMemoryConversationService;
+import com.aiassistant.service.impl.InMemoryRateLimitService;
+import com.aiassistant.service.impl.InMemoryUsageService;
+import com.aiassistant.service.impl.InMemoryUserService;
+import com.aiassistant.service.impl.MapReduceResponder;
+import com.aiassistant.service.impl.SketchAbuseDetector;
+import com.aiassistant.traffic.TrafficRecorder;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full AiAssistantBot.onUpdateReceived with the real in-memory services and metrics.
+ * Only the network edges are stubbed: the AI service completes immediately and
+ * Telegram API calls are swallowed, so the numbers are the bot's own overhead per update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpdateHandlingBenchmark {
+
+    @Param({"question", "/help"})
+    public String text;
+
+    private final AtomicLong nextUserId = new AtomicLong(1);
+
+    private AiAssistantBot bot;
+    private InMemoryConversationService conversationService;
+    // Keeps the built API requests reachable so they are not optimized away
+    private Object sent;
+
+    @State(Scope.Thread)
+    public static class ThreadUpdate {
+        Update update;
+
+        @Setup
+        public void setUp(UpdateHandlingBenchmark benchmark) {
+            long userId = benchmark.nextUserId.getAndIncrement();
+            update = BenchmarkFixtures.textUpdate((int) userId, userId,
+                    "question".equals(benchmark.text) ? "Объясни, что такое Java" : benchmark.text);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+        ApplicationProperties properties = BenchmarkFixtures.properties(Integer.MAX_VALUE);
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+        conversationService = new InMemoryConversationService(properties, tokenEstimator);
+        InMemoryUsageService usageService = new InMemoryUsageService(properties, registry);
+
+        BotMetrics metrics = new BotMetrics(registry, properties);
+        LiveProperties liveProperties = new LiveProperties(properties);
+        StubAiService aiService = new StubAiService();
+        DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(liveProperties, registry, metrics);
+        bot = new AiAssistantBot(properties, aiService, new InMemoryUserService(),
+                new InMemoryRateLimitService(liveProperties),
+                new SketchAbuseDetector(properties, liveProperties, registry), scheduler,
+                new InFlightRequests(liveProperties), new MessageDebouncer(liveProperties, registry),
+                new MapReduceResponder(liveProperties, aiService, scheduler, tokenEstimator, conversationService, usageService),
+                conversationService, usageService, metrics,
+                TrafficRecorder.disabled()) {
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
+                sent = method;
+                return null;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        conversationService.shutdown();
+    }
+
+    @Benchmark
+    public void onUpdateReceived(ThreadUpdate state) {
+        bot.onUpdateReceived(state.update);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void onUpdateReceivedContended(ThreadUpdate state) {
+        bot.onUpdateReceived(state.update);
+    }
+
+    /**
+     * Answers instantly so only the synchronous path is measured
+     */
+    private static final class StubAiService implements AiService {
+        private static final CompletableFuture<String> REPLY =
+                CompletableFuture.completedFuture("Java - это язык программирования.");
+        // MapReduceResponder calls chatCompletion for long messages
+        private static final CompletableFuture<AiResponse> COMPLETION =
+                CompletableFuture.completedFuture(AiResponse.builder()
+                        .choices(List.of(AiResponse.Choice.builder()
+                                .message(AiRequest.Message.assistant(REPLY.join()))
+                                .build()))
+                        .build());
+
+        @Override
+        public CompletableFuture<AiResponse> chatCompletion(AiRequest request) {
+            return COMPLETION;
+        }
+
+        @Override
+        public CompletableFuture<String> generateResponse(String message) {
+            return REPLY;
+        }
+
+        @Override
+        public CompletableFuture<String> generateResponse(Long userId, Long chatId, String message) {
+            return REPLY;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String getProviderName() {
+            return "Stub";
+        }
+    }
+}
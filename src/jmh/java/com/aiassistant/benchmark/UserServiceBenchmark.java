@@ -0,0 +1,83 @@
+package com.aiassistant.benchmark;
+
+import com.aiassistant.model.TelegramUser;
+import com.aiassistant.service.impl.InMemoryUserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryUserService as used for every incoming message: look the user up
+ * (creating on first contact) and store the incremented message count.
+ * Users are drawn at random from a pre-populated population.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int population;
+
+    private InMemoryUserService userService;
+    private User[] users;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+        userService = new InMemoryUserService();
+        users = new User[population];
+        for (int i = 0; i < population; i++) {
+            users[i] = BenchmarkFixtures.user(i + 1);
+            userService.getOrCreateUser(users[i]);
+        }
+    }
+
+    @Benchmark
+    public TelegramUser getOrCreateUser() {
+        return userService.getOrCreateUser(randomUser());
+    }
+
+    @Benchmark
+    public TelegramUser getAndUpdateUser() {
+        return touch(randomUser());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TelegramUser getAndUpdateUserContended() {
+        return touch(randomUser());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TelegramUser getAndUpdateHotUser() {
+        return touch(users[0]);
+    }
+
+    // Same calls as AiAssistantBot.onUpdateReceived
+    private TelegramUser touch(User telegramUser) {
+        TelegramUser user = userService.getOrCreateUser(telegramUser);
+        return userService.updateUser(user.incrementMessageCount());
+    }
+
+    private User randomUser() {
+        return users[ThreadLocalRandom.current().nextInt(population)];
+    }
+}
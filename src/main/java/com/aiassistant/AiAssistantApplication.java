@@ -4,6 +4,7 @@ import com.aiassistant.config.ApplicationProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 /**
@@ -11,7 +12,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
  * Follows Single Responsibility Principle - handles only application startup.
  */
 @Slf4j
-@SpringBootApplication
+// The DataSource comes from UserStoreDataSourceConfig, only when the jdbc user store is used
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
 @EnableConfigurationProperties(ApplicationProperties.class)
 public class AiAssistantApplication {
     
@@ -19,6 +21,9 @@ public class AiAssistantApplication {
         try {
             SpringApplication.run(AiAssistantApplication.class, args);
             log.info("🤖 AI Assistant Telegram Bot started successfully!");
+        } catch (SpringApplication.AbandonedRunException e) {
+            // Build-time AOT processing stops the run on purpose once the context is prepared
+            throw e;
         } catch (Exception e) {
             log.error("Failed to start AI Assistant Bot", e);
             System.exit(1);
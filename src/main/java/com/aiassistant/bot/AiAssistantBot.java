@@ -2,33 +2,96 @@ package com.aiassistant.bot;
 
 import com.aiassistant.config.ApplicationProperties;
 import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.exception.DeadlineExceededException;
 import com.aiassistant.exception.RateLimitExceededException;
+import com.aiassistant.exception.RequestInProgressException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.metrics.FlightRecorderEvents;
 import com.aiassistant.model.TelegramUser;
+import com.aiassistant.service.AbuseDetector;
 import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
 import com.aiassistant.service.RateLimitService;
+import com.aiassistant.service.RequestScheduler;
+import com.aiassistant.service.UsageService;
 import com.aiassistant.service.UserService;
-import lombok.RequiredArgsConstructor;
+import com.aiassistant.service.impl.MapReduceResponder;
+import com.aiassistant.traffic.TrafficRecorder;
+import com.aiassistant.util.Deadline;
+import com.aiassistant.util.LogContext;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Main Telegram bot class.
  * Follows Single Responsibility Principle - handles only Telegram bot logic.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class AiAssistantBot extends TelegramLongPollingBot {
     
     private final ApplicationProperties properties;
     private final AiService aiService;
     private final UserService userService;
     private final RateLimitService rateLimitService;
+    private final AbuseDetector abuseDetector;
+    private final RequestScheduler requestScheduler;
+    private final InFlightRequests inFlightRequests;
+    private final MessageDebouncer messageDebouncer;
+    private final MapReduceResponder mapReduceResponder;
+    private final ConversationService conversationService;
+    private final UsageService usageService;
+    private final BotMetrics metrics;
+    private final TrafficRecorder trafficRecorder;
+    
+    public AiAssistantBot(ApplicationProperties properties,
+                          AiService aiService,
+                          UserService userService,
+                          RateLimitService rateLimitService,
+                          AbuseDetector abuseDetector,
+                          RequestScheduler requestScheduler,
+                          InFlightRequests inFlightRequests,
+                          MessageDebouncer messageDebouncer,
+                          MapReduceResponder mapReduceResponder,
+                          ConversationService conversationService,
+                          UsageService usageService,
+                          BotMetrics metrics,
+                          TrafficRecorder trafficRecorder) {
+        super(botOptions(properties));
+        this.properties = properties;
+        this.aiService = aiService;
+        this.userService = userService;
+        this.rateLimitService = rateLimitService;
+        this.abuseDetector = abuseDetector;
+        this.requestScheduler = requestScheduler;
+        this.inFlightRequests = inFlightRequests;
+        this.messageDebouncer = messageDebouncer;
+        this.mapReduceResponder = mapReduceResponder;
+        this.conversationService = conversationService;
+        this.usageService = usageService;
+        this.metrics = metrics;
+        this.trafficRecorder = trafficRecorder;
+    }
+    
+    private static DefaultBotOptions botOptions(ApplicationProperties properties) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        // A local Bot API server or emulator, e.g. for load tests
+        if (properties.telegramApiUrl() != null) {
+            options.setBaseUrl(properties.telegramApiUrl());
+        }
+        return options;
+    }
     
     @Override
     public String getBotUsername() {
@@ -48,52 +111,123 @@ public class AiAssistantBot extends TelegramLongPollingBot {
         
         Message message = update.getMessage();
         Long userId = message.getFrom().getId();
+        // Reject blocked users first: a bitmap lookup and a counter, before any timing, event,
+        // logging context or traffic recording is set up
+        if (userService.isUserBlocked(userId)) {
+            metrics.blocked();
+            return;
+        }
+        
+        long receivedAt = metrics.start();
+        FlightRecorderEvents.UpdateEvent event = new FlightRecorderEvents.UpdateEvent();
+        event.begin();
         String messageText = message.getText();
+        MDC.put(LogContext.REQUEST_ID, String.valueOf(update.getUpdateId()));
+        MDC.put(LogContext.CHAT_ID, String.valueOf(message.getChatId()));
+        // Every later stage, sync or async, gets what is left of this budget
+        Deadline.attach(Deadline.after(properties.botBehavior().responseDeadlineMs()));
+        trafficRecorder.recordUpdate(userId, message.getChatId(), messageText.length(), messageText.startsWith("/"));
         
         try {
+            // Floods and repeated spam are dropped silently, before they touch the user store or the
+            // rate limit; a reply to each one would spend the outgoing message budget on spam
+            if (!messageText.startsWith("/")) {
+                AbuseDetector.Verdict verdict = abuseDetector.inspect(userId, messageText);
+                if (verdict != AbuseDetector.Verdict.ALLOW) {
+                    metrics.record(BotMetrics.Stage.USER_CHECK, receivedAt);
+                    event.outcome = "spam";
+                    if (verdict == AbuseDetector.Verdict.FLAG) {
+                        handleOffender(userId);
+                    }
+                    log.debug("Dropped spam from user {}", userId);
+                    return;
+                }
+            }
+            
             // Get or create user
             TelegramUser user = userService.getOrCreateUser(message.getFrom());
             
-            // Check if user is blocked
-            if (userService.isUserBlocked(userId)) {
-                log.warn("Blocked user {} tried to send message", userId);
-                return;
-            }
-            
             // Update user message count
             userService.updateUser(user.incrementMessageCount());
+            metrics.record(BotMetrics.Stage.USER_CHECK, receivedAt);
             
             // Handle commands
             if (messageText.startsWith("/")) {
+                event.outcome = "command";
                 handleCommand(message, messageText);
                 return;
             }
             
             // Check rate limit
+            long rateLimitStart = metrics.start();
+            FlightRecorderEvents.RateLimitEvent rateLimitEvent = new FlightRecorderEvents.RateLimitEvent();
+            rateLimitEvent.begin();
             try {
                 rateLimitService.recordRequest(userId);
+                metrics.record(BotMetrics.Stage.RATE_LIMIT, rateLimitStart);
+                commitRateLimitEvent(rateLimitEvent, userId, true);
             } catch (RateLimitExceededException e) {
+                metrics.record(BotMetrics.Stage.RATE_LIMIT, rateLimitStart);
+                commitRateLimitEvent(rateLimitEvent, userId, false);
+                event.outcome = "rate_limited";
                 sendMessage(message.getChatId(), 
                     "⏰ Вы отправляете сообщения слишком часто. Попробуйте через " + 
                     rateLimitService.getTimeUntilReset(userId) + " секунд.");
                 return;
             }
             
-            // Validate message length
-            if (messageText.length() > properties.botBehavior().maxMessageLength()) {
+            // Validate message length; with map-reduce, long messages are answered in parts
+            int maxLength = properties.mapReduce().enabled()
+                    ? properties.mapReduce().maxInputChars()
+                    : properties.botBehavior().maxMessageLength();
+            if (messageText.length() > maxLength) {
+                event.outcome = "too_long";
                 sendMessage(message.getChatId(), 
                     "📝 Сообщение слишком длинное. Максимальная длина: " + 
-                    properties.botBehavior().maxMessageLength() + " символов.");
+                    maxLength + " символов.");
                 return;
             }
             
-            // Send typing indicator and process AI request
-            sendTypingAction(message.getChatId());
-            processAiRequest(message, messageText);
+            // Quick follow-up messages are answered together with the first one
+            if (messageDebouncer.isEnabled()) {
+                event.outcome = "debounced";
+                messageDebouncer.submit(message.getChatId(), userId, messageText,
+                        prompt -> startAiRequest(message, prompt, receivedAt));
+            } else {
+                event.outcome = startAiRequest(message, messageText, receivedAt);
+            }
             
         } catch (Exception e) {
+            event.outcome = "error";
             log.error("Error processing message from user {}: {}", userId, e.getMessage(), e);
             sendMessage(message.getChatId(), properties.botBehavior().defaultErrorMessage());
+        } finally {
+            metrics.record(BotMetrics.Stage.UPDATE, receivedAt);
+            if (event.shouldCommit()) {
+                event.userId = userId;
+                event.chatId = message.getChatId();
+                event.commit();
+            }
+            MDC.remove(LogContext.REQUEST_ID);
+            MDC.remove(LogContext.CHAT_ID);
+            Deadline.attach(null);
+        }
+    }
+    
+    private void handleOffender(Long userId) {
+        if (properties.abuse().blockOffenders()) {
+            userService.blockUser(userId);
+            log.warn("Blocked user {} for sending spam", userId);
+        } else {
+            log.warn("User {} keeps sending spam", userId);
+        }
+    }
+    
+    private void commitRateLimitEvent(FlightRecorderEvents.RateLimitEvent event, Long userId, boolean allowed) {
+        if (event.shouldCommit()) {
+            event.userId = userId;
+            event.allowed = allowed;
+            event.commit();
         }
     }
     
@@ -111,6 +245,23 @@ public class AiAssistantBot extends TelegramLongPollingBot {
             case "/status" -> {
                 handleStatusCommand(message);
             }
+            case "/clear" -> {
+                conversationService.clear(chatId);
+                sendMessage(chatId, "🧹 История диалога очищена.");
+            }
+            case "/cancel" -> {
+                Long userId = message.getFrom().getId();
+                boolean discarded = messageDebouncer.discard(chatId, userId);
+                boolean cancelled = inFlightRequests.cancel(userId);
+                sendMessage(chatId, discarded || cancelled ? "🛑 Генерация ответа остановлена." : "Нет запросов в обработке.");
+            }
+            case "/usage" -> {
+                if (properties.botBehavior().adminUserIds().contains(message.getFrom().getId())) {
+                    handleUsageCommand(chatId);
+                } else {
+                    sendMessage(chatId, "❓ Неизвестная команда. Используйте /help для получения справки.");
+                }
+            }
             default -> {
                 sendMessage(chatId, "❓ Неизвестная команда. Используйте /help для получения справки.");
             }
@@ -138,6 +289,7 @@ public class AiAssistantBot extends TelegramLongPollingBot {
             📝 Сообщений отправлено: %d
             ⏱️ Оставшихся запросов: %d
             🔄 Сброс лимита через: %d сек
+            ⏳ Запросов в обработке: %d
             🤖 AI Провайдер: %s
             ✅ AI Доступен: %s
             """,
@@ -145,6 +297,7 @@ public class AiAssistantBot extends TelegramLongPollingBot {
             user.getMessageCount(),
             remainingRequests,
             timeUntilReset,
+            inFlightRequests.inFlight(userId),
             aiService.getProviderName(),
             aiAvailable ? "Да" : "Нет"
         );
@@ -152,19 +305,93 @@ public class AiAssistantBot extends TelegramLongPollingBot {
         sendMessage(chatId, status);
     }
     
-    private void processAiRequest(Message message, String messageText) {
+    private void handleUsageCommand(Long chatId) {
+        int topN = properties.usage().reportTopN();
+        UsageService.UsageReport hour = usageService.report(UsageService.Granularity.MINUTE, 60, topN);
+        UsageService.UsageReport day = usageService.report(UsageService.Granularity.HOUR, 24, topN);
+        UsageService.UsageReport week = usageService.report(UsageService.Granularity.DAY, 7, topN);
+        
+        StringBuilder text = new StringBuilder("📈 Расход токенов\n\n");
+        text.append("За час: ").append(formatUsage(hour.total())).append('\n');
+        text.append("За сутки: ").append(formatUsage(day.total())).append('\n');
+        text.append("За неделю: ").append(formatUsage(week.total())).append('\n');
+        appendEntries(text, "\n👤 Топ пользователей за сутки:\n", day.topUsers());
+        appendEntries(text, "\n💬 Топ чатов за сутки:\n", day.topChats());
+        appendEntries(text, "\n🤖 Модели за сутки:\n", day.models());
+        
+        sendMessage(chatId, text.toString());
+    }
+    
+    private static void appendEntries(StringBuilder text, String title, List<UsageService.UsageEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        text.append(title);
+        for (UsageService.UsageEntry entry : entries) {
+            text.append("• ").append(entry.key()).append(": ").append(formatUsage(entry)).append('\n');
+        }
+    }
+    
+    private static String formatUsage(UsageService.UsageEntry entry) {
+        return String.format("%d токенов (%d prompt / %d completion), запросов: %d",
+                entry.totalTokens(), entry.promptTokens(), entry.completionTokens(), entry.requests());
+    }
+    
+    /**
+     * Send typing indicator and process AI request
+     *
+     * @return update outcome: ai_request, or busy if the in-flight policy refused it
+     */
+    private String startAiRequest(Message message, String messageText, long receivedAt) {
+        try {
+            processAiRequest(message, messageText, receivedAt);
+            return "ai_request";
+        } catch (RequestInProgressException e) {
+            sendMessage(message.getChatId(),
+                "⏳ Я еще отвечаю на предыдущее сообщение. Дождитесь ответа или отправьте /cancel.");
+            return "busy";
+        }
+    }
+    
+    private void processAiRequest(Message message, String messageText, long receivedAt) {
         Long chatId = message.getChatId();
+        Long userId = message.getFrom().getId();
         
-        aiService.generateResponse(messageText)
+        // The in-flight policy decides whether this request waits for, replaces or is refused
+        // by the user's previous one; then it is answered from the response cache or waits for
+        // a provider slot in the fair-share queue. A message too long for one prompt is answered
+        // from notes on its parts
+        CompletableFuture<String> reply = messageText.length() > properties.botBehavior().maxMessageLength()
+                ? inFlightRequests.submit(userId, () -> mapReduceResponder.answer(userId, chatId, messageText))
+                : inFlightRequests.submit(userId, () -> aiService.cachedResponse(userId, chatId, messageText)
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> requestScheduler.submit(userId, messageText.length(),
+                                () -> aiService.generateResponse(userId, chatId, messageText))));
+        sendTypingAction(chatId);
+        reply
             .thenAccept(response -> {
                 sendMessage(chatId, response);
-                log.debug("Sent AI response to user {}", message.getFrom().getId());
+                metrics.record(BotMetrics.Stage.END_TO_END, receivedAt);
+                log.debug("Sent AI response to user {}", userId);
             })
             .exceptionally(throwable -> {
+                if (throwable instanceof CancellationException || throwable.getCause() instanceof CancellationException) {
+                    // Superseded or /cancel: the user no longer wants this answer
+                    log.debug("AI request of user {} was cancelled", userId);
+                    return null;
+                }
+                if (throwable.getCause() instanceof DeadlineExceededException) {
+                    log.warn("AI request of user {} dropped: {}", userId, throwable.getCause().getMessage());
+                    sendMessage(chatId, "⌛ Не удалось подготовить ответ вовремя. Попробуйте еще раз чуть позже.");
+                    return null;
+                }
                 log.error("Error generating AI response", throwable);
                 
                 String errorMessage;
-                if (throwable.getCause() instanceof AiServiceException aiException) {
+                if (throwable.getCause() instanceof AiServiceException aiException
+                        && "CONTEXT_TOO_LARGE".equals(aiException.getErrorCode())) {
+                    errorMessage = "📝 Запрос не помещается в контекст модели. Сократите сообщение или очистите историю командой /clear.";
+                } else if (throwable.getCause() instanceof AiServiceException aiException) {
                     errorMessage = "🤖 AI сервис временно недоступен: " + aiException.getMessage();
                 } else {
                     errorMessage = properties.botBehavior().defaultErrorMessage();
@@ -176,15 +403,28 @@ public class AiAssistantBot extends TelegramLongPollingBot {
     }
     
     private void sendMessage(Long chatId, String text) {
+        FlightRecorderEvents.TelegramSendEvent event = new FlightRecorderEvents.TelegramSendEvent();
+        boolean success = false;
         try {
             SendMessage message = SendMessage.builder()
                     .chatId(chatId.toString())
                     .text(text)
                     .build();
             
+            long sendStart = metrics.start();
+            event.begin();
             execute(message);
+            metrics.record(BotMetrics.Stage.TELEGRAM_SEND, sendStart);
+            success = true;
         } catch (TelegramApiException e) {
             log.error("Error sending message to chat {}: {}", chatId, e.getMessage(), e);
+        } finally {
+            if (event.shouldCommit()) {
+                event.chatId = chatId;
+                event.length = text.length();
+                event.success = success;
+                event.commit();
+            }
         }
     }
     
@@ -0,0 +1,55 @@
+package com.aiassistant.bot;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+
+/**
+ * Starts long polling once the application context is fully started and stops it first on shutdown.
+ * Replaces the telegrambots Spring Boot starter: it declares its auto-configuration only in
+ * spring.factories, which Spring Boot 3 no longer reads, so the bot was never registered.
+ * Registering from a lifecycle callback also keeps the Telegram round-trip out of context
+ * refresh, so the context can be refreshed offline (AOT processing, the AppCDS training run).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BotSessionLifecycle implements SmartLifecycle {
+
+    private final AiAssistantBot bot;
+    private BotSession session;
+
+    @Override
+    public synchronized void start() {
+        try {
+            session = new TelegramBotsApi(DefaultBotSession.class).registerBot(bot);
+            log.info("Bot @{} is polling for updates", bot.getBotUsername());
+        } catch (TelegramApiException e) {
+            throw new IllegalStateException("Failed to register Telegram bot", e);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (session == null || !session.isRunning()) {
+            return;
+        }
+        // DefaultBotSession.stop() blocks until the pending long poll returns (up to the getUpdates
+        // timeout); don't hold shutdown for it. Updates it may still fetch are not confirmed and
+        // are delivered again after restart.
+        BotSession stopping = session;
+        Thread stopper = new Thread(stopping::stop, "bot-session-stop");
+        stopper.setDaemon(true);
+        stopper.start();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return session != null && session.isRunning();
+    }
+}
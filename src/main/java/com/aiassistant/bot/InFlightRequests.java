@@ -0,0 +1,146 @@
+package com.aiassistant.bot;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.exception.RequestInProgressException;
+import com.aiassistant.util.LogContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Tracks each user's AI requests that are waiting or being answered.
+ * A new message while an earlier one is still in flight is handled by the configured
+ * {@link ApplicationProperties.InFlightPolicy}: answered after it, answered instead of it,
+ * or refused. Cancelling a request cancels the future returned by the request supplier,
+ * which the scheduler and the AI service pass on down to the HTTP call, so the provider
+ * stops generating and the connection is freed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InFlightRequests {
+
+    private final LiveProperties properties;
+    // Requests of a user in arrival order; lists are only touched inside compute
+    private final ConcurrentHashMap<Long, List<CompletableFuture<?>>> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Start a user's request according to the in-flight policy
+     *
+     * @param userId user ID
+     * @param request starts the request
+     * @return CompletableFuture with the request result; cancelling it cancels the request
+     * @throws RequestInProgressException if the policy is reject and a request is in flight
+     */
+    public <T> CompletableFuture<T> submit(Long userId, Supplier<CompletableFuture<T>> request)
+            throws RequestInProgressException {
+        ApplicationProperties.InFlightPolicy policy = properties.get().scheduler().inFlightPolicy();
+        CompletableFuture<T> handle = new CompletableFuture<>();
+        List<CompletableFuture<?>> superseded = new ArrayList<>();
+        List<CompletableFuture<?>> previous = new ArrayList<>(1);
+        requests.compute(userId, (id, pending) -> {
+            if (pending == null) {
+                pending = new ArrayList<>();
+            } else if (!pending.isEmpty()) {
+                switch (policy) {
+                    case REJECT -> throw new RequestInProgressException("Previous request of user " + id + " is in progress");
+                    case SUPERSEDE -> {
+                        superseded.addAll(pending);
+                        pending.clear();
+                    }
+                    case QUEUE -> previous.add(pending.get(pending.size() - 1));
+                }
+            }
+            pending.add(handle);
+            return pending;
+        });
+        handle.whenComplete((value, error) -> requests.computeIfPresent(userId, (id, pending) -> {
+            pending.remove(handle);
+            return pending.isEmpty() ? null : pending;
+        }));
+
+        if (!superseded.isEmpty()) {
+            log.debug("Superseding {} request(s) of user {}", superseded.size(), userId);
+            cancelAll(superseded);
+        }
+        Runnable start = LogContext.capturing(() -> start(handle, request));
+        if (previous.isEmpty()) {
+            start.run();
+        } else {
+            // Whatever the previous request ended with, this one goes next
+            previous.get(0).whenComplete((value, error) -> start.run());
+        }
+        return handle;
+    }
+
+    /**
+     * Cancel all requests of a user
+     *
+     * @param userId user ID
+     * @return true if there was anything to cancel
+     */
+    public boolean cancel(Long userId) {
+        List<CompletableFuture<?>> cancelled = new ArrayList<>();
+        requests.computeIfPresent(userId, (id, pending) -> {
+            cancelled.addAll(pending);
+            return null;
+        });
+        cancelAll(cancelled);
+        return !cancelled.isEmpty();
+    }
+
+    /**
+     * Get the number of requests of a user that are waiting or being answered
+     *
+     * @param userId user ID
+     * @return requests in flight
+     */
+    public int inFlight(Long userId) {
+        int[] size = new int[1];
+        requests.computeIfPresent(userId, (id, pending) -> {
+            size[0] = pending.size();
+            return pending;
+        });
+        return size[0];
+    }
+
+    private static void cancelAll(List<CompletableFuture<?>> requests) {
+        // Newest first, so that a cancelled request does not start the queued one behind it
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            requests.get(i).cancel(false);
+        }
+    }
+
+    private static <T> void start(CompletableFuture<T> handle, Supplier<CompletableFuture<T>> request) {
+        if (handle.isDone()) {
+            // Cancelled before its turn
+            return;
+        }
+        CompletableFuture<T> call;
+        try {
+            call = request.get();
+        } catch (RuntimeException e) {
+            handle.completeExceptionally(e);
+            return;
+        }
+        handle.whenComplete((value, error) -> {
+            if (handle.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        call.whenComplete((value, error) -> {
+            if (error != null) {
+                handle.completeExceptionally(error);
+            } else {
+                handle.complete(value);
+            }
+        });
+    }
+}
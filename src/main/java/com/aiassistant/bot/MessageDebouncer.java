@@ -0,0 +1,178 @@
+package com.aiassistant.bot;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.util.LogContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces quick consecutive messages of a user in a chat into one prompt.
+ * Users often split a question over several messages; answering each of them separately
+ * costs a provider call per part and gives worse answers. Batches are kept per user and chat,
+ * so in a group every member's messages are answered on their own. A batch is answered once
+ * the user has been quiet in the chat for windowMs, maxWaitMs after its first message, or as soon as it reaches
+ * maxMessages or the message length limit. The batch is answered with the logging context
+ * and deadline of its first message.
+ */
+@Slf4j
+@Component
+public class MessageDebouncer {
+
+    private static final String SEPARATOR = "\n";
+
+    private final LiveProperties properties;
+    private final Counter coalesced;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-debouncer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentHashMap<Key, Batch> batches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MessageDebouncer(LiveProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.coalesced = Counter.builder("aiassistant.debounce.coalesced")
+                .description("Messages merged into an earlier message's prompt")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return properties.get().debounce().enabled();
+    }
+
+    /**
+     * Add a message to its sender's batch in the chat
+     *
+     * @param chatId chat ID
+     * @param userId sender's user ID
+     * @param text message text
+     * @param answer called once per batch with the merged text; the first message's callback is used
+     */
+    public void submit(Long chatId, Long userId, String text, Consumer<String> answer) {
+        Key key = new Key(chatId, userId);
+        ApplicationProperties config = properties.get();
+        ApplicationProperties.DebounceProperties debounce = config.debounce();
+        int maxChars = config.botBehavior().maxMessageLength();
+        Batch[] full = new Batch[1];
+        int[] size = new int[1];
+        Batch current = batches.compute(key, (id, batch) -> {
+            if (batch != null && batch.fits(text, debounce.maxMessages(), maxChars)) {
+                batch.parts.add(text);
+                batch.chars += SEPARATOR.length() + text.length();
+                coalesced.increment();
+            } else {
+                // The batch is answered as it is, the message starts the next one
+                full[0] = batch;
+                batch = new Batch(text, answer);
+            }
+            size[0] = batch.parts.size();
+            return batch;
+        });
+        if (full[0] != null) {
+            // Already replaced in the map, so nobody else can answer it
+            answer(key, full[0]);
+        }
+        if (size[0] >= debounce.maxMessages()) {
+            flush(key, current);
+        } else {
+            schedule(key, current, debounce);
+        }
+    }
+
+    /**
+     * Drop the user's pending batch in the chat without answering it
+     *
+     * @param chatId chat ID
+     * @param userId user ID
+     * @return true if there was a pending batch
+     */
+    public boolean discard(Long chatId, Long userId) {
+        Batch batch = batches.remove(new Key(chatId, userId));
+        if (batch == null) {
+            return false;
+        }
+        batch.cancelTimer();
+        return true;
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Answer what was already received rather than losing it
+        batches.forEach(this::flush);
+        timer.shutdownNow();
+    }
+
+    private void schedule(Key key, Batch batch, ApplicationProperties.DebounceProperties debounce) {
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.startedAt);
+        long delay = Math.max(0, Math.min(debounce.windowMs(), debounce.maxWaitMs() - waited));
+        synchronized (batch) {
+            batch.cancelTimer();
+            batch.timer = timer.schedule(() -> flush(key, batch), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(Key key, Batch batch) {
+        // Only the caller that takes the batch out of the map answers it
+        if (batches.remove(key, batch)) {
+            answer(key, batch);
+        }
+    }
+
+    private void answer(Key key, Batch batch) {
+        batch.cancelTimer();
+        if (batch.parts.size() > 1) {
+            log.debug("Answering {} messages of user {} in chat {} as one prompt",
+                    batch.parts.size(), key.userId(), key.chatId());
+        }
+        try {
+            batch.answer.run();
+        } catch (RuntimeException e) {
+            log.error("Error answering debounced messages of user {} in chat {}", key.userId(), key.chatId(), e);
+        }
+    }
+
+    private record Key(Long chatId, Long userId) {
+    }
+
+    private static final class Batch {
+
+        // Only modified inside compute, read after the batch is removed
+        private final List<String> parts = new ArrayList<>();
+        private final long startedAt = System.nanoTime();
+        private final Runnable answer;
+        private int chars;
+        private ScheduledFuture<?> timer;
+
+        Batch(String text, Consumer<String> answer) {
+            parts.add(text);
+            chars = text.length();
+            // The callback may run on the timer thread
+            this.answer = LogContext.capturing(() -> answer.accept(String.join(SEPARATOR, parts)));
+        }
+
+        boolean fits(String text, int maxMessages, int maxChars) {
+            return parts.size() < maxMessages && chars + SEPARATOR.length() + text.length() <= maxChars;
+        }
+
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -8,6 +8,9 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Max;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Configuration properties for the AI Assistant Bot application.
  * Follows the Single Responsibility Principle - handles only configuration.
@@ -21,11 +24,53 @@ public record ApplicationProperties(
     @NotBlank(message = "Telegram bot username is required")
     String telegramBotUsername,
     
+    String telegramApiUrl, // Bot API base URL, the token is appended; null for api.telegram.org
+    
     AiProviderProperties aiProvider,
     
-    BotBehaviorProperties botBehavior
+    BotBehaviorProperties botBehavior,
+    
+    UserStoreProperties userStore,
+    
+    ConversationProperties conversation,
+    
+    ObservabilityProperties observability,
+    
+    UsageProperties usage,
+    
+    TrafficProperties traffic,
+    
+    ReloadProperties reload,
+    
+    RoutingProperties routing,
+    
+    SchedulerProperties scheduler,
+    
+    DebounceProperties debounce,
+    
+    ResponseCacheProperties responseCache,
+    
+    AbuseProperties abuse,
+    
+    MapReduceProperties mapReduce
 ) {
     
+    public ApplicationProperties {
+        // Default values for optional sections
+        if (userStore == null) userStore = new UserStoreProperties(null, null, null, null, null, null, null, null, null);
+        if (conversation == null) conversation = new ConversationProperties(null, null, null, null, null, null, null, null, null, null);
+        if (observability == null) observability = new ObservabilityProperties(null, null);
+        if (usage == null) usage = new UsageProperties(null, null);
+        if (traffic == null) traffic = new TrafficProperties(null, null, null);
+        if (reload == null) reload = new ReloadProperties(null, null);
+        if (routing == null) routing = new RoutingProperties(null, null, null);
+        if (scheduler == null) scheduler = new SchedulerProperties(null, null, null, null, null, null, null);
+        if (debounce == null) debounce = new DebounceProperties(null, null, null, null);
+        if (responseCache == null) responseCache = new ResponseCacheProperties(null, null, null, null, null, null);
+        if (abuse == null) abuse = new AbuseProperties(null, null, null, null, null, null, null, null);
+        if (mapReduce == null) mapReduce = new MapReduceProperties(null, null, null, null, null, null);
+    }
+    
     /**
      * AI Provider configuration
      */
@@ -48,13 +93,17 @@ public record ApplicationProperties(
         Double temperature,
         
         @Min(value = 1000, message = "Timeout must be at least 1000ms")
-        Integer timeoutMs
+        Integer timeoutMs,
+        
+        @Min(value = 1, message = "Context window must be at least 1 token")
+        Integer contextWindowTokens
     ) {
         public AiProviderProperties {
             // Default values
             if (maxTokens == null) maxTokens = 1000;
             if (temperature == null) temperature = 0.7;
             if (timeoutMs == null) timeoutMs = 30000;
+            if (contextWindowTokens == null) contextWindowTokens = 8192;
         }
     }
     
@@ -72,10 +121,17 @@ public record ApplicationProperties(
         
         String welcomeMessage,
         
-        String helpMessage
+        String helpMessage,
+        
+        List<Long> adminUserIds,
+        
+        @Min(value = 1000, message = "Response deadline must be at least 1000ms")
+        Integer responseDeadlineMs // Budget from update receipt to the answer, across all stages
     ) {
         public BotBehaviorProperties {
             // Default values
+            if (adminUserIds == null) adminUserIds = List.of();
+            if (responseDeadlineMs == null) responseDeadlineMs = 60000;
             if (maxMessageLength == null) maxMessageLength = 4000;
             if (rateLimitPerMinute == null) rateLimitPerMinute = 10;
             if (defaultErrorMessage == null) {
@@ -91,10 +147,376 @@ public record ApplicationProperties(
                     Команды:
                     /start - Начать работу с ботом
                     /help - Показать эту справку
+                    /clear - Очистить историю диалога
+                    /cancel - Остановить генерацию ответа
                     
                     Просто отправьте мне сообщение, и я отвечу на ваш вопрос!
                     """;
             }
         }
     }
+    
+    /**
+     * User storage configuration
+     */
+    public record UserStoreProperties(
+        String type, // memory, journal, jdbc
+        
+        String directory,
+        
+        @Min(value = 1, message = "Journal flush interval must be at least 1ms")
+        Integer journalFlushIntervalMs,
+        
+        @Min(value = 1, message = "Snapshot interval must be at least 1 second")
+        Integer snapshotIntervalSeconds,
+        
+        String jdbcUrl,
+        
+        String jdbcUsername,
+        
+        String jdbcPassword,
+        
+        @Min(value = 1, message = "Write-behind interval must be at least 1ms")
+        Integer writeBehindIntervalMs,
+        
+        @Min(value = 1, message = "Cache size must be at least 1")
+        Integer cacheMaxSize
+    ) {
+        public UserStoreProperties {
+            // Default values
+            if (type == null) type = "memory";
+            if (directory == null) directory = "data/users";
+            if (journalFlushIntervalMs == null) journalFlushIntervalMs = 10;
+            if (snapshotIntervalSeconds == null) snapshotIntervalSeconds = 300;
+            if (writeBehindIntervalMs == null) writeBehindIntervalMs = 1000;
+            if (cacheMaxSize == null) cacheMaxSize = 100_000;
+        }
+    }
+    
+    /**
+     * Conversation memory configuration
+     */
+    public record ConversationProperties(
+        Boolean enabled,
+        
+        @Min(value = 2, message = "History must keep at least 2 messages per chat")
+        Integer maxMessagesPerChat,
+        
+        @Min(value = 1, message = "Total history size must be at least 1 character")
+        Long maxTotalChars,
+        
+        @Min(value = 1, message = "Idle timeout must be at least 1 minute")
+        Integer idleTimeoutMinutes,
+        
+        @Min(value = 0, message = "History token budget must not be negative")
+        Integer maxHistoryTokens,
+        
+        Boolean summarizationEnabled,
+        
+        @Min(value = 1, message = "Summarization threshold must be at least 1 token")
+        Integer summarizeAfterTokens,
+        
+        @Min(value = 0, message = "Number of recent messages to keep must not be negative")
+        Integer keepRecentMessages,
+        
+        String summaryModel,
+        
+        @Min(value = 1, message = "Summary must allow at least 1 token")
+        Integer summaryMaxTokens
+    ) {
+        public ConversationProperties {
+            // Default values
+            if (enabled == null) enabled = true;
+            if (maxMessagesPerChat == null) maxMessagesPerChat = 20;
+            if (maxTotalChars == null) maxTotalChars = 50_000_000L;
+            if (idleTimeoutMinutes == null) idleTimeoutMinutes = 60;
+            if (maxHistoryTokens == null) maxHistoryTokens = 2000;
+            if (summarizationEnabled == null) summarizationEnabled = true;
+            if (summarizeAfterTokens == null) summarizeAfterTokens = 1200;
+            if (keepRecentMessages == null) keepRecentMessages = 6;
+            if (summaryMaxTokens == null) summaryMaxTokens = 256;
+        }
+    }
+    
+    /**
+     * Profiling and diagnostics configuration
+     */
+    public record ObservabilityProperties(
+        Boolean jfrEventsEnabled,
+        
+        @Min(value = 0, message = "Body log sample rate must be between 0 and 1")
+        @Max(value = 1, message = "Body log sample rate must be between 0 and 1")
+        Double bodyLogSampleRate
+    ) {
+        public ObservabilityProperties {
+            // Default values
+            if (jfrEventsEnabled == null) jfrEventsEnabled = true;
+            if (bodyLogSampleRate == null) bodyLogSampleRate = 0.0;
+        }
+    }
+    
+    /**
+     * Token usage accounting configuration
+     */
+    public record UsageProperties(
+        @Min(value = 1, message = "Tracked keys per bucket must be at least 1")
+        Integer maxKeysPerBucket,
+        
+        @Min(value = 1, message = "Report must show at least 1 entry")
+        Integer reportTopN
+    ) {
+        public UsageProperties {
+            // Default values
+            if (maxKeysPerBucket == null) maxKeysPerBucket = 1000;
+            if (reportTopN == null) reportTopN = 5;
+        }
+    }
+    
+    /**
+     * Traffic shape capture configuration
+     */
+    public record TrafficProperties(
+        Boolean enabled,
+        
+        String directory,
+        
+        @Min(value = 1, message = "Traffic queue capacity must be at least 1")
+        Integer queueCapacity
+    ) {
+        public TrafficProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (directory == null) directory = "data/traffic";
+            if (queueCapacity == null) queueCapacity = 65536;
+        }
+    }
+    
+    /**
+     * Live configuration reload
+     */
+    public record ReloadProperties(
+        String file, // YAML or .properties file with aiassistant.* overrides; blank disables reload
+        
+        @Min(value = 100, message = "Config poll interval must be at least 100ms")
+        Integer pollIntervalMs
+    ) {
+        public ReloadProperties {
+            // Default values
+            if (file != null && file.isBlank()) file = null;
+            if (pollIntervalMs == null) pollIntervalMs = 2000;
+        }
+    }
+    
+    /**
+     * Model routing by prompt complexity
+     */
+    public record RoutingProperties(
+        Boolean enabled,
+        
+        List<ModelTierProperties> tiers, // Cheapest first; aiProvider.model is the implicit top tier
+        
+        Boolean escalateOnTruncation
+    ) {
+        public RoutingProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (tiers == null) tiers = List.of();
+            if (escalateOnTruncation == null) escalateOnTruncation = true;
+        }
+    }
+    
+    /**
+     * A model tier and the prompts it is allowed to answer; null limits are unlimited
+     */
+    public record ModelTierProperties(
+        @NotBlank(message = "Tier model name is required")
+        String model,
+        
+        @Min(value = 1, message = "Tier prompt token limit must be at least 1")
+        Integer maxPromptTokens, // Tokens of the new message
+        
+        @Min(value = 0, message = "Tier history depth must not be negative")
+        Integer maxHistoryMessages,
+        
+        Boolean allowCode,
+        
+        Boolean allowNonLatin // Prompts written mostly outside the Latin script
+    ) {
+        public ModelTierProperties {
+            // Default values
+            if (maxPromptTokens == null) maxPromptTokens = Integer.MAX_VALUE;
+            if (maxHistoryMessages == null) maxHistoryMessages = Integer.MAX_VALUE;
+            if (allowCode == null) allowCode = true;
+            if (allowNonLatin == null) allowNonLatin = true;
+        }
+    }
+    
+    /**
+     * Fair scheduling of AI requests across users
+     */
+    public record SchedulerProperties(
+        Boolean enabled,
+        
+        @Min(value = 1, message = "At least 1 concurrent AI request must be allowed")
+        Integer maxConcurrentRequests,
+        
+        @Min(value = 1, message = "Scheduler quantum must be at least 1 character")
+        Integer quantumChars, // Share of a weight-1 user per round
+        
+        @Min(value = 0, message = "Fast lane limit must not be negative")
+        Integer fastLaneMaxChars, // Prompts up to this length skip ahead of longer ones
+        
+        Map<String, Integer> weights, // User class -> weight; classes: admin, default and user-classes values
+        
+        Map<Long, String> userClasses, // User id -> class
+        
+        InFlightPolicy inFlightPolicy // What a new message does while the user's previous one is answered
+    ) {
+        public SchedulerProperties {
+            // Default values
+            if (enabled == null) enabled = true;
+            if (maxConcurrentRequests == null) maxConcurrentRequests = 4;
+            if (quantumChars == null) quantumChars = 500;
+            if (fastLaneMaxChars == null) fastLaneMaxChars = 200;
+            if (weights == null) weights = Map.of();
+            if (userClasses == null) userClasses = Map.of();
+            if (inFlightPolicy == null) inFlightPolicy = InFlightPolicy.QUEUE;
+        }
+    }
+    
+    /**
+     * Coalescing of quick consecutive messages of a chat into one prompt
+     */
+    public record DebounceProperties(
+        Boolean enabled,
+        
+        @Min(value = 1, message = "Debounce window must be at least 1ms")
+        Integer windowMs, // Quiet time after the last message before the batch is answered
+        
+        @Min(value = 1, message = "Debounce max wait must be at least 1ms")
+        Integer maxWaitMs, // Longest a batch waits after its first message
+        
+        @Min(value = 1, message = "Debounce batch must allow at least 1 message")
+        Integer maxMessages
+    ) {
+        public DebounceProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (windowMs == null) windowMs = 1500;
+            if (maxWaitMs == null) maxWaitMs = 5000;
+            if (maxMessages == null) maxMessages = 5;
+        }
+    }
+    
+    /**
+     * Cache of answers to near-duplicate prompts asked without conversation history
+     */
+    public record ResponseCacheProperties(
+        Boolean enabled,
+        
+        @Min(value = 1, message = "Response cache must hold at least 1 entry")
+        Integer maxEntries, // Sizes the index at startup
+        
+        @Min(value = 0, message = "Similarity threshold must be between 0 and 1")
+        @Max(value = 1, message = "Similarity threshold must be between 0 and 1")
+        Double similarityThreshold, // Estimated Jaccard similarity of the prompts' character trigrams
+        
+        String directory, // Memory-mapped segments that keep answers across restarts; none if blank
+        
+        @Min(value = 65536, message = "Response cache segment must be at least 64 KB")
+        Integer segmentBytes,
+        
+        @Min(value = 2, message = "Response cache must keep at least 2 segments")
+        Integer maxSegments
+    ) {
+        public ResponseCacheProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (maxEntries == null) maxEntries = 10000;
+            if (similarityThreshold == null) similarityThreshold = 0.85;
+            if (segmentBytes == null) segmentBytes = 16 * 1024 * 1024;
+            if (maxSegments == null) maxSegments = 8;
+        }
+    }
+    
+    /**
+     * Flood and spam detection in fixed memory, before a message reaches the AI provider
+     */
+    public record AbuseProperties(
+        Boolean enabled,
+        
+        @Min(value = 6, message = "Abuse window must be at least 6 seconds")
+        Integer windowSeconds, // Sliding window of the counts, in 6 sub-windows
+        
+        @Min(value = 64, message = "Abuse sketch must be at least 64 counters wide")
+        Integer sketchWidth, // Counters per Count-Min row; collisions only overestimate
+        
+        @Min(value = 2, message = "Duplicate threshold must be at least 2")
+        Integer duplicateThreshold, // Same text from anyone within the window
+        
+        @Min(value = 2, message = "Repeat threshold must be at least 2")
+        Integer repeatThreshold, // Same text from one user within the window
+        
+        @Min(value = 1, message = "Abuse detector must track at least 1 offender")
+        Integer trackedOffenders, // Space-Saving top-K size per sub-window
+        
+        @Min(value = 1, message = "Offense threshold must be at least 1")
+        Integer offenseThreshold, // Throttled messages within the window before a user is flagged
+        
+        Boolean blockOffenders // Block flagged users instead of only reporting them
+    ) {
+        public AbuseProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (windowSeconds == null) windowSeconds = 60;
+            if (sketchWidth == null) sketchWidth = 4096;
+            if (duplicateThreshold == null) duplicateThreshold = 20;
+            if (repeatThreshold == null) repeatThreshold = 5;
+            if (trackedOffenders == null) trackedOffenders = 64;
+            if (offenseThreshold == null) offenseThreshold = 10;
+            if (blockOffenders == null) blockOffenders = false;
+        }
+    }
+    
+    /**
+     * Map-reduce answers to messages longer than bot-behavior.max-message-length
+     */
+    public record MapReduceProperties(
+        Boolean enabled,
+        
+        @Min(value = 1, message = "Map-reduce input limit must be at least 1 character")
+        Integer maxInputChars, // Longer messages are still refused
+        
+        @Min(value = 100, message = "Map-reduce chunk must be at least 100 tokens")
+        Integer chunkTokens, // Estimated prompt tokens of one chunk
+        
+        @Min(value = 1, message = "Map-reduce must process at least 1 chunk at a time")
+        Integer maxParallelChunks, // Chunks of one message in flight at once
+        
+        @Min(value = 16, message = "Chunk notes must allow at least 16 tokens")
+        Integer chunkNotesTokens, // Max tokens of the notes taken on one chunk
+        
+        String chunkModel // Model for the chunk calls, null to use the main model
+    ) {
+        public MapReduceProperties {
+            // Default values
+            if (enabled == null) enabled = false;
+            if (maxInputChars == null) maxInputChars = 32000;
+            if (chunkTokens == null) chunkTokens = 1500;
+            if (maxParallelChunks == null) maxParallelChunks = 4;
+            if (chunkNotesTokens == null) chunkNotesTokens = 400;
+        }
+    }
+    
+    /**
+     * Handling of a new message while the user's previous request is still being answered
+     */
+    public enum InFlightPolicy {
+        /** Answer it after the previous one */
+        QUEUE,
+        /** Cancel the previous request and answer only the new message */
+        SUPERSEDE,
+        /** Ask the user to wait and drop the new message */
+        REJECT
+    }
 }
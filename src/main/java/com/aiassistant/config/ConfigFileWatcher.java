@@ -0,0 +1,183 @@
+package com.aiassistant.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.BindException;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.bind.validation.ValidationBindHandler;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads configuration from a watched file without a restart.
+ * The file (aiassistant.reload.file, YAML or .properties) holds aiassistant.* overrides on top of
+ * the startup configuration. It is polled rather than watched with inotify so that replaced
+ * files and symlink swaps (Kubernetes ConfigMaps) are noticed too. A changed file is bound and
+ * validated exactly like at startup; a valid result is published to {@link LiveProperties},
+ * an invalid one is logged and the current snapshot stays in place.
+ * <p>
+ * Only settings read through {@link LiveProperties} take effect live: rate limit, model,
+ * max tokens, temperature and the provider timeout. Sections that pick beans or open
+ * resources at startup are published but need a restart.
+ */
+@Slf4j
+@Component
+@Lazy(false) // Nothing depends on it, so a lazy context would never create it
+public class ConfigFileWatcher {
+
+    private static final String PREFIX = "aiassistant";
+    private static final Set<String> RESTART_REQUIRED = Set.of(
+            "telegramBotToken", "telegramBotUsername", "telegramApiUrl", "userStore", "traffic", "reload");
+
+    private final LiveProperties liveProperties;
+    private final ConfigurableEnvironment environment;
+    private final Path file;
+    private final long pollIntervalMs;
+    private final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+    private ScheduledExecutorService poller;
+    private byte[] lastContent;
+
+    @Autowired
+    public ConfigFileWatcher(ApplicationProperties properties, LiveProperties liveProperties,
+                             ConfigurableEnvironment environment) {
+        this.liveProperties = liveProperties;
+        this.environment = environment;
+        this.file = properties.reload().file() != null ? Path.of(properties.reload().file()) : null;
+        this.pollIntervalMs = properties.reload().pollIntervalMs();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (file == null) {
+            return;
+        }
+        // Apply the file right away, it may not be among the startup config locations
+        checkForChanges();
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::checkForChanges, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Watching {} for configuration changes every {} ms", file, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        validatorFactory.close();
+    }
+
+    /**
+     * Reload if the file content changed since the last check
+     *
+     * @return true if a new snapshot was published
+     */
+    synchronized boolean checkForChanges() {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Failed to read configuration file {}: {}", file, e.getMessage());
+            return false;
+        }
+        if (Arrays.equals(content, lastContent)) {
+            return false;
+        }
+        lastContent = content;
+
+        ApplicationProperties next;
+        try {
+            next = bind(content);
+        } catch (IOException | BindException e) {
+            log.error("Rejected configuration change in {}: {}", file, describe(e));
+            return false;
+        }
+        ApplicationProperties previous = liveProperties.publish(next);
+        List<String> changed = changedSections(previous, next);
+        if (changed.isEmpty()) {
+            return false;
+        }
+        log.info("Configuration reloaded from {}, changed: {}", file, changed);
+        List<String> restartRequired = changed.stream().filter(RESTART_REQUIRED::contains).toList();
+        if (!restartRequired.isEmpty()) {
+            log.warn("Changes to {} take effect only after a restart", restartRequired);
+        }
+        return true;
+    }
+
+    private ApplicationProperties bind(byte[] content) throws IOException {
+        PropertySourceLoader loader = file.getFileName().toString().endsWith(".properties")
+                ? new PropertiesPropertySourceLoader()
+                : new YamlPropertySourceLoader();
+        // The file overrides everything bound at startup
+        MutablePropertySources sources = new MutablePropertySources();
+        for (PropertySource<?> source : loader.load("reload: " + file, new ByteArrayResource(content))) {
+            sources.addLast(source);
+        }
+        environment.getPropertySources().forEach(sources::addLast);
+
+        Binder binder = new Binder(ConfigurationPropertySources.from(sources),
+                new PropertySourcesPlaceholdersResolver(sources), ApplicationConversionService.getSharedInstance());
+        return binder.bindOrCreate(PREFIX, Bindable.of(ApplicationProperties.class),
+                new ValidationBindHandler(new SpringValidatorAdapter(validatorFactory.getValidator())));
+    }
+
+    private static List<String> changedSections(ApplicationProperties previous, ApplicationProperties next) {
+        List<String> changed = new ArrayList<>();
+        for (RecordComponent component : ApplicationProperties.class.getRecordComponents()) {
+            try {
+                Object before = component.getAccessor().invoke(previous);
+                Object after = component.getAccessor().invoke(next);
+                if (!Objects.equals(before, after)) {
+                    changed.add(component.getName());
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return changed;
+    }
+
+    private static String describe(Exception e) {
+        StringBuilder message = new StringBuilder(e.getMessage());
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            message.append(": ").append(cause.getMessage());
+        }
+        return message.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package com.aiassistant.config;
 
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,14 +14,29 @@ import java.time.Duration;
 @Configuration
 public class HttpClientConfig {
     
+    // Provider calls are queued by the request scheduler; the dispatcher should not queue them again
+    private static final int MAX_ASYNC_REQUESTS = 256;
+    
     @Bean
     public OkHttpClient okHttpClient(ApplicationProperties properties) {
-        long timeoutMs = properties.aiProvider().timeoutMs();
-        return new OkHttpClient.Builder()
-                .connectTimeout(Duration.ofMillis(timeoutMs))
-                .readTimeout(Duration.ofMillis(timeoutMs))
-                .writeTimeout(Duration.ofMillis(timeoutMs))
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_ASYNC_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_ASYNC_REQUESTS);
+        return withTransportSettings(new OkHttpClient.Builder(), properties.aiProvider())
+                .dispatcher(dispatcher)
                 .retryOnConnectionFailure(true)
                 .build();
     }
+    
+    /**
+     * Apply the provider settings a client is built with; a change to any of them needs a new client
+     */
+    public static OkHttpClient.Builder withTransportSettings(OkHttpClient.Builder builder,
+                                                             ApplicationProperties.AiProviderProperties aiProvider) {
+        Duration timeout = Duration.ofMillis(aiProvider.timeoutMs());
+        return builder
+                .connectTimeout(timeout)
+                .readTimeout(timeout)
+                .writeTimeout(timeout);
+    }
 }
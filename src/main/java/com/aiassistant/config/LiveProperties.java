@@ -0,0 +1,41 @@
+package com.aiassistant.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current configuration snapshot for settings that can change at runtime.
+ * {@link ApplicationProperties} stays an immutable record: a reload publishes a whole new
+ * validated record with one atomic swap, so a reader sees either the old or the new
+ * configuration, never a mix of both, and never takes a lock.
+ * <p>
+ * Read {@link #get()} once per operation and use that snapshot throughout it.
+ */
+@Component
+public class LiveProperties {
+
+    private final AtomicReference<ApplicationProperties> current;
+
+    @Autowired
+    public LiveProperties(ApplicationProperties initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * Latest published snapshot; a single volatile read
+     */
+    public ApplicationProperties get() {
+        return current.get();
+    }
+
+    /**
+     * Replace the snapshot
+     *
+     * @return the previous snapshot
+     */
+    public ApplicationProperties publish(ApplicationProperties next) {
+        return current.getAndSet(next);
+    }
+}
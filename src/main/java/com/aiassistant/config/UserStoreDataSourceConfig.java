@@ -0,0 +1,32 @@
+package com.aiassistant.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection pool of the jdbc user store.
+ * Only created with user-store.type: jdbc, so the other stores need no database;
+ * pool settings are bound from aiassistant.user-store.hikari.
+ */
+@Configuration
+@ConditionalOnProperty(name = "aiassistant.user-store.type", havingValue = "jdbc")
+public class UserStoreDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("aiassistant.user-store.hikari")
+    public HikariDataSource userStoreDataSource(ApplicationProperties properties) {
+        ApplicationProperties.UserStoreProperties store = properties.userStore();
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(store.jdbcUrl())
+                .username(store.jdbcUsername())
+                .password(store.jdbcPassword())
+                .build();
+        dataSource.setPoolName("user-store");
+        return dataSource;
+    }
+}
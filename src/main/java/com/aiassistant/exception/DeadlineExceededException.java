@@ -0,0 +1,12 @@
+package com.aiassistant.exception;
+
+/**
+ * Exception thrown when a message's processing deadline passes before its answer is ready.
+ * Extends AiServiceException for consistent error handling.
+ */
+public class DeadlineExceededException extends AiServiceException {
+
+    public DeadlineExceededException(String message) {
+        super("DEADLINE_EXCEEDED", message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.aiassistant.exception;
+
+/**
+ * Exception thrown when a user sends a new request while the previous one is still being answered
+ * and the in-flight policy is reject.
+ * Extends AiServiceException for consistent error handling.
+ */
+public class RequestInProgressException extends AiServiceException {
+    
+    public RequestInProgressException(String message) {
+        super("REQUEST_IN_PROGRESS", message);
+    }
+}
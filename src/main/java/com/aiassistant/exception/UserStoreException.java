@@ -0,0 +1,13 @@
+package com.aiassistant.exception;
+
+/**
+ * Exception thrown when the user store cannot be read, so a missing user cannot be told
+ * apart from an unreachable database.
+ * Extends AiServiceException for consistent error handling.
+ */
+public class UserStoreException extends AiServiceException {
+
+    public UserStoreException(String message, Throwable cause) {
+        super("USER_STORE_ERROR", message, cause);
+    }
+}
@@ -0,0 +1,161 @@
+package com.aiassistant.metrics;
+
+import com.aiassistant.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms for every stage of a message's life.
+ * Follows Single Responsibility Principle - handles only metrics recording.
+ * Timers are registered once up front, so recording a stage is a nanoTime read and
+ * a histogram update with no meter lookup or tag allocation on the hot path. Stages of a
+ * provider call are tagged with the model that served it; timers of models other than the
+ * configured one (routing tiers, chunk models) are registered on first use and reused.
+ */
+@Component
+public class BotMetrics {
+
+    /**
+     * Stages of message processing
+     */
+    public enum Stage {
+        /** Synchronous handling of an update in onUpdateReceived */
+        UPDATE("update"),
+        /** Abuse check and user lookup/update; blocked users are only counted */
+        USER_CHECK("user_check"),
+        /** Rate limit decision */
+        RATE_LIMIT("rate_limit"),
+        /** Wait for a provider slot in the request scheduler */
+        AI_QUEUE("ai_queue"),
+        /** Provider HTTP call including reading the body */
+        PROVIDER_CALL("provider_call"),
+        /** Parsing the provider response */
+        JSON_PARSE("json_parse"),
+        /** Sending a message to Telegram */
+        TELEGRAM_SEND("telegram_send"),
+        /** From update receipt to the AI reply being sent */
+        END_TO_END("end_to_end");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final String TIMER_NAME = "aiassistant.stage.latency";
+    private static final String DEADLINE_COUNTER_NAME = "aiassistant.deadline.exceeded";
+    private static final String BLOCKED_COUNTER_NAME = "aiassistant.updates.blocked";
+
+    private final MeterRegistry registry;
+    private final String provider;
+    private final Timer[] timers;
+    private final Map<String, Timer[]> timersByModel = new ConcurrentHashMap<>();
+    private final Counter[] deadlineCounters = new Counter[Stage.values().length];
+    private final Counter blockedCounter;
+
+    @Autowired
+    public BotMetrics(MeterRegistry registry, ApplicationProperties properties) {
+        this(registry, properties.aiProvider().type(), properties.aiProvider().model());
+    }
+
+    public BotMetrics(MeterRegistry registry, String provider, String model) {
+        this.registry = registry;
+        this.provider = provider;
+        this.timers = new Timer[Stage.values().length];
+        timersByModel.put(model, timers);
+        for (Stage stage : Stage.values()) {
+            timers[stage.ordinal()] = timer(stage, model);
+            deadlineCounters[stage.ordinal()] = Counter.builder(DEADLINE_COUNTER_NAME)
+                    .description("Messages dropped because their deadline passed before the stage")
+                    .tag("stage", stage.tag)
+                    .register(registry);
+        }
+        this.blockedCounter = Counter.builder(BLOCKED_COUNTER_NAME)
+                .description("Updates from blocked users, dropped before any other processing")
+                .register(registry);
+    }
+
+    /**
+     * Start timing a stage
+     *
+     * @return start timestamp to pass to record
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time elapsed since start for the stage
+     *
+     * @param stage processing stage
+     * @param startNanos value returned by start
+     */
+    public void record(Stage stage, long startNanos) {
+        timers[stage.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the time elapsed since start for a stage of a call to the given model
+     *
+     * @param stage processing stage
+     * @param model model the call was made to
+     * @param startNanos value returned by start
+     */
+    public void record(Stage stage, String model, long startNanos) {
+        Timer[] modelTimers = model != null
+                ? timersByModel.computeIfAbsent(model, key -> new Timer[Stage.values().length])
+                : timers;
+        Timer timer = modelTimers[stage.ordinal()];
+        if (timer == null) {
+            // A racing thread gets the same timer back from the registry
+            timer = timer(stage, model);
+            modelTimers[stage.ordinal()] = timer;
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count a message dropped at a stage because its deadline had passed
+     *
+     * @param stage stage that was skipped
+     */
+    public void deadlineExceeded(Stage stage) {
+        deadlineCounters[stage.ordinal()].increment();
+    }
+
+    /**
+     * Count an update from a blocked user
+     */
+    public void blocked() {
+        blockedCounter.increment();
+    }
+
+    /**
+     * Get the timer of a stage (for tests and diagnostics)
+     */
+    public Timer timer(Stage stage) {
+        return timers[stage.ordinal()];
+    }
+
+    private Timer timer(Stage stage, String model) {
+        return Timer.builder(TIMER_NAME)
+                .description("Latency of a message processing stage")
+                .tag("stage", stage.tag)
+                .tag("provider", provider)
+                .tag("model", model)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry);
+    }
+}
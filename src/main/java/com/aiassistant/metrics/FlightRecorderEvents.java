@@ -0,0 +1,143 @@
+package com.aiassistant.metrics;
+
+import com.aiassistant.config.ApplicationProperties;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for message handling and AI calls.
+ * Follows Single Responsibility Principle - handles only JFR event definitions and registration.
+ * Events are declared unregistered and are only registered when enabled in configuration;
+ * an unregistered event class is not instrumented, so begin/commit cost nothing when disabled.
+ * With a recording running (e.g. -XX:StartFlightRecording) they line up with GC and
+ * thread events, which helps explain slow replies.
+ */
+@Slf4j
+@Component
+@Lazy(false) // Nothing depends on it, so a lazy context would never register the events
+public class FlightRecorderEvents {
+
+    private static final List<Class<? extends Event>> EVENT_TYPES = List.of(
+            UpdateEvent.class, AiCallEvent.class, TelegramSendEvent.class, RateLimitEvent.class, QueueWaitEvent.class);
+
+    public FlightRecorderEvents(ApplicationProperties properties) {
+        setEnabled(properties.observability().jfrEventsEnabled());
+    }
+
+    /**
+     * Register or unregister all bot events with the flight recorder
+     */
+    public static void setEnabled(boolean enabled) {
+        for (Class<? extends Event> type : EVENT_TYPES) {
+            if (enabled) {
+                FlightRecorder.register(type);
+            } else {
+                FlightRecorder.unregister(type);
+            }
+        }
+        log.debug("JFR events {}", enabled ? "enabled" : "disabled");
+    }
+
+    @Name("com.aiassistant.Update")
+    @Label("Telegram Update")
+    @Description("Synchronous handling of an incoming Telegram message")
+    @Category({"AI Assistant", "Bot"})
+    @Registered(false)
+    @StackTrace(false)
+    public static class UpdateEvent extends Event {
+
+        @Label("User ID")
+        public long userId;
+
+        @Label("Chat ID")
+        public long chatId;
+
+        @Label("Outcome")
+        @Description("command, spam, rate_limited, too_long, busy, debounced, ai_request or error")
+        public String outcome;
+    }
+
+    @Name("com.aiassistant.AiCall")
+    @Label("AI Call")
+    @Description("Chat completion request to the AI provider")
+    @Category({"AI Assistant", "AI"})
+    @Registered(false)
+    @StackTrace(false)
+    public static class AiCallEvent extends Event {
+
+        @Label("Model")
+        public String model;
+
+        @Label("Status")
+        @Description("HTTP status code, -1 if no response was received")
+        public int status;
+
+        @Label("Prompt Tokens")
+        public int promptTokens;
+
+        @Label("Completion Tokens")
+        public int completionTokens;
+    }
+
+    @Name("com.aiassistant.TelegramSend")
+    @Label("Telegram Send")
+    @Description("Message sent to a Telegram chat")
+    @Category({"AI Assistant", "Bot"})
+    @Registered(false)
+    @StackTrace(false)
+    public static class TelegramSendEvent extends Event {
+
+        @Label("Chat ID")
+        public long chatId;
+
+        @Label("Length")
+        public int length;
+
+        @Label("Success")
+        public boolean success;
+    }
+
+    @Name("com.aiassistant.RateLimit")
+    @Label("Rate Limit Decision")
+    @Category({"AI Assistant", "Bot"})
+    @Registered(false)
+    @StackTrace(false)
+    public static class RateLimitEvent extends Event {
+
+        @Label("User ID")
+        public long userId;
+
+        @Label("Allowed")
+        public boolean allowed;
+    }
+
+    @Name("com.aiassistant.QueueWait")
+    @Label("AI Queue Wait")
+    @Description("Time an AI request waited in the fair scheduler for a provider slot")
+    @Category({"AI Assistant", "AI"})
+    @Registered(false)
+    @StackTrace(false)
+    public static class QueueWaitEvent extends Event {
+
+        @Label("User ID")
+        public long userId;
+
+        @Label("User Class")
+        public String userClass;
+
+        @Label("Lane")
+        @Description("fast or normal")
+        public String lane;
+    }
+}
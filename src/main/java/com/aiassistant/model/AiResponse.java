@@ -122,4 +122,14 @@ public class AiResponse {
         }
         return null;
     }
+    
+    /**
+     * Get first choice finish reason ("stop", "length", ...)
+     */
+    public String getFinishReason() {
+        if (choices != null && !choices.isEmpty()) {
+            return choices.get(0).getFinishReason();
+        }
+        return null;
+    }
 }
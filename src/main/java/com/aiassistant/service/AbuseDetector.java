@@ -0,0 +1,31 @@
+package com.aiassistant.service;
+
+/**
+ * Interface for spotting floods and spam before a message costs a provider call.
+ * Follows Interface Segregation Principle - contains only abuse detection methods.
+ * Catches what a per-user rate limit cannot: the same text sent by many accounts,
+ * or one account repeating itself while staying under its limit.
+ */
+public interface AbuseDetector {
+
+    /**
+     * Decision about one message
+     */
+    enum Verdict {
+        /** Not suspicious */
+        ALLOW,
+        /** Spam; drop the message */
+        THROTTLE,
+        /** Spam, and the sender has just become a repeat offender */
+        FLAG
+    }
+
+    /**
+     * Count a message and judge it
+     *
+     * @param userId sender
+     * @param text message text
+     * @return verdict for this message
+     */
+    Verdict inspect(Long userId, String text);
+}
@@ -4,6 +4,7 @@ import com.aiassistant.model.AiRequest;
 import com.aiassistant.model.AiResponse;
 import com.aiassistant.exception.AiServiceException;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -30,6 +31,31 @@ public interface AiService {
      */
     CompletableFuture<String> generateResponse(String message) throws AiServiceException;
     
+    /**
+     * Generate response for a message within a chat, using the chat's conversation history
+     * 
+     * @param userId user the tokens are accounted to
+     * @param chatId chat ID whose history is used and extended
+     * @param message user message
+     * @return CompletableFuture with AI response text
+     * @throws AiServiceException if request fails
+     */
+    CompletableFuture<String> generateResponse(Long userId, Long chatId, String message) throws AiServiceException;
+    
+    /**
+     * Answer a message within a chat from the response cache, without a provider call.
+     * Checked before the message is queued for a provider slot; generateResponse does not
+     * look in the cache again, it only stores its answer there.
+     * 
+     * @param userId user the message is from
+     * @param chatId chat ID whose history decides whether a cached answer applies; extended on a hit
+     * @param message user message
+     * @return cached answer, or empty when the provider has to be asked
+     */
+    default Optional<String> cachedResponse(Long userId, Long chatId, String message) {
+        return Optional.empty();
+    }
+    
     /**
      * Check if the AI service is available
      * 
@@ -0,0 +1,75 @@
+package com.aiassistant.service;
+
+import com.aiassistant.model.AiRequest;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Interface for per-chat conversation history.
+ * Follows Interface Segregation Principle - contains only conversation memory methods.
+ */
+public interface ConversationService {
+
+    /**
+     * Record a completed exchange (user question and assistant answer)
+     *
+     * @param chatId chat ID
+     * @param userMessage user message
+     * @param assistantMessage assistant reply
+     */
+    void appendExchange(Long chatId, AiRequest.Message userMessage, AiRequest.Message assistantMessage);
+
+    /**
+     * Build the most recent history that fits into the token budget, oldest first
+     *
+     * @param chatId chat ID
+     * @param tokenBudget maximum estimated tokens for the returned messages
+     * @return history messages, empty if there is none
+     */
+    List<AiRequest.Message> buildContext(Long chatId, int tokenBudget);
+
+    /**
+     * Get number of messages stored for the chat
+     *
+     * @param chatId chat ID
+     * @return number of stored messages
+     */
+    int getMessageCount(Long chatId);
+
+    /**
+     * Forget the history of a chat
+     *
+     * @param chatId chat ID
+     */
+    void clear(Long chatId);
+    
+    /**
+     * Get the oldest turns that should be folded into the chat summary
+     *
+     * @param chatId chat ID
+     * @return compaction candidate, empty if the history is still short enough
+     */
+    Optional<Compaction> findCompaction(Long chatId);
+    
+    /**
+     * Replace the compacted turns with a summary.
+     * Does nothing if the history changed in a way that overlaps the compacted turns.
+     *
+     * @param compaction candidate returned by findCompaction
+     * @param summary summary of the previous summary and the compacted turns
+     * @return true if the summary was applied
+     */
+    boolean applyCompaction(Compaction compaction, String summary);
+    
+    /**
+     * Oldest turns of a chat selected for summarization
+     *
+     * @param chatId chat ID
+     * @param firstSequence sequence number of the first compacted message
+     * @param previousSummary summary currently stored for the chat, or null
+     * @param messages turns to summarize, oldest first
+     */
+    record Compaction(Long chatId, long firstSequence, String previousSummary, List<AiRequest.Message> messages) {
+    }
+}
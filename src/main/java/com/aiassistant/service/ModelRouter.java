@@ -0,0 +1,31 @@
+package com.aiassistant.service;
+
+import com.aiassistant.model.AiRequest;
+
+import java.util.List;
+
+/**
+ * Interface for choosing the model that answers a prompt.
+ * Follows Interface Segregation Principle - contains only model selection methods.
+ * Lets simple prompts go to a small fast model and saves the large one for complex prompts.
+ */
+public interface ModelRouter {
+
+    /**
+     * Choose the model for a prompt
+     *
+     * @param messages request messages, the last one is the new user message
+     * @return route to the chosen model
+     */
+    Route route(List<AiRequest.Message> messages);
+
+    /**
+     * A routing decision
+     *
+     * @param model model to call
+     * @param reason why this model was chosen, for logs
+     * @param escalation route to retry with if the answer is empty or truncated; null if there is none
+     */
+    record Route(String model, String reason, Route escalation) {
+    }
+}
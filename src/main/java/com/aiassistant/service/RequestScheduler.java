@@ -0,0 +1,31 @@
+package com.aiassistant.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Interface for admitting AI requests to the provider.
+ * Follows Interface Segregation Principle - contains only request scheduling methods.
+ * Decides which waiting request gets the next provider slot, so one busy user
+ * cannot make everyone else wait behind their backlog.
+ */
+public interface RequestScheduler {
+
+    /**
+     * Start a request once it is granted a provider slot
+     *
+     * @param userId user the request is queued under
+     * @param cost request size in characters; weighs against the user's share
+     * @param request starts the provider call; the slot is held until its future completes
+     * @return CompletableFuture with the request result
+     */
+    <T> CompletableFuture<T> submit(Long userId, int cost, Supplier<CompletableFuture<T>> request);
+
+    /**
+     * Get the number of requests of a user waiting for a slot
+     *
+     * @param userId user ID
+     * @return waiting requests
+     */
+    int queuedRequests(Long userId);
+}
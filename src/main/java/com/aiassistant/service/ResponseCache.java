@@ -0,0 +1,46 @@
+package com.aiassistant.service;
+
+import java.util.Optional;
+
+/**
+ * Interface for reusing answers to prompts that were already answered.
+ * Follows Interface Segregation Principle - contains only response caching methods.
+ * Only prompts whose answer depends on nothing but the prompt itself (no conversation
+ * history) may be cached; lookups also match near-duplicates of a cached prompt.
+ */
+public interface ResponseCache {
+
+    /**
+     * Find the answer to the prompt or to one similar enough to it
+     *
+     * @param model model the prompt is routed to
+     * @param prompt user message
+     * @return cached answer, or empty on a miss
+     */
+    Optional<String> find(String model, String prompt);
+
+    /**
+     * Remember the answer to a prompt
+     *
+     * @param model model the prompt is routed to
+     * @param prompt user message
+     * @param answer AI answer
+     */
+    void put(String model, String prompt, String answer);
+
+    /**
+     * Cache that never finds anything, for tests and benchmarks
+     */
+    static ResponseCache disabled() {
+        return new ResponseCache() {
+            @Override
+            public Optional<String> find(String model, String prompt) {
+                return Optional.empty();
+            }
+
+            @Override
+            public void put(String model, String prompt, String answer) {
+            }
+        };
+    }
+}
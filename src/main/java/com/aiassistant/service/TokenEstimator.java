@@ -0,0 +1,40 @@
+package com.aiassistant.service;
+
+import com.aiassistant.model.AiRequest;
+
+import java.util.List;
+
+/**
+ * Interface for local prompt token estimation.
+ * Follows Interface Segregation Principle - contains only token counting methods.
+ * Used for pre-flight checks so oversized prompts fail before a provider round-trip.
+ */
+public interface TokenEstimator {
+
+    /**
+     * Estimate tokens of a single message including its chat template framing
+     *
+     * @param message chat message
+     * @param model model name, selects the tokenizer family
+     * @return estimated token count
+     */
+    int countMessageTokens(AiRequest.Message message, String model);
+
+    /**
+     * Estimate prompt tokens of a whole request as reported in usage.prompt_tokens
+     *
+     * @param messages request messages
+     * @param model model name, selects the tokenizer family
+     * @return estimated prompt token count
+     */
+    int countPromptTokens(List<AiRequest.Message> messages, String model);
+
+    /**
+     * Feed back the prompt token count reported by the provider
+     *
+     * @param model model name
+     * @param estimatedPromptTokens estimate returned by countPromptTokens for the request
+     * @param actualPromptTokens usage.prompt_tokens from the response
+     */
+    void calibrate(String model, int estimatedPromptTokens, int actualPromptTokens);
+}
@@ -0,0 +1,59 @@
+package com.aiassistant.service;
+
+import java.util.List;
+
+/**
+ * Interface for AI token usage accounting.
+ * Follows Interface Segregation Principle - contains only usage accounting methods.
+ */
+public interface UsageService {
+
+    /**
+     * Time resolution of aggregated usage
+     */
+    enum Granularity {
+        MINUTE,
+        HOUR,
+        DAY
+    }
+
+    /**
+     * Record tokens spent on one AI call
+     *
+     * @param userId user the call was made for, or null for background work
+     * @param chatId chat the call was made for
+     * @param model model name
+     * @param promptTokens prompt tokens reported by the provider
+     * @param completionTokens completion tokens reported by the provider
+     */
+    void record(Long userId, Long chatId, String model, int promptTokens, int completionTokens);
+
+    /**
+     * Build a report over the most recent buckets of the given granularity
+     *
+     * @param granularity bucket size
+     * @param buckets number of most recent buckets to include (e.g. 60 minutes)
+     * @param limit maximum number of top users and chats to return
+     * @return aggregated usage
+     */
+    UsageReport report(Granularity granularity, int buckets, int limit);
+
+    /**
+     * Aggregated counters of one key
+     *
+     * @param key user ID, chat ID or model name; "other" when the key did not fit the bucket
+     */
+    record UsageEntry(String key, long requests, long promptTokens, long completionTokens) {
+
+        public long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+    }
+
+    /**
+     * Usage report, entries sorted by total tokens descending
+     */
+    record UsageReport(UsageEntry total, List<UsageEntry> topUsers, List<UsageEntry> topChats,
+                       List<UsageEntry> models) {
+    }
+}
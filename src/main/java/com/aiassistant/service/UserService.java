@@ -36,7 +36,9 @@ public interface UserService {
     TelegramUser updateUser(TelegramUser user);
     
     /**
-     * Check if user is blocked
+     * Check if user is blocked.
+     * Called first for every incoming update, so implementations must answer
+     * from memory without materializing the user.
      * 
      * @param userId user ID
      * @return true if user is blocked
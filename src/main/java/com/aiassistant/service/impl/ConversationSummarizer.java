@@ -0,0 +1,118 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.UsageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Background compaction of long conversations.
+ * Follows Single Responsibility Principle - handles only history summarization.
+ * Once a chat's history grows past the threshold, its oldest turns are summarized
+ * with a cheaper model off the request path and replaced by a single summary message,
+ * so prompt size stays flat however long the chat runs.
+ */
+@Slf4j
+@Service
+public class ConversationSummarizer {
+
+    private static final String INSTRUCTION = """
+            You maintain a running summary of a chat between a user and an AI assistant.
+            Merge the previous summary (if any) and the new messages into one concise summary.
+            Keep facts about the user, their goals, decisions and open questions; drop small talk.
+            Answer with the summary only, in the language of the conversation.""";
+
+    private final ApplicationProperties properties;
+    private final ConversationService conversationService;
+    // Resolved lazily: the AI service itself depends on the summarizer
+    private final ObjectProvider<AiService> aiService;
+    private final UsageService usageService;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(ApplicationProperties properties,
+                                  ConversationService conversationService,
+                                  ObjectProvider<AiService> aiService,
+                                  UsageService usageService) {
+        this.properties = properties;
+        this.conversationService = conversationService;
+        this.aiService = aiService;
+        this.usageService = usageService;
+    }
+
+    /**
+     * Start summarization of the chat's oldest turns if its history is long enough.
+     * Returns immediately; at most one summarization runs per chat.
+     *
+     * @param chatId chat ID
+     */
+    public void summarizeIfNeeded(Long chatId) {
+        if (!inFlight.add(chatId)) {
+            return;
+        }
+        try {
+            Optional<ConversationService.Compaction> compaction = conversationService.findCompaction(chatId);
+            AiService service = aiService.getIfAvailable();
+            if (compaction.isEmpty() || service == null) {
+                inFlight.remove(chatId);
+                return;
+            }
+            AiRequest request = buildRequest(compaction.get());
+            service.chatCompletion(request)
+                    .whenComplete((response, error) -> {
+                        inFlight.remove(chatId);
+                        if (error != null) {
+                            log.warn("Failed to summarize conversation of chat {}: {}", chatId, error.getMessage());
+                            return;
+                        }
+                        recordUsage(chatId, request.getModel(), response.getUsage());
+                        String summary = response.getContent();
+                        if (summary == null || summary.isBlank()) {
+                            log.warn("Received empty summary for chat {}", chatId);
+                            return;
+                        }
+                        conversationService.applyCompaction(compaction.get(), summary.strip());
+                    });
+        } catch (RuntimeException e) {
+            inFlight.remove(chatId);
+            log.warn("Failed to start summarization for chat {}: {}", chatId, e.getMessage());
+        }
+    }
+
+    // Background work is billed to the chat, not to a user
+    private void recordUsage(Long chatId, String model, AiResponse.Usage usage) {
+        if (usage != null && usage.getPromptTokens() != null) {
+            usageService.record(null, chatId, model, usage.getPromptTokens(),
+                    usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+        }
+    }
+
+    private AiRequest buildRequest(ConversationService.Compaction compaction) {
+        StringBuilder transcript = new StringBuilder();
+        if (compaction.previousSummary() != null) {
+            transcript.append("Previous summary:\n").append(compaction.previousSummary()).append("\n\n");
+        }
+        transcript.append("New messages:\n");
+        for (AiRequest.Message message : compaction.messages()) {
+            transcript.append(message.getRole()).append(": ").append(message.getContent()).append('\n');
+        }
+
+        ApplicationProperties.ConversationProperties settings = properties.conversation();
+        String model = settings.summaryModel() != null ? settings.summaryModel() : properties.aiProvider().model();
+        return AiRequest.builder()
+                .model(model)
+                .messages(List.of(AiRequest.Message.system(INSTRUCTION), AiRequest.Message.user(transcript.toString())))
+                .maxTokens(settings.summaryMaxTokens())
+                .temperature(0.2)
+                .build();
+    }
+}
@@ -0,0 +1,355 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.exception.DeadlineExceededException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.metrics.FlightRecorderEvents;
+import com.aiassistant.service.RequestScheduler;
+import com.aiassistant.util.Deadline;
+import com.aiassistant.util.LogContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fair admission of AI requests using deficit round robin over users.
+ * Follows Single Responsibility Principle - handles only request scheduling.
+ * At most maxConcurrentRequests provider calls run at a time; the rest wait in per-user
+ * queues. Every round each waiting user earns quantum x weight characters of credit and
+ * spends it on their queued prompts, so a user's share of the provider does not depend on
+ * how many requests they have queued. Prompts up to fastLaneMaxChars go through a separate
+ * fast lane that is always served first; it is just as fair between users, and the rate
+ * limit bounds how much of it a single user can take. Commands never get here, they are
+ * answered inline.
+ * <p>
+ * Queue wait is exported as a timer per lane and user class, and per user as a JFR event.
+ * Cancelling the returned future drops a waiting request from its queue, or cancels a
+ * running one and frees its slot right away. A request whose {@link Deadline} passes while
+ * it waits fails with {@link DeadlineExceededException} instead of taking a slot.
+ */
+@Slf4j
+@Service
+public class DeficitRoundRobinScheduler implements RequestScheduler {
+
+    private static final String WAIT_TIMER = "aiassistant.scheduler.wait";
+    private static final String ADMIN_CLASS = "admin";
+    private static final String DEFAULT_CLASS = "default";
+
+    private final LiveProperties properties;
+    private final MeterRegistry registry;
+    private final BotMetrics metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Lane fastLane = new Lane("fast");
+    private final Lane normalLane = new Lane("normal");
+    // Guarded by lock
+    private int inFlight;
+    private int queued;
+    private boolean dispatching;
+
+    @Autowired
+    public DeficitRoundRobinScheduler(LiveProperties properties, MeterRegistry registry, BotMetrics metrics) {
+        this.properties = properties;
+        this.registry = registry;
+        this.metrics = metrics;
+        registry.gauge("aiassistant.scheduler.queued", this, scheduler -> scheduler.queued);
+        registry.gauge("aiassistant.scheduler.in_flight", this, scheduler -> scheduler.inFlight);
+        ApplicationProperties.SchedulerProperties scheduler = properties.get().scheduler();
+        for (Lane lane : new Lane[] {fastLane, normalLane}) {
+            waitTimer(lane, ADMIN_CLASS);
+            waitTimer(lane, DEFAULT_CLASS);
+            scheduler.weights().keySet().forEach(userClass -> waitTimer(lane, userClass));
+            scheduler.userClasses().values().forEach(userClass -> waitTimer(lane, userClass));
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Long userId, int cost, Supplier<CompletableFuture<T>> request) {
+        ApplicationProperties config = properties.get();
+        ApplicationProperties.SchedulerProperties scheduler = config.scheduler();
+        if (!scheduler.enabled()) {
+            return request.get();
+        }
+
+        String userClass = userClass(config, userId);
+        Lane lane = cost <= scheduler.fastLaneMaxChars() ? fastLane : normalLane;
+        Task<T> task = new Task<>(userId, userClass, lane, Math.max(1, cost), request);
+        lock.lock();
+        try {
+            lane.enqueue(task);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+        // A request cancelled while it waits leaves its queue right away
+        task.result.whenComplete((value, error) -> {
+            if (task.result.isCancelled()) {
+                remove(task);
+            }
+        });
+        dispatch();
+        return task.result;
+    }
+
+    @Override
+    public int queuedRequests(Long userId) {
+        lock.lock();
+        try {
+            return fastLane.queued(userId) + normalLane.queued(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start waiting tasks while there are free slots.
+     * A single thread dispatches at a time: a task that completes right away releases its
+     * slot from inside start(), and the loop picks that up instead of recursing.
+     */
+    private void dispatch() {
+        lock.lock();
+        try {
+            if (dispatching) {
+                // The dispatching thread re-reads the state under the lock before it stops
+                return;
+            }
+            dispatching = true;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            Task<?> task;
+            boolean expired;
+            lock.lock();
+            try {
+                ApplicationProperties config = properties.get();
+                task = inFlight < config.scheduler().maxConcurrentRequests() ? next(config) : null;
+                if (task == null) {
+                    dispatching = false;
+                    return;
+                }
+                queued--;
+                if (task.result.isDone()) {
+                    // Cancelled after it was taken from the queue, before it got here
+                    continue;
+                }
+                expired = task.deadline != null && task.deadline.isExpired();
+                if (!expired) {
+                    inFlight++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (expired) {
+                task.drop();
+            } else {
+                task.start();
+            }
+        }
+    }
+
+    private Task<?> next(ApplicationProperties config) {
+        Task<?> task = fastLane.next(config);
+        return task != null ? task : normalLane.next(config);
+    }
+
+    private void remove(Task<?> task) {
+        lock.lock();
+        try {
+            if (task.lane.remove(task)) {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    /**
+     * Wait timer of a lane and user class; registered up front for the configured classes,
+     * a class added by a later configuration reload gets its timer on first use
+     */
+    private Timer waitTimer(Lane lane, String userClass) {
+        return lane.waitTimers.computeIfAbsent(userClass, key -> Timer.builder(WAIT_TIMER)
+                .description("Time an AI request waited for a provider slot")
+                .tag("lane", lane.name)
+                .tag("class", key)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+    }
+
+    private static String userClass(ApplicationProperties config, Long userId) {
+        if (config.botBehavior().adminUserIds().contains(userId)) {
+            return ADMIN_CLASS;
+        }
+        return config.scheduler().userClasses().getOrDefault(userId, DEFAULT_CLASS);
+    }
+
+    /**
+     * Deficit round robin over the users with waiting requests in one lane
+     */
+    private static final class Lane {
+
+        private final String name;
+        private final Map<Long, Flow> flows = new HashMap<>();
+        // Users with waiting requests in round robin order; the head is being served
+        private final ArrayDeque<Flow> active = new ArrayDeque<>();
+        private final Map<String, Timer> waitTimers = new ConcurrentHashMap<>();
+
+        Lane(String name) {
+            this.name = name;
+        }
+
+        void enqueue(Task<?> task) {
+            Flow flow = flows.get(task.userId);
+            if (flow == null) {
+                flow = new Flow(task.userClass);
+                flows.put(task.userId, flow);
+                active.addLast(flow);
+            }
+            flow.tasks.addLast(task);
+        }
+
+        boolean remove(Task<?> task) {
+            Flow flow = flows.get(task.userId);
+            if (flow == null || !flow.tasks.remove(task)) {
+                // Already taken from the queue
+                return false;
+            }
+            if (flow.tasks.isEmpty()) {
+                active.remove(flow);
+                flows.remove(task.userId);
+            }
+            return true;
+        }
+
+        int queued(Long userId) {
+            Flow flow = flows.get(userId);
+            return flow != null ? flow.tasks.size() : 0;
+        }
+
+        Task<?> next(ApplicationProperties config) {
+            while (!active.isEmpty()) {
+                Flow flow = active.peekFirst();
+                Task<?> head = flow.tasks.peekFirst();
+                if (flow.deficit >= head.cost) {
+                    flow.deficit -= head.cost;
+                    flow.tasks.pollFirst();
+                    if (flow.tasks.isEmpty()) {
+                        // An idle user does not bank credit for later
+                        active.pollFirst();
+                        flows.remove(head.userId);
+                    }
+                    return head;
+                }
+                // Out of credit for this round: earn the next quantum and go to the back
+                active.pollFirst();
+                int weight = Math.max(1, config.scheduler().weights().getOrDefault(flow.userClass, 1));
+                flow.deficit += (long) config.scheduler().quantumChars() * weight;
+                active.addLast(flow);
+            }
+            return null;
+        }
+    }
+
+    private static final class Flow {
+
+        private final String userClass;
+        private final ArrayDeque<Task<?>> tasks = new ArrayDeque<>();
+        private long deficit;
+
+        Flow(String userClass) {
+            this.userClass = userClass;
+        }
+    }
+
+    private final class Task<T> {
+
+        private final Long userId;
+        private final String userClass;
+        private final Lane lane;
+        private final int cost;
+        private final Runnable start;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+        private final Deadline deadline = Deadline.current();
+        private final FlightRecorderEvents.QueueWaitEvent event = new FlightRecorderEvents.QueueWaitEvent();
+
+        Task(Long userId, String userClass, Lane lane, int cost, Supplier<CompletableFuture<T>> request) {
+            this.userId = userId;
+            this.userClass = userClass;
+            this.lane = lane;
+            this.cost = cost;
+            // The request may be started from another request's completion thread
+            this.start = LogContext.capturing(() -> run(request));
+            event.begin();
+        }
+
+        void start() {
+            long waited = System.nanoTime() - enqueuedAt;
+            metrics.record(BotMetrics.Stage.AI_QUEUE, enqueuedAt);
+            waitTimer(lane, userClass).record(waited, TimeUnit.NANOSECONDS);
+            if (event.shouldCommit()) {
+                event.userId = userId;
+                event.userClass = userClass;
+                event.lane = lane.name;
+                event.commit();
+            }
+            log.debug("AI request of user {} waited {} ms in the {} lane",
+                    userId, TimeUnit.NANOSECONDS.toMillis(waited), lane.name);
+            start.run();
+        }
+
+        void drop() {
+            metrics.deadlineExceeded(BotMetrics.Stage.AI_QUEUE);
+            log.debug("AI request of user {} missed its deadline after {} ms in the {} lane",
+                    userId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt), lane.name);
+            result.completeExceptionally(new DeadlineExceededException("Deadline exceeded while waiting for a provider slot"));
+        }
+
+        private void run(Supplier<CompletableFuture<T>> request) {
+            CompletableFuture<T> call;
+            try {
+                call = request.get();
+            } catch (RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            // A cancelled request gives up its slot now, not when the provider call winds down
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+            call.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package com.aiassistant.service.impl;
 
 import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.HttpClientConfig;
+import com.aiassistant.config.LiveProperties;
 import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.exception.DeadlineExceededException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.metrics.FlightRecorderEvents;
 import com.aiassistant.model.AiRequest;
 import com.aiassistant.model.AiResponse;
 import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.ModelRouter;
+import com.aiassistant.service.ResponseCache;
+import com.aiassistant.service.TokenEstimator;
+import com.aiassistant.service.UsageService;
+import com.aiassistant.traffic.TrafficRecorder;
+import com.aiassistant.util.Deadline;
+import com.aiassistant.util.LogContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,8 +27,14 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Groq AI service implementation.
@@ -28,72 +47,373 @@ import java.util.concurrent.CompletableFuture;
 public class GroqAiService implements AiService {
     
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    // Smallest reply worth sending a request for
+    private static final int MIN_REPLY_TOKENS = 16;
     
-    private final ApplicationProperties properties;
+    // Read once per request: model, limits and timeouts can be changed live
+    private final LiveProperties properties;
     private final ObjectMapper objectMapper;
+    // Built from the startup settings; rebuilt clients share its connection pool and dispatcher
     private final OkHttpClient httpClient;
+    private final ConversationService conversationService;
+    private final ConversationSummarizer conversationSummarizer;
+    private final TokenEstimator tokenEstimator;
+    private final ModelRouter modelRouter;
+    private final ResponseCache responseCache;
+    private final BotMetrics metrics;
+    private final UsageService usageService;
+    private final TrafficRecorder trafficRecorder;
+    private final AtomicReference<TransportClient> transport = new AtomicReference<>();
     
     @Override
     public CompletableFuture<AiResponse> chatCompletion(AiRequest request) throws AiServiceException {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                String requestBody = objectMapper.writeValueAsString(request);
+        return send(request, Deadline.current());
+    }
+    
+    /**
+     * @param deadline budget of the message, or null for none; the exchange gets only what is left of it
+     */
+    private CompletableFuture<AiResponse> send(AiRequest request, Deadline deadline) {
+        ApplicationProperties config = properties.get();
+        boolean logBodies = shouldLogBodies(config);
+        FlightRecorderEvents.AiCallEvent event = new FlightRecorderEvents.AiCallEvent();
+        event.begin();
+        event.status = -1;
+        
+        Request httpRequest;
+        try {
+            String requestBody = objectMapper.writeValueAsString(request);
+            if (logBodies) {
                 log.debug("Sending request to Groq API: {}", requestBody);
-                
-                Request httpRequest = new Request.Builder()
-                        .url(properties.aiProvider().apiUrl())
-                        .addHeader("Authorization", "Bearer " + properties.aiProvider().apiKey())
-                        .addHeader("Content-Type", "application/json")
-                        .post(RequestBody.create(requestBody, JSON))
-                        .build();
-                
-                try (Response response = httpClient.newCall(httpRequest).execute()) {
-                    String responseBody = response.body() != null ? response.body().string() : "";
-                    log.debug("Received response from Groq API: {}", responseBody);
-                    
-                    if (!response.isSuccessful()) {
-                        throw new AiServiceException(
-                            "GROQ_API_ERROR",
-                            "Groq API returned error: " + response.code() + " - " + responseBody
-                        );
+            }
+            
+            httpRequest = new Request.Builder()
+                    .url(config.aiProvider().apiUrl())
+                    .addHeader("Authorization", "Bearer " + config.aiProvider().apiKey())
+                    .addHeader("Content-Type", "application/json")
+                    .post(RequestBody.create(requestBody, JSON))
+                    .build();
+        } catch (IOException e) {
+            commit(event, request, null);
+            return CompletableFuture.failedFuture(
+                    new AiServiceException("GROQ_IO_ERROR", "Failed to serialize Groq API request", e));
+        }
+        
+        // Runs on an OkHttp dispatcher thread instead of blocking a pool thread for the whole call
+        CompletableFuture<AiResponse> future = new CompletableFuture<>();
+        Call call = client(config).newCall(httpRequest);
+        // The whole exchange gets only what is left of the message's budget
+        if (deadline != null) {
+            call.timeout().timeout(Math.max(1, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        }
+        // Cancelling the future aborts the HTTP exchange and frees its connection right away
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        long callStart = metrics.start();
+        // Captured here: the callbacks run on an OkHttp thread, and the stages after this call run inside them
+        Executor context = LogContext.captured();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                context.execute(() -> {
+                    commit(event, request, null);
+                    if (future.isCancelled()) {
+                        log.debug("Groq API call cancelled");
+                        return;
+                    }
+                    if (deadline != null && deadline.isExpired()) {
+                        metrics.deadlineExceeded(BotMetrics.Stage.PROVIDER_CALL);
+                        log.warn("Groq API call to {} ran out of the message deadline", request.getModel());
+                        future.completeExceptionally(new DeadlineExceededException("Deadline exceeded during the call to " + request.getModel()));
+                        return;
                     }
-                    
-                    AiResponse aiResponse = objectMapper.readValue(responseBody, AiResponse.class);
-                    
-                    if (aiResponse.hasError()) {
-                        throw new AiServiceException(
-                            "GROQ_RESPONSE_ERROR", 
-                            "Groq API returned error: " + aiResponse.getError().getMessage()
-                        );
+                    log.error("Error calling Groq API", e);
+                    future.completeExceptionally(new AiServiceException("GROQ_IO_ERROR", "Failed to call Groq API", e));
+                });
+            }
+            
+            @Override
+            public void onResponse(Call call, Response response) {
+                context.execute(() -> {
+                    try {
+                        future.complete(readResponse(response, event, callStart, logBodies, request));
+                    } catch (AiServiceException e) {
+                        future.completeExceptionally(e);
                     }
-                    
-                    return aiResponse;
-                }
-                
-            } catch (IOException e) {
-                log.error("Error calling Groq API", e);
-                throw new AiServiceException("GROQ_IO_ERROR", "Failed to call Groq API", e);
+                });
             }
         });
+        return future;
+    }
+    
+    private AiResponse readResponse(Response response, FlightRecorderEvents.AiCallEvent event,
+                                    long callStart, boolean logBodies, AiRequest request) {
+        AiResponse.Usage usage = null;
+        try (response) {
+            String responseBody = response.body() != null ? response.body().string() : "";
+            metrics.record(BotMetrics.Stage.PROVIDER_CALL, request.getModel(), callStart);
+            event.status = response.code();
+            if (logBodies) {
+                log.debug("Received response from Groq API: {}", responseBody);
+            }
+            
+            // Error bodies are always kept: they travel in the exception message
+            if (!response.isSuccessful()) {
+                throw new AiServiceException(
+                    "GROQ_API_ERROR",
+                    "Groq API returned error: " + response.code() + " - " + responseBody
+                );
+            }
+            
+            long parseStart = metrics.start();
+            AiResponse aiResponse = objectMapper.readValue(responseBody, AiResponse.class);
+            metrics.record(BotMetrics.Stage.JSON_PARSE, request.getModel(), parseStart);
+            usage = aiResponse.getUsage();
+            
+            if (aiResponse.hasError()) {
+                throw new AiServiceException(
+                    "GROQ_RESPONSE_ERROR", 
+                    "Groq API returned error: " + aiResponse.getError().getMessage()
+                );
+            }
+            
+            return aiResponse;
+        } catch (IOException e) {
+            log.error("Error calling Groq API", e);
+            throw new AiServiceException("GROQ_IO_ERROR", "Failed to call Groq API", e);
+        } finally {
+            commit(event, request, usage);
+        }
+    }
+    
+    private static void commit(FlightRecorderEvents.AiCallEvent event, AiRequest request, AiResponse.Usage usage) {
+        if (event.shouldCommit()) {
+            event.model = request.getModel();
+            if (usage != null) {
+                event.promptTokens = usage.getPromptTokens() != null ? usage.getPromptTokens() : 0;
+                event.completionTokens = usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0;
+            }
+            event.commit();
+        }
+    }
+    
+    /**
+     * Bodies are kilobytes of JSON, so only a sample of calls is logged even at DEBUG
+     */
+    private boolean shouldLogBodies(ApplicationProperties config) {
+        return log.isDebugEnabled()
+                && ThreadLocalRandom.current().nextDouble() < config.observability().bodyLogSampleRate();
+    }
+    
+    /**
+     * Client for the current transport settings, rebuilt only when they change
+     */
+    private OkHttpClient client(ApplicationProperties config) {
+        int timeoutMs = config.aiProvider().timeoutMs();
+        TransportClient current = transport.get();
+        if (current == null) {
+            // The injected client was built from the startup settings
+            current = new TransportClient(timeoutMs, httpClient);
+            return transport.compareAndSet(null, current) ? httpClient : client(config);
+        }
+        if (current.timeoutMs() == timeoutMs) {
+            return current.client();
+        }
+        OkHttpClient rebuilt = HttpClientConfig.withTransportSettings(httpClient.newBuilder(), config.aiProvider()).build();
+        // Losing a race to another rebuild is fine, both clients are equivalent
+        transport.compareAndSet(current, new TransportClient(timeoutMs, rebuilt));
+        log.info("Rebuilt HTTP client for provider timeout {} ms", timeoutMs);
+        return rebuilt;
     }
     
     @Override
     public CompletableFuture<String> generateResponse(String message) throws AiServiceException {
+        ApplicationProperties config = properties.get();
+        List<AiRequest.Message> messages = List.of(AiRequest.Message.user(message));
+        ModelRouter.Route route = modelRouter.route(messages);
+        Optional<String> cached = findCached(route, message);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        forward(completeAndCache(config, messages, route, Deadline.current(), null, null, reply), reply);
+        return reply;
+    }
+    
+    @Override
+    public CompletableFuture<String> generateResponse(Long userId, Long chatId, String message) throws AiServiceException {
+        ApplicationProperties config = properties.get();
+        AiRequest.Message userMessage = AiRequest.Message.user(message);
+        
+        // Most recent history that fits the context window next to the reply and the new message
+        List<AiRequest.Message> messages = new ArrayList<>(
+                conversationService.buildContext(chatId, historyTokenBudget(config, userMessage)));
+        messages.add(userMessage);
+        
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        forward(completeAndCache(config, messages, modelRouter.route(messages), Deadline.current(), userId, chatId, reply)
+                .thenApply(content -> {
+                    // A cancelled request leaves no trace in the history
+                    if (!reply.isCancelled()) {
+                        appendExchange(chatId, userMessage, content);
+                    }
+                    return content;
+                }), reply);
+        return reply;
+    }
+    
+    @Override
+    public Optional<String> cachedResponse(Long userId, Long chatId, String message) {
+        ApplicationProperties config = properties.get();
+        AiRequest.Message userMessage = AiRequest.Message.user(message);
+        if (!conversationService.buildContext(chatId, historyTokenBudget(config, userMessage)).isEmpty()) {
+            // The answer depends on the history, it cannot be shared
+            return Optional.empty();
+        }
+        Optional<String> cached = findCached(modelRouter.route(List.of(userMessage)), message);
+        cached.ifPresent(content -> appendExchange(chatId, userMessage, content));
+        return cached;
+    }
+    
+    private void appendExchange(Long chatId, AiRequest.Message userMessage, String content) {
+        conversationService.appendExchange(chatId, userMessage, AiRequest.Message.assistant(content));
+        conversationSummarizer.summarizeIfNeeded(chatId);
+    }
+    
+    /**
+     * Look the prompt up under every model it may be answered by; an answer escalated to a
+     * larger model is cached under that model
+     */
+    private Optional<String> findCached(ModelRouter.Route route, String prompt) {
+        for (ModelRouter.Route tier = route; tier != null; tier = tier.escalation()) {
+            Optional<String> cached = responseCache.find(tier.model(), prompt);
+            if (cached.isPresent()) {
+                log.debug("Answered from the response cache");
+                return cached;
+            }
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Ask the model and cache the answer when the prompt is just the new message
+     */
+    private CompletableFuture<String> completeAndCache(ApplicationProperties config, List<AiRequest.Message> messages,
+                                                       ModelRouter.Route route, Deadline deadline, Long userId, Long chatId,
+                                                       CompletableFuture<String> reply) {
+        CompletableFuture<Answer> answer = complete(config, messages, route, deadline, userId, chatId, reply);
+        if (messages.size() > 1) {
+            // The answer depends on the history, it cannot be shared
+            return answer.thenApply(Answer::content);
+        }
+        String prompt = messages.get(0).getContent();
+        return answer.thenApply(result -> {
+            responseCache.put(result.model(), prompt, result.content());
+            return result.content();
+        });
+    }
+    
+    /**
+     * Complete the caller's future with the outcome of the chain behind it
+     */
+    private static <T> void forward(CompletableFuture<T> outcome, CompletableFuture<T> reply) {
+        outcome.whenComplete((value, error) -> {
+            if (error != null) {
+                reply.completeExceptionally(error);
+            } else {
+                reply.complete(value);
+            }
+        });
+    }
+    
+    /**
+     * @param deadline budget of the message, or null for none; passed along explicitly because
+     *                 an escalation starts on the thread that completed the previous call
+     * @param reply future handed to the caller; cancelling it cancels the provider call in progress
+     * @return answer with the model that gave it, after any escalation
+     */
+    private CompletableFuture<Answer> complete(ApplicationProperties config, List<AiRequest.Message> messages,
+                                               ModelRouter.Route route, Deadline deadline, Long userId, Long chatId,
+                                               CompletableFuture<String> reply) {
+        String model = route.model();
+        int contextWindow = config.aiProvider().contextWindowTokens();
+        
+        // Nothing left of the budget (e.g. before an escalation): do not spend a provider call on it
+        if (deadline != null && deadline.isExpired()) {
+            metrics.deadlineExceeded(BotMetrics.Stage.PROVIDER_CALL);
+            return CompletableFuture.failedFuture(
+                new DeadlineExceededException("Deadline exceeded before the call to " + model));
+        }
+        
+        // Pre-flight check: reject prompts the provider would refuse anyway, without a round-trip
+        int promptTokens = tokenEstimator.countPromptTokens(messages, model);
+        int maxTokens = Math.min(config.aiProvider().maxTokens(), contextWindow - promptTokens);
+        if (maxTokens < MIN_REPLY_TOKENS) {
+            return CompletableFuture.failedFuture(new AiServiceException(
+                "CONTEXT_TOO_LARGE",
+                "Prompt of about " + promptTokens + " tokens does not fit the context window of " + contextWindow + " tokens"
+            ));
+        }
+        
         AiRequest request = AiRequest.builder()
-                .model(properties.aiProvider().model())
-                .messages(List.of(AiRequest.Message.user(message)))
-                .maxTokens(properties.aiProvider().maxTokens())
-                .temperature(properties.aiProvider().temperature())
+                .model(model)
+                .messages(messages)
+                .maxTokens(maxTokens)
+                .temperature(config.aiProvider().temperature())
                 .build();
         
-        return chatCompletion(request)
+        long sentAt = System.nanoTime();
+        CompletableFuture<AiResponse> call = send(request, deadline);
+        reply.whenComplete((content, error) -> {
+            if (reply.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        // Completes with null when the answer is unusable and a larger model should retry
+        CompletableFuture<String> answer = call
                 .thenApply(response -> {
+                    AiResponse.Usage usage = response.getUsage();
+                    int actualPromptTokens = promptTokens;
+                    int completionTokens = 0;
+                    if (usage != null && usage.getPromptTokens() != null) {
+                        actualPromptTokens = usage.getPromptTokens();
+                        completionTokens = usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0;
+                        tokenEstimator.calibrate(model, promptTokens, actualPromptTokens);
+                        usageService.record(userId, chatId, model, actualPromptTokens, completionTokens);
+                    }
                     String content = response.getContent();
-                    if (content == null || content.isBlank()) {
+                    boolean empty = content == null || content.isBlank();
+                    if (empty && route.escalation() == null) {
                         throw new AiServiceException("GROQ_EMPTY_RESPONSE", "Received empty response from Groq");
                     }
+                    trafficRecorder.recordAiCall(chatId, actualPromptTokens, completionTokens,
+                            empty ? 0 : content.length(), System.nanoTime() - sentAt, 200);
+                    if (route.escalation() != null && (empty || "length".equals(response.getFinishReason()))) {
+                        log.info("Escalating from {} to {}: {}", model, route.escalation().model(),
+                                empty ? "empty answer" : "answer truncated");
+                        return null;
+                    }
                     return content;
+                })
+                .whenComplete((content, error) -> {
+                    if (error != null) {
+                        trafficRecorder.recordAiCall(chatId, promptTokens, 0, 0, System.nanoTime() - sentAt, -1);
+                    }
                 });
+        return answer.thenCompose(content -> content != null
+                ? CompletableFuture.completedFuture(new Answer(model, content))
+                : complete(config, messages, route.escalation(), deadline, userId, chatId, reply));
+    }
+
+    
+    private int historyTokenBudget(ApplicationProperties config, AiRequest.Message userMessage) {
+        int available = config.aiProvider().contextWindowTokens()
+                - config.aiProvider().maxTokens()
+                - tokenEstimator.countPromptTokens(List.of(userMessage), config.aiProvider().model());
+        return Math.min(config.conversation().maxHistoryTokens(), available);
     }
     
     @Override
@@ -101,7 +421,7 @@ public class GroqAiService implements AiService {
         try {
             // Simple health check - try to call API with minimal request
             AiRequest healthCheck = AiRequest.builder()
-                    .model(properties.aiProvider().model())
+                    .model(properties.get().aiProvider().model())
                     .messages(List.of(AiRequest.Message.user("Hello")))
                     .maxTokens(1)
                     .build();
@@ -118,4 +438,10 @@ public class GroqAiService implements AiService {
     public String getProviderName() {
         return "Groq";
     }
+    
+    private record TransportClient(int timeoutMs, OkHttpClient client) {
+    }
+    
+    private record Answer(String model, String content) {
+    }
 }
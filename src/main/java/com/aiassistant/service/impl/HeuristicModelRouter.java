@@ -0,0 +1,149 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.ModelRouter;
+import com.aiassistant.service.TokenEstimator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Routes prompts along a ladder of model tiers using cheap local features.
+ * Follows Single Responsibility Principle - handles only model selection.
+ * The new message is scanned once for its token estimate, code and script; together with
+ * the history depth this picks the cheapest tier whose limits the prompt fits. The main
+ * model (aiProvider.model) is the implicit top of the ladder and takes everything else.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeuristicModelRouter implements ModelRouter {
+
+    private static final String FENCE = "```";
+    // Lines that look like code before a message counts as containing code
+    private static final int MIN_CODE_LINES = 2;
+
+    private final LiveProperties properties;
+    private final TokenEstimator tokenEstimator;
+
+    @Override
+    public Route route(List<AiRequest.Message> messages) {
+        ApplicationProperties config = properties.get();
+        String mainModel = config.aiProvider().model();
+        ApplicationProperties.RoutingProperties routing = config.routing();
+        if (!routing.enabled() || routing.tiers().isEmpty() || messages.isEmpty()) {
+            return new Route(mainModel, "default", null);
+        }
+
+        Features features = features(messages, mainModel);
+        List<ApplicationProperties.ModelTierProperties> tiers = routing.tiers();
+        String reason = "complex";
+        for (int i = 0; i < tiers.size(); i++) {
+            String rejection = rejection(tiers.get(i), features);
+            if (rejection == null) {
+                Route route = new Route(tiers.get(i).model(), "fits tier " + i,
+                        routing.escalateOnTruncation() ? escalation(tiers, i + 1, mainModel) : null);
+                log.debug("Routed prompt {} to {}", features, route.model());
+                return route;
+            }
+            reason = rejection;
+        }
+        log.debug("Routed prompt {} to main model {}: {}", features, mainModel, reason);
+        return new Route(mainModel, reason, null);
+    }
+
+    /**
+     * Chain of the remaining tiers up to the main model
+     */
+    private static Route escalation(List<ApplicationProperties.ModelTierProperties> tiers, int from, String mainModel) {
+        Route route = new Route(mainModel, "escalated", null);
+        for (int i = tiers.size() - 1; i >= from; i--) {
+            route = new Route(tiers.get(i).model(), "escalated", route);
+        }
+        return route;
+    }
+
+    /**
+     * Why a prompt is too complex for the tier, or null if the tier can take it
+     */
+    private static String rejection(ApplicationProperties.ModelTierProperties tier, Features features) {
+        if (features.promptTokens() > tier.maxPromptTokens()) {
+            return "long prompt";
+        }
+        if (features.historyMessages() > tier.maxHistoryMessages()) {
+            return "deep history";
+        }
+        if (features.code() && !tier.allowCode()) {
+            return "code";
+        }
+        if (features.nonLatin() && !tier.allowNonLatin()) {
+            return "non-latin";
+        }
+        return null;
+    }
+
+    private Features features(List<AiRequest.Message> messages, String model) {
+        AiRequest.Message message = messages.get(messages.size() - 1);
+        String text = message.getContent() != null ? message.getContent() : "";
+        return new Features(
+                tokenEstimator.countMessageTokens(message, model),
+                messages.size() - 1,
+                containsCode(text),
+                mostlyNonLatin(text));
+    }
+
+    /**
+     * A fenced block, or several lines that end like statements or blocks do
+     */
+    static boolean containsCode(String text) {
+        if (text.contains(FENCE)) {
+            return true;
+        }
+        int codeLines = 0;
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            int last = lineEnd - 1;
+            while (last >= lineStart && Character.isWhitespace(text.charAt(last))) {
+                last--;
+            }
+            if (last >= lineStart) {
+                char end = text.charAt(last);
+                if ((end == ';' || end == '{' || end == '}') && ++codeLines >= MIN_CODE_LINES) {
+                    return true;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return false;
+    }
+
+    /**
+     * More than half of the letters are outside the Latin script
+     */
+    static boolean mostlyNonLatin(String text) {
+        int letters = 0;
+        int latin = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetter(codePoint)) {
+                letters++;
+                if (Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.LATIN) {
+                    latin++;
+                }
+            }
+            i += Character.charCount(codePoint);
+        }
+        return latin * 2 < letters;
+    }
+
+    private record Features(int promptTokens, int historyMessages, boolean code, boolean nonLatin) {
+    }
+}
@@ -0,0 +1,202 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate BPE token counter calibrated per model family.
+ * Follows Single Responsibility Principle - handles only token estimation.
+ * A single pass over the characters classifies runs (latin words, other alphabets,
+ * digits, CJK, punctuation) and charges each run by the family's typical merge
+ * length; nothing is allocated per call. The result is scaled by a correction
+ * factor learned from usage.prompt_tokens, which keeps steady-state error low.
+ */
+@Slf4j
+@Service
+public class HeuristicTokenEstimator implements TokenEstimator {
+
+    private static final double CALIBRATION_WEIGHT = 0.1;
+    private static final double MIN_CORRECTION = 0.5;
+    private static final double MAX_CORRECTION = 2.0;
+
+    /**
+     * Tokenizer traits of a model family
+     */
+    enum Family {
+        // 128k vocabulary, digits split in groups of three
+        LLAMA(5, 3, 3, 5, 5),
+        // 32k SentencePiece vocabulary, digits one by one
+        MISTRAL(4, 2, 1, 4, 1),
+        // 256k SentencePiece vocabulary
+        GEMMA(5, 3, 1, 5, 4),
+        // cl100k/o200k-like tokenizers
+        DEFAULT(5, 3, 3, 4, 3);
+
+        final int latinCharsPerToken;
+        final int otherCharsPerToken;
+        final int digitsPerToken;
+        final int messageOverhead;
+        final int promptOverhead;
+
+        Family(int latinCharsPerToken, int otherCharsPerToken, int digitsPerToken,
+               int messageOverhead, int promptOverhead) {
+            this.latinCharsPerToken = latinCharsPerToken;
+            this.otherCharsPerToken = otherCharsPerToken;
+            this.digitsPerToken = digitsPerToken;
+            this.messageOverhead = messageOverhead;
+            this.promptOverhead = promptOverhead;
+        }
+
+        static Family of(String model) {
+            if (model == null) {
+                return DEFAULT;
+            }
+            String name = model.toLowerCase(Locale.ROOT);
+            if (name.contains("llama")) {
+                return LLAMA;
+            }
+            if (name.contains("mixtral") || name.contains("mistral")) {
+                return MISTRAL;
+            }
+            if (name.contains("gemma")) {
+                return GEMMA;
+            }
+            return DEFAULT;
+        }
+    }
+
+    // Correction factor per family, stored as double bits
+    private final AtomicLongArray corrections = new AtomicLongArray(Family.values().length);
+
+    public HeuristicTokenEstimator() {
+        for (int i = 0; i < corrections.length(); i++) {
+            corrections.set(i, Double.doubleToRawLongBits(1.0));
+        }
+    }
+
+    @Override
+    public int countMessageTokens(AiRequest.Message message, String model) {
+        Family family = Family.of(model);
+        return (int) Math.ceil(rawMessageTokens(message, family) * correction(family));
+    }
+
+    @Override
+    public int countPromptTokens(List<AiRequest.Message> messages, String model) {
+        Family family = Family.of(model);
+        int raw = family.promptOverhead;
+        for (AiRequest.Message message : messages) {
+            raw += rawMessageTokens(message, family);
+        }
+        return (int) Math.ceil(raw * correction(family));
+    }
+
+    @Override
+    public void calibrate(String model, int estimatedPromptTokens, int actualPromptTokens) {
+        if (estimatedPromptTokens <= 0 || actualPromptTokens <= 0) {
+            return;
+        }
+        Family family = Family.of(model);
+        int index = family.ordinal();
+        long current;
+        double updated;
+        do {
+            current = corrections.get(index);
+            double correction = Double.longBitsToDouble(current);
+            // Move towards the factor that would have produced the exact count
+            double target = correction * actualPromptTokens / estimatedPromptTokens;
+            updated = correction + CALIBRATION_WEIGHT * (target - correction);
+            updated = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION, updated));
+        } while (!corrections.compareAndSet(index, current, Double.doubleToRawLongBits(updated)));
+        log.trace("Token estimate for {}: estimated {}, actual {}, correction {}",
+                family, estimatedPromptTokens, actualPromptTokens, updated);
+    }
+
+    double correction(Family family) {
+        return Double.longBitsToDouble(corrections.get(family.ordinal()));
+    }
+
+    private static int rawMessageTokens(AiRequest.Message message, Family family) {
+        return family.messageOverhead + countText(message.getContent(), family);
+    }
+
+    /**
+     * Estimate tokens of plain text for the family, without calibration
+     */
+    static int countText(String text, Family family) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            int start = i;
+            if (isLatinLetter(codePoint)) {
+                do {
+                    i++;
+                } while (i < length && isLatinLetter(text.charAt(i)));
+                tokens += 1 + (i - start - 1) / family.latinCharsPerToken;
+            } else if (Character.isDigit(codePoint)) {
+                do {
+                    i++;
+                } while (i < length && Character.isDigit(text.charAt(i)));
+                tokens += (i - start + family.digitsPerToken - 1) / family.digitsPerToken;
+            } else if (isIdeographic(codePoint)) {
+                // CJK and similar scripts: roughly one token per character
+                i += Character.charCount(codePoint);
+                tokens++;
+            } else if (Character.isLetter(codePoint)) {
+                // Cyrillic, Greek and other alphabets merge less aggressively than latin
+                do {
+                    i += Character.charCount(text.codePointAt(i));
+                } while (i < length && Character.isLetter(text.codePointAt(i))
+                        && !isLatinLetter(text.charAt(i)) && !isIdeographic(text.codePointAt(i)));
+                tokens += 1 + (i - start - 1) / family.otherCharsPerToken;
+            } else if (Character.isWhitespace(codePoint)) {
+                do {
+                    i++;
+                } while (i < length && Character.isWhitespace(text.charAt(i)));
+                // A single space is merged into the following word
+                if (i - start > 1 || codePoint != ' ') {
+                    tokens++;
+                }
+            } else if (Character.isSupplementaryCodePoint(codePoint)) {
+                // Emoji and rare symbols fall back to byte tokens
+                i += Character.charCount(codePoint);
+                tokens += 2;
+            } else {
+                // Punctuation: repeated marks ("...", "---") merge into few tokens
+                do {
+                    i++;
+                } while (i < length && text.charAt(i) == codePoint && i - start < 4);
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isLatinLetter(int codePoint) {
+        return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z');
+    }
+
+    private static boolean isIdeographic(int codePoint) {
+        // Cheap range check first: Latin, Cyrillic, Greek etc. all sit below Hangul Jamo
+        if (codePoint < 0x1100) {
+            return false;
+        }
+        if (Character.isIdeographic(codePoint)) {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,311 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.TokenEstimator;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory implementation of ConversationService.
+ * Follows Single Responsibility Principle - handles only conversation history.
+ * Each chat keeps a bounded ring buffer of messages; a global character cap
+ * evicts least recently used chats and idle chats are dropped periodically.
+ * Older turns can be folded into a single summary message (see ConversationSummarizer).
+ */
+@Slf4j
+@Service
+public class InMemoryConversationService implements ConversationService {
+
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation: ";
+
+    private final ApplicationProperties properties;
+    private final ApplicationProperties.ConversationProperties settings;
+    private final TokenEstimator tokenEstimator;
+    private final ConcurrentMap<Long, ChatHistory> histories = new ConcurrentHashMap<>();
+    private final AtomicLong totalChars = new AtomicLong();
+    private final ScheduledExecutorService cleaner;
+
+    public InMemoryConversationService(ApplicationProperties properties, TokenEstimator tokenEstimator) {
+        this.properties = properties;
+        this.settings = properties.conversation();
+        this.tokenEstimator = tokenEstimator;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void appendExchange(Long chatId, AiRequest.Message userMessage, AiRequest.Message assistantMessage) {
+        if (!settings.enabled()) {
+            return;
+        }
+        boolean appended = false;
+        while (!appended) {
+            ChatHistory history = histories.computeIfAbsent(chatId, id -> new ChatHistory(settings.maxMessagesPerChat()));
+            synchronized (history) {
+                // Retry if the history was evicted between lookup and lock
+                if (!history.released) {
+                    totalChars.addAndGet(history.add(userMessage) + history.add(assistantMessage));
+                    appended = true;
+                }
+            }
+        }
+        if (totalChars.get() > settings.maxTotalChars()) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    @Override
+    public List<AiRequest.Message> buildContext(Long chatId, int tokenBudget) {
+        ChatHistory history = histories.get(chatId);
+        if (history == null || tokenBudget <= 0) {
+            return List.of();
+        }
+        synchronized (history) {
+            history.touch();
+            String model = properties.aiProvider().model();
+            List<AiRequest.Message> window = new ArrayList<>();
+            int used = 0;
+            // Walk from the newest message back until the budget is exhausted
+            for (int i = history.size() - 1; i >= 0; i--) {
+                AiRequest.Message message = history.get(i);
+                int tokens = tokenEstimator.countMessageTokens(message, model);
+                if (used + tokens > tokenBudget) {
+                    break;
+                }
+                used += tokens;
+                window.add(message);
+            }
+            // The summary stands for everything older than the retained turns
+            if (history.summary != null
+                    && used + tokenEstimator.countMessageTokens(history.summary, model) <= tokenBudget) {
+                window.add(history.summary);
+            }
+            Collections.reverse(window);
+            return window;
+        }
+    }
+
+    @Override
+    public int getMessageCount(Long chatId) {
+        ChatHistory history = histories.get(chatId);
+        if (history == null) {
+            return 0;
+        }
+        synchronized (history) {
+            return history.size();
+        }
+    }
+
+    @Override
+    public void clear(Long chatId) {
+        ChatHistory removed = histories.remove(chatId);
+        if (removed != null) {
+            release(removed);
+            log.debug("Cleared conversation history for chat {}", chatId);
+        }
+    }
+
+    @Override
+    public Optional<Compaction> findCompaction(Long chatId) {
+        ChatHistory history = histories.get(chatId);
+        if (history == null || !settings.summarizationEnabled()) {
+            return Optional.empty();
+        }
+        synchronized (history) {
+            int count = history.size() - settings.keepRecentMessages();
+            // Compact before the ring buffer starts dropping turns or the history grows too long
+            boolean nearlyFull = history.size() + 2 > history.capacity();
+            if (history.released || count <= 0
+                    || (!nearlyFull && historyTokens(history) <= settings.summarizeAfterTokens())) {
+                return Optional.empty();
+            }
+            List<AiRequest.Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(history.get(i));
+            }
+            String previousSummary = history.summary != null
+                    ? history.summary.getContent().substring(SUMMARY_PREFIX.length())
+                    : null;
+            return Optional.of(new Compaction(chatId, history.firstSequence(), previousSummary, messages));
+        }
+    }
+
+    @Override
+    public boolean applyCompaction(Compaction compaction, String summary) {
+        ChatHistory history = histories.get(compaction.chatId());
+        if (history == null) {
+            return false;
+        }
+        synchronized (history) {
+            int count = compaction.messages().size();
+            // The compacted turns must still be the oldest ones and must not have been overwritten
+            if (history.released || history.firstSequence() != compaction.firstSequence()
+                    || history.size() < count) {
+                return false;
+            }
+            long delta = history.replaceOldest(count, AiRequest.Message.system(SUMMARY_PREFIX + summary));
+            totalChars.addAndGet(delta);
+        }
+        log.debug("Compacted {} messages of chat {} into a summary", compaction.messages().size(), compaction.chatId());
+        return true;
+    }
+
+    private int historyTokens(ChatHistory history) {
+        String model = properties.aiProvider().model();
+        int tokens = history.summary != null ? tokenEstimator.countMessageTokens(history.summary, model) : 0;
+        for (int i = 0; i < history.size(); i++) {
+            tokens += tokenEstimator.countMessageTokens(history.get(i), model);
+        }
+        return tokens;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    private void evictIdle() {
+        long idleNanos = TimeUnit.MINUTES.toNanos(settings.idleTimeoutMinutes());
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<Long, ChatHistory> entry : histories.entrySet()) {
+            if (now - entry.getValue().lastAccessNanos > idleNanos
+                    && histories.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue());
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle conversations, {} remaining", evicted, histories.size());
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        List<Map.Entry<Long, ChatHistory>> entries = new ArrayList<>(histories.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessNanos));
+        long target = settings.maxTotalChars() * 9 / 10;
+        int evicted = 0;
+        for (Map.Entry<Long, ChatHistory> entry : entries) {
+            if (totalChars.get() <= target) {
+                break;
+            }
+            if (histories.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue());
+                evicted++;
+            }
+        }
+        log.info("Conversation memory cap reached, evicted {} chats", evicted);
+    }
+
+    private void release(ChatHistory history) {
+        synchronized (history) {
+            totalChars.addAndGet(-history.chars);
+            history.chars = 0;
+            history.released = true;
+        }
+    }
+
+    /**
+     * Fixed-capacity ring buffer of chat messages. Guarded by its own monitor.
+     */
+    private static final class ChatHistory {
+        private final AiRequest.Message[] messages;
+        private int head;
+        private int size;
+        private long sequence;
+        private long chars;
+        private AiRequest.Message summary;
+        private boolean released;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        ChatHistory(int capacity) {
+            this.messages = new AiRequest.Message[capacity];
+        }
+
+        /**
+         * Append a message, overwriting the oldest when full
+         *
+         * @return change in stored characters
+         */
+        long add(AiRequest.Message message) {
+            long delta = length(message);
+            int tail = (head + size) % messages.length;
+            if (size == messages.length) {
+                delta -= length(messages[head]);
+                head = (head + 1) % messages.length;
+            } else {
+                size++;
+            }
+            messages[tail] = message;
+            sequence++;
+            chars += delta;
+            touch();
+            return delta;
+        }
+
+        /**
+         * Drop the oldest messages and install a new summary in their place
+         *
+         * @return change in stored characters
+         */
+        long replaceOldest(int count, AiRequest.Message newSummary) {
+            long delta = length(newSummary) - (summary != null ? length(summary) : 0);
+            for (int i = 0; i < count; i++) {
+                delta -= length(messages[head]);
+                messages[head] = null;
+                head = (head + 1) % messages.length;
+            }
+            size -= count;
+            summary = newSummary;
+            chars += delta;
+            return delta;
+        }
+
+        /**
+         * Sequence number of the oldest retained message
+         */
+        long firstSequence() {
+            return sequence - size;
+        }
+
+        int capacity() {
+            return messages.length;
+        }
+
+        AiRequest.Message get(int index) {
+            return messages[(head + index) % messages.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void touch() {
+            lastAccessNanos = System.nanoTime();
+        }
+
+        private static long length(AiRequest.Message message) {
+            return message.getContent() != null ? message.getContent().length() : 0;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.aiassistant.service.impl;
 
-import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
 import com.aiassistant.exception.RateLimitExceededException;
 import com.aiassistant.service.RateLimitService;
 import lombok.RequiredArgsConstructor;
@@ -22,7 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @RequiredArgsConstructor
 public class InMemoryRateLimitService implements RateLimitService {
     
-    private final ApplicationProperties properties;
+    private final LiveProperties properties; // read per call: the limit can be changed live
     private final ConcurrentMap<Long, UserRateLimit> rateLimits = new ConcurrentHashMap<>();
     
     @Override
@@ -30,14 +30,14 @@ public class InMemoryRateLimitService implements RateLimitService {
         UserRateLimit userLimit = getUserRateLimit(userId);
         cleanupOldRequests(userLimit);
         
-        int limit = properties.botBehavior().rateLimitPerMinute();
+        int limit = properties.get().botBehavior().rateLimitPerMinute();
         return userLimit.getRequestCount().get() < limit;
     }
     
     @Override
     public void recordRequest(Long userId) throws RateLimitExceededException {
         if (!canMakeRequest(userId)) {
-            int limit = properties.botBehavior().rateLimitPerMinute();
+            int limit = properties.get().botBehavior().rateLimitPerMinute();
             long timeUntilReset = getTimeUntilReset(userId);
             throw new RateLimitExceededException(
                 String.format("Rate limit exceeded. Limit: %d requests per minute. Try again in %d seconds.", 
@@ -56,7 +56,7 @@ public class InMemoryRateLimitService implements RateLimitService {
         UserRateLimit userLimit = getUserRateLimit(userId);
         cleanupOldRequests(userLimit);
         
-        int limit = properties.botBehavior().rateLimitPerMinute();
+        int limit = properties.get().botBehavior().rateLimitPerMinute();
         int used = userLimit.getRequestCount().get();
         return Math.max(0, limit - used);
     }
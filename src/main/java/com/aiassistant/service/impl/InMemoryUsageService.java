@@ -0,0 +1,334 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.service.UsageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * In-memory implementation of UsageService.
+ * Follows Single Responsibility Principle - handles only usage accounting.
+ * Every call is added to the current minute, hour and day buckets (60 / 24 / 7 retained).
+ * Totals and per-model counters are LongAdders; the per-bucket user and chat tables take a
+ * short lock, which is cheap at the rate of provider calls.
+ * Each bucket tracks at most maxKeysPerBucket users and chats with Space-Saving: a new key
+ * in a full table evicts the one with the fewest tokens into "other" and inherits that count
+ * as its rank, so heavy users stay tracked however many light ones show up, while reported
+ * numbers are only what a key used since it was last admitted. Models, being few, keep a
+ * plain cap with the overflow in "other".
+ * Per-model totals are also exported as Micrometer counters (users are not, to keep
+ * metric cardinality low).
+ */
+@Service
+public class InMemoryUsageService implements UsageService {
+
+    static final String OTHER = "other";
+    private static final long OTHER_ID = Long.MIN_VALUE;
+    private static final int MAX_METERED_MODELS = 32;
+
+    private final Tier[] tiers = {
+            new Tier(TimeUnit.MINUTES.toMillis(1), 60),
+            new Tier(TimeUnit.HOURS.toMillis(1), 24),
+            new Tier(TimeUnit.DAYS.toMillis(1), 7)
+    };
+    private final int maxKeysPerBucket;
+    private final MeterRegistry registry;
+    private final Clock clock;
+    private final ConcurrentMap<String, ModelMeters> modelMeters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InMemoryUsageService(ApplicationProperties properties, MeterRegistry registry) {
+        this(properties, registry, Clock.systemUTC());
+    }
+
+    InMemoryUsageService(ApplicationProperties properties, MeterRegistry registry, Clock clock) {
+        this.maxKeysPerBucket = properties.usage().maxKeysPerBucket();
+        this.registry = registry;
+        this.clock = clock;
+    }
+
+    @Override
+    public void record(Long userId, Long chatId, String model, int promptTokens, int completionTokens) {
+        long now = clock.millis();
+        String modelKey = model != null ? model : OTHER;
+        for (Tier tier : tiers) {
+            tier.bucket(now, maxKeysPerBucket).add(userId, chatId, modelKey, promptTokens, completionTokens);
+        }
+        meters(modelKey).record(promptTokens, completionTokens);
+    }
+
+    @Override
+    public UsageReport report(Granularity granularity, int buckets, int limit) {
+        Map<Long, long[]> users = new HashMap<>();
+        Map<Long, long[]> chats = new HashMap<>();
+        Map<String, long[]> models = new HashMap<>();
+        long[] total = new long[3];
+
+        for (Bucket bucket : tiers[granularity.ordinal()].recent(clock.millis(), buckets)) {
+            bucket.total.addTo(total);
+            bucket.users.addTo(users);
+            bucket.chats.addTo(chats);
+            bucket.models.forEach((name, counters) -> counters.addTo(models.computeIfAbsent(name, key -> new long[3])));
+        }
+
+        return new UsageReport(
+                entry("total", total),
+                top(users, id -> id == OTHER_ID ? OTHER : id.toString(), limit),
+                top(chats, id -> id == OTHER_ID ? OTHER : id.toString(), limit),
+                top(models, Function.identity(), Integer.MAX_VALUE));
+    }
+
+    private ModelMeters meters(String model) {
+        ModelMeters meters = modelMeters.get(model);
+        if (meters == null) {
+            String key = modelMeters.size() >= MAX_METERED_MODELS ? OTHER : model;
+            meters = modelMeters.computeIfAbsent(key, name -> new ModelMeters(registry, name));
+        }
+        return meters;
+    }
+
+    private static <K> List<UsageEntry> top(Map<K, long[]> counters, Function<K, String> keyName, int limit) {
+        List<UsageEntry> entries = new ArrayList<>(counters.size());
+        counters.forEach((key, values) -> entries.add(entry(keyName.apply(key), values)));
+        entries.sort(Comparator.comparingLong(UsageEntry::totalTokens).reversed());
+        return entries.size() > limit ? List.copyOf(entries.subList(0, limit)) : entries;
+    }
+
+    private static UsageEntry entry(String key, long[] values) {
+        return new UsageEntry(key, values[0], values[1], values[2]);
+    }
+
+    /**
+     * Striped counters of one key
+     */
+    private static final class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+
+        void add(int prompt, int completion) {
+            requests.increment();
+            promptTokens.add(prompt);
+            completionTokens.add(completion);
+        }
+
+        void addTo(long[] target) {
+            target[0] += requests.sum();
+            target[1] += promptTokens.sum();
+            target[2] += completionTokens.sum();
+        }
+    }
+
+    /**
+     * Usage within one time unit
+     */
+    private static final class Bucket {
+        private final long epoch;
+        private final int maxKeys;
+        private final Counters total = new Counters();
+        private final HeavyHitters users;
+        private final HeavyHitters chats;
+        private final ConcurrentHashMap<String, Counters> models = new ConcurrentHashMap<>();
+
+        Bucket(long epoch, int maxKeys) {
+            this.epoch = epoch;
+            this.maxKeys = maxKeys;
+            this.users = new HeavyHitters(maxKeys);
+            this.chats = new HeavyHitters(maxKeys);
+        }
+
+        void add(Long userId, Long chatId, String model, int prompt, int completion) {
+            total.add(prompt, completion);
+            if (userId != null) {
+                users.add(userId, prompt, completion);
+            }
+            if (chatId != null) {
+                chats.add(chatId, prompt, completion);
+            }
+            counters(models, model, OTHER, maxKeys).add(prompt, completion);
+        }
+
+        private static <K> Counters counters(ConcurrentHashMap<K, Counters> map, K key, K other, int maxKeys) {
+            Counters counters = map.get(key);
+            if (counters == null) {
+                // Bound memory: keys beyond the cap share one overflow entry
+                K effectiveKey = map.size() >= maxKeys ? other : key;
+                counters = map.computeIfAbsent(effectiveKey, ignored -> new Counters());
+            }
+            return counters;
+        }
+    }
+
+    /**
+     * Space-Saving table of the heaviest keys by tokens; evicted usage is kept in "other"
+     */
+    private static final class HeavyHitters {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by lock
+        private final HashMap<Long, Slot> slots = new HashMap<>();
+        private final long[] other = new long[3];
+
+        HeavyHitters(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(long key, int prompt, int completion) {
+            lock.lock();
+            try {
+                Slot slot = slots.get(key);
+                if (slot == null) {
+                    long inherited = 0;
+                    if (slots.size() >= capacity) {
+                        Slot evicted = null;
+                        for (Slot candidate : slots.values()) {
+                            if (evicted == null || candidate.rank < evicted.rank) {
+                                evicted = candidate;
+                            }
+                        }
+                        slots.remove(evicted.key);
+                        evicted.addTo(other);
+                        inherited = evicted.rank;
+                    }
+                    slot = new Slot(key, inherited);
+                    slots.put(key, slot);
+                }
+                slot.add(prompt, completion);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void addTo(Map<Long, long[]> target) {
+            lock.lock();
+            try {
+                slots.forEach((key, slot) -> slot.addTo(target.computeIfAbsent(key, ignored -> new long[3])));
+                if (other[0] > 0) {
+                    long[] values = target.computeIfAbsent(OTHER_ID, ignored -> new long[3]);
+                    for (int i = 0; i < other.length; i++) {
+                        values[i] += other[i];
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Usage of one tracked key; rank also counts the tokens inherited from the key it replaced
+     */
+    private static final class Slot {
+        private final long key;
+        private long rank;
+        private long requests;
+        private long promptTokens;
+        private long completionTokens;
+
+        Slot(long key, long inherited) {
+            this.key = key;
+            this.rank = inherited;
+        }
+
+        void add(int prompt, int completion) {
+            rank += prompt + completion;
+            requests++;
+            promptTokens += prompt;
+            completionTokens += completion;
+        }
+
+        void addTo(long[] target) {
+            target[0] += requests;
+            target[1] += promptTokens;
+            target[2] += completionTokens;
+        }
+    }
+
+    /**
+     * Ring of buckets of one granularity
+     */
+    private static final class Tier {
+        private final long unitMillis;
+        private final AtomicReferenceArray<Bucket> ring;
+
+        Tier(long unitMillis, int retained) {
+            this.unitMillis = unitMillis;
+            this.ring = new AtomicReferenceArray<>(retained);
+        }
+
+        Bucket bucket(long nowMillis, int maxKeys) {
+            long epoch = nowMillis / unitMillis;
+            int slot = (int) (epoch % ring.length());
+            Bucket bucket = ring.get(slot);
+            // Replace the expired bucket that occupied this slot one full ring ago
+            while (bucket == null || bucket.epoch < epoch) {
+                Bucket fresh = new Bucket(epoch, maxKeys);
+                if (ring.compareAndSet(slot, bucket, fresh)) {
+                    return fresh;
+                }
+                bucket = ring.get(slot);
+            }
+            return bucket;
+        }
+
+        List<Bucket> recent(long nowMillis, int count) {
+            long epoch = nowMillis / unitMillis;
+            List<Bucket> buckets = new ArrayList<>();
+            for (int i = 0; i < Math.min(count, ring.length()); i++) {
+                Bucket bucket = ring.get((int) ((epoch - i) % ring.length()));
+                if (bucket != null && bucket.epoch == epoch - i) {
+                    buckets.add(bucket);
+                }
+            }
+            return buckets;
+        }
+    }
+
+    /**
+     * Exported per-model counters
+     */
+    private static final class ModelMeters {
+        private final Counter requests;
+        private final Counter promptTokens;
+        private final Counter completionTokens;
+
+        ModelMeters(MeterRegistry registry, String model) {
+            this.requests = Counter.builder("aiassistant.ai.requests")
+                    .description("AI calls with reported usage")
+                    .tag("model", model)
+                    .register(registry);
+            this.promptTokens = Counter.builder("aiassistant.ai.tokens")
+                    .description("Tokens billed by the AI provider")
+                    .tag("model", model)
+                    .tag("type", "prompt")
+                    .register(registry);
+            this.completionTokens = Counter.builder("aiassistant.ai.tokens")
+                    .description("Tokens billed by the AI provider")
+                    .tag("model", model)
+                    .tag("type", "completion")
+                    .register(registry);
+        }
+
+        void record(int prompt, int completion) {
+            requests.increment();
+            promptTokens.increment(prompt);
+            completionTokens.increment(completion);
+        }
+    }
+}
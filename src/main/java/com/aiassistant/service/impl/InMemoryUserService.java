@@ -2,7 +2,9 @@ package com.aiassistant.service.impl;
 
 import com.aiassistant.model.TelegramUser;
 import com.aiassistant.service.UserService;
+import com.aiassistant.util.BlockedUserIndex;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.User;
 
@@ -17,9 +19,11 @@ import java.util.concurrent.ConcurrentMap;
  */
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "aiassistant.user-store.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryUserService implements UserService {
     
     private final ConcurrentMap<Long, TelegramUser> users = new ConcurrentHashMap<>();
+    private final BlockedUserIndex blockedUsers = new BlockedUserIndex();
     
     @Override
     public TelegramUser getOrCreateUser(User telegramUser) {
@@ -47,15 +51,14 @@ public class InMemoryUserService implements UserService {
     @Override
     public TelegramUser updateUser(TelegramUser user) {
         users.put(user.getUserId(), user);
+        blockedUsers.sync(user.getUserId(), Boolean.TRUE.equals(user.getIsBlocked()));
         log.debug("Updated user: {} ({})", user.getDisplayName(), user.getUserId());
         return user;
     }
     
     @Override
     public boolean isUserBlocked(Long userId) {
-        return findUser(userId)
-                .map(TelegramUser::getIsBlocked)
-                .orElse(false);
+        return blockedUsers.contains(userId);
     }
     
     @Override
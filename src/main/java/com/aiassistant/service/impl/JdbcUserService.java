@@ -0,0 +1,427 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.exception.UserStoreException;
+import com.aiassistant.model.TelegramUser;
+import com.aiassistant.service.UserService;
+import com.aiassistant.util.BlockedUserIndex;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JDBC implementation of UserService with a read-through cache and write-behind batching.
+ * Follows Single Responsibility Principle - handles only user management.
+ * Reads are served from the cache and fall back to the database on a miss.
+ * Writes are coalesced per user and flushed as batched upserts on a fixed
+ * interval, so the message path never issues a statement per message.
+ * Connections come from the pooled DataSource of UserStoreDataSourceConfig.
+ * Cache and flush statistics are exported to Micrometer.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "aiassistant.user-store.type", havingValue = "jdbc")
+public class JdbcUserService implements UserService {
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS telegram_users (
+                user_id BIGINT PRIMARY KEY,
+                username VARCHAR(64),
+                first_name VARCHAR(256),
+                last_name VARCHAR(256),
+                language_code VARCHAR(16),
+                first_seen_at TIMESTAMP,
+                last_seen_at TIMESTAMP,
+                message_count INT,
+                is_blocked BOOLEAN
+            )""";
+
+    private static final String SELECT_BLOCKED_IDS = "SELECT user_id FROM telegram_users WHERE is_blocked = TRUE";
+
+    private static final String SELECT_USER = """
+            SELECT user_id, username, first_name, last_name, language_code,
+                   first_seen_at, last_seen_at, message_count, is_blocked
+            FROM telegram_users WHERE user_id = ?""";
+
+    // Portable upsert: UPDATE first, INSERT the rows that did not exist
+    private static final String UPDATE_USER = """
+            UPDATE telegram_users SET username = ?, first_name = ?, last_name = ?, language_code = ?,
+                   first_seen_at = ?, last_seen_at = ?, message_count = ?, is_blocked = ?
+            WHERE user_id = ?""";
+
+    private static final String INSERT_USER = """
+            INSERT INTO telegram_users (username, first_name, last_name, language_code,
+                   first_seen_at, last_seen_at, message_count, is_blocked, user_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final String USER_EXISTS = "SELECT 1 FROM telegram_users WHERE user_id = ?";
+
+    private final ApplicationProperties.UserStoreProperties store;
+    private final DataSource dataSource;
+    private final ConcurrentMap<Long, TelegramUser> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final BlockedUserIndex blockedUsers = new BlockedUserIndex();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder rowsFlushed = new LongAdder();
+    private volatile int lastBatchSize;
+    private volatile long lastFlushLagMs;
+
+    public JdbcUserService(ApplicationProperties properties, DataSource dataSource, MeterRegistry registry)
+            throws SQLException {
+        this.store = properties.userStore();
+        this.dataSource = dataSource;
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            // The blocklist lives fully in memory so isUserBlocked never touches the database
+            List<Long> blockedIds = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery(SELECT_BLOCKED_IDS)) {
+                while (resultSet.next()) {
+                    blockedIds.add(resultSet.getLong(1));
+                }
+            }
+            blockedUsers.reset(blockedIds.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jdbc-user-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = store.writeBehindIntervalMs();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        registerMetrics(registry);
+        log.info("JDBC user store initialized: {}", store.jdbcUrl());
+    }
+
+    @Override
+    public TelegramUser getOrCreateUser(User telegramUser) {
+        Long userId = telegramUser.getId();
+        Optional<TelegramUser> existing = findUser(userId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        TelegramUser user = cache.computeIfAbsent(userId, id -> {
+            TelegramUser newUser = TelegramUser.builder()
+                    .userId(userId)
+                    .username(telegramUser.getUserName())
+                    .firstName(telegramUser.getFirstName())
+                    .lastName(telegramUser.getLastName())
+                    .languageCode(telegramUser.getLanguageCode())
+                    .build();
+
+            markDirty(newUser);
+            log.info("Created new user: {} ({})", newUser.getDisplayName(), userId);
+            return newUser;
+        });
+        evictIfNeeded();
+        return user;
+    }
+
+    /**
+     * @throws UserStoreException if the user is not cached and the database cannot be read
+     */
+    @Override
+    public Optional<TelegramUser> findUser(Long userId) {
+        TelegramUser cached = cache.get(userId);
+        if (cached != null) {
+            cacheHits.increment();
+            return Optional.of(cached);
+        }
+        cacheMisses.increment();
+
+        // An unflushed write is newer than anything in the database
+        PendingWrite write = pending.get(userId);
+        TelegramUser loaded = write != null ? write.user() : load(userId);
+        if (loaded == null) {
+            return Optional.empty();
+        }
+        // A concurrent write wins over the row we just read
+        TelegramUser current = cache.putIfAbsent(userId, loaded);
+        evictIfNeeded();
+        return Optional.of(current != null ? current : loaded);
+    }
+
+    @Override
+    public TelegramUser updateUser(TelegramUser user) {
+        cache.put(user.getUserId(), user);
+        blockedUsers.sync(user.getUserId(), Boolean.TRUE.equals(user.getIsBlocked()));
+        markDirty(user);
+        log.debug("Updated user: {} ({})", user.getDisplayName(), user.getUserId());
+        return user;
+    }
+
+    @Override
+    public boolean isUserBlocked(Long userId) {
+        return blockedUsers.contains(userId);
+    }
+
+    @Override
+    public void blockUser(Long userId) {
+        findUser(userId).ifPresent(user -> {
+            updateUser(user.withIsBlocked(true));
+            log.warn("Blocked user: {} ({})", user.getDisplayName(), userId);
+        });
+    }
+
+    @Override
+    public void unblockUser(Long userId) {
+        findUser(userId).ifPresent(user -> {
+            updateUser(user.withIsBlocked(false));
+            log.info("Unblocked user: {} ({})", user.getDisplayName(), userId);
+        });
+    }
+
+    /**
+     * Write all pending changes to the database as one batch
+     */
+    public synchronized void flush() throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> batch = new ArrayList<>(pending.values());
+        long now = System.nanoTime();
+        long oldest = batch.stream().mapToLong(PendingWrite::dirtySinceNanos).min().orElse(now);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                upsert(connection, batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+
+        // Keep entries that changed again while we were flushing
+        for (PendingWrite write : batch) {
+            pending.remove(write.user().getUserId(), write);
+        }
+        evictIfNeeded();
+        rowsFlushed.add(batch.size());
+        lastBatchSize = batch.size();
+        lastFlushLagMs = TimeUnit.NANOSECONDS.toMillis(now - oldest);
+        log.debug("Flushed {} users, lag {} ms", batch.size(), lastFlushLagMs);
+    }
+
+    /**
+     * Current cache and write-behind statistics
+     */
+    public Stats getStats() {
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        return new Stats(
+                hits,
+                misses,
+                hits + misses == 0 ? 0.0 : (double) hits / (hits + misses),
+                cache.size(),
+                pending.size(),
+                lastBatchSize,
+                lastFlushLagMs,
+                rowsFlushed.sum()
+        );
+    }
+
+    /**
+     * Flush everything on graceful shutdown
+     */
+    @PreDestroy
+    public void close() throws SQLException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("JDBC user store closed, {} rows flushed in total", rowsFlushed.sum());
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("aiassistant.user_store.cache.requests", cacheHits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("aiassistant.user_store.cache.requests", cacheMisses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("aiassistant.user_store.rows.flushed", rowsFlushed, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("aiassistant.user_store.cache.size", cache, Map::size).register(registry);
+        Gauge.builder("aiassistant.user_store.pending.writes", pending, Map::size).register(registry);
+        Gauge.builder("aiassistant.user_store.flush.batch.size", this, service -> service.lastBatchSize)
+                .register(registry);
+        Gauge.builder("aiassistant.user_store.flush.lag", this, service -> service.lastFlushLagMs)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private void markDirty(TelegramUser user) {
+        PendingWrite write = new PendingWrite(user, System.nanoTime());
+        // Coalesce: keep the latest state but remember when the user first became dirty
+        pending.merge(user.getUserId(), write,
+                (previous, latest) -> new PendingWrite(latest.user(), previous.dirtySinceNanos()));
+    }
+
+    private void evictIfNeeded() {
+        int maxSize = store.cacheMaxSize();
+        if (cache.size() <= maxSize) {
+            return;
+        }
+        // Approximate eviction of clean entries; dirty users stay until flushed
+        int toEvict = cache.size() - maxSize * 9 / 10;
+        Iterator<Map.Entry<Long, TelegramUser>> iterator = cache.entrySet().iterator();
+        while (toEvict > 0 && iterator.hasNext()) {
+            if (!pending.containsKey(iterator.next().getKey())) {
+                iterator.remove();
+                toEvict--;
+            }
+        }
+    }
+
+    private TelegramUser load(Long userId) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_USER)) {
+            statement.setLong(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? mapUser(resultSet) : null;
+            }
+        } catch (SQLException e) {
+            // Not "no such user": that would create a fresh user and overwrite the stored row on the next flush
+            throw new UserStoreException("Failed to load user " + userId, e);
+        }
+    }
+
+    private void upsert(Connection connection, List<PendingWrite> batch) throws SQLException {
+        List<TelegramUser> missing = new ArrayList<>();
+        List<TelegramUser> unknown = new ArrayList<>();
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_USER)) {
+            for (PendingWrite write : batch) {
+                bindUser(update, write.user());
+                update.addBatch();
+            }
+            int[] counts = update.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    missing.add(batch.get(i).user());
+                } else if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                    // Some drivers do not report per-row counts for batches
+                    unknown.add(batch.get(i).user());
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            try (PreparedStatement exists = connection.prepareStatement(USER_EXISTS)) {
+                for (TelegramUser user : unknown) {
+                    exists.setLong(1, user.getUserId());
+                    try (ResultSet resultSet = exists.executeQuery()) {
+                        if (!resultSet.next()) {
+                            missing.add(user);
+                        }
+                    }
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_USER)) {
+            for (TelegramUser user : missing) {
+                bindUser(insert, user);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private void bindUser(PreparedStatement statement, TelegramUser user) throws SQLException {
+        statement.setString(1, user.getUsername());
+        statement.setString(2, user.getFirstName());
+        statement.setString(3, user.getLastName());
+        statement.setString(4, user.getLanguageCode());
+        statement.setTimestamp(5, toTimestamp(user.getFirstSeenAt()));
+        statement.setTimestamp(6, toTimestamp(user.getLastSeenAt()));
+        statement.setInt(7, user.getMessageCount() != null ? user.getMessageCount() : 0);
+        statement.setBoolean(8, Boolean.TRUE.equals(user.getIsBlocked()));
+        statement.setLong(9, user.getUserId());
+    }
+
+    private TelegramUser mapUser(ResultSet resultSet) throws SQLException {
+        return TelegramUser.builder()
+                .userId(resultSet.getLong("user_id"))
+                .username(resultSet.getString("username"))
+                .firstName(resultSet.getString("first_name"))
+                .lastName(resultSet.getString("last_name"))
+                .languageCode(resultSet.getString("language_code"))
+                .firstSeenAt(toLocalDateTime(resultSet.getTimestamp("first_seen_at")))
+                .lastSeenAt(toLocalDateTime(resultSet.getTimestamp("last_seen_at")))
+                .messageCount(resultSet.getInt("message_count"))
+                .isBlocked(resultSet.getBoolean("is_blocked"))
+                .build();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            log.error("Failed to flush {} pending users, will retry", pending.size(), e);
+        }
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp value) {
+        return value != null ? value.toLocalDateTime() : null;
+    }
+
+    /**
+     * Latest unflushed state of a user
+     */
+    private record PendingWrite(TelegramUser user, long dirtySinceNanos) {
+    }
+
+    /**
+     * Cache and write-behind statistics snapshot
+     */
+    public record Stats(
+            long cacheHits,
+            long cacheMisses,
+            double cacheHitRate,
+            int cacheSize,
+            int pendingWrites,
+            int lastBatchSize,
+            long lastFlushLagMs,
+            long rowsFlushed
+    ) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.TelegramUser;
+import com.aiassistant.service.UserService;
+import com.aiassistant.store.UserJournal;
+import com.aiassistant.store.UserSnapshot;
+import com.aiassistant.util.BlockedUserIndex;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable implementation of UserService.
+ * Follows Single Responsibility Principle - handles only user management.
+ * Users are served from memory; every change is appended to a group-committed
+ * journal off the request thread, and the journal is periodically compacted
+ * into a memory-mapped snapshot that is replayed on startup.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "aiassistant.user-store.type", havingValue = "journal")
+public class JournaledUserService implements UserService {
+
+    private final ConcurrentMap<Long, TelegramUser> users = new ConcurrentHashMap<>();
+    private final BlockedUserIndex blockedUsers = new BlockedUserIndex();
+    private final Path directory;
+    private final UserJournal journal;
+    private final ScheduledExecutorService compactor;
+
+    public JournaledUserService(ApplicationProperties properties) throws IOException {
+        ApplicationProperties.UserStoreProperties store = properties.userStore();
+        this.directory = Path.of(store.directory());
+
+        long startedAt = System.nanoTime();
+        long snapshotGeneration = UserSnapshot.load(directory, user -> users.put(user.getUserId(), user));
+        long lastGeneration = UserJournal.replay(directory, snapshotGeneration, user -> users.put(user.getUserId(), user));
+        blockedUsers.reset(users.values().stream()
+                .filter(user -> Boolean.TRUE.equals(user.getIsBlocked()))
+                .mapToLong(TelegramUser::getUserId)
+                .toArray());
+        log.info("Recovered {} users from {} in {} ms", users.size(), directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+        // Always start a fresh journal so a torn tail of the previous one is never appended to
+        this.journal = new UserJournal(directory, Math.max(lastGeneration, snapshotGeneration) + 1,
+                store.journalFlushIntervalMs());
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-snapshot-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = store.snapshotIntervalSeconds();
+        compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public TelegramUser getOrCreateUser(User telegramUser) {
+        Long userId = telegramUser.getId();
+        TelegramUser existing = users.get(userId);
+        if (existing != null) {
+            return existing;
+        }
+
+        return users.computeIfAbsent(userId, id -> {
+            TelegramUser newUser = TelegramUser.builder()
+                    .userId(userId)
+                    .username(telegramUser.getUserName())
+                    .firstName(telegramUser.getFirstName())
+                    .lastName(telegramUser.getLastName())
+                    .languageCode(telegramUser.getLanguageCode())
+                    .build();
+
+            journal.append(newUser);
+            log.info("Created new user: {} ({})", newUser.getDisplayName(), userId);
+            return newUser;
+        });
+    }
+
+    @Override
+    public Optional<TelegramUser> findUser(Long userId) {
+        return Optional.ofNullable(users.get(userId));
+    }
+
+    @Override
+    public TelegramUser updateUser(TelegramUser user) {
+        // Journal inside compute() so per-user journal order matches map order
+        users.compute(user.getUserId(), (id, previous) -> {
+            journal.append(user);
+            blockedUsers.sync(id, Boolean.TRUE.equals(user.getIsBlocked()));
+            return user;
+        });
+        log.debug("Updated user: {} ({})", user.getDisplayName(), user.getUserId());
+        return user;
+    }
+
+    @Override
+    public boolean isUserBlocked(Long userId) {
+        return blockedUsers.contains(userId);
+    }
+
+    @Override
+    public void blockUser(Long userId) {
+        findUser(userId).ifPresent(user -> {
+            updateUser(user.withIsBlocked(true));
+            log.warn("Blocked user: {} ({})", user.getDisplayName(), userId);
+        });
+    }
+
+    @Override
+    public void unblockUser(Long userId) {
+        findUser(userId).ifPresent(user -> {
+            updateUser(user.withIsBlocked(false));
+            log.info("Unblocked user: {} ({})", user.getDisplayName(), userId);
+        });
+    }
+
+    /**
+     * Block until every change made so far is durable in the journal
+     */
+    public void flush() throws IOException {
+        try {
+            journal.sync().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("Failed to sync user journal", e);
+        }
+    }
+
+    /**
+     * Write a snapshot of all users and drop the journals it covers
+     */
+    public synchronized void compact() throws IOException {
+        long generation;
+        try {
+            generation = journal.rotate().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("Failed to rotate user journal", e);
+        }
+        // Every change not in the rotated journals is replayed from `generation` on top of this copy
+        UserSnapshot.write(directory, generation, new ArrayList<>(users.values()));
+        UserJournal.deleteBefore(directory, generation);
+    }
+
+    /**
+     * Compact and flush everything to disk on graceful shutdown
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        try {
+            compact();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("User snapshot compaction failed", e);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.RequestScheduler;
+import com.aiassistant.service.TokenEstimator;
+import com.aiassistant.service.UsageService;
+import com.aiassistant.util.LogContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers messages too long for a single prompt with map-reduce.
+ * Follows Single Responsibility Principle - handles only long input processing.
+ * The text is cut at paragraph, line or word boundaries into chunks of at most chunkTokens
+ * estimated tokens. Notes are taken on every chunk by its own call, at most maxParallelChunks
+ * at a time, and a final call answers from the notes, so a long paste is answered in about
+ * two call latencies instead of being refused. Every call goes through the request
+ * scheduler, where the chunks compete with other users' requests like any other request.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MapReduceResponder {
+
+    private static final String MAP_INSTRUCTION = """
+            You read one part of a message that was too long to process at once.
+            Write concise notes on this part: keep facts, names, numbers, code and any question
+            or instruction addressed to the assistant (quote those verbatim). Do not answer
+            anything yet. Write the notes in the language of the text.""";
+    private static final String REDUCE_INSTRUCTION = """
+            A user sent a message that was too long to read at once, so notes were taken on each
+            part in order. Reply to the user's message using these notes as if you had read the
+            whole message: follow its questions or instructions, or summarize it if there are none.
+            Answer in the language of the message.""";
+    // Excerpt of the message kept in the conversation history
+    private static final int HISTORY_EXCERPT_CHARS = 1000;
+
+    private final LiveProperties properties;
+    private final AiService aiService;
+    private final RequestScheduler requestScheduler;
+    private final TokenEstimator tokenEstimator;
+    private final ConversationService conversationService;
+    private final UsageService usageService;
+
+    /**
+     * Answer a long message
+     *
+     * @param userId user the calls are queued under and accounted to
+     * @param chatId chat ID whose history gets the exchange
+     * @param text message text
+     * @return CompletableFuture with the answer; cancelling it cancels the calls in progress
+     */
+    public CompletableFuture<String> answer(Long userId, Long chatId, String text) {
+        ApplicationProperties config = properties.get();
+        ApplicationProperties.MapReduceProperties settings = config.mapReduce();
+        String chunkModel = settings.chunkModel() != null ? settings.chunkModel() : config.aiProvider().model();
+        List<String> chunks = split(text, settings.chunkTokens(), chunkModel);
+        int count = chunks.size();
+        log.debug("Answering {} characters of user {} in {} chunks", text.length(), userId, count);
+
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        Queue<CompletableFuture<?>> calls = new ConcurrentLinkedQueue<>();
+        // Failure of one chunk or cancellation of the reply stops all the others
+        reply.whenComplete((answer, error) -> {
+            if (error != null) {
+                calls.forEach(call -> call.cancel(true));
+            }
+        });
+
+        List<CompletableFuture<String>> notes = new ArrayList<>(count);
+        List<Runnable> starts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<String> note = new CompletableFuture<>();
+            AiRequest request = chunkRequest(settings, chunkModel, chunks.get(i), i + 1, count);
+            int cost = chunks.get(i).length();
+            notes.add(note);
+            // Created here, so chunks started from another call's completion keep the deadline and MDC
+            starts.add(LogContext.capturing(() -> {
+                if (!reply.isDone()) {
+                    forward(call(userId, chatId, request, cost, calls, reply), note);
+                }
+            }));
+        }
+        AtomicInteger next = new AtomicInteger(Math.min(settings.maxParallelChunks(), count));
+        for (CompletableFuture<String> note : notes) {
+            note.whenComplete((value, error) -> {
+                if (error != null) {
+                    reply.completeExceptionally(error);
+                    return;
+                }
+                int index = next.getAndIncrement();
+                if (index < count) {
+                    starts.get(index).run();
+                }
+            });
+        }
+
+        Runnable reduce = LogContext.capturing(() -> {
+            if (reply.isDone()) {
+                return;
+            }
+            List<String> partial = notes.stream().map(CompletableFuture::join).toList();
+            forward(call(userId, chatId, reduceRequest(config, partial), text.length(), calls, reply)
+                    .thenApply(answer -> {
+                        conversationService.appendExchange(chatId, AiRequest.Message.user(excerpt(text)),
+                                AiRequest.Message.assistant(answer));
+                        return answer;
+                    }), reply);
+        });
+        CompletableFuture.allOf(notes.toArray(CompletableFuture[]::new)).thenRun(reduce);
+        for (int i = 0; i < Math.min(settings.maxParallelChunks(), count); i++) {
+            starts.get(i).run();
+        }
+
+        return reply;
+    }
+
+    /**
+     * Split text into chunks of at most chunkTokens estimated tokens
+     */
+    List<String> split(String text, int chunkTokens, String model) {
+        int tokens = tokenEstimator.countMessageTokens(AiRequest.Message.user(text), model);
+        if (tokens <= chunkTokens) {
+            return List.of(text);
+        }
+        // The text's own characters-per-token ratio, so code and prose both fit
+        int chunkChars = Math.max(1, (int) ((long) text.length() * chunkTokens / tokens));
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + chunkChars);
+            if (end < text.length()) {
+                end = boundary(text, start + chunkChars / 2, end);
+            }
+            String chunk = text.substring(start, end).strip();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Latest paragraph break, else line break, else whitespace in [from, to); to if there is none
+     */
+    private static int boundary(String text, int from, int to) {
+        int paragraph = text.lastIndexOf("\n\n", to - 2);
+        if (paragraph >= from) {
+            return paragraph + 2;
+        }
+        int line = text.lastIndexOf('\n', to - 1);
+        if (line >= from) {
+            return line + 1;
+        }
+        for (int i = to - 1; i >= from; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Queue a call in the scheduler and take the text of its answer
+     */
+    private CompletableFuture<String> call(Long userId, Long chatId, AiRequest request, int cost,
+                                           Queue<CompletableFuture<?>> calls, CompletableFuture<String> reply) {
+        CompletableFuture<AiResponse> call = requestScheduler.submit(userId, cost, () -> aiService.chatCompletion(request));
+        calls.add(call);
+        if (reply.isDone()) {
+            // Stopped while this call was being queued
+            call.cancel(true);
+        }
+        return call.thenApply(response -> {
+            recordUsage(userId, chatId, request.getModel(), response.getUsage());
+            String content = response.getContent();
+            if (content == null || content.isBlank()) {
+                throw new AiServiceException("EMPTY_RESPONSE", "Received empty response for a long message");
+            }
+            return content.strip();
+        });
+    }
+
+    private void recordUsage(Long userId, Long chatId, String model, AiResponse.Usage usage) {
+        if (usage != null && usage.getPromptTokens() != null) {
+            usageService.record(userId, chatId, model, usage.getPromptTokens(),
+                    usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+        }
+    }
+
+    private static AiRequest chunkRequest(ApplicationProperties.MapReduceProperties settings, String model,
+                                          String chunk, int part, int parts) {
+        return AiRequest.builder()
+                .model(model)
+                .messages(List.of(AiRequest.Message.system(MAP_INSTRUCTION),
+                        AiRequest.Message.user("Part " + part + " of " + parts + ":\n" + chunk)))
+                .maxTokens(settings.chunkNotesTokens())
+                .temperature(0.2)
+                .build();
+    }
+
+    private static AiRequest reduceRequest(ApplicationProperties config, List<String> notes) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < notes.size(); i++) {
+            prompt.append("Notes on part ").append(i + 1).append(" of ").append(notes.size()).append(":\n")
+                    .append(notes.get(i)).append("\n\n");
+        }
+        return AiRequest.builder()
+                .model(config.aiProvider().model())
+                .messages(List.of(AiRequest.Message.system(REDUCE_INSTRUCTION),
+                        AiRequest.Message.user(prompt.toString().strip())))
+                .maxTokens(config.aiProvider().maxTokens())
+                .temperature(config.aiProvider().temperature())
+                .build();
+    }
+
+    private static String excerpt(String text) {
+        return text.length() <= HISTORY_EXCERPT_CHARS ? text : text.substring(0, HISTORY_EXCERPT_CHARS) + "…";
+    }
+
+    /**
+     * Complete the target future with the outcome of the source
+     */
+    private static <T> void forward(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete((value, error) -> {
+            if (error != null) {
+                target.completeExceptionally(error);
+            } else {
+                target.complete(value);
+            }
+        });
+    }
+}
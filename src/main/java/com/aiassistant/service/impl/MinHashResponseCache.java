@@ -0,0 +1,389 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.service.ResponseCache;
+import com.aiassistant.store.ResponseSegmentStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Near-duplicate response cache using MinHash signatures and an LSH index.
+ * Follows Single Responsibility Principle - handles only response caching.
+ * A prompt is normalized (case, punctuation, English contractions), split into character
+ * trigrams and reduced to a MinHash signature whose matching positions estimate the Jaccard
+ * similarity of two prompts. Signatures are banded for locality-sensitive lookup, so only
+ * prompts sharing a band are compared. Numbers and the model must match exactly: "2+2" and
+ * "2+3" are close as text but have different answers.
+ * <p>
+ * Everything lives in primitive arrays sized once for maxEntries, plus the answer strings;
+ * a full cache evicts the least recently used entry. With a directory configured, answers are
+ * also written to a {@link ResponseSegmentStore} keyed by the exact normalized prompt and model,
+ * which answers memory misses and keeps the cache warm across restarts.
+ */
+@Service
+public class MinHashResponseCache implements ResponseCache {
+
+    private static final int HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = HASHES / BANDS;
+    private static final int SHINGLE = 3;
+    private static final int NONE = -1;
+    // Fixed seeds: signatures only need to be consistent within one process
+    private static final long[] SEEDS = new SplittableRandom(0x5EEDL).longs(HASHES).toArray();
+
+    private static final Pattern APOSTROPHE = Pattern.compile("[’`]");
+    private static final Pattern[] CONTRACTIONS = {
+            Pattern.compile("n't\\b"), Pattern.compile("'re\\b"), Pattern.compile("'s\\b"),
+            Pattern.compile("'m\\b"), Pattern.compile("'ll\\b"), Pattern.compile("'ve\\b"), Pattern.compile("'d\\b")};
+    private static final String[] EXPANSIONS = {" not", " are", " is", " am", " will", " have", " would"};
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final LiveProperties properties;
+    private final ResponseSegmentStore store; // null without a directory
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter diskHits;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock. Entry slots: signature, numbers and model fingerprint, answer, LRU links
+    private final int capacity;
+    private final int[] signatures;
+    private final long[] exactKeys;
+    private final String[] answers;
+    private final int[] lruPrev;
+    private final int[] lruNext;
+    private int lruHead = NONE;
+    private int lruTail = NONE;
+    private int size;
+    // LSH index: a hash table per band with chains through band entries (slot * BANDS + band)
+    private final int tableMask;
+    private final int[] buckets;
+    private final int[] bandKeys;
+    private final int[] chainNext;
+
+    @Autowired
+    public MinHashResponseCache(ApplicationProperties startup, LiveProperties properties, MeterRegistry registry)
+            throws IOException {
+        this(startup.responseCache().maxEntries(), openStore(startup.responseCache()), properties, registry);
+    }
+
+    MinHashResponseCache(int capacity, ResponseSegmentStore store, LiveProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.store = store;
+        this.capacity = capacity;
+        this.signatures = new int[capacity * HASHES];
+        this.exactKeys = new long[capacity];
+        this.answers = new String[capacity];
+        this.lruPrev = new int[capacity];
+        this.lruNext = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.tableMask = tableSize - 1;
+        this.buckets = new int[BANDS * tableSize];
+        Arrays.fill(buckets, NONE);
+        this.bandKeys = new int[capacity * BANDS];
+        this.chainNext = new int[capacity * BANDS];
+        this.hits = counter(registry, "hit");
+        this.misses = counter(registry, "miss");
+        this.diskHits = Counter.builder("aiassistant.response_cache.disk.hits")
+                .description("Response cache hits served from the memory-mapped segments")
+                .register(registry);
+    }
+
+    private static ResponseSegmentStore openStore(ApplicationProperties.ResponseCacheProperties config)
+            throws IOException {
+        if (config.directory() == null || config.directory().isBlank()) {
+            return null;
+        }
+        return new ResponseSegmentStore(Path.of(config.directory()), config.segmentBytes(), config.maxSegments());
+    }
+
+    @Override
+    public Optional<String> find(String model, String prompt) {
+        ApplicationProperties.ResponseCacheProperties config = properties.get().responseCache();
+        if (!config.enabled()) {
+            return Optional.empty();
+        }
+        String text = normalize(prompt);
+        int[] signature = signature(text);
+        long exactKey = exactKey(model, text);
+        int minMatches = (int) Math.ceil(config.similarityThreshold() * HASHES);
+
+        lock.lock();
+        try {
+            int slot = mostSimilar(signature, exactKey, minMatches);
+            if (slot != NONE) {
+                unlinkLru(slot);
+                linkLruHead(slot);
+                hits.increment();
+                return Optional.of(answers[slot]);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        Optional<String> stored = store == null ? Optional.empty() : store.get(storeKey(model, text));
+        if (stored.isEmpty()) {
+            misses.increment();
+            return stored;
+        }
+        remember(signature, exactKey, stored.get());
+        hits.increment();
+        diskHits.increment();
+        return stored;
+    }
+
+    @Override
+    public void put(String model, String prompt, String answer) {
+        if (!properties.get().responseCache().enabled()) {
+            return;
+        }
+        String text = normalize(prompt);
+        remember(signature(text), exactKey(model, text), answer);
+        if (store != null) {
+            store.put(storeKey(model, text), answer);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private void remember(int[] signature, long exactKey, String answer) {
+        lock.lock();
+        try {
+            int slot = mostSimilar(signature, exactKey, HASHES);
+            if (slot != NONE) {
+                // Same prompt as far as the cache can tell: keep the newer answer
+                unlinkLru(slot);
+            } else {
+                if (size < capacity) {
+                    slot = size++;
+                } else {
+                    slot = lruTail;
+                    unlinkLru(slot);
+                    unlinkBands(slot);
+                }
+                System.arraycopy(signature, 0, signatures, slot * HASHES, HASHES);
+                exactKeys[slot] = exactKey;
+                linkBands(slot);
+            }
+            answers[slot] = answer;
+            linkLruHead(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Find the cached prompt sharing the most signature positions with the given one
+     *
+     * @return its slot, or NONE if no candidate reaches minMatches
+     */
+    private int mostSimilar(int[] signature, long exactKey, int minMatches) {
+        int best = NONE;
+        int bestMatches = minMatches - 1;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(signature, 0, band);
+            for (int entry = buckets[bucket(band, key)]; entry != NONE; entry = chainNext[entry]) {
+                int slot = entry / BANDS;
+                if (bandKeys[entry] != key || exactKeys[slot] != exactKey || slot == best) {
+                    continue;
+                }
+                int matches = matches(signature, slot);
+                if (matches > bestMatches) {
+                    best = slot;
+                    bestMatches = matches;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int matches(int[] signature, int slot) {
+        int offset = slot * HASHES;
+        int matches = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (signatures[offset + i] == signature[i]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private void linkBands(int slot) {
+        for (int band = 0; band < BANDS; band++) {
+            int entry = slot * BANDS + band;
+            int key = bandKey(signatures, slot * HASHES, band);
+            int bucket = bucket(band, key);
+            bandKeys[entry] = key;
+            chainNext[entry] = buckets[bucket];
+            buckets[bucket] = entry;
+        }
+    }
+
+    private void unlinkBands(int slot) {
+        for (int band = 0; band < BANDS; band++) {
+            int entry = slot * BANDS + band;
+            int bucket = bucket(band, bandKeys[entry]);
+            if (buckets[bucket] == entry) {
+                buckets[bucket] = chainNext[entry];
+                continue;
+            }
+            int previous = buckets[bucket];
+            while (chainNext[previous] != entry) {
+                previous = chainNext[previous];
+            }
+            chainNext[previous] = chainNext[entry];
+        }
+    }
+
+    private void linkLruHead(int slot) {
+        lruPrev[slot] = NONE;
+        lruNext[slot] = lruHead;
+        if (lruHead != NONE) {
+            lruPrev[lruHead] = slot;
+        }
+        lruHead = slot;
+        if (lruTail == NONE) {
+            lruTail = slot;
+        }
+    }
+
+    private void unlinkLru(int slot) {
+        int prev = lruPrev[slot];
+        int next = lruNext[slot];
+        if (prev != NONE) {
+            lruNext[prev] = next;
+        } else {
+            lruHead = next;
+        }
+        if (next != NONE) {
+            lruPrev[next] = prev;
+        } else {
+            lruTail = prev;
+        }
+    }
+
+    private int bucket(int band, int key) {
+        return band * (tableMask + 1) + (int) (mix(key) & tableMask);
+    }
+
+    private static int bandKey(int[] signature, int offset, int band) {
+        int key = 1;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = 31 * key + signature[offset + i];
+        }
+        return key;
+    }
+
+    /**
+     * Lower-case the prompt and reduce it to words separated by single spaces
+     */
+    static String normalize(String prompt) {
+        String text = APOSTROPHE.matcher(prompt.toLowerCase(Locale.ROOT).replace('ё', 'е')).replaceAll("'");
+        for (int i = 0; i < CONTRACTIONS.length; i++) {
+            text = CONTRACTIONS[i].matcher(text).replaceAll(EXPANSIONS[i]);
+        }
+        return NON_WORD.matcher(text).replaceAll(" ").trim();
+    }
+
+    /**
+     * MinHash over the character trigrams of a normalized prompt
+     */
+    static int[] signature(String text) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        if (text.length() < SHINGLE) {
+            addFeature(signature, text.hashCode());
+            return signature;
+        }
+        for (int i = 0; i + SHINGLE <= text.length(); i++) {
+            int feature = 0;
+            for (int j = i; j < i + SHINGLE; j++) {
+                feature = 31 * feature + text.charAt(j);
+            }
+            addFeature(signature, feature);
+        }
+        return signature;
+    }
+
+    private static void addFeature(int[] signature, int feature) {
+        for (int i = 0; i < HASHES; i++) {
+            int hash = (int) (mix(feature ^ SEEDS[i]) >>> 32);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+            }
+        }
+    }
+
+    /**
+     * Hash of the numbers in a normalized prompt, 0 if it has none
+     */
+    static long numberFingerprint(String text) {
+        long fingerprint = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                fingerprint = fingerprint * 31 + c;
+                inNumber = true;
+            } else if (inNumber) {
+                fingerprint = fingerprint * 31 + ' ';
+                inNumber = false;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Part of the key that must match exactly: the numbers in the prompt and the model
+     */
+    private static long exactKey(String model, String text) {
+        return numberFingerprint(text) * 31 + model.hashCode();
+    }
+
+    /**
+     * 64-bit FNV-1a of the model and the normalized prompt, the key in the segment store
+     */
+    static long storeKey(String model, String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < model.length(); i++) {
+            hash = (hash ^ model.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ '\n') * 0x100000001b3L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("aiassistant.response_cache.requests")
+                .description("Response cache lookups")
+                .tag("result", result)
+                .register(registry);
+    }
+}
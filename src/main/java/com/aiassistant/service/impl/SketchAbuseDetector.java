@@ -0,0 +1,221 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.service.AbuseDetector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming abuse detector in fixed memory.
+ * Follows Single Responsibility Principle - handles only abuse detection.
+ * A Count-Min Sketch counts message fingerprints twice: by text alone (floods from many
+ * accounts) and by sender and text (one account repeating itself). A message whose count
+ * reaches its threshold within the window is throttled. Throttled senders are counted in
+ * a Space-Saving top-K, and a sender is flagged once offenses that are certainly theirs reach
+ * offenseThreshold: a slot taken over from another sender keeps its count as the new
+ * sender's overestimation error, which is subtracted before the comparison.
+ * <p>
+ * The window slides in 6 sub-windows, each with its own sketch and top-K, so an expired
+ * sub-window is dropped by clearing it. Memory depends only on sketchWidth and
+ * trackedOffenders, never on the number of users; both estimates can only overcount.
+ */
+@Service
+public class SketchAbuseDetector implements AbuseDetector {
+
+    private static final int SUB_WINDOWS = 6;
+    private static final int DEPTH = 4;
+    // Short texts such as greetings are legitimately sent by many users at once
+    private static final int MIN_SHARED_LENGTH = 20;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final LiveProperties properties;
+    private final Clock clock;
+    private final Counter throttled;
+    private final Counter flagged;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock. Per sub-window: sketch rows, and the top-K offenders with their counts and errors
+    private final long subWindowMillis;
+    private final int width;
+    private final int[][] sketches;
+    private final long[][] offenders;
+    private final int[][] offenses;
+    private final int[][] errors;
+    private final int[] tracked;
+    private long subWindow;
+
+    @Autowired
+    public SketchAbuseDetector(ApplicationProperties startup, LiveProperties properties, MeterRegistry registry) {
+        this(startup, properties, registry, Clock.systemUTC());
+    }
+
+    SketchAbuseDetector(ApplicationProperties startup, LiveProperties properties, MeterRegistry registry, Clock clock) {
+        ApplicationProperties.AbuseProperties abuse = startup.abuse();
+        this.properties = properties;
+        this.clock = clock;
+        this.subWindowMillis = TimeUnit.SECONDS.toMillis(abuse.windowSeconds()) / SUB_WINDOWS;
+        // Power of two, so a hash is reduced to a column with a mask
+        this.width = Integer.highestOneBit(abuse.sketchWidth() - 1) << 1;
+        this.sketches = new int[SUB_WINDOWS][DEPTH * width];
+        this.offenders = new long[SUB_WINDOWS][abuse.trackedOffenders()];
+        this.offenses = new int[SUB_WINDOWS][abuse.trackedOffenders()];
+        this.errors = new int[SUB_WINDOWS][abuse.trackedOffenders()];
+        this.tracked = new int[SUB_WINDOWS];
+        this.subWindow = clock.millis() / subWindowMillis;
+        this.throttled = counter(registry, "throttled");
+        this.flagged = counter(registry, "flagged");
+    }
+
+    @Override
+    public Verdict inspect(Long userId, String text) {
+        ApplicationProperties.AbuseProperties config = properties.get().abuse();
+        if (!config.enabled()) {
+            return Verdict.ALLOW;
+        }
+        String normalized = normalize(text);
+        long content = fingerprint(normalized);
+        long repeat = mix(content ^ mix(userId));
+
+        lock.lock();
+        try {
+            int current = advance();
+            boolean flood = normalized.length() >= MIN_SHARED_LENGTH
+                    && add(current, content) >= config.duplicateThreshold();
+            boolean repeated = add(current, repeat) >= config.repeatThreshold();
+            if (!flood && !repeated) {
+                return Verdict.ALLOW;
+            }
+            int before = offenses(userId);
+            recordOffense(current, userId);
+            if (before < config.offenseThreshold() && offenses(userId) >= config.offenseThreshold()) {
+                flagged.increment();
+                return Verdict.FLAG;
+            }
+            throttled.increment();
+            return Verdict.THROTTLE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move to the sub-window of the current time, clearing the ones that expired
+     *
+     * @return index of the current sub-window
+     */
+    private int advance() {
+        long now = clock.millis() / subWindowMillis;
+        for (long expired = Math.max(subWindow + 1, now - SUB_WINDOWS + 1); expired <= now; expired++) {
+            int index = (int) (expired % SUB_WINDOWS);
+            Arrays.fill(sketches[index], 0);
+            tracked[index] = 0;
+        }
+        subWindow = Math.max(subWindow, now);
+        return (int) (subWindow % SUB_WINDOWS);
+    }
+
+    /**
+     * Count a key in the current sub-window
+     *
+     * @return estimated count of the key over the whole window
+     */
+    private int add(int current, long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int column = row * width + ((h1 + row * h2) & (width - 1));
+            sketches[current][column]++;
+            int sum = 0;
+            for (int[] sketch : sketches) {
+                sum += sketch[column];
+            }
+            estimate = Math.min(estimate, sum);
+        }
+        return estimate;
+    }
+
+    /**
+     * Space-Saving: a new offender takes over the least counted slot of a full table,
+     * and the count it inherits is remembered as the slot's error
+     */
+    private void recordOffense(int current, long userId) {
+        long[] ids = offenders[current];
+        int[] counts = offenses[current];
+        int[] inherited = errors[current];
+        int size = tracked[current];
+        int min = 0;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == userId) {
+                counts[i]++;
+                return;
+            }
+            if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+        if (size < ids.length) {
+            ids[size] = userId;
+            counts[size] = 1;
+            inherited[size] = 0;
+            tracked[current] = size + 1;
+        } else {
+            ids[min] = userId;
+            inherited[min] = counts[min];
+            counts[min]++;
+        }
+    }
+
+    /**
+     * Offenses of a sender over the window, without what its slots inherited; never an overestimate
+     */
+    private int offenses(long userId) {
+        int total = 0;
+        for (int window = 0; window < SUB_WINDOWS; window++) {
+            for (int i = 0; i < tracked[window]; i++) {
+                if (offenders[window][i] == userId) {
+                    total += offenses[window][i] - errors[window][i];
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+
+    static String normalize(String text) {
+        return WHITESPACE.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    // 64-bit FNV-1a
+    private static long fingerprint(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static Counter counter(MeterRegistry registry, String action) {
+        return Counter.builder("aiassistant.abuse.messages")
+                .description("Messages dropped as spam")
+                .tag("action", action)
+                .register(registry);
+    }
+}
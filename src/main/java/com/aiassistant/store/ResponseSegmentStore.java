@@ -0,0 +1,457 @@
+package com.aiassistant.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Persistent key-value store for cached AI answers in memory-mapped segment files.
+ * Values are deflated UTF-8 and stay off-heap in the mapping; only a key-to-location index
+ * of primitive arrays lives on the heap, and a value becomes a String only when it is read.
+ * <p>
+ * Records are appended to the newest segment. When it is full a new segment is started, and
+ * once there are more than maxSegments the oldest one is compacted: records that were read
+ * since they were written are copied to the new segment as they are, the rest are dropped
+ * together with the file.
+ * <p>
+ * Record layout: {@code [long key][int compressedLength][int rawLength][int crc32c][compressed]};
+ * a zero length marks the end of a segment and the sign bit of rawLength marks a record that
+ * was read, so reads survive a restart. Startup only walks the record headers to rebuild
+ * the index, so the cache is warm right away; the CRC is checked when a record is read,
+ * outside the lock. A restart keeps appending to the newest segment while it has room, so
+ * quick restarts do not push unread records into compaction; every append zeroes the length
+ * after its record, so a scan stops there even when it overwrote a torn tail.
+ */
+@Slf4j
+public class ResponseSegmentStore implements Closeable {
+
+    private static final Pattern FILE_NAME = Pattern.compile("responses-(\\d+)\\.segment");
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES * 3;
+    private static final int MAX_RAW_LENGTH = 1 << 24;
+    private static final long READ = 1L << 63;
+    private static final int READ_MARK = Integer.MIN_VALUE;
+    private static final int COMPRESSED_LENGTH = Long.BYTES;
+    private static final int RAW_LENGTH = COMPRESSED_LENGTH + Integer.BYTES;
+    private static final int CRC = RAW_LENGTH + Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Index index = new Index();
+    private Segment active;
+
+    public ResponseSegmentStore(Path directory, int segmentBytes, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+
+        long startedAt = System.nanoTime();
+        Segment last = null;
+        for (int number : numbers(directory)) {
+            last = map(number, false);
+            segments.put(number, last);
+            scan(last);
+        }
+        log.info("Recovered {} cached responses from {} in {} ms", index.size, directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        lock.lock();
+        try {
+            if (last != null && last.end + HEADER_SIZE < last.buffer.capacity()) {
+                active = last;
+            } else {
+                roll(last == null ? 1 : last.number + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the value stored under a key
+     *
+     * @return the value, or empty if it is missing or its record is damaged
+     */
+    public Optional<String> get(long key) {
+        Segment segment;
+        int offset;
+        lock.lock();
+        try {
+            long location = index.get(key);
+            if (location == 0) {
+                return Optional.empty();
+            }
+            segment = segments.get(segmentOf(location));
+            offset = offsetOf(location);
+            if ((location & READ) == 0) {
+                // Survives the next compaction of its segment
+                segment.buffer.putInt(offset + RAW_LENGTH, segment.buffer.getInt(offset + RAW_LENGTH) | READ_MARK);
+                index.put(key, location | READ);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Written records never change, and the mapping stays valid after compaction deletes the file
+        String value = read(segment.buffer, offset);
+        if (value == null) {
+            log.warn("Dropping damaged cached response in {} at {}", segment.file, offset);
+            lock.lock();
+            try {
+                if ((index.get(key) & ~READ) == location(segment.number, offset)) {
+                    index.remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return Optional.empty();
+        }
+        return Optional.of(value);
+    }
+
+    /**
+     * Store a value, replacing the one stored under the same key
+     */
+    public void put(long key, String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > MAX_RAW_LENGTH) {
+            return;
+        }
+        // Compress outside the lock
+        byte[] compressed = deflate(raw);
+        CRC32C crc = new CRC32C();
+        crc.update(compressed);
+
+        lock.lock();
+        try {
+            int length = HEADER_SIZE + compressed.length;
+            if (length > active.buffer.capacity()) {
+                return;
+            }
+            if (active.end + length > active.buffer.capacity()) {
+                roll(active.number + 1);
+            }
+            int offset = active.end;
+            active.buffer.putLong(offset, key)
+                    .putInt(offset + RAW_LENGTH, raw.length)
+                    .putInt(offset + CRC, (int) crc.getValue())
+                    .put(offset + HEADER_SIZE, compressed);
+            terminate(active, offset + length);
+            // Length last: a record is not visible to a scan before it is complete
+            active.buffer.putInt(offset + COMPRESSED_LENGTH, compressed.length);
+            active.end += length;
+            index.put(key, location(active.number, offset));
+        } catch (IOException e) {
+            log.warn("Failed to start a new response cache segment in {}", directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return index.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the mapped segments back to disk. The mappings themselves are released by the GC.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start a new active segment and compact the oldest one if there are too many
+     */
+    private void roll(int number) throws IOException {
+        active = map(number, true);
+        segments.put(number, active);
+        while (segments.size() > maxSegments) {
+            compact(segments.firstEntry().getValue());
+        }
+    }
+
+    private void compact(Segment oldest) throws IOException {
+        int kept = 0;
+        int dropped = 0;
+        MappedByteBuffer buffer = oldest.buffer;
+        for (int offset = 0; offset < oldest.end; offset += HEADER_SIZE + buffer.getInt(offset + COMPRESSED_LENGTH)) {
+            long key = buffer.getLong(offset);
+            long location = index.get(key);
+            if ((location & ~READ) != location(oldest.number, offset)) {
+                // Replaced by a newer record
+                continue;
+            }
+            int length = HEADER_SIZE + buffer.getInt(offset + COMPRESSED_LENGTH);
+            if ((location & READ) != 0 && active.end + length <= active.buffer.capacity()) {
+                terminate(active, active.end + length);
+                active.buffer.put(active.end, buffer, offset, length);
+                active.buffer.putInt(active.end + RAW_LENGTH, buffer.getInt(offset + RAW_LENGTH) & ~READ_MARK);
+                index.put(key, location(active.number, active.end));
+                active.end += length;
+                kept++;
+            } else {
+                index.remove(key);
+                dropped++;
+            }
+        }
+        segments.remove(oldest.number);
+        oldest.buffer.force();
+        try {
+            Files.deleteIfExists(oldest.file);
+        } catch (IOException e) {
+            // e.g. a platform that cannot delete a mapped file; it is reused after a restart
+            log.warn("Failed to delete compacted response cache segment {}", oldest.file, e);
+        }
+        log.debug("Compacted {}: kept {} responses, dropped {}", oldest.file, kept, dropped);
+    }
+
+    /**
+     * Index the records of a segment, up to its end or the first record that cannot be complete
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int compressedLength = buffer.getInt(offset + COMPRESSED_LENGTH);
+            int rawLength = buffer.getInt(offset + RAW_LENGTH);
+            if (compressedLength <= 0 || compressedLength > buffer.capacity() - offset - HEADER_SIZE
+                    || (rawLength & ~READ_MARK) > MAX_RAW_LENGTH) {
+                break;
+            }
+            long read = rawLength < 0 ? READ : 0;
+            index.put(buffer.getLong(offset), location(segment.number, offset) | read);
+            offset += HEADER_SIZE + compressedLength;
+        }
+        segment.end = offset;
+    }
+
+    /**
+     * Mark the end of a segment, in case the bytes there are left over from a torn record
+     */
+    private static void terminate(Segment segment, int end) {
+        if (end + HEADER_SIZE <= segment.buffer.capacity()) {
+            segment.buffer.putInt(end + COMPRESSED_LENGTH, 0);
+        }
+    }
+
+    private static String read(MappedByteBuffer buffer, int offset) {
+        int compressedLength = buffer.getInt(offset + COMPRESSED_LENGTH);
+        int rawLength = buffer.getInt(offset + RAW_LENGTH) & ~READ_MARK;
+        int expectedCrc = buffer.getInt(offset + CRC);
+        ByteBuffer compressed = buffer.slice(offset + HEADER_SIZE, compressedLength);
+
+        CRC32C crc = new CRC32C();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        // Inflate straight from the mapping into the only heap copy
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                length += inflated;
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] compressed = new byte[raw.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            return Arrays.copyOf(compressed, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Segment map(int number, boolean create) throws IOException {
+        Path file = directory.resolve("responses-" + number + ".segment");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Existing segments keep their size when segment-bytes is changed
+            long size = create || channel.size() == 0 ? segmentBytes : Math.min(channel.size(), Integer.MAX_VALUE);
+            return new Segment(number, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private static List<Integer> numbers(Path directory) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static long location(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) ((location & ~READ) >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static final class Segment {
+
+        private final int number;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int end;
+
+        Segment(int number, Path file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Open-addressing map from key to record location with linear probing.
+     * Key 0 is stored as 1 so 0 can mark free slots; location 0 means "absent"
+     * because segment numbers start at 1.
+     */
+    private static final class Index {
+
+        private long[] keys = new long[1024];
+        private long[] locations = new long[1024];
+        private int size;
+
+        long get(long key) {
+            key = key == 0 ? 1 : key;
+            int mask = keys.length - 1;
+            for (int slot = home(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return locations[slot];
+                }
+            }
+            return 0;
+        }
+
+        void put(long key, long location) {
+            key = key == 0 ? 1 : key;
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = home(key, mask);
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                size++;
+            }
+            locations[slot] = location;
+        }
+
+        void remove(long key) {
+            key = key == 0 ? 1 : key;
+            int mask = keys.length - 1;
+            int gap = home(key, mask);
+            while (keys[gap] != key) {
+                if (keys[gap] == 0) {
+                    return;
+                }
+                gap = (gap + 1) & mask;
+            }
+            // Backward-shift deletion keeps every probe chain unbroken without tombstones
+            for (int slot = (gap + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                int home = home(keys[slot], mask);
+                if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                    keys[gap] = keys[slot];
+                    locations[gap] = locations[slot];
+                    gap = slot;
+                }
+            }
+            keys[gap] = 0;
+            locations[gap] = 0;
+            size--;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldLocations = locations;
+            keys = new long[oldKeys.length * 2];
+            locations = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldLocations[i]);
+                }
+            }
+        }
+
+        private static int home(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
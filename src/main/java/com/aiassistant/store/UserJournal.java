@@ -0,0 +1,329 @@
+package com.aiassistant.store;
+
+import com.aiassistant.model.TelegramUser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of user changes with group-commit fsync.
+ * Callers only enqueue records; a single writer thread batches everything queued
+ * since its previous write into one write followed by one fsync, and syncs at
+ * most once per flush interval, so the message path never waits for the disk.
+ * <p>
+ * Record layout: {@code [int payloadLength][int crc32c][payload]}, where the
+ * payload is produced by {@link UserRecordCodec}. A torn record at the tail of
+ * the last journal is detected by length/CRC and ignored on replay.
+ * <p>
+ * When a write fails, the partly written tail is truncated, every sync or rotate
+ * request after the last durable point fails, and the records that were not written
+ * are retried ahead of the next batch.
+ */
+@Slf4j
+public class UserJournal implements Closeable {
+
+    private static final Pattern FILE_NAME = Pattern.compile("users-(\\d+)\\.journal");
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int MAX_BATCH = 4096;
+    private static final Object STOP = new Object();
+
+    private final Path directory;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+    private FileChannel channel;
+    private long generation;
+    // Records of a failed write, retried first; used only by the writer thread
+    private final List<TelegramUser> unwritten = new ArrayList<>();
+
+    public UserJournal(Path directory, long generation, long flushIntervalMs) throws IOException {
+        this.directory = directory;
+        this.flushIntervalMs = flushIntervalMs;
+        this.generation = generation;
+        this.channel = open(generation);
+        this.writer = new Thread(this::writeLoop, "user-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Enqueue the latest state of a user. Never blocks on I/O.
+     */
+    public void append(TelegramUser user) {
+        queue.add(user);
+    }
+
+    /**
+     * Switch writing to a new journal generation.
+     * Every record appended before this call lands in the old generation.
+     *
+     * @return future completed with the new generation once the old file is synced
+     */
+    public CompletableFuture<Long> rotate() {
+        Barrier marker = new Barrier(true, new CompletableFuture<>());
+        queue.add(marker);
+        return marker.done();
+    }
+
+    /**
+     * Wait-free request to make everything appended so far durable
+     *
+     * @return future completed with the current generation once the records are synced
+     */
+    public CompletableFuture<Long> sync() {
+        Barrier marker = new Barrier(false, new CompletableFuture<>());
+        queue.add(marker);
+        return marker.done();
+    }
+
+    /**
+     * Flush all pending records and stop the writer thread
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.add(STOP);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Delete journal files older than the given generation
+     */
+    public static void deleteBefore(Path directory, long generation) throws IOException {
+        for (long existing : generations(directory)) {
+            if (existing < generation) {
+                Files.deleteIfExists(fileFor(directory, existing));
+            }
+        }
+    }
+
+    /**
+     * Replay all journals starting from the given generation, in order
+     *
+     * @return highest generation found, or {@code fromGeneration - 1} if none
+     */
+    public static long replay(Path directory, long fromGeneration, Consumer<TelegramUser> consumer) throws IOException {
+        long last = fromGeneration - 1;
+        for (long generation : generations(directory)) {
+            if (generation < fromGeneration) {
+                continue;
+            }
+            replayFile(fileFor(directory, generation), consumer);
+            last = generation;
+        }
+        return last;
+    }
+
+    private static void replayFile(Path file, Consumer<TelegramUser> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C crc = new CRC32C();
+            byte[] scratch = new byte[256];
+            int records = 0;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    log.warn("Truncated record at offset {} in {}, ignoring tail", buffer.position() - HEADER_SIZE, file);
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Corrupted record at offset {} in {}, ignoring tail", buffer.position() - HEADER_SIZE, file);
+                    break;
+                }
+                consumer.accept(UserRecordCodec.decode(payload, scratch));
+                buffer.position(buffer.position() + length);
+                records++;
+            }
+            log.debug("Replayed {} records from {}", records, file);
+        }
+    }
+
+    private static List<Long> generations(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(path -> FILE_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path fileFor(Path directory, long generation) {
+        return directory.resolve("users-" + generation + ".journal");
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        Files.createDirectories(directory);
+        return FileChannel.open(fileFor(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                Object first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null && unwritten.isEmpty()) {
+                    continue;
+                }
+                batch.addAll(unwritten);
+                unwritten.clear();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+                stopped = batch.contains(STOP);
+                long startedAt = System.nanoTime();
+                try {
+                    writeBatch(batch, crc);
+                } catch (IOException e) {
+                    log.error("Failed to write user journal batch, {} records will be retried", unwritten.size(), e);
+                }
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                if (!stopped && elapsedMs < flushIntervalMs) {
+                    // Commit delay: let concurrent appends accumulate into the next batch
+                    Thread.sleep(flushIntervalMs - elapsedMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } finally {
+                batch.clear();
+            }
+        }
+        if (!unwritten.isEmpty()) {
+            log.error("User journal stopped with {} records that could not be written", unwritten.size());
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close user journal", e);
+        }
+    }
+
+    private void writeBatch(List<Object> batch, CRC32C crc) throws IOException {
+        List<ByteBuffer> pending = new ArrayList<>(batch.size());
+        // Entries before this index are durable and their barriers completed
+        int durable = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i) instanceof TelegramUser user) {
+                    byte[] payload = UserRecordCodec.encode(user);
+                    crc.reset();
+                    crc.update(payload);
+                    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+                    record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                    pending.add(record);
+                } else if (batch.get(i) instanceof Barrier barrier) {
+                    writeAndSync(pending);
+                    pending.clear();
+                    durable = i;
+                    if (barrier.rotate()) {
+                        switchTo(generation + 1);
+                    }
+                    barrier.done().complete(generation);
+                    durable = i + 1;
+                }
+            }
+            writeAndSync(pending);
+        } catch (IOException e) {
+            for (Object entry : batch.subList(durable, batch.size())) {
+                if (entry instanceof TelegramUser user) {
+                    unwritten.add(user);
+                } else if (entry instanceof Barrier barrier) {
+                    barrier.done().completeExceptionally(e);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void writeAndSync(List<ByteBuffer> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = channel.size();
+        try {
+            ByteBuffer[] buffers = records.toArray(ByteBuffer[]::new);
+            long remaining = records.stream().mapToLong(ByteBuffer::remaining).sum();
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            discardFrom(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop a partly written tail, so records retried after it are not hidden behind a torn record on replay
+     */
+    private void discardFrom(long position) {
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            log.warn("Failed to truncate user journal {}, continuing in the next generation", generation, e);
+            try {
+                switchTo(generation + 1);
+            } catch (IOException reopenFailure) {
+                log.warn("Failed to open user journal {}", generation + 1, reopenFailure);
+            }
+        }
+    }
+
+    /**
+     * Continue in another journal file; the current one is left as it is if the new one cannot be opened
+     */
+    private void switchTo(long next) throws IOException {
+        FileChannel previous = channel;
+        channel = open(next);
+        generation = next;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            // Nothing is written to it any more
+            log.warn("Failed to close user journal {}", next - 1, e);
+        }
+    }
+
+    private record Barrier(boolean rotate, CompletableFuture<Long> done) {
+    }
+}
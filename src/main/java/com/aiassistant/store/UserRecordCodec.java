@@ -0,0 +1,122 @@
+package com.aiassistant.store;
+
+import com.aiassistant.model.TelegramUser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Binary codec for TelegramUser records shared by the journal and the snapshot.
+ * Follows Single Responsibility Principle - handles only record (de)serialization.
+ */
+public final class UserRecordCodec {
+
+    private static final short NULL_STRING = -1;
+
+    private UserRecordCodec() {
+    }
+
+    /**
+     * Encode user into a standalone byte array
+     */
+    public static byte[] encode(TelegramUser user) {
+        byte[] username = bytes(user.getUsername());
+        byte[] firstName = bytes(user.getFirstName());
+        byte[] lastName = bytes(user.getLastName());
+        byte[] languageCode = bytes(user.getLanguageCode());
+
+        int size = Long.BYTES                       // userId
+                + stringSize(username) + stringSize(firstName)
+                + stringSize(lastName) + stringSize(languageCode)
+                + Long.BYTES + Long.BYTES           // firstSeenAt, lastSeenAt
+                + Integer.BYTES                     // messageCount
+                + Byte.BYTES;                       // isBlocked
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(user.getUserId());
+        putString(buffer, username);
+        putString(buffer, firstName);
+        putString(buffer, lastName);
+        putString(buffer, languageCode);
+        buffer.putLong(toEpochMillis(user.getFirstSeenAt()));
+        buffer.putLong(toEpochMillis(user.getLastSeenAt()));
+        buffer.putInt(user.getMessageCount() != null ? user.getMessageCount() : 0);
+        buffer.put((byte) (Boolean.TRUE.equals(user.getIsBlocked()) ? 1 : 0));
+        return buffer.array();
+    }
+
+    /**
+     * Decode user from the buffer's current position, advancing it past the record
+     */
+    public static TelegramUser decode(ByteBuffer buffer) {
+        return decode(buffer, new byte[256]);
+    }
+
+    /**
+     * Decode user reusing a scratch array for string bytes (bulk loading)
+     */
+    public static TelegramUser decode(ByteBuffer buffer, byte[] scratch) {
+        long userId = buffer.getLong();
+        String username = getString(buffer, scratch);
+        String firstName = getString(buffer, scratch);
+        String lastName = getString(buffer, scratch);
+        String languageCode = getString(buffer, scratch);
+        LocalDateTime firstSeenAt = fromEpochMillis(buffer.getLong());
+        LocalDateTime lastSeenAt = fromEpochMillis(buffer.getLong());
+        int messageCount = buffer.getInt();
+        boolean blocked = buffer.get() != 0;
+
+        return TelegramUser.builder()
+                .userId(userId)
+                .username(username)
+                .firstName(firstName)
+                .lastName(lastName)
+                .languageCode(languageCode)
+                .firstSeenAt(firstSeenAt)
+                .lastSeenAt(lastSeenAt)
+                .messageCount(messageCount)
+                .isBlocked(blocked)
+                .build();
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] value) {
+        return Short.BYTES + (value != null ? value.length : 0);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort(NULL_STRING);
+            return;
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer, byte[] scratch) {
+        short length = buffer.getShort();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] target = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(target, 0, length);
+        return new String(target, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochMillis(LocalDateTime value) {
+        return value != null ? value.toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    private static LocalDateTime fromEpochMillis(long value) {
+        if (value == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1000L),
+                (int) Math.floorMod(value, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
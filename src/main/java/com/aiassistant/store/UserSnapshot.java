@@ -0,0 +1,115 @@
+package com.aiassistant.store;
+
+import com.aiassistant.model.TelegramUser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compacted snapshot of all users, loaded on startup through a memory mapping.
+ * <p>
+ * Layout: {@code [int magic][int version][long journalGeneration][int count]},
+ * followed by {@code count} records of {@code [int length][payload]} and a
+ * trailing CRC32C over the records. The generation tells recovery which journal
+ * files still have to be replayed on top of the snapshot.
+ */
+@Slf4j
+public final class UserSnapshot {
+
+    private static final int MAGIC = 0x55534E50; // "USNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES;
+    private static final String FILE_NAME = "users.snapshot";
+
+    private UserSnapshot() {
+    }
+
+    /**
+     * Atomically replace the snapshot with the given users.
+     * The collection must not change while it is being written.
+     */
+    public static void write(Path directory, long journalGeneration, Collection<TelegramUser> users) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream header = new DataOutputStream(raw);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(journalGeneration);
+            header.writeInt(users.size());
+
+            CRC32C crc = new CRC32C();
+            DataOutputStream body = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+            for (TelegramUser user : users) {
+                byte[] payload = UserRecordCodec.encode(user);
+                body.writeInt(payload.length);
+                body.write(payload);
+            }
+            body.flush();
+            header.writeInt((int) crc.getValue());
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote user snapshot with {} users (journal generation {})", users.size(), journalGeneration);
+    }
+
+    /**
+     * Load users from the snapshot, if present
+     *
+     * @return journal generation to replay from, or 0 when there is no snapshot
+     */
+    public static long load(Path directory, Consumer<TelegramUser> consumer) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE + Integer.BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a user snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported user snapshot version " + version + ": " + file);
+            }
+            long generation = buffer.getLong();
+            int count = buffer.getInt();
+
+            ByteBuffer records = buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE - Integer.BYTES);
+            CRC32C crc = new CRC32C();
+            crc.update(records.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+                throw new IOException("User snapshot checksum mismatch: " + file);
+            }
+
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = records.getInt();
+                consumer.accept(UserRecordCodec.decode(records.slice(records.position(), length), scratch));
+                records.position(records.position() + length);
+            }
+            log.info("Loaded {} users from snapshot (journal generation {})", count, generation);
+            return generation;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.aiassistant.traffic;
+
+/**
+ * One entry of the traffic shape log. Carries sizes and timings only,
+ * never message text, so a capture can be kept and shared without user content.
+ */
+public sealed interface TrafficEvent permits TrafficEvent.Update, TrafficEvent.AiCall {
+
+    /**
+     * Wall-clock time of the event in microseconds since the epoch
+     */
+    long epochMicros();
+
+    /**
+     * Text message received from Telegram
+     *
+     * @param textChars message length in characters
+     * @param command   whether the message was a bot command
+     */
+    record Update(long epochMicros, long userId, long chatId, int textChars, boolean command) implements TrafficEvent {
+    }
+
+    /**
+     * Completed call to the AI provider
+     *
+     * @param chatId        chat the call was made for, 0 for calls outside a chat
+     * @param responseChars reply length in characters, 0 on failure
+     * @param latencyMicros time from sending the request to the parsed reply
+     * @param status        200 on success, -1 on any failure
+     */
+    record AiCall(long epochMicros, long chatId, int promptTokens, int completionTokens, int responseChars,
+                  int latencyMicros, int status) implements TrafficEvent {
+
+        public boolean succeeded() {
+            return status == 200;
+        }
+    }
+}
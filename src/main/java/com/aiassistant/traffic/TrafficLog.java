@@ -0,0 +1,103 @@
+package com.aiassistant.traffic;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of traffic shape captures.
+ * <p>
+ * A file starts with {@code [int magic "AITR"][short version]} followed by fixed-size
+ * big-endian records:
+ * <pre>
+ * UPDATE  (30 bytes): [byte 1][long epochMicros][long userId][long chatId][int textChars][byte command]
+ * AI_CALL (35 bytes): [byte 2][long epochMicros][long chatId][int promptTokens][int completionTokens]
+ *                     [int responseChars][int latencyMicros][short status]
+ * </pre>
+ * A record cut short at the tail (the process died mid-write) is ignored on read.
+ */
+@Slf4j
+public final class TrafficLog {
+
+    static final int MAGIC = 0x41495452; // "AITR"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    static final int MAX_RECORD_SIZE = 35;
+
+    private static final byte UPDATE = 1;
+    private static final byte AI_CALL = 2;
+    private static final int UPDATE_BODY = 29;
+    private static final int AI_CALL_BODY = 34;
+
+    private TrafficLog() {
+    }
+
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putShort(VERSION);
+    }
+
+    static void encode(TrafficEvent event, ByteBuffer buffer) {
+        if (event instanceof TrafficEvent.Update update) {
+            buffer.put(UPDATE)
+                    .putLong(update.epochMicros())
+                    .putLong(update.userId())
+                    .putLong(update.chatId())
+                    .putInt(update.textChars())
+                    .put((byte) (update.command() ? 1 : 0));
+        } else if (event instanceof TrafficEvent.AiCall call) {
+            buffer.put(AI_CALL)
+                    .putLong(call.epochMicros())
+                    .putLong(call.chatId())
+                    .putInt(call.promptTokens())
+                    .putInt(call.completionTokens())
+                    .putInt(call.responseChars())
+                    .putInt(call.latencyMicros())
+                    .putShort((short) call.status());
+        }
+    }
+
+    /**
+     * Read all complete records of a capture, in the order they were written
+     */
+    public static List<TrafficEvent> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a traffic capture: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported traffic capture version " + version + ": " + file);
+            }
+
+            List<TrafficEvent> events = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                int offset = buffer.position();
+                byte type = buffer.get();
+                int bodySize = type == UPDATE ? UPDATE_BODY : type == AI_CALL ? AI_CALL_BODY : -1;
+                if (bodySize < 0 || buffer.remaining() < bodySize) {
+                    log.warn("Truncated or unknown record at offset {} in {}, ignoring tail", offset, file);
+                    break;
+                }
+                events.add(type == UPDATE ? decodeUpdate(buffer) : decodeAiCall(buffer));
+            }
+            return events;
+        }
+    }
+
+    private static TrafficEvent.Update decodeUpdate(ByteBuffer buffer) {
+        return new TrafficEvent.Update(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt(),
+                buffer.get() != 0);
+    }
+
+    private static TrafficEvent.AiCall decodeAiCall(ByteBuffer buffer) {
+        return new TrafficEvent.AiCall(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getShort());
+    }
+}
@@ -0,0 +1,201 @@
+package com.aiassistant.traffic;
+
+import com.aiassistant.config.ApplicationProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Captures the shape of production traffic - arrival times, sizes and provider latencies -
+ * into a compact binary log (see {@link TrafficLog}) for replay in load tests.
+ * Callers only offer events to a bounded queue; a single writer thread encodes and writes
+ * them in batches. When the queue is full the event is dropped and counted rather than
+ * slowing the message path down. Each start writes a new {@code traffic-<millis>.bin} file.
+ * <p>
+ * Disabled by default; when disabled every record call returns immediately.
+ */
+@Slf4j
+@Component
+public class TrafficRecorder implements Closeable {
+
+    private static final int MAX_BATCH = 4096;
+    private static final TrafficEvent STOP = new TrafficEvent.Update(0, 0, 0, 0, false);
+
+    private final BlockingQueue<TrafficEvent> queue;
+    private final Thread writer;
+    private final Path file;
+    private final LongAdder dropped = new LongAdder();
+    // Wall clock sampled once; nanoTime deltas give microsecond resolution without clock jumps
+    private final long baseEpochMicros = System.currentTimeMillis() * 1000;
+    private final long baseNanos = System.nanoTime();
+
+    private volatile boolean running;
+    private FileChannel channel;
+
+    @Autowired
+    public TrafficRecorder(ApplicationProperties properties) throws IOException {
+        ApplicationProperties.TrafficProperties traffic = properties.traffic();
+        if (!traffic.enabled()) {
+            this.queue = null;
+            this.writer = null;
+            this.file = null;
+            return;
+        }
+        Path directory = Path.of(traffic.directory());
+        Files.createDirectories(directory);
+        this.file = directory.resolve("traffic-" + System.currentTimeMillis() + ".bin");
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(TrafficLog.HEADER_SIZE);
+        TrafficLog.writeHeader(header);
+        channel.write(header.flip());
+
+        this.queue = new ArrayBlockingQueue<>(traffic.queueCapacity());
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "traffic-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        log.info("Recording traffic shape to {}", file);
+    }
+
+    private TrafficRecorder() {
+        this.queue = null;
+        this.writer = null;
+        this.file = null;
+    }
+
+    /**
+     * Recorder that records nothing, for tests and benchmarks
+     */
+    public static TrafficRecorder disabled() {
+        return new TrafficRecorder();
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Capture file being written, or null when disabled
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Events lost because the writer could not keep up
+     */
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * Record an incoming text message. Never blocks.
+     */
+    public void recordUpdate(long userId, long chatId, int textChars, boolean command) {
+        if (running) {
+            offer(new TrafficEvent.Update(nowMicros(), userId, chatId, textChars, command));
+        }
+    }
+
+    /**
+     * Record a finished AI provider call. Never blocks.
+     *
+     * @param chatId       chat the call was made for, null outside a chat
+     * @param latencyNanos time from sending the request to the parsed reply
+     * @param status       200 on success, -1 on any failure
+     */
+    public void recordAiCall(Long chatId, int promptTokens, int completionTokens, int responseChars,
+                             long latencyNanos, int status) {
+        if (running) {
+            int latencyMicros = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            offer(new TrafficEvent.AiCall(nowMicros(), chatId != null ? chatId : 0, promptTokens,
+                    completionTokens, responseChars, latencyMicros, status));
+        }
+    }
+
+    /**
+     * Write all queued events and stop the writer thread
+     */
+    @PreDestroy
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            queue.put(STOP);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.sum() > 0) {
+            log.warn("Traffic recorder dropped {} events, consider a larger queue capacity", dropped.sum());
+        }
+    }
+
+    private void offer(TrafficEvent event) {
+        if (!queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    private long nowMicros() {
+        return baseEpochMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - baseNanos);
+    }
+
+    private void writeLoop() {
+        List<TrafficEvent> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * TrafficLog.MAX_RECORD_SIZE);
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                TrafficEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                buffer.clear();
+                for (TrafficEvent event : batch) {
+                    if (event == STOP) {
+                        stopped = true;
+                    } else {
+                        TrafficLog.encode(event, buffer);
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } catch (IOException e) {
+                log.error("Failed to write {} traffic events", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close traffic capture {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.aiassistant.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Lock-free read index of blocked user IDs.
+ * Lookups go through a small Bloom filter and then an open-addressing table of
+ * primitive longs: no boxing, no allocation and no locks on the read path.
+ * Blocks are rare, so writers rebuild an immutable table under a lock and
+ * publish it with a single volatile write (copy-on-write).
+ */
+public final class BlockedUserIndex {
+
+    private static final long EMPTY = 0L;
+
+    private volatile Table table = Table.EMPTY_TABLE;
+
+    /**
+     * Check whether the user is blocked
+     */
+    public boolean contains(long userId) {
+        return table.contains(userId);
+    }
+
+    /**
+     * Add user to the blocklist
+     *
+     * @return true if the user was not blocked before
+     */
+    public synchronized boolean add(long userId) {
+        Table current = table;
+        if (current.contains(userId)) {
+            return false;
+        }
+        long[] ids = Arrays.copyOf(current.ids(), current.size() + 1);
+        ids[current.size()] = userId;
+        table = Table.of(ids);
+        return true;
+    }
+
+    /**
+     * Remove user from the blocklist
+     *
+     * @return true if the user was blocked before
+     */
+    public synchronized boolean remove(long userId) {
+        Table current = table;
+        if (!current.contains(userId)) {
+            return false;
+        }
+        long[] ids = current.ids();
+        long[] remaining = new long[ids.length - 1];
+        int index = 0;
+        for (long id : ids) {
+            if (id != userId) {
+                remaining[index++] = id;
+            }
+        }
+        table = Table.of(remaining);
+        return true;
+    }
+
+    /**
+     * Bring the index in line with a user's blocked flag.
+     * Lock-free when nothing changes, which is the common case on updates.
+     */
+    public void sync(long userId, boolean blocked) {
+        if (contains(userId) == blocked) {
+            return;
+        }
+        if (blocked) {
+            add(userId);
+        } else {
+            remove(userId);
+        }
+    }
+
+    /**
+     * Replace the whole blocklist (bulk load on startup)
+     */
+    public synchronized void reset(long[] userIds) {
+        table = Table.of(Arrays.stream(userIds).distinct().toArray());
+    }
+
+    /**
+     * Visit all blocked IDs
+     */
+    public void forEach(LongConsumer consumer) {
+        for (long id : table.ids()) {
+            consumer.accept(id);
+        }
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    private static long mix(long value) {
+        // SplitMix64 finalizer
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Immutable snapshot: Bloom bits plus a linear-probing table
+     */
+    private record Table(long[] bloom, long[] slots, boolean containsEmpty, long[] ids) {
+
+        static final Table EMPTY_TABLE = of(new long[0]);
+
+        static Table of(long[] ids) {
+            int capacity = Integer.highestOneBit(Math.max(4, ids.length * 2) - 1) << 1;
+            long[] slots = new long[capacity];
+            // 32+ bits per entry keeps the two-probe false positive rate well below 1%
+            long[] bloom = new long[capacity / 4];
+            boolean containsEmpty = false;
+
+            for (long id : ids) {
+                long hash = mix(id);
+                setBloom(bloom, hash);
+                if (id == EMPTY) {
+                    containsEmpty = true;
+                    continue;
+                }
+                int mask = capacity - 1;
+                int slot = (int) hash & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id;
+            }
+            return new Table(bloom, slots, containsEmpty, ids);
+        }
+
+        boolean contains(long id) {
+            long hash = mix(id);
+            if (!testBloom(bloom, hash)) {
+                return false;
+            }
+            if (id == EMPTY) {
+                return containsEmpty;
+            }
+            int mask = slots.length - 1;
+            int slot = (int) hash & mask;
+            long current;
+            while ((current = slots[slot]) != EMPTY) {
+                if (current == id) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        private static void setBloom(long[] bloom, long hash) {
+            int mask = bloom.length * Long.SIZE - 1;
+            int first = (int) (hash >>> 32) & mask;
+            int second = (int) (hash >>> 8) & mask;
+            bloom[first >>> 6] |= 1L << first;
+            bloom[second >>> 6] |= 1L << second;
+        }
+
+        private static boolean testBloom(long[] bloom, long hash) {
+            int mask = bloom.length * Long.SIZE - 1;
+            int first = (int) (hash >>> 32) & mask;
+            int second = (int) (hash >>> 8) & mask;
+            return (bloom[first >>> 6] & (1L << first)) != 0
+                    && (bloom[second >>> 6] & (1L << second)) != 0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.aiassistant.util;
+
+import com.aiassistant.exception.DeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of the Telegram update being processed.
+ * It is assigned when the update arrives and is carried with the logging context
+ * (see {@link LogContext#capturing}) through the scheduler queue into the provider call,
+ * which hands it to any escalation explicitly. Each stage gets only the budget that is left, and work that can no
+ * longer finish in time is dropped instead of taking a slot or a connection.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Create a deadline the given time from now
+     *
+     * @param timeoutMs budget in milliseconds
+     * @return new deadline
+     */
+    public static Deadline after(long timeoutMs) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    /**
+     * Get the deadline of the update processed by this thread
+     *
+     * @return current deadline, or null outside of update processing
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make a deadline current for this thread
+     *
+     * @param deadline deadline to attach, or null to detach
+     * @return the previously current deadline, to attach back when done
+     */
+    public static Deadline attach(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * Get the budget that is left
+     *
+     * @return remaining milliseconds, 0 once expired
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Fail if the deadline has passed
+     *
+     * @param stage stage that was about to start, for the error message
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public void check(String stage) throws DeadlineExceededException {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before " + stage);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.aiassistant.util;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Logging context (MDC) helpers for asynchronous processing.
+ * The MDC is thread-local, so it is lost when work hops to a pool thread;
+ * the context is captured on the submitting thread and restored around the task.
+ * The update's {@link Deadline} travels the same way.
+ */
+public final class LogContext {
+
+    /** Correlation id of the Telegram update being processed */
+    public static final String REQUEST_ID = "requestId";
+
+    /** Chat the update belongs to */
+    public static final String CHAT_ID = "chatId";
+
+    private LogContext() {
+    }
+
+    /**
+     * Capture the current MDC and deadline now, for callbacks that run later on another thread.
+     * Unlike {@link #capturing}, the tasks do not have to exist yet: an HTTP callback can build
+     * them from its result and still run them with the context of the thread that made the call.
+     * Completion callbacks of a CompletableFuture completed inside a task run inside it too,
+     * so the context also reaches thenApply/thenCompose stages.
+     *
+     * @return executor that runs tasks inline with the captured context
+     */
+    public static Executor captured() {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        Deadline deadline = Deadline.current();
+        return task -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            restore(context);
+            Deadline previousDeadline = Deadline.attach(deadline);
+            try {
+                task.run();
+            } finally {
+                Deadline.attach(previousDeadline);
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Wrap a task so it runs with the current MDC and deadline, on whichever thread runs it later
+     */
+    public static Runnable capturing(Runnable task) {
+        Executor context = captured();
+        return () -> context.execute(task);
+    }
+
+    private static void restore(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
@@ -1,31 +1,53 @@
 package com.aiassistant.bot;
 
 import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.metrics.BotMetrics;
 import com.aiassistant.model.TelegramUser;
+import com.aiassistant.service.AbuseDetector;
 import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
 import com.aiassistant.service.RateLimitService;
+import com.aiassistant.service.RequestScheduler;
+import com.aiassistant.service.UsageService;
 import com.aiassistant.service.UserService;
+import com.aiassistant.service.impl.MapReduceResponder;
+import com.aiassistant.traffic.TrafficRecorder;
 import com.aiassistant.exception.RateLimitExceededException;
 import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.exception.DeadlineExceededException;
+import com.aiassistant.exception.RequestInProgressException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
 class AiAssistantBotTest {
 
+    private static final ApplicationProperties.MapReduceProperties MAP_REDUCE_DISABLED =
+            new ApplicationProperties.MapReduceProperties(null, null, null, null, null, null);
+
     @Mock
     private ApplicationProperties properties;
 
@@ -41,6 +63,27 @@ class AiAssistantBotTest {
     @Mock
     private RateLimitService rateLimitService;
 
+    @Mock
+    private AbuseDetector abuseDetector;
+
+    @Mock
+    private RequestScheduler requestScheduler;
+
+    @Mock
+    private InFlightRequests inFlightRequests;
+
+    @Mock
+    private MessageDebouncer messageDebouncer;
+
+    @Mock
+    private MapReduceResponder mapReduceResponder;
+
+    @Mock
+    private ConversationService conversationService;
+
+    @Mock
+    private UsageService usageService;
+
     @Mock
     private Update update;
 
@@ -50,6 +93,7 @@ class AiAssistantBotTest {
     @Mock
     private User telegramUser;
 
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
     private AiAssistantBot bot;
 
     @BeforeEach
@@ -57,8 +101,17 @@ class AiAssistantBotTest {
         when(properties.telegramBotUsername()).thenReturn("TestBot");
         when(properties.telegramBotToken()).thenReturn("test-token");
         when(properties.botBehavior()).thenReturn(botBehavior);
+        when(botBehavior.responseDeadlineMs()).thenReturn(60000);
+        when(properties.mapReduce()).thenReturn(MAP_REDUCE_DISABLED);
+        when(abuseDetector.inspect(anyLong(), anyString())).thenReturn(AbuseDetector.Verdict.ALLOW);
+        // Admit every request right away
+        when(requestScheduler.submit(anyLong(), anyInt(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<CompletableFuture<?>>>getArgument(2).get());
+        when(inFlightRequests.submit(anyLong(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<CompletableFuture<?>>>getArgument(1).get());
         
-        bot = spy(new AiAssistantBot(properties, aiService, userService, rateLimitService));
+        bot = spy(new AiAssistantBot(properties, aiService, userService, rateLimitService, abuseDetector, requestScheduler, inFlightRequests, messageDebouncer, mapReduceResponder, conversationService, usageService,
+                new BotMetrics(registry, "groq", "test-model"), TrafficRecorder.disabled()));
         
 
         doReturn(null).when(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
@@ -134,9 +187,7 @@ class AiAssistantBotTest {
     void testOnUpdateReceived_BlockedUser() throws TelegramApiException {
         // Arrange
         setupBasicMessage("Hello");
-        TelegramUser mockUser = createMockUser();
         
-        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
         when(userService.isUserBlocked(123L)).thenReturn(true);
 
         // Act
@@ -144,9 +195,17 @@ class AiAssistantBotTest {
 
         // Assert
         verify(userService).isUserBlocked(123L);
+        // Заблокированный пользователь отсекается до загрузки и обновления пользователя
+        verify(userService, never()).getOrCreateUser(any());
+        verify(userService, never()).updateUser(any());
         // Проверяем, что сообщение не было отправлено
         verify(bot, never()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
         verify(rateLimitService, never()).recordRequest(anyLong());
+        // До любой другой обработки: только счетчик, без таймера и чтения текста
+        verify(message, never()).getText();
+        verify(abuseDetector, never()).inspect(anyLong(), anyString());
+        assertEquals(1.0, registry.get("aiassistant.updates.blocked").counter().count());
+        assertEquals(0, registry.get("aiassistant.stage.latency").tag("stage", "update").timer().count());
     }
 
     @Test
@@ -170,7 +229,43 @@ class AiAssistantBotTest {
         verify(rateLimitService).recordRequest(123L);
         verify(rateLimitService).getTimeUntilReset(123L);
         verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class)); // Должно отправить сообщение об ошибке
-        verify(aiService, never()).generateResponse(anyString());
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+    }
+
+    @Test
+    void testOnUpdateReceived_SpamIsDroppedSilentlyBeforeUserStore() throws Exception {
+        // Arrange
+        setupBasicMessage("Buy followers cheap at example.com");
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(createMockUser());
+        when(abuseDetector.inspect(123L, "Buy followers cheap at example.com")).thenReturn(AbuseDetector.Verdict.THROTTLE);
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(userService, never()).getOrCreateUser(any());
+        verify(userService, never()).updateUser(any());
+        verify(rateLimitService, never()).recordRequest(anyLong());
+        verify(userService, never()).blockUser(anyLong());
+        verify(bot, never()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+    }
+
+    @Test
+    void testOnUpdateReceived_FlaggedSpammerIsBlocked() throws Exception {
+        // Arrange
+        setupBasicMessage("Buy followers cheap at example.com");
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(createMockUser());
+        when(abuseDetector.inspect(123L, "Buy followers cheap at example.com")).thenReturn(AbuseDetector.Verdict.FLAG);
+        when(properties.abuse()).thenReturn(
+                new ApplicationProperties.AbuseProperties(true, null, null, null, null, null, null, true));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(userService).blockUser(123L);
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
     }
 
     @Test
@@ -189,7 +284,34 @@ class AiAssistantBotTest {
 
         // Assert
         verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class)); // Должно отправить сообщение об ошибке
-        verify(aiService, never()).generateResponse(anyString());
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+    }
+
+    @Test
+    void testOnUpdateReceived_LongMessageIsAnsweredByMapReduce() throws TelegramApiException {
+        // Arrange
+        String longMessage = "a".repeat(5000);
+        setupBasicMessage(longMessage);
+        TelegramUser mockUser = createMockUser();
+        
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        when(properties.mapReduce()).thenReturn(
+                new ApplicationProperties.MapReduceProperties(true, 10000, null, null, null, null));
+        when(mapReduceResponder.answer(123L, 456L, longMessage))
+                .thenReturn(CompletableFuture.completedFuture("Summary of the long message"));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(mapReduceResponder).answer(123L, 456L, longMessage);
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+        ArgumentCaptor<org.telegram.telegrambots.meta.api.methods.send.SendMessage> sent =
+                ArgumentCaptor.forClass(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class);
+        verify(bot, atLeastOnce()).execute(sent.capture());
+        assertTrue(sent.getAllValues().stream().anyMatch(m -> m.getText().equals("Summary of the long message")));
     }
 
     @Test
@@ -204,18 +326,42 @@ class AiAssistantBotTest {
         doNothing().when(rateLimitService).recordRequest(123L);
         
         CompletableFuture<String> aiResponse = CompletableFuture.completedFuture("I don't have weather data");
-        when(aiService.generateResponse("What is the weather?")).thenReturn(aiResponse);
+        when(aiService.generateResponse(123L, 456L, "What is the weather?")).thenReturn(aiResponse);
 
         // Act
         bot.onUpdateReceived(update);
 
         // Assert
         verify(rateLimitService).recordRequest(123L);
-        verify(aiService).generateResponse("What is the weather?");
+        verify(aiService).generateResponse(123L, 456L, "What is the weather?");
+        verify(requestScheduler).submit(eq(123L), eq("What is the weather?".length()), any());
         // Проверяем, что бот отправляет typing action и ответ
         verify(bot, atLeastOnce()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
     }
 
+    @Test
+    void testOnUpdateReceived_CachedAnswerTakesNoProviderSlot() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("What is the capital of France?");
+        TelegramUser mockUser = createMockUser();
+        
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        when(aiService.cachedResponse(123L, 456L, "What is the capital of France?")).thenReturn(Optional.of("Paris."));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert - answered without waiting in the fair-share queue
+        verify(requestScheduler, never()).submit(anyLong(), anyInt(), any());
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+        ArgumentCaptor<org.telegram.telegrambots.meta.api.methods.send.SendMessage> sent =
+                ArgumentCaptor.forClass(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class);
+        verify(bot, atLeastOnce()).execute(sent.capture());
+        assertTrue(sent.getAllValues().stream().anyMatch(m -> m.getText().equals("Paris.")));
+    }
+
     @Test
     void testOnUpdateReceived_AiServiceError() throws RateLimitExceededException, TelegramApiException {
         // Arrange
@@ -230,16 +376,190 @@ class AiAssistantBotTest {
         
         CompletableFuture<String> failedResponse = CompletableFuture.failedFuture(
             new AiServiceException("AI_ERROR", "AI service unavailable"));
-        when(aiService.generateResponse("Hello AI")).thenReturn(failedResponse);
+        when(aiService.generateResponse(123L, 456L, "Hello AI")).thenReturn(failedResponse);
 
         // Act
         bot.onUpdateReceived(update);
 
         // Assert
-        verify(aiService).generateResponse("Hello AI");
+        verify(aiService).generateResponse(123L, 456L, "Hello AI");
         verify(bot, atLeastOnce()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class)); // typing action + error message
     }
 
+    @Test
+    void testOnUpdateReceived_DebouncedMessageIsAnsweredWithItsBatch() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("and in Paris?");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        when(messageDebouncer.isEnabled()).thenReturn(true);
+        when(aiService.generateResponse(eq(123L), eq(456L), anyString()))
+                .thenReturn(CompletableFuture.completedFuture("Sunny"));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert - counted by the rate limit right away, answered when the batch is flushed
+        verify(rateLimitService).recordRequest(123L);
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+        ArgumentCaptor<Consumer<String>> answer = ArgumentCaptor.forClass(Consumer.class);
+        verify(messageDebouncer).submit(eq(456L), eq(123L), eq("and in Paris?"), answer.capture());
+        answer.getValue().accept("Weather in London?\nand in Paris?");
+        verify(aiService).generateResponse(123L, 456L, "Weather in London?\nand in Paris?");
+    }
+
+    @Test
+    void testOnUpdateReceived_DeadlineExceeded() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("Hello AI");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        when(aiService.generateResponse(123L, 456L, "Hello AI")).thenReturn(CompletableFuture.failedFuture(
+                new DeadlineExceededException("Deadline exceeded while waiting for a provider slot")));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        ArgumentCaptor<org.telegram.telegrambots.meta.api.methods.send.SendMessage> sent =
+                ArgumentCaptor.forClass(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class);
+        verify(bot, atLeastOnce()).execute(sent.capture());
+        List<?> executed = sent.getAllValues();
+        assertTrue(executed.stream().anyMatch(method ->
+                method instanceof org.telegram.telegrambots.meta.api.methods.send.SendMessage reply
+                        && reply.getText().startsWith("⌛")));
+        verify(botBehavior, never()).defaultErrorMessage();
+    }
+
+    @Test
+    void testOnUpdateReceived_RequestInProgress() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("Another question");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        doThrow(new RequestInProgressException("Previous request of user 123 is in progress"))
+                .when(inFlightRequests).submit(eq(123L), any());
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+        verify(bot, never()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendChatAction.class));
+        verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+    }
+
+    @Test
+    void testOnUpdateReceived_CancelledResponseIsNotAnswered() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("Hello AI");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.maxMessageLength()).thenReturn(1000);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(aiService.generateResponse(123L, 456L, "Hello AI")).thenReturn(pending);
+
+        // Act
+        bot.onUpdateReceived(update);
+        pending.cancel(false);
+
+        // Assert - typing action only, no error message
+        verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendChatAction.class));
+        verify(bot, never()).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+    }
+
+    @Test
+    void testOnUpdateReceived_CancelCommand() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("/cancel");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(inFlightRequests.cancel(123L)).thenReturn(true);
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(messageDebouncer).discard(456L, 123L);
+        verify(inFlightRequests).cancel(123L);
+        verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+    }
+
+    @Test
+    void testOnUpdateReceived_ClearCommand() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("/clear");
+        TelegramUser mockUser = createMockUser();
+        
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(conversationService).clear(456L);
+        verify(aiService, never()).generateResponse(anyLong(), anyLong(), anyString());
+        verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+    }
+
+    @Test
+    void testOnUpdateReceived_UsageCommandFromAdmin() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("/usage");
+        TelegramUser mockUser = createMockUser();
+        UsageService.UsageEntry total = new UsageService.UsageEntry("total", 2, 300, 120);
+        UsageService.UsageReport report = new UsageService.UsageReport(total,
+                List.of(new UsageService.UsageEntry("123", 2, 300, 120)), List.of(), List.of());
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.adminUserIds()).thenReturn(List.of(123L));
+        when(properties.usage()).thenReturn(new ApplicationProperties.UsageProperties(null, null));
+        when(usageService.report(any(), anyInt(), anyInt())).thenReturn(report);
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(usageService).report(UsageService.Granularity.MINUTE, 60, 5);
+        verify(usageService).report(UsageService.Granularity.HOUR, 24, 5);
+        verify(usageService).report(UsageService.Granularity.DAY, 7, 5);
+        verify(bot).execute(argThat((org.telegram.telegrambots.meta.api.methods.send.SendMessage sent) ->
+                sent.getText().contains("420 токенов")));
+    }
+
+    @Test
+    void testOnUpdateReceived_UsageCommandFromNonAdmin() throws TelegramApiException {
+        // Arrange
+        setupBasicMessage("/usage");
+        TelegramUser mockUser = createMockUser();
+
+        when(userService.getOrCreateUser(telegramUser)).thenReturn(mockUser);
+        when(userService.isUserBlocked(123L)).thenReturn(false);
+        when(botBehavior.adminUserIds()).thenReturn(List.of(999L));
+
+        // Act
+        bot.onUpdateReceived(update);
+
+        // Assert
+        verify(usageService, never()).report(any(), anyInt(), anyInt());
+        verify(bot).execute(any(org.telegram.telegrambots.meta.api.methods.send.SendMessage.class));
+    }
+
     @Test
     void testOnUpdateReceived_NoMessage() throws TelegramApiException {
         // Arrange
@@ -0,0 +1,106 @@
+package com.aiassistant.bot;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.exception.RequestInProgressException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightRequestsTest {
+
+    private static final long USER = 1L;
+
+    private final List<String> started = new ArrayList<>();
+    private final List<CompletableFuture<String>> calls = new ArrayList<>();
+
+    @Test
+    void testSubmit_QueueAnswersInArrivalOrder() {
+        // Arrange
+        InFlightRequests requests = inFlightRequests(ApplicationProperties.InFlightPolicy.QUEUE);
+        CompletableFuture<String> first = submit(requests, "first");
+        CompletableFuture<String> second = submit(requests, "second");
+
+        // Act & Assert - the second request starts only once the first is answered
+        assertEquals(List.of("first"), started);
+        assertEquals(2, requests.inFlight(USER));
+        calls.get(0).complete("first");
+        assertEquals("first", first.join());
+        assertEquals(List.of("first", "second"), started);
+        calls.get(1).complete("second");
+        assertEquals("second", second.join());
+        assertEquals(0, requests.inFlight(USER));
+    }
+
+    @Test
+    void testSubmit_SupersedeCancelsPreviousRequest() {
+        // Arrange
+        InFlightRequests requests = inFlightRequests(ApplicationProperties.InFlightPolicy.SUPERSEDE);
+        CompletableFuture<String> first = submit(requests, "first");
+
+        // Act
+        CompletableFuture<String> second = submit(requests, "second");
+
+        // Assert
+        assertTrue(first.isCancelled());
+        assertTrue(calls.get(0).isCancelled());
+        assertFalse(second.isDone());
+        assertEquals(List.of("first", "second"), started);
+        assertEquals(1, requests.inFlight(USER));
+    }
+
+    @Test
+    void testSubmit_RejectRefusesWhileInFlight() {
+        // Arrange
+        InFlightRequests requests = inFlightRequests(ApplicationProperties.InFlightPolicy.REJECT);
+        submit(requests, "first");
+
+        // Act & Assert
+        assertThrows(RequestInProgressException.class, () -> submit(requests, "second"));
+        assertEquals(List.of("first"), started);
+        calls.get(0).complete("first");
+        submit(requests, "third");
+        assertEquals(List.of("first", "third"), started);
+    }
+
+    @Test
+    void testCancel_CancelsRunningAndQueuedRequests() {
+        // Arrange
+        InFlightRequests requests = inFlightRequests(ApplicationProperties.InFlightPolicy.QUEUE);
+        CompletableFuture<String> first = submit(requests, "first");
+        CompletableFuture<String> second = submit(requests, "second");
+
+        // Act
+        boolean cancelled = requests.cancel(USER);
+
+        // Assert - the queued request is never started
+        assertTrue(cancelled);
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(List.of("first"), started);
+        assertEquals(0, requests.inFlight(USER));
+        assertFalse(requests.cancel(USER));
+    }
+
+    private CompletableFuture<String> submit(InFlightRequests requests, String name) {
+        return requests.submit(USER, () -> {
+            started.add(name);
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+    }
+
+    private static InFlightRequests inFlightRequests(ApplicationProperties.InFlightPolicy policy) {
+        ApplicationProperties properties = TestProperties.builder()
+                .scheduler(new ApplicationProperties.SchedulerProperties(null, null, null, null, null, null, policy))
+                .build();
+        return new InFlightRequests(new LiveProperties(properties));
+    }
+}
@@ -0,0 +1,145 @@
+package com.aiassistant.bot;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageDebouncerTest {
+
+    private static final long CHAT = 42L;
+    private static final long USER = 7L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> answered = new CopyOnWriteArrayList<>();
+    private MessageDebouncer debouncer;
+
+    @AfterEach
+    void tearDown() {
+        debouncer.stop();
+    }
+
+    @Test
+    void testSubmit_QuickMessagesAreAnsweredTogether() throws Exception {
+        // Arrange
+        debouncer = debouncer(1000, 10_000, 5, 4000);
+        CompletableFuture<String> prompt = new CompletableFuture<>();
+
+        // Act
+        debouncer.submit(CHAT, USER, "What is the weather", prompt::complete);
+        debouncer.submit(CHAT, USER, "in Paris", text -> fail("Only the first message's callback answers the batch"));
+
+        // Assert
+        assertEquals("What is the weather\nin Paris", prompt.get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, registry.get("aiassistant.debounce.coalesced").counter().count());
+    }
+
+    @Test
+    void testSubmit_FullBatchIsAnsweredRightAway() {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 2, 4000);
+
+        // Act
+        debouncer.submit(CHAT, USER, "one", answered::add);
+        debouncer.submit(CHAT, USER, "two", answered::add);
+        debouncer.submit(CHAT, USER, "three", answered::add);
+
+        // Assert - the third message starts a new batch that is still waiting
+        assertEquals(List.of("one\ntwo"), answered);
+    }
+
+    @Test
+    void testSubmit_MessageOverLengthLimitStartsNewBatch() {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 5, 10);
+
+        // Act
+        debouncer.submit(CHAT, USER, "hello", answered::add);
+        debouncer.submit(CHAT, USER, "world!", answered::add);
+
+        // Assert
+        assertEquals(List.of("hello"), answered);
+    }
+
+    @Test
+    void testSubmit_ChatsAreBatchedSeparately() {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 2, 4000);
+
+        // Act
+        debouncer.submit(CHAT, USER, "first chat", answered::add);
+        debouncer.submit(8L, USER, "second chat", answered::add);
+        debouncer.submit(8L, USER, "again", answered::add);
+
+        // Assert
+        assertEquals(List.of("second chat\nagain"), answered);
+    }
+
+    @Test
+    void testSubmit_UsersInOneChatAreBatchedSeparately() throws Exception {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 2, 4000);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+
+        // Act
+        debouncer.submit(CHAT, USER, "What is the weather", first::complete);
+        debouncer.submit(CHAT, 9L, "Tell me a joke", second::complete);
+        debouncer.submit(CHAT, USER, "in Paris", text -> fail("Only the first message's callback answers the batch"));
+
+        // Assert - each member gets an answer to their own messages only
+        assertEquals("What is the weather\nin Paris", first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+        debouncer.stop();
+        assertEquals("Tell me a joke", second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDiscard_PendingBatchIsNeverAnswered() {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 5, 4000);
+        debouncer.submit(CHAT, USER, "never mind", answered::add);
+
+        // Act
+        boolean discarded = debouncer.discard(CHAT, USER);
+        debouncer.stop();
+
+        // Assert
+        assertTrue(discarded);
+        assertFalse(debouncer.discard(CHAT, USER));
+        assertTrue(answered.isEmpty());
+    }
+
+    @Test
+    void testDiscard_KeepsOtherUsersBatches() {
+        // Arrange
+        debouncer = debouncer(60_000, 60_000, 5, 4000);
+        debouncer.submit(CHAT, USER, "never mind", answered::add);
+        debouncer.submit(CHAT, 9L, "still waiting", answered::add);
+
+        // Act
+        boolean discarded = debouncer.discard(CHAT, USER);
+        debouncer.stop();
+
+        // Assert
+        assertTrue(discarded);
+        assertEquals(List.of("still waiting"), answered);
+    }
+
+    private MessageDebouncer debouncer(int windowMs, int maxWaitMs, int maxMessages, int maxMessageLength) {
+        ApplicationProperties properties = TestProperties.builder()
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(maxMessageLength, null, null, null, null, null, null))
+                .debounce(new ApplicationProperties.DebounceProperties(true, windowMs, maxWaitMs, maxMessages))
+                .build();
+        return new MessageDebouncer(new LiveProperties(properties), registry);
+    }
+}
@@ -0,0 +1,126 @@
+package com.aiassistant.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigFileWatcherTest {
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private LiveProperties liveProperties;
+    private ConfigFileWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("live.yml");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("startup", Map.of(
+                "aiassistant.telegram-bot-token", "123456:test",
+                "aiassistant.telegram-bot-username", "TestBot",
+                "aiassistant.ai-provider.type", "groq",
+                "aiassistant.ai-provider.api-url", "http://localhost/v1/chat/completions",
+                "aiassistant.ai-provider.model", "llama-3.1-8b-instant")));
+        ApplicationProperties startup = TestProperties.builder()
+                .aiProvider(new ApplicationProperties.AiProviderProperties(
+                        "groq", null, "http://localhost/v1/chat/completions", "llama-3.1-8b-instant",
+                        null, null, null, null))
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(null, null, null, null, null, List.of(), null))
+                .reload(new ApplicationProperties.ReloadProperties(file.toString(), null))
+                .build();
+        liveProperties = new LiveProperties(startup);
+        watcher = new ConfigFileWatcher(startup, liveProperties, environment);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void testCheckForChanges_PublishesValidatedSnapshot() throws IOException {
+        // Arrange
+        ApplicationProperties before = liveProperties.get();
+        Files.writeString(file, """
+                aiassistant:
+                  bot-behavior:
+                    rate-limit-per-minute: 42
+                  ai-provider:
+                    model: gemma2-9b-it
+                    timeout-ms: 5000
+                """);
+
+        // Act
+        boolean reloaded = watcher.checkForChanges();
+
+        // Assert
+        assertTrue(reloaded);
+        ApplicationProperties after = liveProperties.get();
+        assertNotSame(before, after);
+        assertEquals(42, after.botBehavior().rateLimitPerMinute());
+        assertEquals("gemma2-9b-it", after.aiProvider().model());
+        assertEquals(5000, after.aiProvider().timeoutMs());
+        // Everything not in the file keeps its startup value
+        assertEquals("123456:test", after.telegramBotToken());
+        assertEquals(1000, after.aiProvider().maxTokens());
+    }
+
+    @Test
+    void testCheckForChanges_InvalidChangeKeepsCurrentSnapshot() throws IOException {
+        // Arrange
+        ApplicationProperties before = liveProperties.get();
+        Files.writeString(file, """
+                aiassistant:
+                  ai-provider:
+                    max-tokens: 100000
+                """);
+
+        // Act
+        boolean reloaded = watcher.checkForChanges();
+
+        // Assert
+        assertFalse(reloaded);
+        assertSame(before, liveProperties.get());
+    }
+
+    @Test
+    void testCheckForChanges_UnchangedFileIsNotReloaded() throws IOException {
+        // Arrange
+        Files.writeString(file, "aiassistant.bot-behavior.rate-limit-per-minute: 3\n");
+        assertTrue(watcher.checkForChanges());
+        ApplicationProperties first = liveProperties.get();
+
+        // Act
+        boolean reloaded = watcher.checkForChanges();
+
+        // Assert
+        assertFalse(reloaded);
+        assertSame(first, liveProperties.get());
+    }
+
+    @Test
+    void testCheckForChanges_MissingFileIsIgnored() {
+        // Arrange
+        ApplicationProperties before = liveProperties.get();
+
+        // Act
+        boolean reloaded = watcher.checkForChanges();
+
+        // Assert
+        assertFalse(reloaded);
+        assertSame(before, liveProperties.get());
+    }
+}
@@ -0,0 +1,126 @@
+package com.aiassistant.config;
+
+/**
+ * Builder of ApplicationProperties for tests, load tests and benchmarks.
+ * Only the bot credentials and the AI provider have defaults; every other group is null,
+ * so its record's own defaults apply, until a test sets it.
+ */
+public final class TestProperties {
+
+    private String telegramBotToken = "123456:test";
+    private String telegramBotUsername = "TestBot";
+    private String telegramApiUrl;
+    private ApplicationProperties.AiProviderProperties aiProvider = new ApplicationProperties.AiProviderProperties(
+            "groq", null, "http://localhost", "test-model", null, null, null, null);
+    private ApplicationProperties.BotBehaviorProperties botBehavior;
+    private ApplicationProperties.UserStoreProperties userStore;
+    private ApplicationProperties.ConversationProperties conversation;
+    private ApplicationProperties.ObservabilityProperties observability;
+    private ApplicationProperties.UsageProperties usage;
+    private ApplicationProperties.TrafficProperties traffic;
+    private ApplicationProperties.ReloadProperties reload;
+    private ApplicationProperties.RoutingProperties routing;
+    private ApplicationProperties.SchedulerProperties scheduler;
+    private ApplicationProperties.DebounceProperties debounce;
+    private ApplicationProperties.ResponseCacheProperties responseCache;
+    private ApplicationProperties.AbuseProperties abuse;
+    private ApplicationProperties.MapReduceProperties mapReduce;
+
+    private TestProperties() {
+    }
+
+    public static TestProperties builder() {
+        return new TestProperties();
+    }
+
+    public TestProperties telegramBotToken(String telegramBotToken) {
+        this.telegramBotToken = telegramBotToken;
+        return this;
+    }
+
+    public TestProperties telegramBotUsername(String telegramBotUsername) {
+        this.telegramBotUsername = telegramBotUsername;
+        return this;
+    }
+
+    public TestProperties telegramApiUrl(String telegramApiUrl) {
+        this.telegramApiUrl = telegramApiUrl;
+        return this;
+    }
+
+    public TestProperties aiProvider(ApplicationProperties.AiProviderProperties aiProvider) {
+        this.aiProvider = aiProvider;
+        return this;
+    }
+
+    public TestProperties botBehavior(ApplicationProperties.BotBehaviorProperties botBehavior) {
+        this.botBehavior = botBehavior;
+        return this;
+    }
+
+    public TestProperties userStore(ApplicationProperties.UserStoreProperties userStore) {
+        this.userStore = userStore;
+        return this;
+    }
+
+    public TestProperties conversation(ApplicationProperties.ConversationProperties conversation) {
+        this.conversation = conversation;
+        return this;
+    }
+
+    public TestProperties observability(ApplicationProperties.ObservabilityProperties observability) {
+        this.observability = observability;
+        return this;
+    }
+
+    public TestProperties usage(ApplicationProperties.UsageProperties usage) {
+        this.usage = usage;
+        return this;
+    }
+
+    public TestProperties traffic(ApplicationProperties.TrafficProperties traffic) {
+        this.traffic = traffic;
+        return this;
+    }
+
+    public TestProperties reload(ApplicationProperties.ReloadProperties reload) {
+        this.reload = reload;
+        return this;
+    }
+
+    public TestProperties routing(ApplicationProperties.RoutingProperties routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public TestProperties scheduler(ApplicationProperties.SchedulerProperties scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public TestProperties debounce(ApplicationProperties.DebounceProperties debounce) {
+        this.debounce = debounce;
+        return this;
+    }
+
+    public TestProperties responseCache(ApplicationProperties.ResponseCacheProperties responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public TestProperties abuse(ApplicationProperties.AbuseProperties abuse) {
+        this.abuse = abuse;
+        return this;
+    }
+
+    public TestProperties mapReduce(ApplicationProperties.MapReduceProperties mapReduce) {
+        this.mapReduce = mapReduce;
+        return this;
+    }
+
+    public ApplicationProperties build() {
+        return new ApplicationProperties(telegramBotToken, telegramBotUsername, telegramApiUrl, aiProvider,
+                botBehavior, userStore, conversation, observability, usage, traffic, reload, routing, scheduler,
+                debounce, responseCache, abuse, mapReduce);
+    }
+}
@@ -0,0 +1,46 @@
+package com.aiassistant.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserStoreDataSourceConfigTest {
+
+    // application.yml supplies the required settings
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withInitializer(new ConfigDataApplicationContextInitializer())
+            .withUserConfiguration(Context.class);
+
+    @Test
+    void testJdbcStoreGetsAConfiguredHikariPool() {
+        runner.withPropertyValues(
+                        "aiassistant.user-store.type=jdbc",
+                        "aiassistant.user-store.jdbc-url=jdbc:h2:mem:pool-test",
+                        "aiassistant.user-store.hikari.maximum-pool-size=3")
+                .run(context -> {
+                    HikariDataSource dataSource = context.getBean(HikariDataSource.class);
+                    assertEquals("jdbc:h2:mem:pool-test", dataSource.getJdbcUrl());
+                    assertEquals("sa", dataSource.getUsername());
+                    assertEquals(3, dataSource.getMaximumPoolSize());
+                });
+    }
+
+    @Test
+    void testOtherStoresNeedNoDatabase() {
+        runner.run(context -> assertTrue(context.getBeansOfType(DataSource.class).isEmpty()));
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(ApplicationProperties.class)
+    @Import(UserStoreDataSourceConfig.class)
+    static class Context {
+    }
+}
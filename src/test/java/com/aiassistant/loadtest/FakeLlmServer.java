@@ -0,0 +1,411 @@
+package com.aiassistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for an OpenAI-compatible chat completions endpoint (Groq, OpenAI, Ollama).
+ * Answers POST .../chat/completions after a sampled latency, optionally streaming the reply
+ * token by token as server-sent events, and injects 429 (with Retry-After), 5xx and stalls
+ * with configurable probabilities.
+ *
+ * Embedded: {@code try (FakeLlmServer server = FakeLlmServer.start(profile)) { ... server.url() ... }}.
+ * Standalone: see {@link #main(String[])}.
+ */
+@Slf4j
+public final class FakeLlmServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Profile profile;
+    private final Random random;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Stats stats = new Stats();
+
+    private FakeLlmServer(HttpServer server, Profile profile) {
+        this.server = server;
+        this.profile = profile;
+        this.random = new Random(profile.getSeed());
+        // One thread per connection: handlers sleep to emulate latency
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-llm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Start on an ephemeral port
+     */
+    public static FakeLlmServer start(Profile profile) throws IOException {
+        return start(0, profile);
+    }
+
+    public static FakeLlmServer start(int port, Profile profile) throws IOException {
+        return new FakeLlmServer(HttpServer.create(new InetSocketAddress("localhost", port), 0), profile);
+    }
+
+    /**
+     * URL to use as aiassistant.ai-provider.api-url
+     */
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            stats.requests.incrementAndGet();
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+                respond(exchange, 404, error("Unknown endpoint", "invalid_request_error"));
+                return;
+            }
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+
+            double roll = random.nextDouble();
+            if (roll < profile.getRateLimitProbability()) {
+                stats.rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(profile.getRetryAfterSeconds()));
+                respond(exchange, 429, error("Rate limit reached, please try again later", "rate_limit_exceeded"));
+                return;
+            }
+            roll -= profile.getRateLimitProbability();
+            if (roll < profile.getServerErrorProbability()) {
+                stats.serverErrors.incrementAndGet();
+                respond(exchange, 503, error("Service temporarily unavailable", "service_unavailable"));
+                return;
+            }
+            roll -= profile.getServerErrorProbability();
+            boolean stall = roll < profile.getStallProbability();
+            if (stall) {
+                stats.stalls.incrementAndGet();
+            }
+
+            // Time to first token
+            sleep(profile.getLatency().sampleMillis(random));
+            int completionTokens = Math.min(profile.getCompletionTokens(),
+                    request.path("max_tokens").asInt(profile.getCompletionTokens()));
+            Reply reply = new Reply(request.path("model").asText("fake-model"), promptTokens(request), completionTokens);
+
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, reply, stall);
+            } else {
+                if (stall) {
+                    sleep(profile.getStallMillis());
+                }
+                // Counted before the body is sent, so a client that got the answer sees it counted
+                stats.completed.incrementAndGet();
+                respond(exchange, 200, completion(reply));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Client gave up (timeout or cancel) - expected under fault injection
+            stats.disconnects.incrementAndGet();
+        }
+    }
+
+    private void stream(HttpExchange exchange, Reply reply, boolean stall) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        long tokenIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, profile.getStreamTokensPerSecond());
+
+        for (int i = 0; i < reply.completionTokens; i++) {
+            if (stall && i == reply.completionTokens / 2) {
+                sleep(profile.getStallMillis());
+            }
+            ObjectNode delta = MAPPER.createObjectNode().put("content", token(i));
+            writeEvent(body, chunk(reply, delta, null));
+            TimeUnit.NANOSECONDS.sleep(tokenIntervalNanos);
+        }
+        ObjectNode last = chunk(reply, MAPPER.createObjectNode(), "stop");
+        last.set("usage", usage(reply));
+        stats.completed.incrementAndGet();
+        writeEvent(body, last);
+        body.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private static void writeEvent(OutputStream body, JsonNode event) throws IOException {
+        body.write(("data: " + MAPPER.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private ObjectNode completion(Reply reply) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < reply.completionTokens; i++) {
+            content.append(token(i));
+        }
+        ObjectNode response = header(reply, "chat.completion");
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content.toString().strip());
+        choice.put("finish_reason", "stop");
+        response.set("usage", usage(reply));
+        return response;
+    }
+
+    private ObjectNode chunk(Reply reply, ObjectNode delta, String finishReason) {
+        ObjectNode chunk = header(reply, "chat.completion.chunk");
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.set("delta", delta);
+        choice.put("finish_reason", finishReason);
+        return chunk;
+    }
+
+    private static ObjectNode header(Reply reply, String object) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", reply.id);
+        node.put("object", object);
+        node.put("created", System.currentTimeMillis() / 1000);
+        node.put("model", reply.model);
+        return node;
+    }
+
+    private static ObjectNode usage(Reply reply) {
+        return MAPPER.createObjectNode()
+                .put("prompt_tokens", reply.promptTokens)
+                .put("completion_tokens", reply.completionTokens)
+                .put("total_tokens", reply.promptTokens + reply.completionTokens);
+    }
+
+    private static ObjectNode error(String message, String type) {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.putObject("error").put("message", message).put("type", type);
+        return response;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Rough count, about 4 characters per token, good enough for load shapes
+    private static int promptTokens(JsonNode request) {
+        int chars = 0;
+        for (JsonNode message : request.path("messages")) {
+            chars += message.path("content").asText("").length();
+        }
+        return Math.max(1, chars / 4);
+    }
+
+    private static String token(int index) {
+        return index == 0 ? "Lorem" : " ipsum";
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private final class Reply {
+        final String id = "chatcmpl-fake-" + sequence.incrementAndGet();
+        final String model;
+        final int promptTokens;
+        final int completionTokens;
+
+        Reply(String model, int promptTokens, int completionTokens) {
+            this.model = model;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+        }
+    }
+
+    /**
+     * Server behaviour
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Profile {
+
+        @Builder.Default
+        Latency latency = Latency.fixed(0);
+
+        /** Streaming speed, used when the request has "stream": true */
+        @Builder.Default
+        int streamTokensPerSecond = 100;
+
+        /** Reply length, capped by the request's max_tokens */
+        @Builder.Default
+        int completionTokens = 50;
+
+        @Builder.Default
+        double rateLimitProbability = 0.0;
+
+        @Builder.Default
+        int retryAfterSeconds = 2;
+
+        @Builder.Default
+        double serverErrorProbability = 0.0;
+
+        /** Probability that a reply hangs for stallMillis (before the body, or mid-stream) */
+        @Builder.Default
+        double stallProbability = 0.0;
+
+        @Builder.Default
+        long stallMillis = 60_000;
+
+        @Builder.Default
+        long seed = 42;
+    }
+
+    /**
+     * Distribution of the time to the first token
+     */
+    @FunctionalInterface
+    public interface Latency {
+
+        long sampleMillis(Random random);
+
+        static Latency fixed(long millis) {
+            return random -> millis;
+        }
+
+        /**
+         * Long-tailed latency typical for LLM APIs; sigma around 0.5 gives p99 of about 3x the median
+         */
+        static Latency lognormal(long medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+
+        /**
+         * Mostly fast replies with a share of slow ones (e.g. cold model or queueing at the provider)
+         */
+        static Latency bimodal(long fastMillis, long slowMillis, double slowProbability) {
+            return random -> random.nextDouble() < slowProbability ? slowMillis : fastMillis;
+        }
+
+        /**
+         * Parse "fixed:200", "lognormal:800:0.5" or "bimodal:300:5000:0.1"
+         */
+        static Latency parse(String spec) {
+            String[] parts = spec.split(":");
+            return switch (parts[0]) {
+                case "fixed" -> fixed(Long.parseLong(parts[1]));
+                case "lognormal" -> lognormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                case "bimodal" -> bimodal(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Double.parseDouble(parts[3]));
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+        }
+    }
+
+    /**
+     * Request counters
+     */
+    public static final class Stats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+        final AtomicLong serverErrors = new AtomicLong();
+        final AtomicLong stalls = new AtomicLong();
+        final AtomicLong disconnects = new AtomicLong();
+
+        public long requests() {
+            return requests.get();
+        }
+
+        public long completed() {
+            return completed.get();
+        }
+
+        public long rateLimited() {
+            return rateLimited.get();
+        }
+
+        public long serverErrors() {
+            return serverErrors.get();
+        }
+
+        public long stalls() {
+            return stalls.get();
+        }
+
+        public long disconnects() {
+            return disconnects.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d completed=%d rateLimited=%d serverErrors=%d stalls=%d disconnects=%d",
+                    requests(), completed(), rateLimited(), serverErrors(), stalls(), disconnects());
+        }
+    }
+
+    /**
+     * Run standalone until killed:
+     * <pre>
+     * mvn test-compile exec:java -Dexec.classpathScope=test \
+     *     -Dexec.mainClass=com.aiassistant.loadtest.FakeLlmServer \
+     *     -Dexec.args="--port=8089 --latency=lognormal:800:0.5 --stream-rate=50 --rate-limit=0.05 --errors=0.01 --stalls=0.01"
+     * </pre>
+     * Then set aiassistant.ai-provider.api-url to http://localhost:8089/v1/chat/completions.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 8089;
+        Profile.ProfileBuilder profile = Profile.builder();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "port" -> port = Integer.parseInt(value);
+                case "latency" -> profile.latency(Latency.parse(value));
+                case "stream-rate" -> profile.streamTokensPerSecond(Integer.parseInt(value));
+                case "tokens" -> profile.completionTokens(Integer.parseInt(value));
+                case "rate-limit" -> profile.rateLimitProbability(Double.parseDouble(value));
+                case "retry-after" -> profile.retryAfterSeconds(Integer.parseInt(value));
+                case "errors" -> profile.serverErrorProbability(Double.parseDouble(value));
+                case "stalls" -> profile.stallProbability(Double.parseDouble(value));
+                case "stall-ms" -> profile.stallMillis(Long.parseLong(value));
+                case "seed" -> profile.seed(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        FakeLlmServer server = start(port, profile.build());
+        log.info("Fake LLM server listening on {}", server.url());
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Fake LLM server stats: {}", server.stats());
+            server.close();
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+}
@@ -0,0 +1,146 @@
+package com.aiassistant.loadtest;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.JsonConfig;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.impl.GroqAiService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FakeLlmServerTest {
+
+    private static final String MODEL = "llama-3.1-8b-instant";
+
+    @Test
+    void testChatCompletion_ReturnsCompletionAfterLatency() throws Exception {
+        // Arrange
+        FakeLlmServer.Profile profile = FakeLlmServer.Profile.builder()
+                .latency(FakeLlmServer.Latency.fixed(100))
+                .completionTokens(5)
+                .build();
+
+        try (FakeLlmServer server = FakeLlmServer.start(profile)) {
+            GroqAiService service = groqService(server.url());
+            AiRequest request = AiRequest.builder()
+                    .model(MODEL)
+                    .messages(List.of(AiRequest.Message.user("Hello, how are you?")))
+                    .build();
+
+            // Act
+            long start = System.nanoTime();
+            AiResponse response = service.chatCompletion(request).get();
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Assert
+            assertEquals("Lorem ipsum ipsum ipsum ipsum", response.getContent());
+            assertEquals(5, response.getUsage().getCompletionTokens());
+            assertTrue(elapsedMillis >= 100, "latency was " + elapsedMillis + " ms");
+            assertEquals(1, server.stats().completed());
+        }
+    }
+
+    @Test
+    void testChatCompletion_InjectedRateLimitCarriesRetryAfter() throws Exception {
+        // Arrange
+        FakeLlmServer.Profile profile = FakeLlmServer.Profile.builder()
+                .rateLimitProbability(1.0)
+                .retryAfterSeconds(7)
+                .build();
+
+        try (FakeLlmServer server = FakeLlmServer.start(profile)) {
+            // Act
+            try (Response response = post(server.url(), "{\"model\":\"" + MODEL + "\",\"messages\":[]}")) {
+                // Assert
+                assertEquals(429, response.code());
+                assertEquals("7", response.header("Retry-After"));
+            }
+
+            AiRequest request = AiRequest.builder().model(MODEL).messages(List.of(AiRequest.Message.user("Hi"))).build();
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> groqService(server.url()).chatCompletion(request).get());
+            assertEquals("GROQ_API_ERROR", ((AiServiceException) exception.getCause()).getErrorCode());
+            assertEquals(2, server.stats().rateLimited());
+        }
+    }
+
+    @Test
+    void testStreaming_SendsOneEventPerTokenThenDone() throws Exception {
+        // Arrange
+        FakeLlmServer.Profile profile = FakeLlmServer.Profile.builder()
+                .completionTokens(10)
+                .streamTokensPerSecond(1000)
+                .build();
+
+        try (FakeLlmServer server = FakeLlmServer.start(profile)) {
+            // Act
+            String body;
+            try (Response response = post(server.url(),
+                    "{\"model\":\"" + MODEL + "\",\"stream\":true,\"max_tokens\":4,\"messages\":[]}")) {
+                assertEquals("text/event-stream", response.header("Content-Type"));
+                body = response.body().string();
+            }
+
+            // Assert - 4 tokens (capped by max_tokens), a final chunk with usage, then [DONE]
+            List<String> events = Arrays.stream(body.split("\n\n")).toList();
+            assertEquals(6, events.size());
+            assertTrue(events.get(0).contains("\"delta\":{\"content\":\"Lorem\"}"));
+            assertTrue(events.get(4).contains("\"finish_reason\":\"stop\""));
+            assertTrue(events.get(4).contains("\"completion_tokens\":4"));
+            assertEquals("data: [DONE]", events.get(5));
+        }
+    }
+
+    @Test
+    void testLatency_DistributionsHaveExpectedShape() {
+        Random random = new Random(1);
+        long[] lognormal = new long[10_000];
+        int slow = 0;
+        FakeLlmServer.Latency bimodal = FakeLlmServer.Latency.parse("bimodal:100:5000:0.1");
+        for (int i = 0; i < lognormal.length; i++) {
+            lognormal[i] = FakeLlmServer.Latency.parse("lognormal:800:0.5").sampleMillis(random);
+            if (bimodal.sampleMillis(random) == 5000) {
+                slow++;
+            }
+        }
+        Arrays.sort(lognormal);
+
+        assertEquals(800, lognormal[lognormal.length / 2], 40);
+        assertTrue(lognormal[(int) (lognormal.length * 0.99)] > 2 * 800);
+        assertEquals(1000, slow, 100);
+        assertEquals(250, FakeLlmServer.Latency.parse("fixed:250").sampleMillis(random));
+    }
+
+    private static Response post(String url, String json) throws java.io.IOException {
+        return new OkHttpClient().newCall(new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(json, MediaType.get("application/json")))
+                .build()).execute();
+    }
+
+    private static GroqAiService groqService(String url) {
+        ApplicationProperties properties = mock(ApplicationProperties.class);
+        ApplicationProperties.AiProviderProperties aiProvider = mock(ApplicationProperties.AiProviderProperties.class);
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(aiProvider.apiUrl()).thenReturn(url);
+        when(aiProvider.apiKey()).thenReturn("test-api-key");
+        return new GroqAiService(new LiveProperties(properties), new JsonConfig().objectMapper(), new OkHttpClient(),
+                null, null, null, null, null, new BotMetrics(new SimpleMeterRegistry(), "groq", "test-model"), null, null);
+    }
+}
@@ -0,0 +1,319 @@
+package com.aiassistant.loadtest;
+
+import com.aiassistant.bot.AiAssistantBot;
+import com.aiassistant.bot.InFlightRequests;
+import com.aiassistant.bot.MessageDebouncer;
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.HttpClientConfig;
+import com.aiassistant.config.JsonConfig;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.ResponseCache;
+import com.aiassistant.service.impl.ConversationSummarizer;
+import com.aiassistant.service.impl.DeficitRoundRobinScheduler;
+import com.aiassistant.service.impl.GroqAiService;
+import com.aiassistant.service.impl.HeuristicModelRouter;
+import com.aiassistant.service.impl.HeuristicTokenEstimator;
+import com.aiassistant.service.impl.InMemoryConversationService;
+import com.aiassistant.service.impl.InMemoryRateLimitService;
+import com.aiassistant.service.impl.InMemoryUsageService;
+import com.aiassistant.service.impl.InMemoryUserService;
+import com.aiassistant.service.impl.MapReduceResponder;
+import com.aiassistant.service.impl.SketchAbuseDetector;
+import com.aiassistant.traffic.TrafficRecorder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load generator: N simulated users chat with a real AiAssistantBot
+ * (in-memory services, GroqAiService) through the Telegram API emulator, with the
+ * fake LLM server as provider. Each user sends a message, waits for the reply,
+ * thinks for an exponentially distributed time and repeats.
+ * Reports sustained throughput and reply latency percentiles.
+ */
+@Slf4j
+public final class LoadGenerator {
+
+    private static final String TOKEN = "123456:load-test";
+    private static final List<String> QUESTIONS = List.of(
+            "Объясни, что такое Java",
+            "Напиши простую функцию сортировки",
+            "Чем отличается процесс от потока?",
+            "Как работает сборщик мусора?",
+            "Что такое REST API?");
+
+    private final Settings settings;
+    private final ScheduledExecutorService users = Executors.newScheduledThreadPool(2);
+    // User ID -> when their unanswered message was sent
+    private final Map<Long, Long> awaitingReply = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong errorReplies = new AtomicLong();
+    private volatile boolean running;
+    private TelegramApiEmulator telegram;
+    private ApplicationProperties properties;
+
+    private LoadGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Run one load test and tear everything down
+     */
+    public static Report run(Settings settings) throws Exception {
+        return new LoadGenerator(settings).execute();
+    }
+
+    private Report execute() throws Exception {
+        try (FakeLlmServer llm = FakeLlmServer.start(settings.getLlm());
+             TelegramApiEmulator emulator = TelegramApiEmulator.start(settings.getTelegram())) {
+            telegram = emulator;
+            properties = properties(telegram.baseUrl(), llm.url());
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+            InMemoryConversationService conversationService = new InMemoryConversationService(properties, tokenEstimator);
+            InMemoryUsageService usageService = new InMemoryUsageService(properties, registry);
+            BotMetrics metrics = new BotMetrics(registry, properties);
+            StaticListableBeanFactory beans = new StaticListableBeanFactory();
+            ConversationSummarizer summarizer = new ConversationSummarizer(properties, conversationService,
+                    beans.getBeanProvider(AiService.class), usageService);
+            OkHttpClient httpClient = new HttpClientConfig().okHttpClient(properties);
+            LiveProperties liveProperties = new LiveProperties(properties);
+            GroqAiService aiService = new GroqAiService(liveProperties, new JsonConfig().objectMapper(), httpClient,
+                    conversationService, summarizer, tokenEstimator, new HeuristicModelRouter(liveProperties, tokenEstimator),
+                    ResponseCache.disabled(), metrics, usageService,
+                    TrafficRecorder.disabled());
+            beans.addBean("aiService", aiService);
+            DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(liveProperties, registry, metrics);
+            AiAssistantBot bot = new AiAssistantBot(properties, aiService, new InMemoryUserService(),
+                    new InMemoryRateLimitService(liveProperties),
+                    new SketchAbuseDetector(properties, liveProperties, registry), scheduler,
+                    new InFlightRequests(liveProperties), new MessageDebouncer(liveProperties, registry),
+                    new MapReduceResponder(liveProperties, aiService, scheduler, tokenEstimator, conversationService, usageService),
+                    conversationService, usageService, metrics,
+                    TrafficRecorder.disabled());
+
+            telegram.setReplyListener(this::onReply);
+            BotSession session = new TelegramBotsApi(DefaultBotSession.class).registerBot(bot);
+            try {
+                running = true;
+                for (long userId = 1; userId <= settings.getUsers(); userId++) {
+                    long id = userId;
+                    users.schedule(() -> send(id), thinkTimeMillis(), TimeUnit.MILLISECONDS);
+                }
+                users.scheduleAtFixedRate(this::expire, 1, 1, TimeUnit.SECONDS);
+
+                long start = System.nanoTime();
+                TimeUnit.MILLISECONDS.sleep(settings.getDuration().toMillis());
+                running = false;
+                double seconds = (System.nanoTime() - start) / 1e9;
+                // Let in-flight requests finish so they are not reported as lost
+                long drainDeadline = System.nanoTime() + settings.getReplyTimeout().toNanos();
+                while (!awaitingReply.isEmpty() && System.nanoTime() < drainDeadline) {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                }
+                lost.addAndGet(awaitingReply.size());
+
+                Report report = new Report(settings.getUsers(), seconds, sent.get(),
+                        latenciesNanos.stream().mapToLong(Long::longValue).sorted().toArray(),
+                        errorReplies.get(), lost.get(), telegram.stats().floodLimited(), llm.stats().toString());
+                log.info("Load test finished: {}", report);
+                return report;
+            } finally {
+                // The emulator goes first: it ends the pending long poll, which the session waits for
+                telegram.close();
+                session.stop();
+                conversationService.shutdown();
+                httpClient.dispatcher().executorService().shutdown();
+            }
+        } finally {
+            users.shutdownNow();
+        }
+    }
+
+    private void send(long userId) {
+        if (!running) {
+            return;
+        }
+        awaitingReply.put(userId, System.nanoTime());
+        sent.incrementAndGet();
+        telegram.sendUserMessage(userId, QUESTIONS.get(ThreadLocalRandom.current().nextInt(QUESTIONS.size())));
+    }
+
+    private void onReply(long chatId, String text, boolean edited) {
+        if (edited) {
+            return;
+        }
+        Long sentAt = awaitingReply.remove(chatId);
+        if (sentAt == null) {
+            return;
+        }
+        latenciesNanos.add(System.nanoTime() - sentAt);
+        if (isError(text)) {
+            errorReplies.incrementAndGet();
+        }
+        scheduleNext(chatId);
+    }
+
+    // Replies that are not an AI answer: provider failures, rate limiting, generic errors
+    private boolean isError(String text) {
+        return text.equals(properties.botBehavior().defaultErrorMessage())
+                || text.startsWith("🤖 AI сервис")
+                || text.startsWith("⏰");
+    }
+
+    private void expire() {
+        long cutoff = System.nanoTime() - settings.getReplyTimeout().toNanos();
+        awaitingReply.forEach((userId, sentAt) -> {
+            if (sentAt < cutoff && awaitingReply.remove(userId, sentAt)) {
+                lost.incrementAndGet();
+                scheduleNext(userId);
+            }
+        });
+    }
+
+    private void scheduleNext(long userId) {
+        if (running) {
+            users.schedule(() -> send(userId), thinkTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long thinkTimeMillis() {
+        double mean = settings.getThinkTime().toMillis();
+        return Math.round(-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private ApplicationProperties properties(String telegramApiUrl, String llmUrl) {
+        return TestProperties.builder()
+                .telegramBotToken(TOKEN)
+                .telegramBotUsername("LoadTestBot")
+                .telegramApiUrl(telegramApiUrl)
+                .aiProvider(new ApplicationProperties.AiProviderProperties(
+                        "groq", "load-test-key", llmUrl, "llama-3.1-8b-instant", null, null, null, null))
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(
+                        null, settings.getRateLimitPerMinute(), null, null, null, List.of(), null))
+                .build();
+    }
+
+    /**
+     * Load test parameters
+     */
+    @Value
+    @Builder
+    public static class Settings {
+
+        @Builder.Default
+        int users = 50;
+
+        @Builder.Default
+        Duration duration = Duration.ofSeconds(60);
+
+        /** Mean pause between a reply and the user's next message */
+        @Builder.Default
+        Duration thinkTime = Duration.ofSeconds(5);
+
+        /** Messages without a reply after this long are counted as lost */
+        @Builder.Default
+        Duration replyTimeout = Duration.ofSeconds(60);
+
+        @Builder.Default
+        int rateLimitPerMinute = 10;
+
+        @Builder.Default
+        FakeLlmServer.Profile llm = FakeLlmServer.Profile.builder()
+                .latency(FakeLlmServer.Latency.lognormal(800, 0.5))
+                .build();
+
+        @Builder.Default
+        TelegramApiEmulator.Profile telegram = TelegramApiEmulator.Profile.builder().build();
+    }
+
+    /**
+     * Load test result
+     */
+    public record Report(int users, double seconds, long sent, long[] latenciesNanos,
+                         long errorReplies, long lost, long floodLimited, String llmStats) {
+
+        public long replied() {
+            return latenciesNanos.length;
+        }
+
+        public double throughputPerSecond() {
+            return replied() / seconds;
+        }
+
+        /**
+         * Reply latency percentile in milliseconds
+         */
+        public double percentileMillis(double percentile) {
+            if (latenciesNanos.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("users=%d duration=%.1fs sent=%d replied=%d (%.2f/s) errors=%d lost=%d "
+                            + "floodLimited=%d latency p50=%.0fms p95=%.0fms p99=%.0fms max=%.0fms llm[%s]",
+                    users, seconds, sent, replied(), throughputPerSecond(), errorReplies, lost, floodLimited,
+                    percentileMillis(50), percentileMillis(95), percentileMillis(99), percentileMillis(100), llmStats);
+        }
+    }
+
+    /**
+     * Run from the command line:
+     * <pre>
+     * mvn test-compile exec:java -Dexec.classpathScope=test \
+     *     -Dexec.mainClass=com.aiassistant.loadtest.LoadGenerator \
+     *     -Dexec.args="--users=200 --duration=60 --think-ms=5000 --latency=lognormal:800:0.5 --rate-limit=10"
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        Settings.SettingsBuilder settings = Settings.builder();
+        FakeLlmServer.Profile.ProfileBuilder llm = FakeLlmServer.Profile.builder()
+                .latency(FakeLlmServer.Latency.lognormal(800, 0.5));
+        TelegramApiEmulator.Profile.ProfileBuilder telegram = TelegramApiEmulator.Profile.builder();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "users" -> settings.users(Integer.parseInt(value));
+                case "duration" -> settings.duration(Duration.ofSeconds(Long.parseLong(value)));
+                case "think-ms" -> settings.thinkTime(Duration.ofMillis(Long.parseLong(value)));
+                case "reply-timeout" -> settings.replyTimeout(Duration.ofSeconds(Long.parseLong(value)));
+                case "rate-limit" -> settings.rateLimitPerMinute(Integer.parseInt(value));
+                case "latency" -> llm.latency(FakeLlmServer.Latency.parse(value));
+                case "tokens" -> llm.completionTokens(Integer.parseInt(value));
+                case "llm-rate-limit" -> llm.rateLimitProbability(Double.parseDouble(value));
+                case "llm-errors" -> llm.serverErrorProbability(Double.parseDouble(value));
+                case "llm-stalls" -> llm.stallProbability(Double.parseDouble(value));
+                case "flood-limits" -> telegram.floodLimitsEnabled(Boolean.parseBoolean(value));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        System.out.println(run(settings.llm(llm.build()).telegram(telegram.build()).build()));
+    }
+}
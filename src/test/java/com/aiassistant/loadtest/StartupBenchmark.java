@@ -0,0 +1,123 @@
+package com.aiassistant.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start benchmark of the packaged bot: launches the jar in a fresh JVM and measures the
+ * time until its first getUpdates call reaches the Telegram API emulator, i.e. until the bot
+ * can receive messages. Every run gets a new JVM and a new emulator; warm-up runs only fill
+ * the OS page cache and are not reported. The bot's output goes to target/startup-benchmark.log.
+ */
+@Slf4j
+public final class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Start the jar {@code warmups + runs} times with the given JVM options
+     */
+    public static Result run(Path jar, List<String> jvmArgs, int warmups, int runs) throws Exception {
+        long[] millis = new long[runs];
+        for (int run = -warmups; run < runs; run++) {
+            long elapsed = startOnce(jar, jvmArgs);
+            log.info("{} run: first getUpdates after {} ms", run < 0 ? "Warm-up" : "Measured", elapsed);
+            if (run >= 0) {
+                millis[run] = elapsed;
+            }
+        }
+        Arrays.sort(millis);
+        return new Result(jvmArgs, millis);
+    }
+
+    private static long startOnce(Path jar, List<String> jvmArgs) throws Exception {
+        try (TelegramApiEmulator telegram = TelegramApiEmulator.start(TelegramApiEmulator.Profile.builder().build())) {
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-jar", jar.toString(),
+                    "--aiassistant.telegram-api-url=" + telegram.baseUrl(),
+                    "--aiassistant.telegram-bot-token=123456:startup-benchmark",
+                    "--aiassistant.telegram-bot-username=StartupBenchmarkBot",
+                    "--server.port=0"));
+
+            long launchedAt = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(Path.of("target", "startup-benchmark.log").toFile()))
+                    .start();
+            try {
+                long deadline = launchedAt + STARTUP_TIMEOUT.toNanos();
+                while (telegram.stats().firstGetUpdatesAt() == 0) {
+                    if (!process.isAlive()) {
+                        throw new IOException("Bot exited with code " + process.exitValue()
+                                + " before polling, see target/startup-benchmark.log");
+                    }
+                    if (System.nanoTime() > deadline) {
+                        throw new IOException("Bot did not poll for updates within " + STARTUP_TIMEOUT);
+                    }
+                    TimeUnit.MILLISECONDS.sleep(1);
+                }
+                return TimeUnit.NANOSECONDS.toMillis(telegram.stats().firstGetUpdatesAt() - launchedAt);
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    /**
+     * Startup times of the measured runs, sorted
+     */
+    public record Result(List<String> jvmArgs, long[] millis) {
+
+        public long medianMillis() {
+            return millis[millis.length / 2];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("time to first getUpdates: median=%dms min=%dms max=%dms runs=%d jvmArgs=%s",
+                    medianMillis(), millis[0], millis[millis.length - 1], millis.length, jvmArgs);
+        }
+    }
+
+    /**
+     * Run from the command line after {@code mvn package} (or {@code mvn -Pfast-start package}):
+     * <pre>
+     * mvn test-compile exec:java -Dexec.classpathScope=test \
+     *     -Dexec.mainClass=com.aiassistant.loadtest.StartupBenchmark \
+     *     -Dexec.args="--jar=target/telegram-ai-bot-1.0.0.jar --runs=5 --jvm-arg=-XX:SharedArchiveFile=target/app.jsa"
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of("target", "telegram-ai-bot-1.0.0.jar");
+        List<String> jvmArgs = new ArrayList<>();
+        int warmups = 1;
+        int runs = 5;
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "jar" -> jar = Path.of(value);
+                case "jvm-arg" -> jvmArgs.add(value);
+                case "warmups" -> warmups = Integer.parseInt(value);
+                case "runs" -> runs = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        System.out.println(run(jar, jvmArgs, warmups, runs));
+    }
+}
@@ -0,0 +1,355 @@
+package com.aiassistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Builder;
+import lombok.Value;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local emulator of the Telegram Bot API subset the bot uses: getUpdates (long polling),
+ * sendMessage, sendChatAction, editMessageText and deleteWebhook.
+ * Incoming user messages are injected with {@link #sendUserMessage}; the bot's outgoing
+ * messages are reported to a {@link ReplyListener}. Flood limits are enforced like Telegram
+ * does: about one message per second per chat and 30 per second overall, answering 429
+ * with parameters.retry_after when exceeded.
+ *
+ * Point the bot at {@link #baseUrl()} via aiassistant.telegram-api-url.
+ */
+public final class TelegramApiEmulator implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+    private final Profile profile;
+    private final Deque<ObjectNode> pendingUpdates = new ArrayDeque<>();
+    private final Map<Long, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final TokenBucket globalBucket;
+    private final AtomicInteger nextUpdateId = new AtomicInteger(1);
+    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    private final Stats stats = new Stats();
+    private volatile ReplyListener listener = (chatId, text, edited) -> { };
+
+    private TelegramApiEmulator(HttpServer server, Profile profile) {
+        this.server = server;
+        this.profile = profile;
+        this.globalBucket = new TokenBucket(profile.getGlobalMessagesPerSecond(), profile.getGlobalMessagesPerSecond());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "telegram-emulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static TelegramApiEmulator start(Profile profile) throws IOException {
+        return start(0, profile);
+    }
+
+    public static TelegramApiEmulator start(int port, Profile profile) throws IOException {
+        return new TelegramApiEmulator(HttpServer.create(new InetSocketAddress("localhost", port), 0), profile);
+    }
+
+    /**
+     * Base URL for the bot; the token and method name are appended to it
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/bot";
+    }
+
+    public void setReplyListener(ReplyListener listener) {
+        this.listener = listener;
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /**
+     * Queue a private text message from the user, as if typed in the Telegram client
+     *
+     * @return update ID
+     */
+    public int sendUserMessage(long userId, String text) {
+        int updateId = nextUpdateId.getAndIncrement();
+        ObjectNode update = MAPPER.createObjectNode().put("update_id", updateId);
+        ObjectNode message = update.putObject("message")
+                .put("message_id", nextMessageId.getAndIncrement())
+                .put("date", System.currentTimeMillis() / 1000);
+        message.putObject("from")
+                .put("id", userId)
+                .put("is_bot", false)
+                .put("first_name", "User")
+                .put("last_name", String.valueOf(userId))
+                .put("username", "user" + userId)
+                .put("language_code", "ru");
+        message.putObject("chat")
+                .put("id", userId)
+                .put("type", "private");
+        message.put("text", text);
+
+        synchronized (pendingUpdates) {
+            pendingUpdates.addLast(update);
+            pendingUpdates.notifyAll();
+        }
+        stats.updates.incrementAndGet();
+        return updateId;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        synchronized (pendingUpdates) {
+            // Wakes pending long polls, which return at once instead of waiting out their timeout
+            closed = true;
+            pendingUpdates.notifyAll();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            // Method names are case-insensitive; the client library sends them in lower case
+            String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+            JsonNode request = readRequest(exchange);
+
+            switch (method) {
+                case "getupdates" -> {
+                    stats.onGetUpdates();
+                    respond(exchange, 200, ok(getUpdates(request)));
+                }
+                case "sendmessage" -> sendMessage(exchange, request, false);
+                case "editmessagetext" -> sendMessage(exchange, request, true);
+                case "sendchataction" -> {
+                    stats.chatActions.incrementAndGet();
+                    respond(exchange, 200, ok(MAPPER.getNodeFactory().booleanNode(true)));
+                }
+                case "deletewebhook" -> respond(exchange, 200, ok(MAPPER.getNodeFactory().booleanNode(true)));
+                default -> respond(exchange, 404, failure(404, "Not Found: method " + method + " is not emulated"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JsonNode readRequest(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        return body.length == 0 ? MAPPER.createObjectNode() : MAPPER.readTree(body);
+    }
+
+    /**
+     * Long polling: updates below offset are confirmed and dropped; waits up to timeout seconds for new ones
+     */
+    private JsonNode getUpdates(JsonNode request) throws InterruptedException {
+        long offset = request.path("offset").asLong(0);
+        int limit = request.path("limit").asInt(100);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(request.path("timeout").asInt(0));
+
+        synchronized (pendingUpdates) {
+            while (!pendingUpdates.isEmpty() && pendingUpdates.peekFirst().path("update_id").asLong() < offset) {
+                pendingUpdates.removeFirst();
+            }
+            long remaining;
+            while (pendingUpdates.isEmpty() && (remaining = deadline - System.nanoTime()) > 0 && !closed) {
+                TimeUnit.NANOSECONDS.timedWait(pendingUpdates, remaining);
+            }
+            var result = MAPPER.createArrayNode();
+            for (ObjectNode update : pendingUpdates) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.add(update);
+            }
+            return result;
+        }
+    }
+
+    private void sendMessage(HttpExchange exchange, JsonNode request, boolean edit) throws IOException {
+        long chatId = request.path("chat_id").asLong();
+        String text = request.path("text").asText("");
+
+        if (profile.isFloodLimitsEnabled()) {
+            TokenBucket chatBucket = chatBuckets.computeIfAbsent(chatId,
+                    id -> new TokenBucket(profile.getChatMessagesPerSecond(), profile.getChatBurst()));
+            long retryAfter = chatBucket.tryAcquire();
+            if (retryAfter == 0) {
+                retryAfter = globalBucket.tryAcquire();
+            }
+            if (retryAfter > 0) {
+                stats.floodLimited.incrementAndGet();
+                ObjectNode response = failure(429, "Too Many Requests: retry after " + retryAfter);
+                response.putObject("parameters").put("retry_after", retryAfter);
+                respond(exchange, 429, response);
+                return;
+            }
+        }
+
+        ObjectNode message = MAPPER.createObjectNode()
+                .put("message_id", edit ? request.path("message_id").asInt() : nextMessageId.getAndIncrement())
+                .put("date", System.currentTimeMillis() / 1000)
+                .put("text", text);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        message.putObject("from").put("id", 1).put("is_bot", true).put("first_name", "Bot");
+        (edit ? stats.edits : stats.messages).incrementAndGet();
+        respond(exchange, 200, ok(message));
+        listener.onReply(chatId, text, edit);
+    }
+
+    private static ObjectNode ok(JsonNode result) {
+        ObjectNode response = MAPPER.createObjectNode().put("ok", true);
+        response.set("result", result);
+        return response;
+    }
+
+    private static ObjectNode failure(int code, String description) {
+        return MAPPER.createObjectNode()
+                .put("ok", false)
+                .put("error_code", code)
+                .put("description", description);
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Receives every message the bot sent or edited
+     */
+    @FunctionalInterface
+    public interface ReplyListener {
+        void onReply(long chatId, String text, boolean edited);
+    }
+
+    /**
+     * Emulator behaviour
+     */
+    @Value
+    @Builder
+    public static class Profile {
+
+        @Builder.Default
+        boolean floodLimitsEnabled = true;
+
+        /** Sustained messages per second into one chat */
+        @Builder.Default
+        double chatMessagesPerSecond = 1.0;
+
+        /** Short bursts allowed into one chat before 429 */
+        @Builder.Default
+        int chatBurst = 3;
+
+        /** Messages per second across all chats */
+        @Builder.Default
+        double globalMessagesPerSecond = 30.0;
+    }
+
+    /**
+     * Outgoing traffic counters
+     */
+    public static final class Stats {
+        final AtomicLong updates = new AtomicLong();
+        final AtomicLong getUpdatesCalls = new AtomicLong();
+        // System.nanoTime() of the first getUpdates call, 0 until the bot starts polling
+        final AtomicLong firstGetUpdatesAt = new AtomicLong();
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong edits = new AtomicLong();
+        final AtomicLong chatActions = new AtomicLong();
+        final AtomicLong floodLimited = new AtomicLong();
+
+        public long updates() {
+            return updates.get();
+        }
+
+        public long getUpdatesCalls() {
+            return getUpdatesCalls.get();
+        }
+
+        /**
+         * System.nanoTime() when the bot first polled for updates, 0 if it has not yet
+         */
+        public long firstGetUpdatesAt() {
+            return firstGetUpdatesAt.get();
+        }
+
+        void onGetUpdates() {
+            if (getUpdatesCalls.getAndIncrement() == 0) {
+                firstGetUpdatesAt.compareAndSet(0, System.nanoTime());
+            }
+        }
+
+        public long messages() {
+            return messages.get();
+        }
+
+        public long edits() {
+            return edits.get();
+        }
+
+        public long chatActions() {
+            return chatActions.get();
+        }
+
+        public long floodLimited() {
+            return floodLimited.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("updates=%d messages=%d edits=%d chatActions=%d floodLimited=%d",
+                    updates(), messages(), edits(), chatActions(), floodLimited());
+        }
+    }
+
+    /**
+     * Token bucket returning the whole seconds to wait when empty, like Telegram's retry_after
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double perSecond, double capacity) {
+            this.ratePerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized long tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerNano / TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+}
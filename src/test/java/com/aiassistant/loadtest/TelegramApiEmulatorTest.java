@@ -0,0 +1,97 @@
+package com.aiassistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelegramApiEmulatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OkHttpClient httpClient = new OkHttpClient();
+
+    @Test
+    void testGetUpdates_ConfirmedUpdatesAreNotRedelivered() throws IOException {
+        try (TelegramApiEmulator emulator = TelegramApiEmulator.start(TelegramApiEmulator.Profile.builder().build())) {
+            // Arrange
+            int first = emulator.sendUserMessage(123L, "Hello");
+            emulator.sendUserMessage(123L, "How are you?");
+
+            // Act
+            JsonNode all = call(emulator, "getUpdates", "{\"offset\":0,\"timeout\":0}");
+            JsonNode rest = call(emulator, "getUpdates", "{\"offset\":" + (first + 1) + ",\"timeout\":0}");
+
+            // Assert
+            assertEquals(2, all.path("result").size());
+            assertEquals("Hello", all.path("result").get(0).path("message").path("text").asText());
+            assertEquals(1, rest.path("result").size());
+            assertEquals("How are you?", rest.path("result").get(0).path("message").path("text").asText());
+        }
+    }
+
+    @Test
+    void testSendMessage_FloodLimitAnswers429WithRetryAfter() throws IOException {
+        TelegramApiEmulator.Profile profile = TelegramApiEmulator.Profile.builder()
+                .chatMessagesPerSecond(1)
+                .chatBurst(2)
+                .build();
+        try (TelegramApiEmulator emulator = TelegramApiEmulator.start(profile)) {
+            // Act
+            JsonNode first = call(emulator, "sendMessage", "{\"chat_id\":\"456\",\"text\":\"1\"}");
+            JsonNode second = call(emulator, "sendMessage", "{\"chat_id\":\"456\",\"text\":\"2\"}");
+            JsonNode third = call(emulator, "sendMessage", "{\"chat_id\":\"456\",\"text\":\"3\"}");
+            JsonNode otherChat = call(emulator, "sendMessage", "{\"chat_id\":\"789\",\"text\":\"1\"}");
+
+            // Assert
+            assertTrue(first.path("ok").asBoolean());
+            assertTrue(second.path("ok").asBoolean());
+            assertFalse(third.path("ok").asBoolean());
+            assertEquals(429, third.path("error_code").asInt());
+            assertEquals(1, third.path("parameters").path("retry_after").asInt());
+            assertTrue(otherChat.path("ok").asBoolean());
+            assertEquals(1, emulator.stats().floodLimited());
+        }
+    }
+
+    @Test
+    void testLoadGenerator_DrivesBotEndToEnd() throws Exception {
+        // Arrange
+        LoadGenerator.Settings settings = LoadGenerator.Settings.builder()
+                .users(5)
+                .duration(Duration.ofSeconds(3))
+                .thinkTime(Duration.ofMillis(100))
+                .replyTimeout(Duration.ofSeconds(5))
+                .rateLimitPerMinute(1000)
+                .llm(FakeLlmServer.Profile.builder().latency(FakeLlmServer.Latency.fixed(50)).build())
+                .telegram(TelegramApiEmulator.Profile.builder().floodLimitsEnabled(false).build())
+                .build();
+
+        // Act
+        LoadGenerator.Report report = LoadGenerator.run(settings);
+
+        // Assert
+        assertTrue(report.replied() >= 10, report.toString());
+        assertEquals(0, report.lost(), report.toString());
+        assertEquals(0, report.errorReplies(), report.toString());
+        assertTrue(report.percentileMillis(50) >= 50, report.toString());
+    }
+
+    private JsonNode call(TelegramApiEmulator emulator, String method, String json) throws IOException {
+        Request request = new Request.Builder()
+                .url(emulator.baseUrl() + "123:token/" + method)
+                .post(RequestBody.create(json, MediaType.get("application/json")))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return objectMapper.readTree(response.body().string());
+        }
+    }
+}
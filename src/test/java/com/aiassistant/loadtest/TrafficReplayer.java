@@ -0,0 +1,356 @@
+package com.aiassistant.loadtest;
+
+import com.aiassistant.bot.AiAssistantBot;
+import com.aiassistant.bot.InFlightRequests;
+import com.aiassistant.bot.MessageDebouncer;
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.impl.DeficitRoundRobinScheduler;
+import com.aiassistant.service.impl.HeuristicTokenEstimator;
+import com.aiassistant.service.impl.InMemoryConversationService;
+import com.aiassistant.service.impl.InMemoryRateLimitService;
+import com.aiassistant.service.impl.InMemoryUsageService;
+import com.aiassistant.service.impl.InMemoryUserService;
+import com.aiassistant.service.impl.MapReduceResponder;
+import com.aiassistant.service.impl.SketchAbuseDetector;
+import com.aiassistant.traffic.TrafficEvent;
+import com.aiassistant.traffic.TrafficLog;
+import com.aiassistant.traffic.TrafficRecorder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-drives a real AiAssistantBot (in-memory services) with a traffic capture written by
+ * {@link TrafficRecorder}, compressing time by a speed factor: at 10x an hour of production
+ * traffic replays in six minutes. Updates are dispatched from one thread, as the long-polling
+ * session does, with synthetic text of the recorded length. The AI provider is a stub that
+ * answers each chat's calls in recorded order, after the recorded latency divided by the
+ * speed, with a reply of the recorded size or the recorded failure.
+ * <p>
+ * Rate limits are scaled by the speed factor by default, so a replayed user hits the limit
+ * exactly when the real one did; disable that to see how the real limit holds up under
+ * compressed traffic. Reports reply latency percentiles and how far the driver fell behind
+ * the recorded schedule.
+ */
+@Slf4j
+public final class TrafficReplayer {
+
+    private final Settings settings;
+    private final Map<Long, Deque<TrafficEvent.AiCall>> recordedCalls = new ConcurrentHashMap<>();
+    // Chat ID -> dispatch times of updates still waiting for a reply
+    private final Map<Long, ConcurrentLinkedDeque<Long>> awaitingReply = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong errorReplies = new AtomicLong();
+    private final AtomicLong aiCalls = new AtomicLong();
+    private final ScheduledExecutorService provider = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replay-provider");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ApplicationProperties properties;
+
+    private TrafficReplayer(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Replay a capture file
+     */
+    public static Report replay(Path file, Settings settings) throws Exception {
+        return replay(TrafficLog.read(file), settings);
+    }
+
+    /**
+     * Replay captured events, in the order they were recorded
+     */
+    public static Report replay(List<TrafficEvent> events, Settings settings) throws InterruptedException {
+        return new TrafficReplayer(settings).execute(events);
+    }
+
+    private Report execute(List<TrafficEvent> events) throws InterruptedException {
+        int rateLimit = settings.isScaleRateLimit()
+                ? (int) Math.min(Integer.MAX_VALUE, Math.ceil(settings.getRateLimitPerMinute() * settings.getSpeed()))
+                : settings.getRateLimitPerMinute();
+        properties = properties(rateLimit);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+        InMemoryConversationService conversationService = new InMemoryConversationService(properties, tokenEstimator);
+        InMemoryUsageService usageService = new InMemoryUsageService(properties, registry);
+        BotMetrics metrics = new BotMetrics(registry, properties);
+        LiveProperties liveProperties = new LiveProperties(properties);
+        ReplayAiService aiService = new ReplayAiService();
+        DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(liveProperties, registry, metrics);
+        AiAssistantBot bot = new AiAssistantBot(properties, aiService, new InMemoryUserService(),
+                new InMemoryRateLimitService(liveProperties),
+                new SketchAbuseDetector(properties, liveProperties, registry), scheduler,
+                new InFlightRequests(liveProperties), new MessageDebouncer(liveProperties, registry),
+                new MapReduceResponder(liveProperties, aiService, scheduler, tokenEstimator, conversationService, usageService),
+                conversationService, usageService, metrics,
+                TrafficRecorder.disabled()) {
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
+                if (method instanceof SendMessage message) {
+                    onReply(Long.parseLong(message.getChatId()), message.getText());
+                }
+                return null;
+            }
+        };
+
+        List<TrafficEvent.Update> updates = events.stream()
+                .filter(TrafficEvent.Update.class::isInstance)
+                .map(TrafficEvent.Update.class::cast)
+                .toList();
+        events.stream()
+                .filter(TrafficEvent.AiCall.class::isInstance)
+                .map(TrafficEvent.AiCall.class::cast)
+                .forEach(call -> recordedCalls.computeIfAbsent(call.chatId(), id -> new ArrayDeque<>()).add(call));
+
+        try {
+            long start = System.nanoTime();
+            long maxLagNanos = 0;
+            long firstMicros = updates.isEmpty() ? 0 : updates.get(0).epochMicros();
+            int updateId = 1;
+            for (TrafficEvent.Update recorded : updates) {
+                long target = start + (long) ((recorded.epochMicros() - firstMicros) * 1000 / settings.getSpeed());
+                long now;
+                while ((now = System.nanoTime()) < target) {
+                    LockSupport.parkNanos(target - now);
+                }
+                maxLagNanos = Math.max(maxLagNanos, now - target);
+
+                outstanding.incrementAndGet();
+                awaitingReply.computeIfAbsent(recorded.chatId(), id -> new ConcurrentLinkedDeque<>()).addLast(now);
+                bot.onUpdateReceived(update(updateId++, recorded));
+            }
+            double dispatchSeconds = (System.nanoTime() - start) / 1e9;
+
+            long drainDeadline = System.nanoTime() + settings.getDrainTimeout().toNanos();
+            while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+
+            Report report = new Report(updates.size(), settings.getSpeed(), dispatchSeconds,
+                    latenciesNanos.stream().mapToLong(Long::longValue).sorted().toArray(),
+                    rateLimited.get(), errorReplies.get(), outstanding.get(), aiCalls.get(), maxLagNanos);
+            log.info("Replay finished: {}", report);
+            return report;
+        } finally {
+            provider.shutdownNow();
+            conversationService.shutdown();
+        }
+    }
+
+    private void onReply(long chatId, String text) {
+        ConcurrentLinkedDeque<Long> pending = awaitingReply.get(chatId);
+        Long dispatchedAt = pending != null ? pending.pollFirst() : null;
+        if (dispatchedAt == null) {
+            return;
+        }
+        latenciesNanos.add(System.nanoTime() - dispatchedAt);
+        outstanding.decrementAndGet();
+        if (text.startsWith("⏰")) {
+            rateLimited.incrementAndGet();
+        } else if (text.startsWith("🤖 AI сервис") || text.equals(properties.botBehavior().defaultErrorMessage())) {
+            errorReplies.incrementAndGet();
+        }
+    }
+
+    private static Update update(int updateId, TrafficEvent.Update recorded) {
+        User user = new User(recorded.userId(), "User", false);
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setFrom(user);
+        message.setChat(new Chat(recorded.chatId(), recorded.chatId() == recorded.userId() ? "private" : "group"));
+        // Only sizes are captured: commands replay as /help, messages as filler of the same length
+        message.setText(recorded.command() ? "/help" : "a".repeat(Math.max(1, recorded.textChars())));
+
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private ApplicationProperties properties(int rateLimitPerMinute) {
+        return TestProperties.builder()
+                .telegramBotToken("123456:replay")
+                .telegramBotUsername("ReplayBot")
+                .aiProvider(new ApplicationProperties.AiProviderProperties(
+                        "groq", "replay-key", "http://localhost/v1/chat/completions", "llama-3.1-8b-instant",
+                        null, null, null, null))
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(
+                        null, rateLimitPerMinute, null, null, null, List.of(), null))
+                .build();
+    }
+
+    /**
+     * Provider stub answering each chat with its recorded calls, in order
+     */
+    private final class ReplayAiService implements AiService {
+
+        @Override
+        public CompletableFuture<AiResponse> chatCompletion(AiRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<String> generateResponse(String message) {
+            return generateResponse(null, 0L, message);
+        }
+
+        @Override
+        public CompletableFuture<String> generateResponse(Long userId, Long chatId, String message) {
+            aiCalls.incrementAndGet();
+            Deque<TrafficEvent.AiCall> calls = recordedCalls.get(chatId);
+            TrafficEvent.AiCall call;
+            synchronized (this) {
+                call = calls != null ? calls.pollFirst() : null;
+            }
+            if (call == null) {
+                // More AI requests than captured, e.g. a stricter rate limit in production
+                return CompletableFuture.completedFuture("a".repeat(message.length()));
+            }
+
+            CompletableFuture<String> reply = new CompletableFuture<>();
+            long delayMicros = (long) (call.latencyMicros() / settings.getSpeed());
+            provider.schedule(() -> {
+                if (call.succeeded()) {
+                    reply.complete("a".repeat(Math.max(1, call.responseChars())));
+                } else {
+                    reply.completeExceptionally(new AiServiceException("GROQ_API_ERROR", "Replayed provider failure"));
+                }
+            }, delayMicros, TimeUnit.MICROSECONDS);
+            return reply;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String getProviderName() {
+            return "Replay";
+        }
+    }
+
+    /**
+     * Replay parameters
+     */
+    @Value
+    @Builder
+    public static class Settings {
+
+        /** Time compression factor: 1, 10, 100 */
+        @Builder.Default
+        double speed = 1;
+
+        /** Per-user limit configured in production when the capture was taken */
+        @Builder.Default
+        int rateLimitPerMinute = 10;
+
+        /** Multiply the rate limit by the speed factor so limiting matches the capture */
+        @Builder.Default
+        boolean scaleRateLimit = true;
+
+        /** How long to wait for replies after the last update is dispatched */
+        @Builder.Default
+        Duration drainTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Replay result
+     */
+    public record Report(int updates, double speed, double seconds, long[] latenciesNanos, long rateLimited,
+                         long errorReplies, long unanswered, long aiCalls, long maxLagNanos) {
+
+        public long replied() {
+            return latenciesNanos.length;
+        }
+
+        /**
+         * Reply latency percentile in milliseconds
+         */
+        public double percentileMillis(double percentile) {
+            if (latenciesNanos.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("updates=%d speed=%.0fx dispatched in %.1fs replied=%d rateLimited=%d errors=%d "
+                            + "unanswered=%d aiCalls=%d latency p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms "
+                            + "driverLag max=%.1fms",
+                    updates, speed, seconds, replied(), rateLimited, errorReplies, unanswered, aiCalls,
+                    percentileMillis(50), percentileMillis(95), percentileMillis(99), percentileMillis(100),
+                    maxLagNanos / 1e6);
+        }
+    }
+
+    /**
+     * Run from the command line:
+     * <pre>
+     * mvn test-compile exec:java -Dexec.classpathScope=test \
+     *     -Dexec.mainClass=com.aiassistant.loadtest.TrafficReplayer \
+     *     -Dexec.args="data/traffic/traffic-1717000000000.bin --speed=10 --rate-limit=10"
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        Path file = null;
+        Settings.SettingsBuilder settings = Settings.builder();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                file = Path.of(arg);
+                continue;
+            }
+            String[] option = arg.substring(2).split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "speed" -> settings.speed(Double.parseDouble(value));
+                case "rate-limit" -> settings.rateLimitPerMinute(Integer.parseInt(value));
+                case "scale-rate-limit" -> settings.scaleRateLimit(Boolean.parseBoolean(value));
+                case "drain-timeout" -> settings.drainTimeout(Duration.ofSeconds(Long.parseLong(value)));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Usage: TrafficReplayer <capture.bin> [--speed=10] [--rate-limit=10]");
+        }
+        System.out.println(replay(file, settings.build()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.aiassistant.loadtest;
+
+import com.aiassistant.traffic.TrafficEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficReplayerTest {
+
+    private static final long START_MICROS = 1_717_000_000_000_000L;
+
+    @Test
+    void testReplay_AnswersEveryUpdateWithRecordedOutcomes() throws InterruptedException {
+        // Arrange - 10 users, three messages each over 3 seconds, one failed provider call
+        List<TrafficEvent> events = capture(10, 3, 200_000);
+        events.add(new TrafficEvent.Update(START_MICROS + 3_500_000, 1, 1, 2, true));
+
+        // Act
+        TrafficReplayer.Report report = TrafficReplayer.replay(events,
+                TrafficReplayer.Settings.builder().speed(10).rateLimitPerMinute(10).build());
+
+        // Assert - 3.5 seconds of traffic replayed in about 350ms
+        assertEquals(31, report.updates());
+        assertEquals(31, report.replied());
+        assertEquals(0, report.unanswered());
+        assertEquals(30, report.aiCalls());
+        assertEquals(1, report.errorReplies());
+        assertEquals(0, report.rateLimited());
+        assertTrue(report.seconds() < 2, report.toString());
+        // Recorded 200ms provider latency compressed tenfold
+        assertTrue(report.percentileMillis(50) >= 15, report.toString());
+    }
+
+    @Test
+    void testReplay_UnscaledRateLimitShowsCompressionEffect() throws InterruptedException {
+        // Arrange
+        List<TrafficEvent> events = capture(5, 3, 1_000);
+
+        // Act - the limit of 2 per minute is not scaled, so the third message of every user is rejected
+        TrafficReplayer.Report report = TrafficReplayer.replay(events, TrafficReplayer.Settings.builder()
+                .speed(100)
+                .rateLimitPerMinute(2)
+                .scaleRateLimit(false)
+                .build());
+
+        // Assert
+        assertEquals(15, report.replied());
+        assertEquals(5, report.rateLimited());
+        assertEquals(10, report.aiCalls());
+    }
+
+    /**
+     * Every user sends a message per second; the very first provider call fails
+     */
+    private static List<TrafficEvent> capture(int users, int messagesPerUser, int latencyMicros) {
+        List<TrafficEvent> events = new ArrayList<>();
+        for (int round = 0; round < messagesPerUser; round++) {
+            for (long userId = 1; userId <= users; userId++) {
+                long at = START_MICROS + round * 1_000_000L + userId * 10_000;
+                int status = round == 0 && userId == 1 ? -1 : 200;
+                events.add(new TrafficEvent.Update(at, userId, userId, 40, false));
+                events.add(new TrafficEvent.AiCall(at + latencyMicros, userId, 60, 20, status == 200 ? 90 : 0,
+                        latencyMicros, status));
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,72 @@
+package com.aiassistant.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotMetricsTest {
+
+    @Test
+    void testRecord_TimersAreTaggedByStageProviderAndModel() {
+        // Arrange
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        BotMetrics metrics = new BotMetrics(registry, "groq", "llama-3.1-8b-instant");
+
+        // Act
+        long start = metrics.start();
+        metrics.record(BotMetrics.Stage.PROVIDER_CALL, start);
+        metrics.record(BotMetrics.Stage.PROVIDER_CALL, start);
+
+        // Assert
+        Timer timer = registry.get("aiassistant.stage.latency")
+                .tags("stage", "provider_call", "provider", "groq", "model", "llama-3.1-8b-instant")
+                .timer();
+        assertEquals(2, timer.count());
+        assertSame(timer, metrics.timer(BotMetrics.Stage.PROVIDER_CALL));
+        assertEquals(0, metrics.timer(BotMetrics.Stage.TELEGRAM_SEND).count());
+    }
+
+    @Test
+    void testRecord_ProviderCallIsTaggedWithTheCalledModel() {
+        // Arrange
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        BotMetrics metrics = new BotMetrics(registry, "groq", "llama-3.3-70b-versatile");
+
+        // Act
+        long start = metrics.start();
+        metrics.record(BotMetrics.Stage.PROVIDER_CALL, "llama-3.1-8b-instant", start);
+        metrics.record(BotMetrics.Stage.PROVIDER_CALL, "llama-3.1-8b-instant", start);
+        metrics.record(BotMetrics.Stage.PROVIDER_CALL, "llama-3.3-70b-versatile", start);
+
+        // Assert
+        assertEquals(2, registry.get("aiassistant.stage.latency")
+                .tags("stage", "provider_call", "model", "llama-3.1-8b-instant")
+                .timer().count());
+        assertEquals(1, metrics.timer(BotMetrics.Stage.PROVIDER_CALL).count());
+        assertNull(registry.find("aiassistant.stage.latency")
+                .tags("stage", "update", "model", "llama-3.1-8b-instant")
+                .timer());
+    }
+
+    @Test
+    void testScrape_ExposesPercentilesAndHistogram() {
+        // Arrange
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        BotMetrics metrics = new BotMetrics(registry, "groq", "llama-3.1-8b-instant");
+        for (int i = 1; i <= 1000; i++) {
+            metrics.timer(BotMetrics.Stage.END_TO_END).record(i, TimeUnit.MILLISECONDS);
+        }
+
+        // Act
+        String scrape = registry.scrape();
+
+        // Assert
+        assertTrue(scrape.contains("aiassistant_stage_latency_seconds{model=\"llama-3.1-8b-instant\",provider=\"groq\",stage=\"end_to_end\",quantile=\"0.999\""));
+        assertTrue(scrape.contains("aiassistant_stage_latency_seconds_bucket{model=\"llama-3.1-8b-instant\",provider=\"groq\",stage=\"end_to_end\""));
+    }
+}
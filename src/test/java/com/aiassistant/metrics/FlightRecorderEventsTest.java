@@ -0,0 +1,148 @@
+package com.aiassistant.metrics;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.impl.GroqAiService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FlightRecorderEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Recording recording;
+
+    @BeforeEach
+    void setUp() {
+        recording = new Recording();
+        recording.enable("com.aiassistant.Update").withThreshold(Duration.ZERO);
+        recording.enable("com.aiassistant.AiCall").withThreshold(Duration.ZERO);
+        recording.enable("com.aiassistant.RateLimit").withThreshold(Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        recording.close();
+        FlightRecorderEvents.setEnabled(true);
+    }
+
+    @Test
+    void testAiCallEventIsRecorded() throws Exception {
+        // Arrange
+        FlightRecorderEvents.setEnabled(true);
+        ApplicationProperties properties = mock(ApplicationProperties.class);
+        ApplicationProperties.AiProviderProperties aiProvider = mock(ApplicationProperties.AiProviderProperties.class);
+        when(properties.aiProvider()).thenReturn(aiProvider);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse()
+                    .setBody("{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"Hi\"}}],"
+                            + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3,\"total_tokens\":15}}")
+                    .setResponseCode(200));
+            when(aiProvider.apiUrl()).thenReturn(server.url("/v1/chat/completions").toString());
+            when(aiProvider.apiKey()).thenReturn("test-api-key");
+
+            GroqAiService service = new GroqAiService(new LiveProperties(properties), new ObjectMapper(), new OkHttpClient(),
+                    null, null, null, null, null, new BotMetrics(new SimpleMeterRegistry(), "groq", "test-model"), null, null);
+            AiRequest request = AiRequest.builder()
+                    .model("test-model")
+                    .messages(List.of(AiRequest.Message.user("Hello")))
+                    .build();
+
+            // Act
+            recording.start();
+            service.chatCompletion(request).get();
+            recording.stop();
+        }
+
+        // Assert
+        List<RecordedEvent> events = recordedEvents("com.aiassistant.AiCall");
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("test-model", event.getString("model"));
+        assertEquals(200, event.getInt("status"));
+        assertEquals(12, event.getInt("promptTokens"));
+        assertEquals(3, event.getInt("completionTokens"));
+        assertFalse(event.getDuration().isNegative());
+    }
+
+    @Test
+    void testDisabledEventsAreNotRecorded() throws IOException {
+        // Arrange
+        FlightRecorderEvents.setEnabled(false);
+
+        // Act
+        recording.start();
+        FlightRecorderEvents.RateLimitEvent event = new FlightRecorderEvents.RateLimitEvent();
+        event.begin();
+        event.userId = 1L;
+        event.allowed = true;
+        event.commit();
+        recording.stop();
+
+        // Assert
+        assertTrue(recordedEvents("com.aiassistant.RateLimit").isEmpty());
+    }
+
+    @Test
+    void testFastStartProfileRegistersEvents() {
+        // Arrange - the fast-start profile creates beans lazily
+        FlightRecorderEvents.setEnabled(false);
+        SpringApplicationBuilder application = new SpringApplicationBuilder(FastStartContext.class)
+                .profiles("fast-start")
+                .web(WebApplicationType.NONE);
+
+        // Act
+        try (ConfigurableApplicationContext context = application.run()) {
+
+            // Assert
+            List<String> registered = FlightRecorder.getFlightRecorder().getEventTypes().stream()
+                    .map(EventType::getName)
+                    .toList();
+            assertTrue(registered.contains("com.aiassistant.Update"));
+            assertTrue(registered.contains("com.aiassistant.AiCall"));
+        }
+    }
+
+    private List<RecordedEvent> recordedEvents(String name) throws IOException {
+        Path file = tempDir.resolve("events.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .toList();
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(ApplicationProperties.class)
+    @Import(FlightRecorderEvents.class)
+    static class FastStartContext {
+    }
+}
@@ -0,0 +1,117 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.UsageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationSummarizerTest {
+
+    @Mock
+    private ApplicationProperties properties;
+
+    @Mock
+    private ConversationService conversationService;
+
+    @Mock
+    private AiService aiService;
+
+    @Mock
+    private ObjectProvider<AiService> aiServiceProvider;
+
+    @Mock
+    private UsageService usageService;
+
+    private ConversationSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        summarizer = new ConversationSummarizer(properties, conversationService, aiServiceProvider, usageService);
+    }
+
+    @Test
+    void testSummarizeIfNeeded_AppliesSummaryFromCheaperModel() {
+        // Arrange
+        ConversationService.Compaction compaction = new ConversationService.Compaction(
+                1L, 0, "user is John", List.of(AiRequest.Message.user("q1"), AiRequest.Message.assistant("a1")));
+        AiResponse response = AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant("John asked q1"))
+                        .build()))
+                .build();
+
+        when(properties.conversation()).thenReturn(new ApplicationProperties.ConversationProperties(
+                null, null, null, null, null, null, null, null, "small-model", 128));
+        when(conversationService.findCompaction(1L)).thenReturn(Optional.of(compaction));
+        when(aiServiceProvider.getIfAvailable()).thenReturn(aiService);
+        when(aiService.chatCompletion(any(AiRequest.class))).thenReturn(CompletableFuture.completedFuture(response));
+
+        // Act
+        summarizer.summarizeIfNeeded(1L);
+
+        // Assert
+        ArgumentCaptor<AiRequest> requestCaptor = ArgumentCaptor.forClass(AiRequest.class);
+        verify(aiService).chatCompletion(requestCaptor.capture());
+        AiRequest request = requestCaptor.getValue();
+        assertEquals("small-model", request.getModel());
+        assertEquals(128, request.getMaxTokens());
+        assertTrue(request.getMessages().get(1).getContent().contains("user is John"));
+        assertTrue(request.getMessages().get(1).getContent().contains("user: q1"));
+        verify(conversationService).applyCompaction(compaction, "John asked q1");
+    }
+
+    @Test
+    void testSummarizeIfNeeded_ShortHistoryIsLeftAlone() {
+        // Arrange
+        when(conversationService.findCompaction(1L)).thenReturn(Optional.empty());
+
+        // Act
+        summarizer.summarizeIfNeeded(1L);
+
+        // Assert
+        verify(aiService, never()).chatCompletion(any());
+        verify(conversationService, never()).applyCompaction(any(), any());
+    }
+
+    @Test
+    void testSummarizeIfNeeded_OneSummarizationPerChat() {
+        // Arrange
+        ConversationService.Compaction compaction = new ConversationService.Compaction(
+                1L, 0, null, List.of(AiRequest.Message.user("q1")));
+        CompletableFuture<AiResponse> pending = new CompletableFuture<>();
+
+        when(properties.conversation()).thenReturn(new ApplicationProperties.ConversationProperties(
+                null, null, null, null, null, null, null, null, "small-model", null));
+        when(conversationService.findCompaction(1L)).thenReturn(Optional.of(compaction));
+        when(aiServiceProvider.getIfAvailable()).thenReturn(aiService);
+        when(aiService.chatCompletion(any(AiRequest.class))).thenReturn(pending);
+
+        // Act
+        summarizer.summarizeIfNeeded(1L);
+        summarizer.summarizeIfNeeded(1L);
+        pending.completeExceptionally(new RuntimeException("provider down"));
+        summarizer.summarizeIfNeeded(1L);
+
+        // Assert
+        verify(aiService, times(2)).chatCompletion(any(AiRequest.class));
+        verify(conversationService, never()).applyCompaction(any(), any());
+    }
+}
@@ -0,0 +1,220 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.exception.DeadlineExceededException;
+import com.aiassistant.metrics.BotMetrics;
+import com.aiassistant.util.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeficitRoundRobinSchedulerTest {
+
+    private static final long HEAVY_USER = 1L;
+    private static final long ADMIN = 99L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> started = new ArrayList<>();
+    private final List<CompletableFuture<String>> running = new ArrayList<>();
+
+    @Test
+    void testSubmit_HeavyUserDoesNotDelayOthers() {
+        // Arrange - one slot, held while the queue builds up
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        submit(scheduler, HEAVY_USER, 300, "blocker");
+        for (int i = 0; i < 10; i++) {
+            submit(scheduler, HEAVY_USER, 300, "heavy-" + i);
+        }
+        submit(scheduler, 2L, 300, "light-2");
+        submit(scheduler, 3L, 300, "light-3");
+        submit(scheduler, 4L, 300, "light-4");
+
+        // Act
+        drain();
+
+        // Assert - every light user is served before the heavy user's third request
+        assertEquals(List.of("blocker", "heavy-0", "light-2", "light-3", "light-4", "heavy-1", "heavy-2"),
+                started.subList(0, 7));
+        assertEquals(14, started.size());
+    }
+
+    @Test
+    void testSubmit_ShortPromptsTakeTheFastLane() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        submit(scheduler, HEAVY_USER, 300, "blocker");
+        submit(scheduler, HEAVY_USER, 1000, "long");
+        submit(scheduler, 2L, 20, "short");
+
+        // Act
+        drain();
+
+        // Assert
+        assertEquals(List.of("blocker", "short", "long"), started);
+    }
+
+    @Test
+    void testSubmit_WeightGivesLargerShare() {
+        // Arrange - admins get twice the share of default users
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of("admin", 2));
+        submit(scheduler, HEAVY_USER, 500, "blocker");
+        for (int i = 0; i < 4; i++) {
+            submit(scheduler, HEAVY_USER, 500, "user-" + i);
+            submit(scheduler, ADMIN, 500, "admin-" + i);
+        }
+
+        // Act
+        drain();
+
+        // Assert - two admin requests per user request once both are backlogged
+        assertEquals(List.of("blocker", "user-0", "admin-0", "admin-1", "user-1", "admin-2", "admin-3"),
+                started.subList(0, 7));
+    }
+
+    @Test
+    void testSubmit_FailedRequestReleasesSlot() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        CompletableFuture<String> failing = scheduler.submit(HEAVY_USER, 300,
+                () -> CompletableFuture.failedFuture(new IllegalStateException("provider down")));
+
+        // Act
+        CompletableFuture<String> next = submit(scheduler, 2L, 300, "next");
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, failing::get);
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals(List.of("next"), started);
+        assertFalse(next.isDone());
+        assertEquals(1.0, registry.get("aiassistant.scheduler.in_flight").gauge().value());
+    }
+
+    @Test
+    void testSubmit_CancelledRequestsFreeTheirSlot() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        CompletableFuture<String> blocker = submit(scheduler, HEAVY_USER, 300, "blocker");
+        CompletableFuture<String> waiting = submit(scheduler, HEAVY_USER, 300, "waiting");
+        submit(scheduler, 2L, 300, "next");
+
+        // Act
+        waiting.cancel(false);
+        blocker.cancel(false);
+
+        // Assert - the running call is cancelled and the waiting one never starts
+        assertTrue(running.get(0).isCancelled());
+        assertEquals(List.of("blocker", "next"), started);
+        assertEquals(1.0, registry.get("aiassistant.scheduler.in_flight").gauge().value());
+        assertEquals(0.0, registry.get("aiassistant.scheduler.queued").gauge().value());
+    }
+
+    @Test
+    void testSubmit_CancelledWaitingRequestsLeaveTheQueue() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        submit(scheduler, 2L, 300, "blocker");
+        List<CompletableFuture<String>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(submit(scheduler, HEAVY_USER, 300, "cancelled-" + i));
+        }
+
+        // Act
+        waiting.forEach(request -> request.cancel(false));
+
+        // Assert - nothing is counted against the user while the slot is still taken
+        assertEquals(0, scheduler.queuedRequests(HEAVY_USER));
+        assertEquals(0.0, registry.get("aiassistant.scheduler.queued").gauge().value());
+        submit(scheduler, HEAVY_USER, 300, "next");
+        running.get(0).complete("blocker");
+        assertEquals(List.of("blocker", "next"), started);
+    }
+
+    @Test
+    void testSubmit_RequestPastDeadlineIsDroppedWithoutTakingASlot() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        submit(scheduler, HEAVY_USER, 300, "blocker");
+        Deadline.attach(Deadline.after(0));
+        CompletableFuture<String> late;
+        try {
+            late = submit(scheduler, 2L, 300, "late");
+        } finally {
+            Deadline.attach(null);
+        }
+        submit(scheduler, 3L, 300, "next");
+
+        // Act
+        running.get(0).complete("blocker");
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, late::get);
+        assertInstanceOf(DeadlineExceededException.class, exception.getCause());
+        assertEquals(List.of("blocker", "next"), started);
+        assertEquals(1.0, registry.get("aiassistant.deadline.exceeded").tag("stage", "ai_queue").counter().count());
+    }
+
+    @Test
+    void testQueuedRequests_CountsWaitingRequestsPerUser() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(true, 1, Map.of());
+        submit(scheduler, HEAVY_USER, 300, "blocker");
+
+        // Act
+        submit(scheduler, HEAVY_USER, 300, "long");
+        submit(scheduler, HEAVY_USER, 10, "short");
+
+        // Assert
+        assertEquals(2, scheduler.queuedRequests(HEAVY_USER));
+        assertEquals(0, scheduler.queuedRequests(2L));
+        assertEquals(1, registry.get("aiassistant.scheduler.wait").tag("lane", "normal").tag("class", "default").timer().count());
+    }
+
+    @Test
+    void testSubmit_DisabledStartsImmediately() {
+        // Arrange
+        DeficitRoundRobinScheduler scheduler = scheduler(false, 1, Map.of());
+
+        // Act
+        submit(scheduler, HEAVY_USER, 300, "first");
+        submit(scheduler, HEAVY_USER, 300, "second");
+
+        // Assert
+        assertEquals(List.of("first", "second"), started);
+    }
+
+    private CompletableFuture<String> submit(DeficitRoundRobinScheduler scheduler, long userId, int cost, String name) {
+        return scheduler.submit(userId, cost, () -> {
+            started.add(name);
+            CompletableFuture<String> call = new CompletableFuture<>();
+            running.add(call);
+            return call;
+        });
+    }
+
+    /**
+     * Complete requests one by one in start order until nothing is left
+     */
+    private void drain() {
+        for (int i = 0; i < running.size(); i++) {
+            running.get(i).complete(started.get(i));
+        }
+    }
+
+    private DeficitRoundRobinScheduler scheduler(boolean enabled, int maxConcurrent, Map<String, Integer> weights) {
+        ApplicationProperties properties = TestProperties.builder()
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(null, null, null, null, null, List.of(ADMIN), null))
+                .scheduler(new ApplicationProperties.SchedulerProperties(enabled, maxConcurrent, 500, 200, weights, null, null))
+                .build();
+        return new DeficitRoundRobinScheduler(new LiveProperties(properties), registry,
+                new BotMetrics(registry, "groq", "test-model"));
+    }
+}
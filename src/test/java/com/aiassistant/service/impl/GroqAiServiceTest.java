@@ -1,24 +1,40 @@
 package com.aiassistant.service.impl;
 
 import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.metrics.BotMetrics;
 import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.exception.DeadlineExceededException;
 import com.aiassistant.model.AiRequest;
 import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.ResponseCache;
+import com.aiassistant.service.UsageService;
+import com.aiassistant.traffic.TrafficRecorder;
+import com.aiassistant.util.Deadline;
+import com.aiassistant.util.LogContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
 import org.junit.jupiter.api.AfterEach;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -26,16 +42,38 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class GroqAiServiceTest {
 
+    private static final ApplicationProperties.RoutingProperties ROUTING_DISABLED =
+            new ApplicationProperties.RoutingProperties(false, null, null);
+
     @Mock
     private ApplicationProperties properties;
 
     @Mock
     private ApplicationProperties.AiProviderProperties aiProvider;
 
+    @Mock
+    private ApplicationProperties.ConversationProperties conversation;
+
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private ConversationService conversationService;
+
+    @Mock
+    private ConversationSummarizer conversationSummarizer;
+
+    @Mock
+    private UsageService usageService;
+
+    @Mock
+    private TrafficRecorder trafficRecorder;
+
+    @Mock
+    private ResponseCache responseCache;
+
     private MockWebServer mockWebServer;
+    private OkHttpClient httpClient;
     private GroqAiService groqAiService;
 
     @BeforeEach
@@ -43,12 +81,18 @@ class GroqAiServiceTest {
         mockWebServer = new MockWebServer();
         mockWebServer.start();
 
-        OkHttpClient realHttpClient = new OkHttpClient();
-        groqAiService = new GroqAiService(properties, objectMapper, realHttpClient);
+        httpClient = new OkHttpClient();
+        LiveProperties liveProperties = new LiveProperties(properties);
+        HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+        groqAiService = new GroqAiService(liveProperties, objectMapper, httpClient, conversationService, conversationSummarizer,
+                tokenEstimator, new HeuristicModelRouter(liveProperties, tokenEstimator), responseCache, new BotMetrics(new SimpleMeterRegistry(), "groq", "test-model"), usageService,
+                trafficRecorder);
     }
 
     @AfterEach
     void tearDown() throws IOException {
+        Deadline.attach(null);
+        MDC.clear();
         mockWebServer.shutdown();
     }
 
@@ -93,6 +137,31 @@ class GroqAiServiceTest {
         verify(objectMapper).readValue(jsonResponse, AiResponse.class);
     }
 
+    @Test
+    void testChatCompletion_StagesAfterTheCallKeepTheCallersLogContext() throws Exception {
+        // Arrange - the answer is delayed, so the stage below runs on the OkHttp thread
+        AiRequest request = AiRequest.builder()
+                .model("llama-3.1-8b-instant")
+                .messages(List.of(AiRequest.Message.user("Hello")))
+                .build();
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{}")
+                .setHeadersDelay(200, TimeUnit.MILLISECONDS));
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
+        when(objectMapper.writeValueAsString(request)).thenReturn("{}");
+        when(objectMapper.readValue("{}", AiResponse.class)).thenReturn(AiResponse.builder().build());
+        MDC.put(LogContext.REQUEST_ID, "42");
+
+        // Act
+        CompletableFuture<String> requestId = groqAiService.chatCompletion(request)
+                .thenApply(response -> MDC.get(LogContext.REQUEST_ID));
+        MDC.clear();
+
+        // Assert
+        assertEquals("42", requestId.get(5, TimeUnit.SECONDS));
+    }
+
     @Test
     void testChatCompletion_HttpError() throws Exception {
         // Arrange
@@ -138,9 +207,11 @@ class GroqAiServiceTest {
                 .build();
         
         when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
         when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
         when(aiProvider.maxTokens()).thenReturn(1000);
         when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
         when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
         when(aiProvider.apiKey()).thenReturn("test-api-key");
         
@@ -160,6 +231,7 @@ class GroqAiServiceTest {
         // Assert
         assertNotNull(actualResponse);
         assertEquals(aiResponseText, actualResponse);
+        verify(responseCache).put("llama-3.1-8b-instant", userMessage, aiResponseText);
     }
 
     @Test
@@ -174,9 +246,11 @@ class GroqAiServiceTest {
                 .build();
         
         when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
         when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
         when(aiProvider.maxTokens()).thenReturn(1000);
         when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
         when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
         when(aiProvider.apiKey()).thenReturn("test-api-key");
         
@@ -199,6 +273,256 @@ class GroqAiServiceTest {
         assertEquals("GROQ_EMPTY_RESPONSE", aiException.getErrorCode());
     }
 
+    @Test
+    void testGenerateResponse_WithHistory() throws Exception {
+        // Arrange
+        List<AiRequest.Message> history = List.of(
+                AiRequest.Message.user("My name is John"),
+                AiRequest.Message.assistant("Nice to meet you, John!"));
+        
+        AiResponse mockResponse = AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant("Your name is John."))
+                        .build()))
+                .usage(AiResponse.Usage.builder().promptTokens(30).completionTokens(6).build())
+                .build();
+        
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
+        when(properties.conversation()).thenReturn(conversation);
+        when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
+        when(aiProvider.apiKey()).thenReturn("test-api-key");
+        when(conversation.maxHistoryTokens()).thenReturn(500);
+        when(conversationService.buildContext(eq(42L), anyInt())).thenReturn(history);
+        
+        String jsonResponse = "{\"choices\":[{\"message\":{\"content\":\"Your name is John.\"}}]}";
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(jsonResponse)
+                .setResponseCode(200)
+                .addHeader("Content-Type", "application/json"));
+        
+        when(objectMapper.writeValueAsString(any(AiRequest.class))).thenReturn("{}");
+        when(objectMapper.readValue(jsonResponse, AiResponse.class)).thenReturn(mockResponse);
+
+        // Act
+        String actualResponse = groqAiService.generateResponse(7L, 42L, "What is my name?").get();
+
+        // Assert
+        assertEquals("Your name is John.", actualResponse);
+        verify(conversationService).buildContext(42L, 500);
+        
+        ArgumentCaptor<AiRequest> requestCaptor = ArgumentCaptor.forClass(AiRequest.class);
+        verify(objectMapper).writeValueAsString(requestCaptor.capture());
+        List<AiRequest.Message> sent = requestCaptor.getValue().getMessages();
+        assertEquals(3, sent.size());
+        assertEquals("My name is John", sent.get(0).getContent());
+        assertEquals("What is my name?", sent.get(2).getContent());
+        
+        verify(conversationService).appendExchange(eq(42L),
+                argThat(message -> "What is my name?".equals(message.getContent())),
+                argThat(message -> "Your name is John.".equals(message.getContent())));
+        verify(conversationSummarizer).summarizeIfNeeded(42L);
+        verify(responseCache, never()).find(anyString(), anyString());
+        verify(usageService).record(7L, 42L, "llama-3.1-8b-instant", 30, 6);
+        verify(trafficRecorder).recordAiCall(eq(42L), eq(30), eq(6), eq(18), anyLong(), eq(200));
+    }
+
+    @Test
+    void testGenerateResponse_CancelAbortsProviderCall() throws Exception {
+        // Arrange - the provider never answers
+        stubSimpleRequest();
+        mockWebServer.enqueue(new MockResponse()
+                .setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        CompletableFuture<String> reply = groqAiService.generateResponse(7L, 42L, "Write a long story");
+        assertNotNull(mockWebServer.takeRequest(5, TimeUnit.SECONDS));
+
+        // Act
+        reply.cancel(false);
+
+        // Assert - the HTTP call is gone and nothing is added to the history
+        assertThrows(CancellationException.class, reply::get);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (httpClient.dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, httpClient.dispatcher().runningCallsCount());
+        verify(conversationService, never()).appendExchange(anyLong(), any(), any());
+        verify(usageService, never()).record(anyLong(), anyLong(), anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testGenerateResponse_ProviderCallGetsOnlyTheRemainingBudget() throws Exception {
+        // Arrange - the provider never answers, the message has 300 ms left
+        stubSimpleRequest();
+        mockWebServer.enqueue(new MockResponse()
+                .setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        Deadline.attach(Deadline.after(300));
+
+        // Act
+        CompletableFuture<String> reply = groqAiService.generateResponse(7L, 42L, "Hello");
+
+        // Assert - fails at the deadline, well before the 30 s transport timeout
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> reply.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, exception.getCause());
+        verify(conversationService, never()).appendExchange(anyLong(), any(), any());
+    }
+
+    @Test
+    void testGenerateResponse_ExpiredDeadlineSkipsProviderCall() throws Exception {
+        // Arrange
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
+        when(properties.conversation()).thenReturn(conversation);
+        when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(conversation.maxHistoryTokens()).thenReturn(500);
+        when(conversationService.buildContext(eq(42L), anyInt())).thenReturn(List.of());
+        Deadline.attach(Deadline.after(0));
+
+        // Act
+        CompletableFuture<String> reply = groqAiService.generateResponse(7L, 42L, "Hello");
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, reply::get);
+        assertInstanceOf(DeadlineExceededException.class, exception.getCause());
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void testCachedResponse_PromptWithoutHistoryIsAnsweredFromCache() {
+        // Arrange
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.conversation()).thenReturn(conversation);
+        when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(conversation.maxHistoryTokens()).thenReturn(500);
+        when(conversationService.buildContext(eq(42L), anyInt())).thenReturn(List.of());
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
+        when(responseCache.find(eq("llama-3.1-8b-instant"), eq("What is the capital of France?"))).thenReturn(Optional.of("Paris."));
+
+        // Act
+        Optional<String> actualResponse = groqAiService.cachedResponse(7L, 42L, "What is the capital of France?");
+
+        // Assert - no provider call and no tokens, but the exchange is still part of the conversation
+        assertEquals(Optional.of("Paris."), actualResponse);
+        assertEquals(0, mockWebServer.getRequestCount());
+        verify(usageService, never()).record(anyLong(), anyLong(), anyString(), anyInt(), anyInt());
+        verify(conversationService).appendExchange(eq(42L),
+                argThat(message -> "What is the capital of France?".equals(message.getContent())),
+                argThat(message -> "Paris.".equals(message.getContent())));
+    }
+
+    @Test
+    void testGenerateResponse_TruncatedAnswerEscalatesToMainModel() throws Exception {
+        // Arrange
+        AiResponse truncated = AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant("Paris is the capital and"))
+                        .finishReason("length")
+                        .build()))
+                .build();
+        AiResponse complete = AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant("Paris is the capital of France."))
+                        .finishReason("stop")
+                        .build()))
+                .build();
+        
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(new ApplicationProperties.RoutingProperties(true, List.of(
+                new ApplicationProperties.ModelTierProperties("llama-3.1-8b-instant", 100, null, null, null)), true));
+        when(aiProvider.model()).thenReturn("llama-3.3-70b-versatile");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
+        when(aiProvider.apiKey()).thenReturn("test-api-key");
+        
+        mockWebServer.enqueue(new MockResponse().setBody("truncated").setResponseCode(200));
+        mockWebServer.enqueue(new MockResponse().setBody("complete").setResponseCode(200));
+        when(objectMapper.writeValueAsString(any(AiRequest.class))).thenReturn("{}");
+        when(objectMapper.readValue("truncated", AiResponse.class)).thenReturn(truncated);
+        when(objectMapper.readValue("complete", AiResponse.class)).thenReturn(complete);
+
+        // Act
+        String actualResponse = groqAiService.generateResponse("What is the capital of France?").get();
+
+        // Assert
+        assertEquals("Paris is the capital of France.", actualResponse);
+        ArgumentCaptor<AiRequest> requestCaptor = ArgumentCaptor.forClass(AiRequest.class);
+        verify(objectMapper, times(2)).writeValueAsString(requestCaptor.capture());
+        assertEquals("llama-3.1-8b-instant", requestCaptor.getAllValues().get(0).getModel());
+        assertEquals("llama-3.3-70b-versatile", requestCaptor.getAllValues().get(1).getModel());
+        // Cached under the model that answered, looked up along the whole ladder
+        verify(responseCache).find("llama-3.1-8b-instant", "What is the capital of France?");
+        verify(responseCache).find("llama-3.3-70b-versatile", "What is the capital of France?");
+        verify(responseCache).put("llama-3.3-70b-versatile", "What is the capital of France?", "Paris is the capital of France.");
+        verify(responseCache, never()).put(eq("llama-3.1-8b-instant"), anyString(), anyString());
+    }
+
+    @Test
+    void testGenerateResponse_NoEscalationAfterTheDeadline() throws Exception {
+        // Arrange - the truncated answer arrives in time, but parsing it uses up the budget
+        AiResponse truncated = AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant("Paris is the capital and"))
+                        .finishReason("length")
+                        .build()))
+                .build();
+        
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(new ApplicationProperties.RoutingProperties(true, List.of(
+                new ApplicationProperties.ModelTierProperties("llama-3.1-8b-instant", 100, null, null, null)), true));
+        when(aiProvider.model()).thenReturn("llama-3.3-70b-versatile");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
+        when(aiProvider.apiKey()).thenReturn("test-api-key");
+        
+        mockWebServer.enqueue(new MockResponse().setBody("truncated").setResponseCode(200));
+        when(objectMapper.writeValueAsString(any(AiRequest.class))).thenReturn("{}");
+        when(objectMapper.readValue("truncated", AiResponse.class)).thenAnswer(invocation -> {
+            Thread.sleep(400);
+            return truncated;
+        });
+        Deadline.attach(Deadline.after(300));
+
+        // Act
+        CompletableFuture<String> reply = groqAiService.generateResponse("What is the capital of France?");
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> reply.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, exception.getCause());
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void testGenerateResponse_ContextTooLargeFailsWithoutRequest() {
+        // Arrange
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
+        when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.contextWindowTokens()).thenReturn(64);
+
+        // Act
+        CompletableFuture<String> futureResponse = groqAiService.generateResponse("word ".repeat(100));
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, futureResponse::get);
+        assertInstanceOf(AiServiceException.class, exception.getCause());
+        assertEquals("CONTEXT_TOO_LARGE", ((AiServiceException) exception.getCause()).getErrorCode());
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
     @Test
     void testGetProviderName() {
         // Act
@@ -207,4 +531,22 @@ class GroqAiServiceTest {
         // Assert
         assertEquals("Groq", providerName);
     }
+
+    /**
+     * Stub a history request to the main model with an empty history
+     */
+    private void stubSimpleRequest() throws Exception {
+        when(properties.aiProvider()).thenReturn(aiProvider);
+        when(properties.routing()).thenReturn(ROUTING_DISABLED);
+        when(properties.conversation()).thenReturn(conversation);
+        when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(aiProvider.maxTokens()).thenReturn(1000);
+        when(aiProvider.temperature()).thenReturn(0.7);
+        when(aiProvider.contextWindowTokens()).thenReturn(8192);
+        when(aiProvider.apiUrl()).thenReturn(mockWebServer.url("/v1/chat/completions").toString());
+        when(aiProvider.apiKey()).thenReturn("test-api-key");
+        when(conversation.maxHistoryTokens()).thenReturn(500);
+        when(conversationService.buildContext(eq(42L), anyInt())).thenReturn(List.of());
+        when(objectMapper.writeValueAsString(any(AiRequest.class))).thenReturn("{}");
+    }
 }
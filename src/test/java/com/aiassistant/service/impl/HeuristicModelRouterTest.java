@@ -0,0 +1,94 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.ModelRouter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeuristicModelRouterTest {
+
+    private static final String SMALL = "llama-3.1-8b-instant";
+    private static final String MEDIUM = "gemma2-9b-it";
+    private static final String MAIN = "llama-3.3-70b-versatile";
+
+    private static final List<ApplicationProperties.ModelTierProperties> LADDER = List.of(
+            new ApplicationProperties.ModelTierProperties(SMALL, 50, 2, false, false),
+            new ApplicationProperties.ModelTierProperties(MEDIUM, 400, null, true, null));
+
+    @Test
+    void testRoute_ShortPromptGoesToSmallestTier() {
+        // Arrange
+        ModelRouter router = router(true, LADDER);
+
+        // Act
+        ModelRouter.Route route = router.route(List.of(AiRequest.Message.user("Hi! How are you?")));
+
+        // Assert
+        assertEquals(SMALL, route.model());
+        assertEquals(MEDIUM, route.escalation().model());
+        assertEquals(MAIN, route.escalation().escalation().model());
+        assertNull(route.escalation().escalation().escalation());
+    }
+
+    @Test
+    void testRoute_ComplexityFeaturesMoveUpTheLadder() {
+        // Arrange
+        ModelRouter router = router(true, LADDER);
+        AiRequest.Message code = AiRequest.Message.user("Why does this fail?\nint x = 1;\nreturn x;");
+        AiRequest.Message russian = AiRequest.Message.user("Привет! Как дела?");
+        AiRequest.Message history = AiRequest.Message.assistant("Earlier answer");
+
+        // Act & Assert
+        assertEquals(MEDIUM, router.route(List.of(code)).model());
+        assertEquals(MEDIUM, router.route(List.of(russian)).model());
+        assertEquals(MEDIUM, router.route(List.of(history, history, history, AiRequest.Message.user("And?"))).model());
+        ModelRouter.Route longPrompt = router.route(List.of(AiRequest.Message.user("word ".repeat(500))));
+        assertEquals(MAIN, longPrompt.model());
+        assertEquals("long prompt", longPrompt.reason());
+        assertNull(longPrompt.escalation());
+    }
+
+    @Test
+    void testRoute_DisabledUsesMainModel() {
+        // Arrange
+        ModelRouter router = router(false, LADDER);
+
+        // Act
+        ModelRouter.Route route = router.route(List.of(AiRequest.Message.user("Hi")));
+
+        // Assert
+        assertEquals(MAIN, route.model());
+        assertNull(route.escalation());
+    }
+
+    @Test
+    void testContainsCode_NeedsFenceOrSeveralCodeLines() {
+        assertTrue(HeuristicModelRouter.containsCode("```\nls -la\n```"));
+        assertTrue(HeuristicModelRouter.containsCode("if (x) {\n  run();\n}"));
+        assertFalse(HeuristicModelRouter.containsCode("Tell me a joke; a short one."));
+        assertFalse(HeuristicModelRouter.containsCode(""));
+    }
+
+    @Test
+    void testMostlyNonLatin_CountsLettersOnly() {
+        assertTrue(HeuristicModelRouter.mostlyNonLatin("Что такое JVM?"));
+        assertFalse(HeuristicModelRouter.mostlyNonLatin("What is a JVM? 42!"));
+        assertFalse(HeuristicModelRouter.mostlyNonLatin("12345"));
+    }
+
+    private static ModelRouter router(boolean enabled, List<ApplicationProperties.ModelTierProperties> tiers) {
+        ApplicationProperties properties = TestProperties.builder()
+                .aiProvider(new ApplicationProperties.AiProviderProperties("groq", null, "http://localhost", MAIN,
+                        null, null, null, null))
+                .botBehavior(new ApplicationProperties.BotBehaviorProperties(null, null, null, null, null, null, null))
+                .routing(new ApplicationProperties.RoutingProperties(enabled, tiers, null))
+                .build();
+        return new HeuristicModelRouter(new LiveProperties(properties), new HeuristicTokenEstimator());
+    }
+}
@@ -0,0 +1,64 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.model.AiRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeuristicTokenEstimatorTest {
+
+    private static final String LLAMA = "llama-3.1-8b-instant";
+
+    private final HeuristicTokenEstimator estimator = new HeuristicTokenEstimator();
+
+    @Test
+    void testCountText_SplitsWordsPunctuationAndDigits() {
+        // "Hello" "," " world" "!" as in the Llama 3 tokenizer
+        assertEquals(4, HeuristicTokenEstimator.countText("Hello, world!", HeuristicTokenEstimator.Family.LLAMA));
+        // Digits are grouped by three for Llama, one by one for Mistral
+        assertEquals(3, HeuristicTokenEstimator.countText("1234567", HeuristicTokenEstimator.Family.LLAMA));
+        assertEquals(7, HeuristicTokenEstimator.countText("1234567", HeuristicTokenEstimator.Family.MISTRAL));
+        assertEquals(0, HeuristicTokenEstimator.countText(null, HeuristicTokenEstimator.Family.LLAMA));
+    }
+
+    @Test
+    void testCountText_CyrillicCostsMoreThanLatin() {
+        int latin = HeuristicTokenEstimator.countText("conversation", HeuristicTokenEstimator.Family.LLAMA);
+        int cyrillic = HeuristicTokenEstimator.countText("разговорчики", HeuristicTokenEstimator.Family.LLAMA);
+
+        assertTrue(cyrillic > latin);
+    }
+
+    @Test
+    void testCountPromptTokens_IncludesTemplateOverhead() {
+        AiRequest.Message message = AiRequest.Message.user("Hello, world!");
+
+        int messageTokens = estimator.countMessageTokens(message, LLAMA);
+        int promptTokens = estimator.countPromptTokens(List.of(message, message), LLAMA);
+
+        assertEquals(9, messageTokens);
+        assertEquals(2 * messageTokens + 5, promptTokens);
+    }
+
+    @Test
+    void testCalibrate_ConvergesToReportedUsage() {
+        // Arrange - the provider consistently reports 30% more tokens than the raw estimate
+        List<AiRequest.Message> messages = List.of(
+                AiRequest.Message.system("You are a helpful assistant."),
+                AiRequest.Message.user("Объясни, что такое Java, и напиши простую функцию сортировки."));
+        int raw = estimator.countPromptTokens(messages, LLAMA);
+        int actual = (int) Math.round(raw * 1.3);
+
+        // Act
+        for (int i = 0; i < 50; i++) {
+            estimator.calibrate(LLAMA, estimator.countPromptTokens(messages, LLAMA), actual);
+        }
+
+        // Assert - within 3% of the reported count; other families are unaffected
+        int calibrated = estimator.countPromptTokens(messages, LLAMA);
+        assertEquals(actual, calibrated, actual * 0.03);
+        assertEquals(1.0, estimator.correction(HeuristicTokenEstimator.Family.MISTRAL));
+    }
+}
@@ -0,0 +1,169 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.service.ConversationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryConversationServiceTest {
+
+    @Mock
+    private ApplicationProperties properties;
+
+    @Mock
+    private ApplicationProperties.AiProviderProperties aiProvider;
+
+    private final HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+
+    private InMemoryConversationService conversationService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(properties.aiProvider()).thenReturn(aiProvider);
+        lenient().when(aiProvider.model()).thenReturn("llama-3.1-8b-instant");
+        when(properties.conversation()).thenReturn(
+                new ApplicationProperties.ConversationProperties(true, 4, 1_000L, 60, 2000, false, null, null, null, null));
+        conversationService = new InMemoryConversationService(properties, tokenEstimator);
+    }
+
+    private InMemoryConversationService summarizingService() {
+        conversationService.shutdown();
+        when(properties.conversation()).thenReturn(
+                new ApplicationProperties.ConversationProperties(true, 6, 1_000L, 60, 2000, true, 1000, 2, null, null));
+        return new InMemoryConversationService(properties, tokenEstimator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        conversationService.shutdown();
+    }
+
+    @Test
+    void testBuildContext_ReturnsHistoryOldestFirst() {
+        // Arrange
+        conversationService.appendExchange(1L, AiRequest.Message.user("q1"), AiRequest.Message.assistant("a1"));
+        conversationService.appendExchange(1L, AiRequest.Message.user("q2"), AiRequest.Message.assistant("a2"));
+
+        // Act
+        List<AiRequest.Message> context = conversationService.buildContext(1L, 1000);
+
+        // Assert
+        assertEquals(List.of("q1", "a1", "q2", "a2"), context.stream().map(AiRequest.Message::getContent).toList());
+        assertTrue(conversationService.buildContext(2L, 1000).isEmpty());
+    }
+
+    @Test
+    void testAppendExchange_RingBufferKeepsMostRecentMessages() {
+        // Act
+        for (int i = 1; i <= 3; i++) {
+            conversationService.appendExchange(1L, AiRequest.Message.user("q" + i), AiRequest.Message.assistant("a" + i));
+        }
+
+        // Assert
+        assertEquals(4, conversationService.getMessageCount(1L));
+        assertEquals(List.of("q2", "a2", "q3", "a3"),
+                conversationService.buildContext(1L, 1000).stream().map(AiRequest.Message::getContent).toList());
+    }
+
+    @Test
+    void testBuildContext_RespectsTokenBudget() {
+        // Arrange
+        conversationService.appendExchange(1L, AiRequest.Message.user("x".repeat(40)), AiRequest.Message.assistant("a1"));
+        conversationService.appendExchange(1L, AiRequest.Message.user("q2"), AiRequest.Message.assistant("a2"));
+        int shortMessageTokens = tokenEstimator.countMessageTokens(AiRequest.Message.user("q2"), "llama-3.1-8b-instant");
+
+        // Act - room for the three short messages but not for the long one
+        List<AiRequest.Message> context = conversationService.buildContext(1L, 3 * shortMessageTokens + 1);
+
+        // Assert - the window is contiguous from the newest message backwards
+        assertEquals(List.of("a1", "q2", "a2"), context.stream().map(AiRequest.Message::getContent).toList());
+        assertTrue(conversationService.buildContext(1L, 0).isEmpty());
+    }
+
+    @Test
+    void testAppendExchange_EvictsLeastRecentlyUsedOverMemoryCap() throws InterruptedException {
+        // Arrange - each exchange stores 300 characters, the cap is 1000
+        String text = "x".repeat(150);
+        conversationService.appendExchange(1L, AiRequest.Message.user(text), AiRequest.Message.assistant(text));
+        Thread.sleep(1);
+        conversationService.appendExchange(2L, AiRequest.Message.user(text), AiRequest.Message.assistant(text));
+        Thread.sleep(1);
+        conversationService.appendExchange(3L, AiRequest.Message.user(text), AiRequest.Message.assistant(text));
+        Thread.sleep(1);
+        conversationService.buildContext(1L, 1000);
+
+        // Act
+        conversationService.appendExchange(4L, AiRequest.Message.user(text), AiRequest.Message.assistant(text));
+
+        // Assert
+        assertEquals(0, conversationService.getMessageCount(2L));
+        assertEquals(2, conversationService.getMessageCount(1L));
+        assertEquals(2, conversationService.getMessageCount(4L));
+    }
+
+    @Test
+    void testCompaction_ReplacesOldestTurnsWithSummary() {
+        // Arrange - capacity 6, keep the 2 newest messages
+        conversationService = summarizingService();
+        for (int i = 1; i <= 3; i++) {
+            conversationService.appendExchange(1L, AiRequest.Message.user("q" + i), AiRequest.Message.assistant("a" + i));
+        }
+
+        // Act
+        ConversationService.Compaction compaction = conversationService.findCompaction(1L).orElseThrow();
+        boolean applied = conversationService.applyCompaction(compaction, "user asked q1 and q2");
+
+        // Assert
+        assertEquals(List.of("q1", "a1", "q2", "a2"), compaction.messages().stream().map(AiRequest.Message::getContent).toList());
+        assertNull(compaction.previousSummary());
+        assertTrue(applied);
+        assertEquals(2, conversationService.getMessageCount(1L));
+        List<AiRequest.Message> context = conversationService.buildContext(1L, 1000);
+        assertEquals(3, context.size());
+        assertEquals("system", context.get(0).getRole());
+        assertTrue(context.get(0).getContent().endsWith("user asked q1 and q2"));
+        assertEquals("q3", context.get(1).getContent());
+        assertTrue(conversationService.findCompaction(1L).isEmpty());
+    }
+
+    @Test
+    void testCompaction_StaleCandidateIsRejected() {
+        // Arrange
+        conversationService = summarizingService();
+        for (int i = 1; i <= 3; i++) {
+            conversationService.appendExchange(1L, AiRequest.Message.user("q" + i), AiRequest.Message.assistant("a" + i));
+        }
+        ConversationService.Compaction compaction = conversationService.findCompaction(1L).orElseThrow();
+
+        // Act - the ring buffer overwrites the oldest turns before the summary arrives
+        conversationService.appendExchange(1L, AiRequest.Message.user("q4"), AiRequest.Message.assistant("a4"));
+
+        // Assert
+        assertFalse(conversationService.applyCompaction(compaction, "stale"));
+        assertEquals(6, conversationService.getMessageCount(1L));
+    }
+
+    @Test
+    void testClear() {
+        // Arrange
+        conversationService.appendExchange(1L, AiRequest.Message.user("q1"), AiRequest.Message.assistant("a1"));
+
+        // Act
+        conversationService.clear(1L);
+
+        // Assert
+        assertEquals(0, conversationService.getMessageCount(1L));
+        assertTrue(conversationService.buildContext(1L, 1000).isEmpty());
+    }
+}
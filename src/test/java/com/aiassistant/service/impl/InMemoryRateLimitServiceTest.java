@@ -1,6 +1,7 @@
 package com.aiassistant.service.impl;
 
 import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
 import com.aiassistant.exception.RateLimitExceededException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,6 +21,7 @@ class InMemoryRateLimitServiceTest {
     @Mock
     private ApplicationProperties.BotBehaviorProperties botBehavior;
 
+    private LiveProperties liveProperties;
     private InMemoryRateLimitService rateLimitService;
 
     @BeforeEach
@@ -27,7 +29,29 @@ class InMemoryRateLimitServiceTest {
         when(properties.botBehavior()).thenReturn(botBehavior);
         when(botBehavior.rateLimitPerMinute()).thenReturn(5); // 5 запросов в минуту для тестов
         
-        rateLimitService = new InMemoryRateLimitService(properties);
+        liveProperties = new LiveProperties(properties);
+        rateLimitService = new InMemoryRateLimitService(liveProperties);
+    }
+
+    @Test
+    void testCanMakeRequest_PicksUpReloadedLimit() throws RateLimitExceededException {
+        // Arrange
+        Long userId = 123L;
+        for (int i = 0; i < 5; i++) {
+            rateLimitService.recordRequest(userId);
+        }
+        assertFalse(rateLimitService.canMakeRequest(userId));
+        ApplicationProperties.BotBehaviorProperties raised = mock(ApplicationProperties.BotBehaviorProperties.class);
+        when(raised.rateLimitPerMinute()).thenReturn(10);
+        ApplicationProperties reloaded = mock(ApplicationProperties.class);
+        when(reloaded.botBehavior()).thenReturn(raised);
+
+        // Act
+        liveProperties.publish(reloaded);
+
+        // Assert
+        assertTrue(rateLimitService.canMakeRequest(userId));
+        assertEquals(5, rateLimitService.getRemainingRequests(userId));
     }
 
     @Test
@@ -0,0 +1,191 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.service.UsageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InMemoryUsageServiceTest {
+
+    private static final String MODEL = "llama-3.1-8b-instant";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-05-01T10:00:30Z"));
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private InMemoryUsageService usageService;
+
+    @BeforeEach
+    void setUp() {
+        usageService = createService(1000);
+    }
+
+    @Test
+    void testReport_AggregatesUsersChatsAndModels() {
+        // Arrange
+        usageService.record(1L, 100L, MODEL, 100, 20);
+        usageService.record(1L, 100L, MODEL, 50, 10);
+        usageService.record(2L, 200L, "gemma2-9b-it", 10, 5);
+        usageService.record(null, 100L, "gemma2-9b-it", 40, 0);
+
+        // Act
+        UsageService.UsageReport report = usageService.report(UsageService.Granularity.MINUTE, 60, 5);
+
+        // Assert
+        assertEquals(new UsageService.UsageEntry("total", 4, 200, 35), report.total());
+        assertEquals(List.of(
+                new UsageService.UsageEntry("1", 2, 150, 30),
+                new UsageService.UsageEntry("2", 1, 10, 5)), report.topUsers());
+        assertEquals("100", report.topChats().get(0).key());
+        assertEquals(220, report.topChats().get(0).totalTokens());
+        assertEquals(List.of(
+                new UsageService.UsageEntry(MODEL, 2, 150, 30),
+                new UsageService.UsageEntry("gemma2-9b-it", 2, 50, 5)), report.models());
+    }
+
+    @Test
+    void testReport_OldBucketsRollOutOfTheWindow() {
+        // Arrange
+        usageService.record(1L, 100L, MODEL, 100, 0);
+        clock.advance(Duration.ofMinutes(30));
+        usageService.record(1L, 100L, MODEL, 10, 0);
+        clock.advance(Duration.ofMinutes(45));
+
+        // Act
+        UsageService.UsageReport lastHour = usageService.report(UsageService.Granularity.MINUTE, 60, 5);
+        UsageService.UsageReport lastDay = usageService.report(UsageService.Granularity.HOUR, 24, 5);
+
+        // Assert - the first call is older than 60 minutes but still within the day
+        assertEquals(10, lastHour.total().promptTokens());
+        assertEquals(110, lastDay.total().promptTokens());
+    }
+
+    @Test
+    void testRecord_SlotIsReusedAfterFullRing() {
+        // Arrange
+        usageService.record(1L, 100L, MODEL, 100, 0);
+        clock.advance(Duration.ofDays(7));
+
+        // Act - lands in the same day slot one week later
+        usageService.record(1L, 100L, MODEL, 5, 0);
+
+        // Assert
+        assertEquals(5, usageService.report(UsageService.Granularity.DAY, 7, 5).total().promptTokens());
+    }
+
+    @Test
+    void testRecord_KeysBeyondLimitAreFoldedIntoOther() {
+        // Arrange
+        usageService = createService(3);
+
+        // Act
+        for (long userId = 1; userId <= 10; userId++) {
+            usageService.record(userId, userId, MODEL, 10, 0);
+        }
+
+        // Assert
+        UsageService.UsageReport report = usageService.report(UsageService.Granularity.MINUTE, 1, 10);
+        assertEquals(4, report.topUsers().size());
+        assertEquals(new UsageService.UsageEntry(InMemoryUsageService.OTHER, 7, 70, 0), report.topUsers().get(0));
+        assertEquals(100, report.total().promptTokens());
+    }
+
+    @Test
+    void testRecord_HeavyUserArrivingAfterFullTableIsReported() {
+        // Arrange - the table of 3 users fills up with light users first
+        usageService = createService(3);
+        for (long userId = 1; userId <= 10; userId++) {
+            usageService.record(userId, 100L, MODEL, 10, 0);
+        }
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            usageService.record(42L, 100L, MODEL, 100, 0);
+        }
+
+        // Assert
+        UsageService.UsageReport report = usageService.report(UsageService.Granularity.MINUTE, 1, 1);
+        assertEquals(List.of(new UsageService.UsageEntry("42", 5, 500, 0)), report.topUsers());
+        assertEquals(600, report.total().promptTokens());
+    }
+
+    @Test
+    void testRecord_ExportsPerModelCounters() {
+        // Act
+        usageService.record(1L, 100L, MODEL, 100, 20);
+        usageService.record(2L, 200L, MODEL, 50, 10);
+
+        // Assert
+        assertEquals(2.0, registry.get("aiassistant.ai.requests").tag("model", MODEL).counter().count());
+        assertEquals(150.0, registry.get("aiassistant.ai.tokens").tags("model", MODEL, "type", "prompt").counter().count());
+        assertEquals(30.0, registry.get("aiassistant.ai.tokens").tags("model", MODEL, "type", "completion").counter().count());
+    }
+
+    @Test
+    void testRecord_ConcurrentUpdatesAreNotLost() throws InterruptedException {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act
+        for (int thread = 0; thread < 4; thread++) {
+            long userId = thread;
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    usageService.record(userId, 100L, MODEL, 1, 1);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        UsageService.UsageReport report = usageService.report(UsageService.Granularity.DAY, 1, 5);
+        assertEquals(40_000, report.total().requests());
+        assertEquals(80_000, report.total().totalTokens());
+    }
+
+    private InMemoryUsageService createService(int maxKeysPerBucket) {
+        ApplicationProperties properties = mock(ApplicationProperties.class);
+        when(properties.usage()).thenReturn(new ApplicationProperties.UsageProperties(maxKeysPerBucket, null));
+        return new InMemoryUsageService(properties, registry, clock);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
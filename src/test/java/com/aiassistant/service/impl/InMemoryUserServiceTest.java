@@ -196,6 +196,21 @@ class InMemoryUserServiceTest {
         assertFalse(user.get().getIsBlocked());
     }
 
+    @Test
+    void testUpdateUser_BlockedFlagUpdatesBlocklist() {
+        // Arrange
+        User telegramUser = mock(User.class);
+        when(telegramUser.getId()).thenReturn(123L);
+        TelegramUser user = userService.getOrCreateUser(telegramUser);
+
+        // Act & Assert
+        userService.updateUser(user.withIsBlocked(true));
+        assertTrue(userService.isUserBlocked(123L));
+
+        userService.updateUser(user.withIsBlocked(false));
+        assertFalse(userService.isUserBlocked(123L));
+    }
+
     @Test
     void testIsUserBlocked_NonExistingUser() {
         // Act & Assert
@@ -0,0 +1,208 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.exception.UserStoreException;
+import com.aiassistant.model.TelegramUser;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JdbcUserServiceTest {
+
+    @Mock
+    private ApplicationProperties properties;
+
+    private String jdbcUrl;
+    private MeterRegistry registry;
+    private HikariDataSource pool;
+    private JdbcUserService userService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        jdbcUrl = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        when(properties.userStore()).thenReturn(new ApplicationProperties.UserStoreProperties(
+                "jdbc", null, null, null, jdbcUrl, "sa", "", 3_600_000, 100));
+        pool = new HikariDataSource();
+        pool.setJdbcUrl(jdbcUrl);
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaximumPoolSize(2);
+        start(pool);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        userService.close();
+        pool.close();
+    }
+
+    @Test
+    void testUpdatesAreCoalescedUntilFlush() throws SQLException {
+        // Arrange
+        TelegramUser user = userService.getOrCreateUser(telegramUser(123L, "John"));
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            user = userService.updateUser(user.incrementMessageCount());
+        }
+
+        // Assert - nothing written before the flush, one row afterwards
+        assertEquals(0, countRows());
+        assertEquals(1, userService.getStats().pendingWrites());
+
+        userService.flush();
+
+        assertEquals(1, countRows());
+        assertEquals(1, userService.getStats().lastBatchSize());
+        assertEquals(0, userService.getStats().pendingWrites());
+    }
+
+    @Test
+    void testReadThroughAfterRestart() throws SQLException {
+        // Arrange
+        TelegramUser user = userService.getOrCreateUser(telegramUser(123L, "John"));
+        userService.updateUser(user.incrementMessageCount());
+        userService.blockUser(123L);
+
+        // Act - graceful shutdown must flush pending writes
+        userService.close();
+        start(pool);
+
+        // Assert
+        TelegramUser loaded = userService.findUser(123L).orElseThrow();
+        assertEquals("John", loaded.getFirstName());
+        assertEquals(1, loaded.getMessageCount());
+        assertTrue(userService.isUserBlocked(123L));
+        assertTrue(userService.findUser(123L).isPresent());
+        assertEquals(1, userService.getStats().cacheMisses());
+        assertEquals(1, userService.getStats().cacheHits());
+        assertEquals(1.0, registry.get("aiassistant.user_store.cache.requests").tag("result", "miss")
+                .functionCounter().count());
+        assertEquals(1.0, registry.get("aiassistant.user_store.cache.requests").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testFlush_InsertsNewUsersWhenDriverReportsNoUpdateCounts() throws SQLException {
+        // Arrange - one stored user, then a driver that answers batches with SUCCESS_NO_INFO
+        userService.getOrCreateUser(telegramUser(1L, "Stored"));
+        userService.close();
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation ->
+                withoutUpdateCounts(DriverManager.getConnection(jdbcUrl, "sa", "")));
+        start(dataSource);
+
+        // Act
+        TelegramUser stored = userService.findUser(1L).orElseThrow();
+        userService.updateUser(stored.incrementMessageCount());
+        userService.getOrCreateUser(telegramUser(2L, "New"));
+        userService.flush();
+
+        // Assert
+        assertEquals(2, countRows());
+        userService.close();
+        start(pool);
+        assertEquals(1, userService.findUser(1L).orElseThrow().getMessageCount());
+        assertEquals("New", userService.findUser(2L).orElseThrow().getFirstName());
+    }
+
+    @Test
+    void testFindUser_NotFound() {
+        // Act & Assert
+        assertTrue(userService.findUser(999L).isEmpty());
+        assertFalse(userService.isUserBlocked(999L));
+    }
+
+    @Test
+    void testCacheIsBounded() throws SQLException {
+        // Arrange
+        for (long id = 1; id <= 150; id++) {
+            userService.getOrCreateUser(telegramUser(id, "User" + id));
+        }
+        userService.flush();
+
+        // Act - misses load rows back and trigger eviction of clean entries
+        for (long id = 1; id <= 150; id++) {
+            assertTrue(userService.findUser(id).isPresent());
+        }
+
+        // Assert
+        assertTrue(userService.getStats().cacheSize() <= 100);
+    }
+
+    @Test
+    void testGetOrCreateUser_DatabaseOutageCreatesNoUser() throws SQLException {
+        // Arrange - a stored user, then the database goes away
+        TelegramUser stored = userService.getOrCreateUser(telegramUser(1L, "Stored"));
+        userService.updateUser(stored.incrementMessageCount());
+        userService.close();
+        DataSource unreachable = mock(DataSource.class);
+        when(unreachable.getConnection()).thenAnswer(invocation -> pool.getConnection())
+                .thenThrow(new SQLException("Connection refused"));
+        start(unreachable);
+        User telegramUser = mock(User.class);
+        when(telegramUser.getId()).thenReturn(1L);
+
+        // Act & Assert
+        assertThrows(UserStoreException.class, () -> userService.getOrCreateUser(telegramUser));
+        assertEquals(0, userService.getStats().pendingWrites());
+        assertEquals(0, userService.getStats().cacheSize());
+    }
+
+    private void start(DataSource dataSource) throws SQLException {
+        registry = new SimpleMeterRegistry();
+        userService = new JdbcUserService(properties, dataSource, registry);
+    }
+
+    private static Connection withoutUpdateCounts(Connection connection) throws SQLException {
+        Connection spied = spy(connection);
+        lenient().doAnswer(invocation -> {
+            PreparedStatement statement = spy((PreparedStatement) invocation.callRealMethod());
+            lenient().doAnswer(batch -> {
+                int[] counts = (int[]) batch.callRealMethod();
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                return counts;
+            }).when(statement).executeBatch();
+            return statement;
+        }).when(spied).prepareStatement(anyString());
+        return spied;
+    }
+
+    private int countRows() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM telegram_users")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private User telegramUser(Long id, String firstName) {
+        User telegramUser = mock(User.class);
+        when(telegramUser.getId()).thenReturn(id);
+        when(telegramUser.getFirstName()).thenReturn(firstName);
+        return telegramUser;
+    }
+}
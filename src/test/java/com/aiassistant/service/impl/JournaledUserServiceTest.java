@@ -0,0 +1,137 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.model.TelegramUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JournaledUserServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private ApplicationProperties properties;
+
+    private JournaledUserService userService;
+
+    private JournaledUserService abandoned;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(properties.userStore()).thenReturn(
+                new ApplicationProperties.UserStoreProperties("journal", directory.toString(), 1, 3600,
+                        null, null, null, null, null));
+        userService = new JournaledUserService(properties);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        userService.close();
+        if (abandoned != null) {
+            abandoned.close();
+        }
+    }
+
+    @Test
+    void testRecoverFromJournal() throws IOException {
+        // Arrange
+        TelegramUser user = userService.getOrCreateUser(telegramUser(123L, "John"));
+        userService.updateUser(user.incrementMessageCount().incrementMessageCount());
+        userService.blockUser(123L);
+
+        // Act - only the journal is on disk
+        JournaledUserService reopened = reopenWithoutCompaction();
+
+        // Assert
+        TelegramUser recovered = reopened.findUser(123L).orElseThrow();
+        assertEquals("John", recovered.getFirstName());
+        assertEquals(2, recovered.getMessageCount());
+        assertTrue(reopened.isUserBlocked(123L));
+        assertEquals(user.getFirstSeenAt().withNano(0), recovered.getFirstSeenAt().withNano(0));
+        userService = reopened;
+    }
+
+    @Test
+    void testRecoverFromSnapshotAndJournalTail() throws IOException {
+        // Arrange
+        userService.getOrCreateUser(telegramUser(1L, "Alice"));
+        userService.getOrCreateUser(telegramUser(2L, "Bob"));
+        userService.compact();
+        userService.blockUser(2L);
+        userService.updateUser(userService.findUser(1L).orElseThrow().incrementMessageCount());
+
+        // Act
+        JournaledUserService reopened = reopenWithoutCompaction();
+
+        // Assert
+        assertEquals(1, reopened.findUser(1L).orElseThrow().getMessageCount());
+        assertTrue(reopened.isUserBlocked(2L));
+        assertFalse(reopened.isUserBlocked(1L));
+        userService = reopened;
+    }
+
+    @Test
+    void testCompactionRemovesOldJournals() throws IOException {
+        // Arrange
+        userService.getOrCreateUser(telegramUser(1L, "Alice"));
+
+        // Act
+        userService.compact();
+        userService.compact();
+
+        // Assert
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(path -> path.toString().endsWith(".journal")).count());
+        }
+        assertTrue(Files.exists(directory.resolve("users.snapshot")));
+    }
+
+    @Test
+    void testTornJournalTailIsIgnored() throws IOException {
+        // Arrange
+        userService.getOrCreateUser(telegramUser(1L, "Alice"));
+        userService.close();
+        Path journal;
+        try (Stream<Path> files = Files.list(directory)) {
+            journal = files.filter(path -> path.toString().endsWith(".journal")).findFirst().orElseThrow();
+        }
+        Files.write(journal, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        // Act
+        userService = new JournaledUserService(properties);
+
+        // Assert
+        assertTrue(userService.findUser(1L).isPresent());
+    }
+
+    private JournaledUserService reopenWithoutCompaction() throws IOException {
+        // Simulate a crash right after a group commit: the old instance is abandoned, not closed
+        userService.flush();
+        abandoned = userService;
+        return new JournaledUserService(properties);
+    }
+
+    private User telegramUser(Long id, String firstName) {
+        User telegramUser = mock(User.class);
+        when(telegramUser.getId()).thenReturn(id);
+        when(telegramUser.getFirstName()).thenReturn(firstName);
+        return telegramUser;
+    }
+}
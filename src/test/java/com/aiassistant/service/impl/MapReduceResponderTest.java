@@ -0,0 +1,182 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.exception.AiServiceException;
+import com.aiassistant.model.AiRequest;
+import com.aiassistant.model.AiResponse;
+import com.aiassistant.service.AiService;
+import com.aiassistant.service.ConversationService;
+import com.aiassistant.service.RequestScheduler;
+import com.aiassistant.service.UsageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MapReduceResponderTest {
+
+    private static final int NOTES_TOKENS = 50;
+    private static final int ANSWER_TOKENS = 500;
+
+    @Mock
+    private AiService aiService;
+
+    @Mock
+    private RequestScheduler requestScheduler;
+
+    @Mock
+    private ConversationService conversationService;
+
+    @Mock
+    private UsageService usageService;
+
+    private final HeuristicTokenEstimator tokenEstimator = new HeuristicTokenEstimator();
+    private final List<AiRequest> chunkRequests = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<AiResponse>> chunkCalls = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<AiResponse> reduceCall = new CompletableFuture<>();
+    private final List<AiRequest> reduceRequests = new CopyOnWriteArrayList<>();
+
+    private MapReduceResponder responder;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties properties = TestProperties.builder()
+                .aiProvider(new ApplicationProperties.AiProviderProperties("groq", null, "http://localhost", "main-model",
+                        ANSWER_TOKENS, null, null, null))
+                .mapReduce(new ApplicationProperties.MapReduceProperties(true, 100000, 100, 2, NOTES_TOKENS, "small-model"))
+                .build();
+        responder = new MapReduceResponder(new LiveProperties(properties), aiService, requestScheduler,
+                tokenEstimator, conversationService, usageService);
+    }
+
+    @Test
+    void testAnswer_ChunksRunAtMostMaxParallelAtATimeThenReduce() {
+        // Arrange
+        stubCalls();
+        String text = paragraphs(20);
+
+        // Act
+        CompletableFuture<String> reply = responder.answer(1L, 2L, text);
+
+        // Assert - only maxParallelChunks calls are started, each completion starts the next one
+        int chunks = responder.split(text, 100, "small-model").size();
+        assertTrue(chunks > 2);
+        assertEquals(2, chunkCalls.size());
+        for (int i = 0; i < chunks; i++) {
+            assertTrue(chunkCalls.stream().filter(call -> !call.isDone()).count() <= 2);
+            chunkCalls.get(i).complete(response("notes " + (i + 1)));
+        }
+        assertEquals(chunks, chunkCalls.size());
+        assertTrue(chunkRequests.stream().allMatch(request -> "small-model".equals(request.getModel())
+                && request.getMaxTokens() == NOTES_TOKENS));
+        verify(requestScheduler, times(chunks + 1)).submit(eq(1L), anyInt(), any());
+
+        assertEquals(1, reduceRequests.size());
+        AiRequest reduce = reduceRequests.get(0);
+        assertEquals("main-model", reduce.getModel());
+        String notes = reduce.getMessages().get(1).getContent();
+        assertTrue(notes.indexOf("notes 1") < notes.indexOf("notes " + chunks));
+        assertFalse(reply.isDone());
+
+        reduceCall.complete(response("The answer"));
+        assertEquals("The answer", reply.join());
+        verify(conversationService).appendExchange(eq(2L), argThat(message -> message.getContent().endsWith("…")),
+                eq(AiRequest.Message.assistant("The answer")));
+    }
+
+    @Test
+    void testAnswer_FailedChunkCancelsTheOthers() {
+        // Arrange
+        stubCalls();
+
+        // Act
+        CompletableFuture<String> reply = responder.answer(1L, 2L, paragraphs(20));
+        chunkCalls.get(0).completeExceptionally(new AiServiceException("API_ERROR", "Provider is down"));
+
+        // Assert
+        assertTrue(reply.isCompletedExceptionally());
+        assertTrue(chunkCalls.get(1).isCancelled());
+        assertEquals(2, chunkCalls.size());
+        assertTrue(reduceRequests.isEmpty());
+        verify(conversationService, never()).appendExchange(anyLong(), any(), any());
+    }
+
+    @Test
+    void testAnswer_CancelledReplyCancelsCallsInProgress() {
+        // Arrange
+        stubCalls();
+
+        // Act
+        CompletableFuture<String> reply = responder.answer(1L, 2L, paragraphs(20));
+        reply.cancel(true);
+
+        // Assert - calls that were not started yet are never started
+        assertTrue(chunkCalls.stream().allMatch(CompletableFuture::isCancelled));
+        assertEquals(2, chunkCalls.size());
+        assertTrue(reduceRequests.isEmpty());
+    }
+
+    @Test
+    void testSplit_ChunksFitTheBudgetAndKeepParagraphsWhole() {
+        // Arrange
+        String text = paragraphs(20);
+
+        // Act
+        List<String> chunks = responder.split(text, 100, "small-model");
+
+        // Assert
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(tokenEstimator.countMessageTokens(AiRequest.Message.user(chunk), "small-model") <= 100);
+            assertTrue(chunk.startsWith("Paragraph"));
+            assertTrue(chunk.endsWith("."));
+        }
+        assertEquals(text, String.join("\n\n", chunks));
+        assertEquals(List.of("Short text"), responder.split("Short text", 100, "small-model"));
+    }
+
+    private void stubCalls() {
+        when(requestScheduler.submit(anyLong(), anyInt(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<CompletableFuture<?>>>getArgument(2).get());
+        when(aiService.chatCompletion(any(AiRequest.class))).thenAnswer(invocation -> {
+            AiRequest request = invocation.getArgument(0);
+            if (request.getMaxTokens() == ANSWER_TOKENS) {
+                reduceRequests.add(request);
+                return reduceCall;
+            }
+            CompletableFuture<AiResponse> call = new CompletableFuture<>();
+            chunkRequests.add(request);
+            chunkCalls.add(call);
+            return call;
+        });
+    }
+
+    private static String paragraphs(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(i -> "Paragraph " + i + " describes one more step of the deployment process in detail.")
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private static AiResponse response(String content) {
+        return AiResponse.builder()
+                .choices(List.of(AiResponse.Choice.builder()
+                        .message(AiRequest.Message.assistant(content))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.store.ResponseSegmentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashResponseCacheTest {
+
+    private static final String MODEL = "test-model";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFind_NearDuplicatePromptHits() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 100);
+        cache.put(MODEL, "what's the capital of France?", "Paris");
+
+        // Act
+        Optional<String> answer = cache.find(MODEL, "What is the capital of france");
+
+        // Assert
+        assertEquals(Optional.of("Paris"), answer);
+        assertEquals(1.0, registry.get("aiassistant.response_cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testFind_DifferentQuestionMisses() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 100);
+        cache.put(MODEL, "What is the capital of France?", "Paris");
+
+        // Act & Assert
+        assertEquals(Optional.empty(), cache.find(MODEL, "What is the capital of Spain?"));
+        assertEquals(Optional.empty(), cache.find(MODEL, "Write a poem about autumn"));
+    }
+
+    @Test
+    void testFind_NumbersMustMatchExactly() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 100);
+        cache.put(MODEL, "How much is 1234 + 5678?", "6912");
+
+        // Act & Assert
+        assertEquals(Optional.empty(), cache.find(MODEL, "How much is 1234 + 5679?"));
+        assertEquals(Optional.of("6912"), cache.find(MODEL, "how much is 1234+5678"));
+    }
+
+    @Test
+    void testPut_FullCacheEvictsLeastRecentlyUsed() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 2);
+        cache.put(MODEL, "What is the capital of France?", "Paris");
+        cache.put(MODEL, "Who wrote War and Peace?", "Tolstoy");
+        cache.find(MODEL, "What is the capital of France?");
+
+        // Act
+        cache.put(MODEL, "What is the boiling point of water?", "100 °C");
+
+        // Assert
+        assertEquals(Optional.of("Paris"), cache.find(MODEL, "What is the capital of France?"));
+        assertEquals(Optional.empty(), cache.find(MODEL, "Who wrote War and Peace?"));
+        assertEquals(Optional.of("100 °C"), cache.find(MODEL, "What is the boiling point of water?"));
+    }
+
+    @Test
+    void testPut_SamePromptKeepsNewerAnswer() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 1);
+        cache.put(MODEL, "Tell me a joke", "first");
+
+        // Act
+        cache.put(MODEL, "tell me a joke!", "second");
+
+        // Assert
+        assertEquals(Optional.of("second"), cache.find(MODEL, "Tell me a joke"));
+    }
+
+    @Test
+    void testFind_DisabledCacheNeverHits() {
+        // Arrange
+        MinHashResponseCache cache = cache(false, 100);
+        cache.put(MODEL, "What is the capital of France?", "Paris");
+
+        // Act & Assert
+        assertEquals(Optional.empty(), cache.find(MODEL, "What is the capital of France?"));
+    }
+
+    @Test
+    void testFind_OtherModelMisses() {
+        // Arrange
+        MinHashResponseCache cache = cache(true, 100);
+        cache.put(MODEL, "What is the capital of France?", "Paris");
+
+        // Act & Assert
+        assertEquals(Optional.empty(), cache.find("other-model", "What is the capital of France?"));
+    }
+
+    @Test
+    void testFind_AnswerSurvivesRestartInSegmentStore() throws Exception {
+        // Arrange
+        MinHashResponseCache before = cache(true, 100, new ResponseSegmentStore(directory, 1 << 16, 2));
+        before.put(MODEL, "What is the capital of France?", "Paris");
+        before.close();
+
+        // Act
+        MinHashResponseCache after = cache(true, 100, new ResponseSegmentStore(directory, 1 << 16, 2));
+        Optional<String> answer = after.find(MODEL, "what is the capital of france");
+
+        // Assert - served from disk, then from memory
+        assertEquals(Optional.of("Paris"), answer);
+        assertEquals(Optional.of("Paris"), after.find(MODEL, "What's the capital of France?"));
+        assertEquals(1.0, registry.get("aiassistant.response_cache.disk.hits").counter().count());
+        after.close();
+    }
+
+    @Test
+    void testNormalize_IgnoresCasePunctuationAndContractions() {
+        assertEquals("what is the capital of france",
+                MinHashResponseCache.normalize("  What’s the capital of FRANCE?!"));
+        assertEquals("я не знаю что делать", MinHashResponseCache.normalize("Я не знаю, что делать..."));
+    }
+
+    private MinHashResponseCache cache(boolean enabled, int capacity) {
+        return cache(enabled, capacity, null);
+    }
+
+    private MinHashResponseCache cache(boolean enabled, int capacity, ResponseSegmentStore store) {
+        ApplicationProperties properties = TestProperties.builder()
+                .responseCache(new ApplicationProperties.ResponseCacheProperties(enabled, capacity, null, null, null, null))
+                .build();
+        return new MinHashResponseCache(capacity, store, new LiveProperties(properties), registry);
+    }
+}
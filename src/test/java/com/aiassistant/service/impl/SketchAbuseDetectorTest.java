@@ -0,0 +1,152 @@
+package com.aiassistant.service.impl;
+
+import com.aiassistant.config.ApplicationProperties;
+import com.aiassistant.config.LiveProperties;
+import com.aiassistant.config.TestProperties;
+import com.aiassistant.service.AbuseDetector.Verdict;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SketchAbuseDetectorTest {
+
+    private static final String SPAM = "Cheap followers and likes, visit example.com now";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+
+    @Test
+    void testInspect_SameTextFromManyAccountsIsThrottled() {
+        // Arrange - duplicate threshold 5
+        SketchAbuseDetector detector = detector(true, 5, 100, 100);
+        for (long userId = 1; userId < 5; userId++) {
+            assertEquals(Verdict.ALLOW, detector.inspect(userId, SPAM));
+        }
+
+        // Act
+        Verdict verdict = detector.inspect(5L, "  CHEAP followers and likes,   visit example.com now");
+
+        // Assert
+        assertEquals(Verdict.THROTTLE, verdict);
+        assertEquals(Verdict.ALLOW, detector.inspect(6L, "What is the capital of France?"));
+        assertEquals(1.0, registry.get("aiassistant.abuse.messages").tag("action", "throttled").counter().count());
+    }
+
+    @Test
+    void testInspect_ShortTextIsOnlyLimitedPerUser() {
+        // Arrange - repeat threshold 3
+        SketchAbuseDetector detector = detector(true, 2, 3, 100);
+
+        // Act & Assert - many users say hi, one of them says it again and again
+        for (long userId = 1; userId <= 10; userId++) {
+            assertEquals(Verdict.ALLOW, detector.inspect(userId, "hi"));
+        }
+        assertEquals(Verdict.ALLOW, detector.inspect(1L, "hi"));
+        assertEquals(Verdict.THROTTLE, detector.inspect(1L, "hi"));
+    }
+
+    @Test
+    void testInspect_RepeatOffenderIsFlaggedOnce() {
+        // Arrange - every repeat after the first is an offense, 3 offenses flag the user
+        SketchAbuseDetector detector = detector(true, 100, 2, 3);
+        detector.inspect(7L, SPAM);
+
+        // Act & Assert
+        assertEquals(Verdict.THROTTLE, detector.inspect(7L, SPAM));
+        assertEquals(Verdict.THROTTLE, detector.inspect(7L, SPAM));
+        assertEquals(Verdict.FLAG, detector.inspect(7L, SPAM));
+        assertEquals(Verdict.THROTTLE, detector.inspect(7L, SPAM));
+        assertEquals(1.0, registry.get("aiassistant.abuse.messages").tag("action", "flagged").counter().count());
+    }
+
+    @Test
+    void testInspect_NewOffenderDoesNotInheritFlagFromFullTable() {
+        // Arrange - the table tracks 16 offenders; fill it with 16 users of 3 offenses each
+        SketchAbuseDetector detector = detector(true, 100, 2, 3);
+        for (long userId = 1; userId <= 16; userId++) {
+            for (int i = 0; i < 4; i++) {
+                detector.inspect(userId, SPAM);
+            }
+        }
+        detector.inspect(100L, SPAM);
+
+        // Act - the first offense of a new user takes over a slot counted 3
+        Verdict verdict = detector.inspect(100L, SPAM);
+
+        // Assert
+        assertEquals(Verdict.THROTTLE, verdict);
+        assertEquals(Verdict.THROTTLE, detector.inspect(100L, SPAM));
+        assertEquals(Verdict.FLAG, detector.inspect(100L, SPAM));
+    }
+
+    @Test
+    void testInspect_CountsExpireWithTheWindow() {
+        // Arrange
+        SketchAbuseDetector detector = detector(true, 100, 2, 100);
+        assertEquals(Verdict.ALLOW, detector.inspect(7L, SPAM));
+
+        // Act - 50 s later the first message is still in the 60 s window, a minute after that it is not
+        clock.advance(Duration.ofSeconds(50));
+        Verdict withinWindow = detector.inspect(7L, SPAM);
+        clock.advance(Duration.ofSeconds(60));
+        Verdict afterWindow = detector.inspect(7L, SPAM);
+
+        // Assert
+        assertEquals(Verdict.THROTTLE, withinWindow);
+        assertEquals(Verdict.ALLOW, afterWindow);
+    }
+
+    @Test
+    void testInspect_DisabledDetectorAllowsEverything() {
+        // Arrange
+        SketchAbuseDetector detector = detector(false, 2, 2, 1);
+
+        // Act & Assert
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Verdict.ALLOW, detector.inspect(7L, SPAM));
+        }
+    }
+
+    private SketchAbuseDetector detector(boolean enabled, int duplicateThreshold, int repeatThreshold,
+                                         int offenseThreshold) {
+        ApplicationProperties properties = TestProperties.builder()
+                .abuse(new ApplicationProperties.AbuseProperties(enabled, 60, 1024, duplicateThreshold, repeatThreshold,
+                        16, offenseThreshold, null))
+                .build();
+        return new SketchAbuseDetector(properties, new LiveProperties(properties), registry, clock);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
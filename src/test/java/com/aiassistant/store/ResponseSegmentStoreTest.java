@@ -0,0 +1,125 @@
+package com.aiassistant.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseSegmentStoreTest {
+
+    private static final int SEGMENT_BYTES = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testGet_ValuesSurviveRestart() throws Exception {
+        // Arrange
+        ResponseSegmentStore store = new ResponseSegmentStore(directory, SEGMENT_BYTES, 4);
+        store.put(1L, "Paris");
+        store.put(2L, "Привет, мир! ".repeat(100));
+        store.put(1L, "Paris, France");
+        store.close();
+
+        // Act
+        ResponseSegmentStore reopened = new ResponseSegmentStore(directory, SEGMENT_BYTES, 4);
+
+        // Assert
+        assertEquals(2, reopened.size());
+        assertEquals(Optional.of("Paris, France"), reopened.get(1L));
+        assertEquals(Optional.of("Привет, мир! ".repeat(100)), reopened.get(2L));
+        assertEquals(Optional.empty(), reopened.get(3L));
+        reopened.close();
+    }
+
+    @Test
+    void testPut_RestartsAppendToTheLastSegment() throws Exception {
+        // Arrange - more restarts than segments, nothing read
+        for (long key = 1; key <= 5; key++) {
+            ResponseSegmentStore store = new ResponseSegmentStore(directory, SEGMENT_BYTES, 2);
+            store.put(key, "Answer " + key);
+            store.close();
+        }
+
+        // Act
+        ResponseSegmentStore reopened = new ResponseSegmentStore(directory, SEGMENT_BYTES, 2);
+
+        // Assert
+        assertEquals(5, reopened.size());
+        for (long key = 1; key <= 5; key++) {
+            assertEquals(Optional.of("Answer " + key), reopened.get(key));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        reopened.close();
+    }
+
+    @Test
+    void testPut_CompactionKeepsOnlyValuesThatWereRead() throws Exception {
+        // Arrange - incompressible values so every segment holds only a few of them
+        ResponseSegmentStore store = new ResponseSegmentStore(directory, SEGMENT_BYTES, 2);
+        store.put(1L, randomText(20_000, 1));
+        store.put(2L, randomText(20_000, 2));
+        store.get(1L);
+
+        // Act - fill two more segments so the first one is compacted
+        for (long key = 3; key <= 8; key++) {
+            store.put(key, randomText(20_000, key));
+        }
+
+        // Assert
+        assertTrue(store.get(1L).isPresent());
+        assertEquals(Optional.empty(), store.get(2L));
+        assertEquals(Optional.of(randomText(20_000, 8)), store.get(8L));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        store.close();
+    }
+
+    @Test
+    void testGet_DamagedRecordIsAMiss() throws Exception {
+        // Arrange
+        ResponseSegmentStore store = new ResponseSegmentStore(directory, SEGMENT_BYTES, 4);
+        store.put(1L, "Paris");
+        store.close();
+        corrupt(directory.resolve("responses-1.segment"), 24);
+
+        // Act
+        ResponseSegmentStore reopened = new ResponseSegmentStore(directory, SEGMENT_BYTES, 4);
+
+        // Assert
+        assertEquals(Optional.empty(), reopened.get(1L));
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, position);
+        }
+    }
+
+    private static String randomText(int length, long seed) {
+        StringBuilder text = new StringBuilder(length);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('!' + random.nextInt(90)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.aiassistant.store;
+
+import com.aiassistant.model.TelegramUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRotate_FailureFailsTheRequestAndKeepsWriting() throws Exception {
+        // Arrange - the next generation cannot be opened
+        UserJournal journal = new UserJournal(directory, 1, 1);
+        journal.append(user(1L, "Before"));
+        Files.createDirectory(directory.resolve("users-2.journal"));
+
+        // Act
+        CompletableFuture<Long> rotate = journal.rotate();
+        CompletableFuture<Long> sync = journal.sync();
+        journal.append(user(2L, "After"));
+
+        // Assert - no request is left waiting and nothing is lost
+        assertThrows(ExecutionException.class, () -> rotate.get(5, TimeUnit.SECONDS));
+        sync.handle((generation, error) -> null).get(5, TimeUnit.SECONDS);
+        assertEquals(1L, journal.sync().get(5, TimeUnit.SECONDS));
+        journal.close();
+        Files.delete(directory.resolve("users-2.journal"));
+
+        List<String> replayed = new ArrayList<>();
+        UserJournal.replay(directory, 1, user -> replayed.add(user.getFirstName()));
+        assertEquals(List.of("Before", "After"), replayed);
+    }
+
+    private static TelegramUser user(Long id, String firstName) {
+        return TelegramUser.builder()
+                .userId(id)
+                .firstName(firstName)
+                .build();
+    }
+}
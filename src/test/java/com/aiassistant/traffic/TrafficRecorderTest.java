@@ -0,0 +1,105 @@
+package com.aiassistant.traffic;
+
+import com.aiassistant.config.ApplicationProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TrafficRecorderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecord_EventsRoundTripThroughTheLog() throws IOException {
+        // Arrange
+        TrafficRecorder recorder = createRecorder(true);
+
+        // Act
+        recorder.recordUpdate(1L, 100L, 42, false);
+        recorder.recordUpdate(1L, 100L, 5, true);
+        recorder.recordAiCall(100L, 120, 30, 150, TimeUnit.MILLISECONDS.toNanos(850), 200);
+        recorder.recordAiCall(null, 80, 0, 0, TimeUnit.SECONDS.toNanos(2), -1);
+        recorder.close();
+
+        // Assert
+        List<TrafficEvent> events = TrafficLog.read(recorder.file());
+        assertEquals(4, events.size());
+        TrafficEvent.Update update = (TrafficEvent.Update) events.get(0);
+        assertEquals(1L, update.userId());
+        assertEquals(100L, update.chatId());
+        assertEquals(42, update.textChars());
+        assertFalse(update.command());
+        assertTrue(((TrafficEvent.Update) events.get(1)).command());
+        TrafficEvent.AiCall call = (TrafficEvent.AiCall) events.get(2);
+        assertEquals(new TrafficEvent.AiCall(call.epochMicros(), 100L, 120, 30, 150, 850_000, 200), call);
+        assertTrue(call.succeeded());
+        TrafficEvent.AiCall failed = (TrafficEvent.AiCall) events.get(3);
+        assertEquals(0L, failed.chatId());
+        assertFalse(failed.succeeded());
+        assertTrue(events.get(1).epochMicros() >= events.get(0).epochMicros());
+        assertEquals(0, recorder.droppedEvents());
+    }
+
+    @Test
+    void testRead_TruncatedTailIsIgnored() throws IOException {
+        // Arrange
+        TrafficRecorder recorder = createRecorder(true);
+        recorder.recordUpdate(1L, 100L, 42, false);
+        recorder.recordUpdate(2L, 200L, 7, false);
+        recorder.close();
+        Path file = recorder.file();
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        // Act
+        List<TrafficEvent> events = TrafficLog.read(file);
+
+        // Assert
+        assertEquals(1, events.size());
+        assertEquals(1L, ((TrafficEvent.Update) events.get(0)).userId());
+    }
+
+    @Test
+    void testRecord_DisabledRecorderWritesNothing() throws IOException {
+        // Arrange
+        TrafficRecorder recorder = createRecorder(false);
+
+        // Act
+        recorder.recordUpdate(1L, 100L, 42, false);
+        recorder.close();
+
+        // Assert
+        assertFalse(recorder.isEnabled());
+        assertNull(recorder.file());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testRead_RejectsForeignFiles() throws IOException {
+        // Arrange
+        Path file = Files.writeString(directory.resolve("users.journal"), "not a capture");
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> TrafficLog.read(file));
+    }
+
+    private TrafficRecorder createRecorder(boolean enabled) throws IOException {
+        ApplicationProperties properties = mock(ApplicationProperties.class);
+        when(properties.traffic()).thenReturn(
+                new ApplicationProperties.TrafficProperties(enabled, directory.toString(), null));
+        return new TrafficRecorder(properties);
+    }
+}
@@ -0,0 +1,85 @@
+package com.aiassistant.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockedUserIndexTest {
+
+    @Test
+    void testAddAndRemove() {
+        // Arrange
+        BlockedUserIndex index = new BlockedUserIndex();
+
+        // Act & Assert
+        assertFalse(index.contains(123L));
+        assertTrue(index.add(123L));
+        assertFalse(index.add(123L));
+        assertTrue(index.contains(123L));
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove(123L));
+        assertFalse(index.remove(123L));
+        assertFalse(index.contains(123L));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testZeroAndNegativeIds() {
+        // Arrange
+        BlockedUserIndex index = new BlockedUserIndex();
+
+        // Act
+        index.add(0L);
+        index.add(-100L);
+
+        // Assert
+        assertTrue(index.contains(0L));
+        assertTrue(index.contains(-100L));
+        assertFalse(index.contains(1L));
+    }
+
+    @Test
+    void testMatchesHashSetForManyIds() {
+        // Arrange
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        long[] ids = new long[5000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextLong();
+            expected.add(ids[i]);
+        }
+        BlockedUserIndex index = new BlockedUserIndex();
+
+        // Act
+        index.reset(ids);
+
+        // Assert
+        assertEquals(expected.size(), index.size());
+        for (long id : ids) {
+            assertTrue(index.contains(id));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            long probe = random.nextLong();
+            assertEquals(expected.contains(probe), index.contains(probe));
+        }
+    }
+
+    @Test
+    void testSync() {
+        // Arrange
+        BlockedUserIndex index = new BlockedUserIndex();
+
+        // Act & Assert
+        index.sync(7L, true);
+        assertTrue(index.contains(7L));
+        index.sync(7L, true);
+        assertEquals(1, index.size());
+        index.sync(7L, false);
+        assertFalse(index.contains(7L));
+    }
+}
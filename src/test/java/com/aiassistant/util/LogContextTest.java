@@ -0,0 +1,74 @@
+package com.aiassistant.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogContextTest {
+
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+        Deadline.attach(null);
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testCaptured_ContextReachesStagesCompletedOnAnotherThread() throws Exception {
+        // Arrange
+        MDC.put(LogContext.REQUEST_ID, "42");
+        Executor context = LogContext.captured();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        // Registered before completion, so it runs on the completing thread
+        CompletableFuture<String> stage = future.thenApply(value -> value + "/" + MDC.get(LogContext.REQUEST_ID));
+        MDC.clear();
+
+        // Act - e.g. an HTTP callback on a client thread with an empty MDC
+        pool.execute(() -> context.execute(() -> future.complete(MDC.get(LogContext.REQUEST_ID))));
+
+        // Assert
+        assertEquals("42/42", stage.get());
+    }
+
+    @Test
+    void testCaptured_ThreadContextIsRestored() throws Exception {
+        // Arrange
+        MDC.put(LogContext.REQUEST_ID, "42");
+        Executor context = LogContext.captured();
+        MDC.clear();
+
+        // Act
+        CompletableFuture.runAsync(() -> context.execute(() -> { }), pool).get();
+        String leaked = CompletableFuture.supplyAsync(() -> MDC.get(LogContext.REQUEST_ID), pool).get();
+
+        // Assert
+        assertNull(leaked);
+    }
+
+    @Test
+    void testCapturing_DeadlineTravelsWithTheTask() throws Exception {
+        // Arrange
+        Deadline deadline = Deadline.after(60_000);
+        Deadline.attach(deadline);
+        Deadline[] seen = new Deadline[1];
+        Runnable task = LogContext.capturing(() -> seen[0] = Deadline.current());
+        Deadline.attach(null);
+
+        // Act
+        CompletableFuture.runAsync(task, pool).get();
+        Deadline leaked = CompletableFuture.supplyAsync(Deadline::current, pool).get();
+
+        // Assert
+        assertSame(deadline, seen[0]);
+        assertNull(leaked);
+    }
+}